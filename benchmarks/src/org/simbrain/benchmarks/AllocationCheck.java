@@ -0,0 +1,123 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.benchmarks;
+
+import java.lang.management.ManagementFactory;
+
+import org.simbrain.network.connections.Sparse;
+import org.simbrain.network.core.Network;
+import org.simbrain.network.core.Neuron;
+import org.simbrain.network.core.Synapse;
+import org.simbrain.network.groups.NeuronGroup;
+import org.simbrain.network.groups.SynapseGroup;
+
+import com.sun.management.ThreadMXBean;
+
+/**
+ * Checks that updating a network whose structure does not change allocates
+ * nothing. A network with neuron groups, a synapse group, loose neurons and
+ * loose synapses is warmed up, then the bytes allocated by the updating
+ * thread over a number of updates are read from the {@link ThreadMXBean}
+ * and must be zero. Usage:
+ *
+ * <pre>
+ * AllocationCheck [updates]
+ * </pre>
+ *
+ * Exits with status 1 if any update allocates.
+ */
+public class AllocationCheck {
+
+    /** Updates run before measuring, so that lazily built caches exist. */
+    private static final int WARM_UP = 10000;
+
+    /**
+     * Run the check.
+     *
+     * @param args the number of updates to measure, optional
+     */
+    public static void main(String[] args) {
+        int updates = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory
+                .getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported()) {
+            System.out.println("SKIPPED: thread allocation counters are not"
+                    + " supported by this JVM");
+            return;
+        }
+        threads.setThreadAllocatedMemoryEnabled(true);
+        long thread = Thread.currentThread().getId();
+
+        Network network = buildNetwork();
+        for (int i = 0; i < WARM_UP; i++) {
+            network.update();
+        }
+
+        // Reading the counter may itself allocate; measure that first
+        long start = threads.getThreadAllocatedBytes(thread);
+        long overhead = threads.getThreadAllocatedBytes(thread) - start;
+        start = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < updates; i++) {
+            network.update();
+        }
+        long allocated = threads.getThreadAllocatedBytes(thread) - start
+                - overhead;
+        if (allocated > 0) {
+            System.err.println("FAILED: " + allocated + " bytes allocated in "
+                    + updates + " updates, "
+                    + ((double) allocated / updates) + " per update");
+            System.exit(1);
+        }
+        System.out.println("OK: 0 bytes allocated in " + updates
+                + " updates of " + network.getFlatNeuronList().size()
+                + " neurons and " + network.getFlatSynapseList().size()
+                + " synapses");
+    }
+
+    /**
+     * Build a network of two neuron groups joined by a sparse synapse group,
+     * and a few loose neurons joined by loose synapses.
+     *
+     * @return the network
+     */
+    static Network buildNetwork() {
+        Network net = new Network();
+        net.setFireUpdates(false);
+        NeuronGroup source = new NeuronGroup(net, 100);
+        net.addGroup(source);
+        NeuronGroup target = new NeuronGroup(net, 100);
+        net.addGroup(target);
+        net.addGroup(SynapseGroup.createSynapseGroup(source, target,
+                new Sparse(0.1, false, false)));
+        Neuron previous = null;
+        for (int i = 0; i < 10; i++) {
+            Neuron neuron = new Neuron(net);
+            neuron.forceSetActivation(i);
+            net.addNeuron(neuron);
+            if (previous != null) {
+                net.addSynapse(new Synapse(previous, neuron));
+            }
+            previous = neuron;
+        }
+        net.addSynapse(new Synapse(previous,
+                source.getNeuronList().get(0)));
+        return net;
+    }
+
+}
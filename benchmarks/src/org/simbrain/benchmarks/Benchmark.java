@@ -0,0 +1,123 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.benchmarks;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A single benchmark: one operation on the network engine, measured for one
+ * combination of parameters. Subclasses build whatever state the operation
+ * needs in {@link #setUp()}, which is not timed, and perform the operation in
+ * {@link #invoke()}, which is.
+ * <p>
+ * Operations which consume their state (for example connecting neurons, which
+ * leaves the synapses behind) can restore it in {@link #setUpInvocation()},
+ * which is called before every invocation and is also not timed.
+ */
+public abstract class Benchmark {
+
+    /** Name of the suite this benchmark belongs to. */
+    private final String suite;
+
+    /** Name of the benchmark within its suite. */
+    private final String name;
+
+    /** Parameter values, in the order they were added. */
+    private final Map<String, Object> params =
+            new LinkedHashMap<String, Object>();
+
+    /**
+     * Construct a benchmark.
+     *
+     * @param suite name of the suite this benchmark belongs to
+     * @param name name of the benchmark within its suite
+     */
+    protected Benchmark(final String suite, final String name) {
+        this.suite = suite;
+        this.name = name;
+    }
+
+    /**
+     * Record the value of a parameter of this benchmark.
+     *
+     * @param key the parameter name
+     * @param value the parameter value
+     * @return this benchmark, for chaining
+     */
+    public Benchmark param(final String key, final Object value) {
+        params.put(key, value);
+        return this;
+    }
+
+    /**
+     * Build the state needed by {@link #invoke()}. Called once before warm
+     * up.
+     *
+     * @throws Exception if the state cannot be built
+     */
+    public void setUp() throws Exception {
+    }
+
+    /**
+     * Restore state consumed by the previous invocation. Called before every
+     * invocation, outside of the timed region.
+     *
+     * @throws Exception if the state cannot be restored
+     */
+    public void setUpInvocation() throws Exception {
+    }
+
+    /**
+     * Perform the operation being measured.
+     *
+     * @throws Exception if the operation fails, which aborts this benchmark
+     */
+    public abstract void invoke() throws Exception;
+
+    /**
+     * Release resources such as worker threads. Called once after the last
+     * measurement.
+     *
+     * @throws Exception if resources cannot be released
+     */
+    public void tearDown() throws Exception {
+    }
+
+    /**
+     * @return the fully qualified name, "suite.name"
+     */
+    public String getFullName() {
+        return suite + "." + name;
+    }
+
+    /**
+     * @return the parameter values of this benchmark
+     */
+    public Map<String, Object> getParams() {
+        return Collections.unmodifiableMap(params);
+    }
+
+    @Override
+    public String toString() {
+        return getFullName() + params;
+    }
+
+}
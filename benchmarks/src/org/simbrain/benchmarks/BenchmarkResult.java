@@ -0,0 +1,237 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.benchmarks;
+
+import java.util.Map;
+
+import org.apache.commons.math3.distribution.TDistribution;
+
+/**
+ * The measurements of one benchmark. Each measurement iteration contributes
+ * one average time per operation. The score is the mean over iterations, with
+ * a 99.9% confidence interval half-width as its error, as reported by JMH.
+ */
+public class BenchmarkResult {
+
+    /** Confidence level of the reported error. */
+    private static final double CONFIDENCE = 0.999;
+
+    /** The benchmark which was measured. */
+    private final Benchmark benchmark;
+
+    /** Number of warm up iterations run before measuring. */
+    private final int warmupIterations;
+
+    /** Average microseconds per operation in each measurement iteration. */
+    private final double[] rawData;
+
+    /** Total number of operations measured. */
+    private final long operations;
+
+    /** Error message if the benchmark failed, null otherwise. */
+    private final String error;
+
+    /**
+     * Construct the result of a completed benchmark.
+     *
+     * @param benchmark the benchmark
+     * @param warmupIterations number of warm up iterations
+     * @param rawData microseconds per operation in each iteration
+     * @param operations total number of operations measured
+     */
+    public BenchmarkResult(final Benchmark benchmark,
+            final int warmupIterations, final double[] rawData,
+            final long operations) {
+        this.benchmark = benchmark;
+        this.warmupIterations = warmupIterations;
+        this.rawData = rawData;
+        this.operations = operations;
+        this.error = null;
+    }
+
+    /**
+     * Construct the result of a benchmark which threw an exception.
+     *
+     * @param benchmark the benchmark
+     * @param error description of the failure
+     */
+    public BenchmarkResult(final Benchmark benchmark, final String error) {
+        this.benchmark = benchmark;
+        this.warmupIterations = 0;
+        this.rawData = new double[0];
+        this.operations = 0;
+        this.error = error;
+    }
+
+    /**
+     * @return the mean microseconds per operation over all iterations
+     */
+    public double getScore() {
+        if (rawData.length == 0) {
+            return Double.NaN;
+        }
+        double sum = 0;
+        for (double d : rawData) {
+            sum += d;
+        }
+        return sum / rawData.length;
+    }
+
+    /**
+     * @return the half-width of the confidence interval of the score, or NaN
+     *         if there are fewer than two iterations
+     */
+    public double getScoreError() {
+        int n = rawData.length;
+        if (n < 2) {
+            return Double.NaN;
+        }
+        double mean = getScore();
+        double ss = 0;
+        for (double d : rawData) {
+            ss += (d - mean) * (d - mean);
+        }
+        double sd = Math.sqrt(ss / (n - 1));
+        double t = new TDistribution(n - 1)
+                .inverseCumulativeProbability(1 - (1 - CONFIDENCE) / 2);
+        return t * sd / Math.sqrt(n);
+    }
+
+    /**
+     * @return true if the benchmark threw an exception
+     */
+    public boolean isFailed() {
+        return error != null;
+    }
+
+    /**
+     * @return the benchmark which was measured
+     */
+    public Benchmark getBenchmark() {
+        return benchmark;
+    }
+
+    /**
+     * Append this result as a JSON object.
+     *
+     * @param sb the builder to append to
+     * @param indent the indentation of the object's fields
+     */
+    public void appendJson(final StringBuilder sb, final String indent) {
+        sb.append("{\n");
+        field(sb, indent, "benchmark").append(quote(benchmark.getFullName()))
+                .append(",\n");
+        field(sb, indent, "params").append("{");
+        String sep = "";
+        for (Map.Entry<String, Object> e : benchmark.getParams().entrySet()) {
+            sb.append(sep).append(quote(e.getKey())).append(": ")
+                    .append(quote(String.valueOf(e.getValue())));
+            sep = ", ";
+        }
+        sb.append("},\n");
+        field(sb, indent, "mode").append("\"avgt\",\n");
+        if (error != null) {
+            field(sb, indent, "error").append(quote(error)).append("\n");
+        } else {
+            field(sb, indent, "warmupIterations").append(warmupIterations)
+                    .append(",\n");
+            field(sb, indent, "measurementIterations").append(rawData.length)
+                    .append(",\n");
+            field(sb, indent, "operations").append(operations).append(",\n");
+            field(sb, indent, "primaryMetric").append("{\n");
+            String inner = indent + "  ";
+            field(sb, inner, "score").append(number(getScore()))
+                    .append(",\n");
+            field(sb, inner, "scoreError").append(number(getScoreError()))
+                    .append(",\n");
+            field(sb, inner, "scoreUnit").append("\"us/op\",\n");
+            field(sb, inner, "rawData").append("[");
+            for (int i = 0; i < rawData.length; i++) {
+                sb.append(i == 0 ? "" : ", ").append(number(rawData[i]));
+            }
+            sb.append("]\n");
+            sb.append(indent).append("}\n");
+        }
+        sb.append(indent.substring(2)).append("}");
+    }
+
+    /**
+     * Append an indented field name.
+     *
+     * @param sb the builder
+     * @param indent the indentation
+     * @param name the field name
+     * @return the builder
+     */
+    private static StringBuilder field(final StringBuilder sb,
+            final String indent, final String name) {
+        return sb.append(indent).append(quote(name)).append(": ");
+    }
+
+    /**
+     * Format a number for JSON, which has no representation for NaN.
+     *
+     * @param d the number
+     * @return the number as a JSON value
+     */
+    private static String number(final double d) {
+        if (Double.isNaN(d) || Double.isInfinite(d)) {
+            return "null";
+        }
+        return Double.toString(d);
+    }
+
+    /**
+     * Quote and escape a string for JSON.
+     *
+     * @param s the string
+     * @return the JSON string literal
+     */
+    static String quote(final String s) {
+        StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+            case '"':
+                sb.append("\\\"");
+                break;
+            case '\\':
+                sb.append("\\\\");
+                break;
+            case '\n':
+                sb.append("\\n");
+                break;
+            case '\r':
+                sb.append("\\r");
+                break;
+            case '\t':
+                sb.append("\\t");
+                break;
+            default:
+                if (c < 0x20) {
+                    sb.append(String.format("\\u%04x", (int) c));
+                } else {
+                    sb.append(c);
+                }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+}
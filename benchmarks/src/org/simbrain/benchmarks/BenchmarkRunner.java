@@ -0,0 +1,256 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Runs the benchmark suites of the network engine and writes the results as
+ * JSON, so that runs can be compared to track regressions between releases.
+ * The document is an object holding a header describing the run and a
+ * "results" array with one entry per benchmark; it is not in the format
+ * written by JMH.
+ * <p>
+ * Each benchmark is set up once, warmed up for a number of iterations, and
+ * then measured for a number of iterations. An iteration invokes the benchmark
+ * repeatedly for a fixed amount of time, and its result is the average time
+ * per invocation. Usage:
+ *
+ * <pre>
+ * BenchmarkRunner [-o file] [-f regex] [-sizes 100,1000]
+ *     [-densities 0.01,0.1] [-wi 3] [-i 5] [-t 1000]
+ * </pre>
+ *
+ * Results are written to standard output when no file is given. The filter is
+ * matched against the fully qualified benchmark name, e.g.
+ * "NetworkUpdate.buffered".
+ */
+public class BenchmarkRunner {
+
+    /** The suites which are run. */
+    private static final BenchmarkSuite[] SUITES = {
+            new NetworkUpdateBenchmarks(), new SynapseLearningBenchmarks(),
+            new ConnectionBenchmarks(), new TrainerBenchmarks(),
+            new SerializationBenchmarks() };
+
+    /** Number of warm up iterations. */
+    private int warmupIterations = 3;
+
+    /** Number of measurement iterations. */
+    private int measurementIterations = 5;
+
+    /** Length of an iteration in milliseconds. */
+    private long iterationMillis = 1000;
+
+    /**
+     * Run the benchmarks.
+     *
+     * @param args command line arguments, see class documentation
+     * @throws IOException if the results cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        BenchmarkRunner runner = new BenchmarkRunner();
+        File output = null;
+        Pattern filter = null;
+        int[] sizes = { 100, 1000 };
+        double[] densities = { 0.01, 0.1 };
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (i == args.length - 1) {
+                usage("Missing value for " + arg);
+            }
+            String value = args[++i];
+            if (arg.equals("-o")) {
+                output = new File(value);
+            } else if (arg.equals("-f")) {
+                filter = Pattern.compile(value);
+            } else if (arg.equals("-sizes")) {
+                String[] tokens = value.split(",");
+                sizes = new int[tokens.length];
+                for (int j = 0; j < tokens.length; j++) {
+                    sizes[j] = Integer.parseInt(tokens[j].trim());
+                }
+            } else if (arg.equals("-densities")) {
+                String[] tokens = value.split(",");
+                densities = new double[tokens.length];
+                for (int j = 0; j < tokens.length; j++) {
+                    densities[j] = Double.parseDouble(tokens[j].trim());
+                }
+            } else if (arg.equals("-wi")) {
+                runner.warmupIterations = Integer.parseInt(value);
+            } else if (arg.equals("-i")) {
+                runner.measurementIterations = Integer.parseInt(value);
+            } else if (arg.equals("-t")) {
+                runner.iterationMillis = Long.parseLong(value);
+            } else {
+                usage("Unknown option " + arg);
+            }
+        }
+
+        List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+        for (BenchmarkSuite suite : SUITES) {
+            suite.addBenchmarks(benchmarks, sizes, densities);
+        }
+        List<BenchmarkResult> results = new ArrayList<BenchmarkResult>();
+        for (Benchmark benchmark : benchmarks) {
+            if (filter != null
+                    && !filter.matcher(benchmark.getFullName()).find()) {
+                continue;
+            }
+            System.err.print(benchmark + " ... ");
+            BenchmarkResult result = runner.run(benchmark);
+            results.add(result);
+            System.err.println(result.isFailed() ? "FAILED"
+                    : String.format("%.3f us/op", result.getScore()));
+        }
+
+        String json = toJson(results);
+        if (output == null) {
+            System.out.println(json);
+        } else {
+            try (Writer w = new OutputStreamWriter(
+                    new FileOutputStream(output), StandardCharsets.UTF_8)) {
+                w.write(json);
+            }
+            System.err.println("Results written to " + output);
+        }
+        // Some update actions leave non-daemon worker threads behind
+        System.exit(0);
+    }
+
+    /**
+     * Print usage and exit.
+     *
+     * @param message the reason
+     */
+    private static void usage(final String message) {
+        System.err.println(message);
+        System.err.println("Usage: BenchmarkRunner [-o file] [-f regex]"
+                + " [-sizes n,...] [-densities d,...] [-wi warmup iterations]"
+                + " [-i iterations] [-t iteration millis]");
+        System.exit(1);
+    }
+
+    /**
+     * Set up, warm up, measure and tear down one benchmark.
+     *
+     * @param benchmark the benchmark
+     * @return the result, marked failed if the benchmark threw an exception
+     *         or an error
+     */
+    public BenchmarkResult run(final Benchmark benchmark) {
+        System.gc();
+        try {
+            benchmark.setUp();
+            try {
+                for (int i = 0; i < warmupIterations; i++) {
+                    iterate(benchmark, null);
+                }
+                double[] rawData = new double[measurementIterations];
+                long operations = 0;
+                long[] ops = new long[1];
+                for (int i = 0; i < measurementIterations; i++) {
+                    rawData[i] = iterate(benchmark, ops);
+                    operations += ops[0];
+                }
+                return new BenchmarkResult(benchmark, warmupIterations,
+                        rawData, operations);
+            } finally {
+                benchmark.tearDown();
+            }
+        } catch (Throwable e) {
+            // Errors such as StackOverflowError or NoClassDefFoundError must
+            // also mark the benchmark failed rather than end the whole run
+            e.printStackTrace();
+            return new BenchmarkResult(benchmark, e.toString());
+        }
+    }
+
+    /**
+     * Invoke a benchmark repeatedly for one iteration. Only the invocations
+     * themselves are timed. At least one invocation is made, however long it
+     * takes.
+     *
+     * @param benchmark the benchmark
+     * @param ops if not null, receives the number of invocations made
+     * @return the average microseconds per invocation
+     * @throws Exception if the benchmark throws
+     */
+    private double iterate(final Benchmark benchmark, final long[] ops)
+            throws Exception {
+        long deadline = System.nanoTime() + iterationMillis * 1000000L;
+        long elapsed = 0;
+        long count = 0;
+        do {
+            benchmark.setUpInvocation();
+            long start = System.nanoTime();
+            benchmark.invoke();
+            elapsed += System.nanoTime() - start;
+            count++;
+        } while (System.nanoTime() < deadline);
+        if (ops != null) {
+            ops[0] = count;
+        }
+        return elapsed / 1000.0 / count;
+    }
+
+    /**
+     * Format results as a JSON document with a header describing the run.
+     *
+     * @param results the results
+     * @return the JSON text
+     */
+    private static String toJson(final List<BenchmarkResult> results) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\n");
+        sb.append("  \"date\": ")
+                .append(BenchmarkResult.quote(new SimpleDateFormat(
+                        "yyyy-MM-dd'T'HH:mm:ssZ").format(new Date())))
+                .append(",\n");
+        sb.append("  \"jvm\": ")
+                .append(BenchmarkResult
+                        .quote(System.getProperty("java.vm.name")))
+                .append(",\n");
+        sb.append("  \"jdkVersion\": ")
+                .append(BenchmarkResult
+                        .quote(System.getProperty("java.version")))
+                .append(",\n");
+        sb.append("  \"availableProcessors\": ")
+                .append(Runtime.getRuntime().availableProcessors())
+                .append(",\n");
+        sb.append("  \"results\": [");
+        for (int i = 0; i < results.size(); i++) {
+            sb.append(i == 0 ? "\n    " : ",\n    ");
+            results.get(i).appendJson(sb, "      ");
+        }
+        sb.append("\n  ]\n}\n");
+        return sb.toString();
+    }
+
+}
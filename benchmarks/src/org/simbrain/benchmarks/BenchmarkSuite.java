@@ -0,0 +1,40 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.benchmarks;
+
+import java.util.List;
+
+/**
+ * A group of related benchmarks, created for every combination of network
+ * size and connection density requested on the command line.
+ */
+public interface BenchmarkSuite {
+
+    /**
+     * Create the benchmarks of this suite. Suites for which density has no
+     * meaning create one benchmark per size.
+     *
+     * @param benchmarks the list to add the benchmarks to
+     * @param sizes the network sizes, in neurons
+     * @param densities the connection densities, on (0, 1]
+     */
+    void addBenchmarks(List<Benchmark> benchmarks, int[] sizes,
+            double[] densities);
+
+}
@@ -0,0 +1,107 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.benchmarks;
+
+import java.util.List;
+
+import org.simbrain.network.connections.ConnectNeurons;
+import org.simbrain.network.connections.Radial;
+import org.simbrain.network.connections.Sparse;
+import org.simbrain.network.core.Network;
+import org.simbrain.network.groups.NeuronGroup;
+import org.simbrain.network.groups.SynapseGroup;
+import org.simbrain.network.layouts.GridLayout;
+
+/**
+ * Benchmarks of connection generation: creating a recurrent synapse group on a
+ * neuron group laid out in a grid. Radial connectivity depends on distance
+ * rather than density, so it is only parameterized by size.
+ */
+public class ConnectionBenchmarks implements BenchmarkSuite {
+
+    /** Average radial connection distance: two grid spacings. */
+    private static final double RADIAL_LAMBDA =
+            2 * GridLayout.DEFAULT_H_SPACING;
+
+    @Override
+    public void addBenchmarks(final List<Benchmark> benchmarks,
+            final int[] sizes, final double[] densities) {
+        for (int size : sizes) {
+            for (double density : densities) {
+                benchmarks.add(new ConnectBenchmark("sparse", size,
+                        new Sparse(density, false, false)).param("size", size)
+                                .param("density", density));
+            }
+        }
+        for (int size : sizes) {
+            benchmarks.add(new ConnectBenchmark("radial", size,
+                    new Radial(RADIAL_LAMBDA)).param("size", size));
+        }
+    }
+
+    /**
+     * Connect a neuron group to itself.
+     */
+    private static class ConnectBenchmark extends Benchmark {
+
+        /** Number of neurons. */
+        private final int size;
+
+        /** The connection to make. */
+        private final ConnectNeurons connection;
+
+        /** The neuron group to connect, rebuilt before each invocation. */
+        private NeuronGroup neuronGroup;
+
+        /**
+         * @param name name of the benchmark
+         * @param size the number of neurons
+         * @param connection the connection to make
+         */
+        ConnectBenchmark(final String name, final int size,
+                final ConnectNeurons connection) {
+            super("Connection", name);
+            this.size = size;
+            this.connection = connection;
+        }
+
+        @Override
+        public void setUpInvocation() {
+            // Synapses made by the last invocation stay in the fan-in and
+            // fan-out of the neurons, so start from a fresh group each time.
+            Network net = new Network();
+            net.setFireUpdates(false);
+            neuronGroup = new NeuronGroup(net, size);
+            new GridLayout().layoutNeurons(neuronGroup.getNeuronList());
+            net.addGroup(neuronGroup);
+        }
+
+        @Override
+        public void invoke() {
+            SynapseGroup.createSynapseGroup(neuronGroup, neuronGroup,
+                    connection);
+        }
+
+        @Override
+        public void tearDown() {
+            neuronGroup = null;
+        }
+    }
+
+}
@@ -0,0 +1,158 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.simbrain.network.connections.Sparse;
+import org.simbrain.network.core.Network;
+import org.simbrain.network.core.NetworkUpdateAction;
+import org.simbrain.network.core.Neuron;
+import org.simbrain.network.update_actions.BufferedUpdate;
+import org.simbrain.network.update_actions.ParallelBufferedUpdate;
+import org.simbrain.network.update_actions.PriorityUpdate;
+
+/**
+ * Benchmarks of {@link Network#update()} on a network of loose neurons with
+ * sparse random connections, under each of the update actions that update
+ * every neuron in the network.
+ */
+public class NetworkUpdateBenchmarks implements BenchmarkSuite {
+
+    /** The update actions compared. */
+    private enum Action {
+        BUFFERED, PRIORITY, CONCURRENT_BUFFERED, PARALLEL_BUFFERED;
+    }
+
+    @Override
+    public void addBenchmarks(final List<Benchmark> benchmarks,
+            final int[] sizes, final double[] densities) {
+        for (Action action : Action.values()) {
+            for (int size : sizes) {
+                for (double density : densities) {
+                    benchmarks.add(new UpdateBenchmark(action, size, density)
+                            .param("size", size).param("density", density));
+                }
+            }
+        }
+    }
+
+    /**
+     * Build a network of loose linear neurons with random activations and
+     * sparse random loose synapses.
+     *
+     * @param size the number of neurons
+     * @param density the connection density
+     * @return the network, with events to listeners turned off
+     */
+    static Network buildLooseNetwork(final int size, final double density) {
+        Network net = new Network();
+        net.setFireUpdates(false);
+        Random rand = new Random(size);
+        List<Neuron> neurons = new ArrayList<Neuron>(size);
+        for (int i = 0; i < size; i++) {
+            Neuron n = new Neuron(net);
+            n.forceSetActivation(rand.nextDouble());
+            net.addNeuron(n);
+            neurons.add(n);
+        }
+        Sparse.connectSparse(neurons, neurons, density, false, false, true);
+        return net;
+    }
+
+    /**
+     * Update a network under one update action. The deprecated concurrent
+     * buffered update is kept as a baseline for the parallel one.
+     */
+    @SuppressWarnings("deprecation")
+    private static class UpdateBenchmark extends Benchmark {
+
+        /** The update action to use. */
+        private final Action action;
+
+        /** Number of neurons. */
+        private final int size;
+
+        /** Connection density. */
+        private final double density;
+
+        /** The network being updated. */
+        private Network network;
+
+        /** The installed update action. */
+        private NetworkUpdateAction updateAction;
+
+        /**
+         * @param action the update action
+         * @param size the number of neurons
+         * @param density the connection density
+         */
+        UpdateBenchmark(final Action action, final int size,
+                final double density) {
+            super("NetworkUpdate", action.name().toLowerCase());
+            this.action = action;
+            this.size = size;
+            this.density = density;
+        }
+
+        @Override
+        public void setUp() {
+            network = buildLooseNetwork(size, density);
+            switch (action) {
+            case BUFFERED:
+                updateAction = new BufferedUpdate(network);
+                break;
+            case PRIORITY:
+                updateAction = new PriorityUpdate(network);
+                break;
+            case CONCURRENT_BUFFERED:
+                updateAction = org.simbrain.network.update_actions
+                        .ConcurrentBufferedUpdate
+                        .createConcurrentBufferedUpdate(network);
+                break;
+            default:
+                updateAction = ParallelBufferedUpdate
+                        .createParallelBufferedUpdate(network);
+            }
+            network.getUpdateManager().clear();
+            network.getUpdateManager().addAction(updateAction);
+        }
+
+        @Override
+        public void invoke() {
+            network.update();
+        }
+
+        @Override
+        public void tearDown() {
+            if (updateAction instanceof ParallelBufferedUpdate) {
+                ((ParallelBufferedUpdate) updateAction).shutdown();
+            } else if (updateAction instanceof org.simbrain.network
+                    .update_actions.ConcurrentBufferedUpdate) {
+                ((org.simbrain.network.update_actions.ConcurrentBufferedUpdate)
+                        updateAction).shutdown();
+            }
+            network = null;
+            updateAction = null;
+        }
+    }
+
+}
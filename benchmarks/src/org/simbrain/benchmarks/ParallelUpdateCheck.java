@@ -0,0 +1,192 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.simbrain.network.connections.Sparse;
+import org.simbrain.network.core.Network;
+import org.simbrain.network.core.Neuron;
+import org.simbrain.network.core.Synapse;
+import org.simbrain.network.neuron_update_rules.IntegrateAndFireRule;
+import org.simbrain.network.synapse_update_rules.spikeresponders.ConvolvedJumpAndDecay;
+import org.simbrain.network.synapse_update_rules.spikeresponders.JumpAndDecay;
+import org.simbrain.network.synapse_update_rules.spikeresponders.RiseAndDecay;
+import org.simbrain.network.synapse_update_rules.spikeresponders.SpikeResponder;
+import org.simbrain.network.synapse_update_rules.spikeresponders.Step;
+import org.simbrain.network.synapse_update_rules.spikeresponders.UDF;
+import org.simbrain.network.update_actions.BufferedUpdate;
+import org.simbrain.network.update_actions.ParallelBufferedUpdate;
+import org.simbrain.util.math.SimbrainRandom;
+
+/**
+ * Stress test of spike responders under parallel update. Two copies of the
+ * same seeded spiking network, whose synapses share a handful of responder
+ * instances, are updated side by side: one with {@link BufferedUpdate} and
+ * one with {@link ParallelBufferedUpdate} on several threads. After every
+ * iteration the activations and post-synaptic responses of the two must be
+ * bitwise identical. Usage:
+ *
+ * <pre>
+ * ParallelUpdateCheck [neurons] [iterations] [threads]
+ * </pre>
+ *
+ * Exits with status 1 on the first mismatch.
+ */
+public class ParallelUpdateCheck {
+
+    /** Seed of the networks. */
+    private static final long SEED = 42;
+
+    /** Connection density. */
+    private static final double DENSITY = 0.1;
+
+    /**
+     * Run the check.
+     *
+     * @param args neurons, iterations and threads, all optional
+     */
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+
+        Network serial = buildNetwork(size);
+        Network parallel = buildNetwork(size);
+        serial.getUpdateManager().clear();
+        serial.getUpdateManager().addAction(new BufferedUpdate(serial));
+        ParallelBufferedUpdate action = new ParallelBufferedUpdate(parallel,
+                threads);
+        parallel.getUpdateManager().clear();
+        parallel.getUpdateManager().addAction(action);
+
+        List<Synapse> serialSynapses = synapsesInOrder(serial);
+        List<Synapse> parallelSynapses = synapsesInOrder(parallel);
+        List<Neuron> serialNeurons = serial.getFlatNeuronList();
+        List<Neuron> parallelNeurons = parallel.getFlatNeuronList();
+        int spikes = 0;
+        try {
+            for (int i = 0; i < iterations; i++) {
+                serial.update();
+                parallel.update();
+                for (int j = 0; j < serialNeurons.size(); j++) {
+                    Neuron a = serialNeurons.get(j);
+                    Neuron b = parallelNeurons.get(j);
+                    if (a.isSpike()) {
+                        spikes++;
+                    }
+                    if (Double.doubleToLongBits(a.getActivation()) != Double
+                            .doubleToLongBits(b.getActivation())) {
+                        fail("Activation of neuron " + j + " differs at"
+                                + " iteration " + i + ": " + a.getActivation()
+                                + " != " + b.getActivation());
+                    }
+                }
+                for (int j = 0; j < serialSynapses.size(); j++) {
+                    double a = serialSynapses.get(j).getPsr();
+                    double b = parallelSynapses.get(j).getPsr();
+                    if (Double.doubleToLongBits(a) != Double
+                            .doubleToLongBits(b)) {
+                        fail("PSR of synapse " + j + " ("
+                                + serialSynapses.get(j).getSpikeResponder()
+                                        .getType()
+                                + ") differs at iteration " + i + ": " + a
+                                + " != " + b);
+                    }
+                }
+            }
+        } finally {
+            action.shutdown();
+        }
+        if (spikes == 0) {
+            fail("No neuron spiked, so no responder was exercised");
+        }
+        System.out.println("OK: " + serialSynapses.size() + " synapses, "
+                + iterations + " iterations, " + spikes + " spikes, "
+                + threads + " threads");
+    }
+
+    /**
+     * Build a network of loose integrate and fire neurons with sparse random
+     * connections. The synapses share one instance of each kind of
+     * spike responder other than the probabilistic one, and some of them are
+     * delayed. The same seed always gives the same network.
+     *
+     * @param size the number of neurons
+     * @return the network
+     */
+    static Network buildNetwork(final int size) {
+        SimbrainRandom.setSeed(SEED);
+        Random rand = new Random(SEED);
+        Network net = new Network();
+        net.setFireUpdates(false);
+        List<Neuron> neurons = new ArrayList<Neuron>(size);
+        for (int i = 0; i < size; i++) {
+            IntegrateAndFireRule rule = new IntegrateAndFireRule();
+            rule.setBackgroundCurrent(10 + 20 * rand.nextDouble());
+            Neuron n = new Neuron(net, rule);
+            n.forceSetActivation(rand.nextDouble());
+            net.addNeuron(n);
+            neurons.add(n);
+        }
+        Sparse.connectSparse(neurons, neurons, DENSITY, false, false, true);
+
+        SpikeResponder[] shared = { new JumpAndDecay(),
+                new ConvolvedJumpAndDecay(), new RiseAndDecay(), new Step(),
+                new UDF() };
+        int k = 0;
+        for (Synapse s : synapsesInOrder(net)) {
+            s.setSpikeResponder(shared[k % shared.length]);
+            s.forceSetStrength(rand.nextDouble() * 2 - 0.5);
+            s.setDelay(k % 3);
+            if (s.getSpikeResponder() instanceof UDF) {
+                // Draw the random UDF variables now rather than on whichever
+                // thread first updates the synapse
+                ((UDF) s.getSpikeResponder()).init(s);
+            }
+            k++;
+        }
+        return net;
+    }
+
+    /**
+     * @param net a network
+     * @return its synapses, in the order of the fan-in of each neuron
+     */
+    private static List<Synapse> synapsesInOrder(final Network net) {
+        List<Synapse> synapses = new ArrayList<Synapse>();
+        for (Neuron n : net.getFlatNeuronList()) {
+            synapses.addAll(n.getFanIn());
+        }
+        return synapses;
+    }
+
+    /**
+     * Report a failure and exit.
+     *
+     * @param message what went wrong
+     */
+    private static void fail(final String message) {
+        System.err.println("FAILED: " + message);
+        System.exit(1);
+    }
+
+}
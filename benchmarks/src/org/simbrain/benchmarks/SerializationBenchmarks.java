@@ -0,0 +1,156 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.List;
+
+import org.simbrain.network.connections.Sparse;
+import org.simbrain.network.core.Network;
+import org.simbrain.network.groups.NeuronGroup;
+import org.simbrain.network.groups.SynapseGroup;
+import org.simbrain.network.util.io_utilities.NetworkSnapshot;
+
+import com.thoughtworks.xstream.XStream;
+
+/**
+ * Benchmarks of saving and loading a network the ways
+ * {@link org.simbrain.network.NetworkComponent} does: as XML with XStream, and
+ * as a binary {@link NetworkSnapshot}. The network is a neuron group with a
+ * sparse recurrent synapse group.
+ */
+public class SerializationBenchmarks implements BenchmarkSuite {
+
+    @Override
+    public void addBenchmarks(final List<Benchmark> benchmarks,
+            final int[] sizes, final double[] densities) {
+        for (boolean snapshot : new boolean[] { false, true }) {
+            for (boolean save : new boolean[] { true, false }) {
+                for (int size : sizes) {
+                    for (double density : densities) {
+                        benchmarks.add(new SaveBenchmark(snapshot, save, size,
+                                density).param("size", size)
+                                        .param("density", density));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Save or load a network.
+     */
+    private static class SaveBenchmark extends Benchmark {
+
+        /** True to save binary snapshots, false to save XML. */
+        private final boolean snapshot;
+
+        /** True to measure saving, false to measure loading. */
+        private final boolean save;
+
+        /** Number of neurons. */
+        private final int size;
+
+        /** Connection density. */
+        private final double density;
+
+        /** The XStream instance configured for networks. */
+        private XStream xstream;
+
+        /** The network to save. */
+        private Network network;
+
+        /** The saved network, for loading. */
+        private byte[] saved;
+
+        /** Receives the saved network. */
+        private ByteArrayOutputStream out;
+
+        /**
+         * @param snapshot true to save binary snapshots, false to save XML
+         * @param save true to measure saving, false to measure loading
+         * @param size the number of neurons
+         * @param density the connection density
+         */
+        SaveBenchmark(final boolean snapshot, final boolean save,
+                final int size, final double density) {
+            super(snapshot ? "Snapshot" : "XStream", save ? "save" : "load");
+            this.snapshot = snapshot;
+            this.save = save;
+            this.size = size;
+            this.density = density;
+        }
+
+        @Override
+        public void setUp() throws IOException {
+            xstream = Network.getXStream();
+            network = new Network();
+            network.setFireUpdates(false);
+            NeuronGroup ng = new NeuronGroup(network, size);
+            network.addGroup(ng);
+            network.addGroup(SynapseGroup.createSynapseGroup(ng, ng,
+                    new Sparse(density, false, false)));
+            out = new ByteArrayOutputStream();
+            if (!save) {
+                saveNetwork();
+                saved = out.toByteArray();
+            }
+        }
+
+        @Override
+        public void invoke() throws IOException {
+            if (save) {
+                saveNetwork();
+            } else if (snapshot) {
+                NetworkSnapshot.read(Channels
+                        .newChannel(new ByteArrayInputStream(saved)));
+            } else {
+                xstream.fromXML(new ByteArrayInputStream(saved));
+            }
+        }
+
+        /**
+         * Save the network to {@link #out}.
+         *
+         * @throws IOException if the snapshot can't be written
+         */
+        private void saveNetwork() throws IOException {
+            out.reset();
+            if (snapshot) {
+                NetworkSnapshot.write(network, Channels.newChannel(out));
+                return;
+            }
+            network.preSaveInit();
+            xstream.toXML(network, out);
+            network.postSaveReInit();
+        }
+
+        @Override
+        public void tearDown() {
+            xstream = null;
+            network = null;
+            saved = null;
+            out = null;
+        }
+    }
+
+}
@@ -0,0 +1,301 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.simbrain.network.connections.Sparse;
+import org.simbrain.network.core.Network;
+import org.simbrain.network.core.Neuron;
+import org.simbrain.network.core.Synapse;
+import org.simbrain.network.groups.NeuronGroup;
+import org.simbrain.network.groups.SynapseGroup;
+import org.simbrain.network.neuron_update_rules.IntegrateAndFireRule;
+import org.simbrain.network.neuron_update_rules.IzhikevichRule;
+import org.simbrain.network.neuron_update_rules.LinearRule;
+import org.simbrain.network.synapse_update_rules.HebbianRule;
+import org.simbrain.network.synapse_update_rules.spikeresponders.ConvolvedJumpAndDecay;
+import org.simbrain.network.synapse_update_rules.spikeresponders.JumpAndDecay;
+import org.simbrain.network.synapse_update_rules.spikeresponders.RiseAndDecay;
+import org.simbrain.network.util.io_utilities.NetworkSnapshot;
+import org.simbrain.util.SimbrainConstants.Polarity;
+import org.simbrain.util.math.SimbrainRandom;
+
+/**
+ * Round trip check of {@link NetworkSnapshot}. A network with neuron groups,
+ * synapse groups and loose neurons and synapses is run for a while, then saved
+ * both as XML and as a snapshot, and both copies are loaded back. The
+ * snapshot copy must have the same neurons and synapses, with the same
+ * parameters, as the XML copy. Since XML files keep the connections of a
+ * synapse group but not the state of its synapses, the snapshot copy is also
+ * compared to the original network, state included, and the two are then
+ * updated side by side and must stay bitwise identical. For that the fan-in
+ * of each loaded neuron is first put in the order of the original, so both
+ * sum their inputs in the same order. Usage:
+ *
+ * <pre>
+ * SnapshotRoundTripCheck [iterations]
+ * </pre>
+ *
+ * Exits with status 1 on the first difference.
+ */
+public class SnapshotRoundTripCheck {
+
+    /** Seed of the network. */
+    private static final long SEED = 42;
+
+    /** Iterations run before saving. */
+    private static final int WARM_UP = 100;
+
+    /**
+     * Run the check.
+     *
+     * @param args iterations to run after loading, optional
+     * @throws IOException if the snapshot can't be written or read
+     */
+    public static void main(String[] args) throws IOException {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+
+        Network network = buildNetwork();
+        for (int i = 0; i < WARM_UP; i++) {
+            network.update();
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        network.preSaveInit();
+        Network.getXStream().toXML(network, out);
+        network.postSaveReInit();
+        Network xml = (Network) Network.getXStream()
+                .fromXML(new ByteArrayInputStream(out.toByteArray()));
+
+        out.reset();
+        NetworkSnapshot.write(network, Channels.newChannel(out));
+        Network snapshot = NetworkSnapshot.read(Channels
+                .newChannel(new ByteArrayInputStream(out.toByteArray())));
+
+        compareNeurons(xml, snapshot, -1);
+        compareSynapses(xml, snapshot, false);
+        compareNeurons(network, snapshot, -1);
+        compareSynapses(network, snapshot, true);
+        matchFanInOrder(network, snapshot);
+        for (int i = 0; i < iterations; i++) {
+            network.update();
+            snapshot.update();
+            compareNeurons(network, snapshot, i);
+        }
+        compareSynapses(network, snapshot, true);
+        System.out.println("OK: " + snapshot.getFlatNeuronList().size()
+                + " neurons, " + snapshot.getFlatSynapseList().size()
+                + " synapses, " + iterations + " iterations");
+    }
+
+    /**
+     * Build a network of two spiking neuron groups joined by synapse groups
+     * with delays and spike responders, and a few loose linear neurons fed by
+     * loose Hebbian synapses. The same seed always gives the same network.
+     *
+     * @return the network
+     */
+    static Network buildNetwork() {
+        SimbrainRandom.setSeed(SEED);
+        Random rand = new Random(SEED);
+        Network net = new Network();
+        net.setFireUpdates(false);
+
+        IntegrateAndFireRule iaf = new IntegrateAndFireRule();
+        iaf.setBackgroundCurrent(40);
+        NeuronGroup input = new NeuronGroup(net, 100);
+        input.setNeuronType(iaf);
+        net.addGroup(input);
+        NeuronGroup output = new NeuronGroup(net, 50);
+        output.setNeuronType(new IzhikevichRule());
+        net.addGroup(output);
+        for (Neuron n : input.getNeuronList()) {
+            n.forceSetActivation(10 + 5 * rand.nextDouble());
+        }
+
+        SynapseGroup forward = SynapseGroup.createSynapseGroup(input, output,
+                new Sparse(0.2, false, false));
+        forward.setSpikeResponder(new JumpAndDecay(), Polarity.BOTH);
+        forward.setDelay(2, Polarity.EXCITATORY);
+        net.addGroup(forward);
+        SynapseGroup recurrent = SynapseGroup.createSynapseGroup(input,
+                input, new Sparse(0.1, false, false));
+        recurrent.setSpikeResponder(new ConvolvedJumpAndDecay(),
+                Polarity.EXCITATORY);
+        recurrent.setSpikeResponder(new RiseAndDecay(), Polarity.INHIBITORY);
+        net.addGroup(recurrent);
+
+        for (int i = 0; i < 10; i++) {
+            Neuron loose = new Neuron(net, new LinearRule());
+            net.addNeuron(loose);
+            for (int j = i; j < output.size(); j += 10) {
+                Synapse s = new Synapse(output.getNeuronList().get(j), loose,
+                        new HebbianRule());
+                s.setSpikeResponder(new JumpAndDecay());
+                s.forceSetStrength(rand.nextDouble());
+                s.setDelay(j % 3);
+                net.addSynapse(s);
+            }
+        }
+        return net;
+    }
+
+    /**
+     * Compare the neurons of two networks.
+     *
+     * @param a a network
+     * @param b another network
+     * @param iteration the iteration, or -1 right after loading
+     */
+    private static void compareNeurons(final Network a, final Network b,
+            final int iteration) {
+        List<Neuron> as = a.getFlatNeuronList();
+        List<Neuron> bs = b.getFlatNeuronList();
+        if (as.size() != bs.size()) {
+            fail("Neuron counts differ: " + as.size() + " != " + bs.size());
+        }
+        String when = iteration < 0 ? " after loading"
+                : " at iteration " + iteration;
+        for (int i = 0; i < as.size(); i++) {
+            Neuron x = as.get(i);
+            Neuron y = bs.get(i);
+            if (!x.getId().equals(y.getId())
+                    || x.getUpdateRule().getClass() != y.getUpdateRule()
+                            .getClass()) {
+                fail("Neuron " + i + " differs" + when + ": " + x.getId()
+                        + " != " + y.getId());
+            }
+            if (!same(x.getActivation(), y.getActivation())
+                    || x.isSpike() != y.isSpike()) {
+                fail("Activation of neuron " + x.getId() + " differs" + when
+                        + ": " + x.getActivation() + " != "
+                        + y.getActivation());
+            }
+        }
+    }
+
+    /**
+     * Compare the synapses of two networks, matched by the neurons they
+     * connect.
+     *
+     * @param a a network
+     * @param b another network
+     * @param state true to compare the post-synaptic responses as well as the
+     *            parameters
+     */
+    private static void compareSynapses(final Network a, final Network b,
+            final boolean state) {
+        Map<String, Synapse> bs = new HashMap<String, Synapse>();
+        for (Synapse s : b.getFlatSynapseList()) {
+            bs.put(key(s), s);
+        }
+        List<Synapse> as = a.getFlatSynapseList();
+        if (as.size() != bs.size()) {
+            fail("Synapse counts differ: " + as.size() + " != " + bs.size());
+        }
+        for (Synapse x : as) {
+            Synapse y = bs.get(key(x));
+            if (y == null) {
+                fail("Synapse " + key(x) + " is missing");
+            }
+            if (!same(x.getStrength(), y.getStrength())
+                    || state && !same(x.getPsr(), y.getPsr())
+                    || !same(x.getUpperBound(), y.getUpperBound())
+                    || !same(x.getLowerBound(), y.getLowerBound())
+                    || !same(x.getIncrement(), y.getIncrement())
+                    || x.getDelay() != y.getDelay()
+                    || x.isEnabled() != y.isEnabled()
+                    || x.isFrozen() != y.isFrozen()) {
+                fail("Synapse " + key(x) + " differs: strength "
+                        + x.getStrength() + " / " + y.getStrength() + ", psr "
+                        + x.getPsr() + " / " + y.getPsr());
+            }
+            if (x.getLearningRule().getClass() != y.getLearningRule()
+                    .getClass()
+                    || (x.getSpikeResponder() == null ? y
+                            .getSpikeResponder() != null
+                            : y.getSpikeResponder() == null
+                                    || x.getSpikeResponder().getClass() != y
+                                            .getSpikeResponder().getClass())) {
+                fail("Rules of synapse " + key(x) + " differ");
+            }
+        }
+    }
+
+    /**
+     * Put the fan-in of each neuron of a copy of a network in the order of
+     * the original.
+     *
+     * @param original the network
+     * @param copy the copy
+     */
+    private static void matchFanInOrder(final Network original,
+            final Network copy) {
+        Map<String, Synapse> synapses = new HashMap<String, Synapse>();
+        for (Synapse s : copy.getFlatSynapseList()) {
+            synapses.put(key(s), s);
+        }
+        Map<Synapse, Synapse> copies = new HashMap<Synapse, Synapse>();
+        for (Synapse s : original.getFlatSynapseList()) {
+            copies.put(s, synapses.get(key(s)));
+        }
+        List<Neuron> neurons = copy.getFlatNeuronList();
+        List<Neuron> originals = original.getFlatNeuronList();
+        for (int i = 0; i < neurons.size(); i++) {
+            neurons.get(i).matchFanInOrder(originals.get(i), copies);
+        }
+    }
+
+    /**
+     * @param s a synapse
+     * @return the ids of its source and target, which identify it in any
+     *         copy of its network
+     */
+    private static String key(final Synapse s) {
+        return s.getSource().getId() + "->" + s.getTarget().getId();
+    }
+
+    /**
+     * @param a a value
+     * @param b another value
+     * @return true if the values are bitwise identical
+     */
+    private static boolean same(final double a, final double b) {
+        return Double.doubleToLongBits(a) == Double.doubleToLongBits(b);
+    }
+
+    /**
+     * Report a failure and exit.
+     *
+     * @param message what went wrong
+     */
+    private static void fail(final String message) {
+        System.err.println("FAILED: " + message);
+        System.exit(1);
+    }
+
+}
@@ -0,0 +1,141 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.benchmarks;
+
+import java.util.List;
+import java.util.Random;
+
+import org.simbrain.network.connections.Sparse;
+import org.simbrain.network.core.Network;
+import org.simbrain.network.core.Neuron;
+import org.simbrain.network.core.SpikingNeuronUpdateRule;
+import org.simbrain.network.core.SynapseUpdateRule;
+import org.simbrain.network.groups.NeuronGroup;
+import org.simbrain.network.groups.SynapseGroup;
+import org.simbrain.network.neuron_update_rules.IzhikevichRule;
+import org.simbrain.network.synapse_update_rules.HebbianRule;
+import org.simbrain.network.synapse_update_rules.OjaRule;
+import org.simbrain.network.synapse_update_rules.STDPRule;
+import org.simbrain.util.SimbrainConstants.Polarity;
+
+/**
+ * Benchmarks of {@link SynapseGroup#update()} on a recurrent sparse synapse
+ * group, with learning rules which visit every synapse on each update.
+ * Neuron state is fixed, so only the cost of the learning rule is measured.
+ */
+public class SynapseLearningBenchmarks implements BenchmarkSuite {
+
+    /** Fraction of neurons which are spiking, for STDP. */
+    private static final double SPIKING_FRACTION = 0.1;
+
+    /** The learning rules compared. */
+    private enum Rule {
+        HEBBIAN, STDP, OJA;
+    }
+
+    @Override
+    public void addBenchmarks(final List<Benchmark> benchmarks,
+            final int[] sizes, final double[] densities) {
+        for (Rule rule : Rule.values()) {
+            for (int size : sizes) {
+                for (double density : densities) {
+                    benchmarks.add(new LearningBenchmark(rule, size, density)
+                            .param("size", size).param("density", density));
+                }
+            }
+        }
+    }
+
+    /**
+     * Update a synapse group with one learning rule.
+     */
+    private static class LearningBenchmark extends Benchmark {
+
+        /** The learning rule to use. */
+        private final Rule rule;
+
+        /** Number of neurons. */
+        private final int size;
+
+        /** Connection density. */
+        private final double density;
+
+        /** The synapse group being updated. */
+        private SynapseGroup synapseGroup;
+
+        /**
+         * @param rule the learning rule
+         * @param size the number of neurons
+         * @param density the connection density
+         */
+        LearningBenchmark(final Rule rule, final int size,
+                final double density) {
+            super("SynapseGroupUpdate", rule.name().toLowerCase());
+            this.rule = rule;
+            this.size = size;
+            this.density = density;
+        }
+
+        @Override
+        public void setUp() {
+            Network net = new Network();
+            net.setFireUpdates(false);
+            NeuronGroup ng = new NeuronGroup(net, size);
+            if (rule == Rule.STDP) {
+                ng.setNeuronType(new IzhikevichRule());
+            }
+            net.addGroup(ng);
+            Random rand = new Random(size);
+            for (Neuron n : ng.getNeuronList()) {
+                n.forceSetActivation(rand.nextDouble());
+                if (rule == Rule.STDP) {
+                    ((SpikingNeuronUpdateRule) n.getUpdateRule())
+                            .setLastSpikeTime(rand.nextDouble() * 10);
+                    n.setSpike(rand.nextDouble() < SPIKING_FRACTION);
+                }
+            }
+            synapseGroup = SynapseGroup.createSynapseGroup(ng, ng,
+                    new Sparse(density, false, false));
+            net.addGroup(synapseGroup);
+            SynapseUpdateRule learningRule;
+            switch (rule) {
+            case HEBBIAN:
+                learningRule = new HebbianRule();
+                break;
+            case STDP:
+                learningRule = new STDPRule();
+                break;
+            default:
+                learningRule = new OjaRule();
+            }
+            synapseGroup.setLearningRule(learningRule, Polarity.BOTH);
+        }
+
+        @Override
+        public void invoke() {
+            synapseGroup.update();
+        }
+
+        @Override
+        public void tearDown() {
+            synapseGroup = null;
+        }
+    }
+
+}
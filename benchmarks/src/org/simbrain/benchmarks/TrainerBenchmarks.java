@@ -0,0 +1,161 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.benchmarks;
+
+import java.util.List;
+import java.util.Random;
+
+import org.simbrain.network.core.Network;
+import org.simbrain.network.subnetworks.BackpropNetwork;
+import org.simbrain.network.trainers.BackpropTrainer;
+import org.simbrain.util.projection.DataPointColored;
+import org.simbrain.util.projection.ProjectSammon;
+import org.simbrain.util.projection.Projector;
+
+/**
+ * Benchmarks of iterative algorithms: one epoch of {@link BackpropTrainer} and
+ * one iteration of a {@link ProjectSammon} projection. Both are parameterized
+ * by size only.
+ */
+public class TrainerBenchmarks implements BenchmarkSuite {
+
+    /** Number of rows in the backprop training set. */
+    private static final int TRAINING_ROWS = 50;
+
+    /** Dimension of the points projected by Sammon mapping. */
+    private static final int SAMMON_DIMENSIONS = 10;
+
+    @Override
+    public void addBenchmarks(final List<Benchmark> benchmarks,
+            final int[] sizes, final double[] densities) {
+        for (int size : sizes) {
+            benchmarks.add(new BackpropBenchmark(size).param("size", size));
+        }
+        for (int size : sizes) {
+            benchmarks.add(new SammonBenchmark(size).param("size", size));
+        }
+    }
+
+    /**
+     * Random data on [0, 1).
+     *
+     * @param rand the random number generator
+     * @param rows number of rows
+     * @param cols number of columns
+     * @return the data
+     */
+    private static double[][] randomData(final Random rand, final int rows,
+            final int cols) {
+        double[][] data = new double[rows][cols];
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                data[i][j] = rand.nextDouble();
+            }
+        }
+        return data;
+    }
+
+    /**
+     * One epoch of backprop on a three layer network with a tenth of the size
+     * in each layer.
+     */
+    private static class BackpropBenchmark extends Benchmark {
+
+        /** Total number of neurons, split evenly between the layers. */
+        private final int size;
+
+        /** The trainer. */
+        private BackpropTrainer trainer;
+
+        /**
+         * @param size the size parameter
+         */
+        BackpropBenchmark(final int size) {
+            super("Trainer", "backprop");
+            this.size = size;
+        }
+
+        @Override
+        public void setUp() {
+            int layerSize = Math.max(2, size / 10);
+            BackpropNetwork network = new BackpropNetwork(new Network(),
+                    new int[] { layerSize, layerSize, layerSize });
+            Random rand = new Random(size);
+            network.getTrainingSet().setInputData(
+                    randomData(rand, TRAINING_ROWS, layerSize));
+            network.getTrainingSet().setTargetData(
+                    randomData(rand, TRAINING_ROWS, layerSize));
+            trainer = new BackpropTrainer(network);
+            trainer.randomize();
+        }
+
+        @Override
+        public void invoke() {
+            trainer.apply();
+        }
+
+        @Override
+        public void tearDown() {
+            trainer = null;
+        }
+    }
+
+    /**
+     * One iteration of Sammon mapping on a set of random points.
+     */
+    private static class SammonBenchmark extends Benchmark {
+
+        /** Number of points. */
+        private final int size;
+
+        /** The projection method. */
+        private ProjectSammon sammon;
+
+        /**
+         * @param size the number of points
+         */
+        SammonBenchmark(final int size) {
+            super("Projection", "sammon");
+            this.size = size;
+        }
+
+        @Override
+        public void setUp() {
+            Projector projector = new Projector(SAMMON_DIMENSIONS);
+            sammon = new ProjectSammon(projector);
+            projector.setProjectionMethod(sammon);
+            Random rand = new Random(size);
+            for (double[] point : randomData(rand, size,
+                    SAMMON_DIMENSIONS)) {
+                projector.addDatapoint(new DataPointColored(point));
+            }
+        }
+
+        @Override
+        public void invoke() {
+            sammon.iterate();
+        }
+
+        @Override
+        public void tearDown() {
+            sammon = null;
+        }
+    }
+
+}
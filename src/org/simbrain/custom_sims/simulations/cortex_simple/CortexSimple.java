@@ -19,7 +19,7 @@ import org.simbrain.network.groups.SynapseGroup;
 import org.simbrain.network.layouts.GridLayout;
 import org.simbrain.network.neuron_update_rules.IntegrateAndFireRule;
 import org.simbrain.network.synapse_update_rules.spikeresponders.UDF;
-import org.simbrain.network.update_actions.ConcurrentBufferedUpdate;
+import org.simbrain.network.update_actions.ParallelBufferedUpdate;
 import org.simbrain.util.SimbrainConstants.Polarity;
 import org.simbrain.util.math.ProbDistribution;
 import org.simbrain.util.math.SimbrainMath;
@@ -164,8 +164,8 @@ public class CortexSimple extends RegisteredSimulation {
 
         // Use concurrent buffered update
         network.getUpdateManager().clear();
-        network.getUpdateManager().addAction(ConcurrentBufferedUpdate
-                .createConcurrentBufferedUpdate(network));
+        network.getUpdateManager().addAction(ParallelBufferedUpdate
+                .createParallelBufferedUpdate(network));
     }
 
     private NeuronGroup buildLayer(int numNeurons,
@@ -20,7 +20,7 @@ import org.simbrain.network.groups.NeuronGroup;
 import org.simbrain.network.groups.SynapseGroup;
 import org.simbrain.network.layouts.GridLayout;
 import org.simbrain.network.neuron_update_rules.BinaryRule;
-import org.simbrain.network.update_actions.ConcurrentBufferedUpdate;
+import org.simbrain.network.update_actions.ParallelBufferedUpdate;
 import org.simbrain.util.SimbrainConstants.Polarity;
 import org.simbrain.util.environment.SmellSource.DecayFunction;
 import org.simbrain.util.math.ProbDistribution;
@@ -108,8 +108,8 @@ public class EdgeOfChaos extends RegisteredSimulation {
 
         // Use concurrent buffered update
         network.getUpdateManager().clear();
-        network.getUpdateManager().addAction(ConcurrentBufferedUpdate
-                .createConcurrentBufferedUpdate(network));
+        network.getUpdateManager().addAction(ParallelBufferedUpdate
+                .createParallelBufferedUpdate(network));
     }
 
     private void buildSensorNodes() {
@@ -12,7 +12,6 @@ import org.simbrain.network.core.Synapse;
 import org.simbrain.network.groups.NeuronGroup;
 import org.simbrain.network.groups.SynapseGroup;
 import org.simbrain.network.neuron_update_rules.BinaryRule;
-import org.simbrain.network.update_actions.ConcurrentBufferedUpdate;
 import org.simbrain.util.math.SimbrainMath;
 import org.simbrain.workspace.gui.SimbrainDesktop;
 import org.simbrain.workspace.updater.UpdateActionAdapter;
@@ -122,8 +121,8 @@ public class EdgeOfChaosBitStream extends RegisteredSimulation {
 
         // Use concurrent buffered update
 //        network.getUpdateManager().clear();
-//        network.getUpdateManager().addAction(ConcurrentBufferedUpdate
-//                .createConcurrentBufferedUpdate(network));
+//        network.getUpdateManager().addAction(ParallelBufferedUpdate
+//                .createParallelBufferedUpdate(network));
     }
 
     private NeuronGroup buildBitStream(NeuronGroup reservoir) {
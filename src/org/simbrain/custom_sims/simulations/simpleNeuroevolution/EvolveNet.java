@@ -331,10 +331,7 @@ public class EvolveNet extends Network {
     }
     
     public EvolveNet copy() {
-        preSaveInit();
-        String xml_rep = Network.getXStream().toXML(this);
-        postSaveReInit();
-        return (EvolveNet) Network.getXStream().fromXML(xml_rep);
+        return (EvolveNet) super.copy();
     }
 
 	public static void increaseGeneration() {
@@ -15,7 +15,7 @@ import org.simbrain.network.groups.NeuronGroup;
 import org.simbrain.network.groups.SynapseGroup;
 import org.simbrain.network.layouts.HexagonalGridLayout;
 import org.simbrain.network.neuron_update_rules.TimedAccumulatorRule;
-import org.simbrain.network.update_actions.ConcurrentBufferedUpdate;
+import org.simbrain.network.update_actions.ParallelBufferedUpdate;
 import org.simbrain.util.SimbrainConstants.Polarity;
 import org.simbrain.util.math.ProbDistribution;
 import org.simbrain.util.randomizer.PolarizedRandomizer;
@@ -160,8 +160,8 @@ public class TestSim extends RegisteredSimulation {
         sg.setLowerBound(-200, Polarity.INHIBITORY);
         sg.setUpperBound(0, Polarity.INHIBITORY);
         network.getUpdateManager().clear();
-        network.getUpdateManager().addAction(ConcurrentBufferedUpdate
-                .createConcurrentBufferedUpdate(network));
+        network.getUpdateManager().addAction(ParallelBufferedUpdate
+                .createParallelBufferedUpdate(network));
 
     }
 
@@ -17,9 +17,13 @@
  */
 package org.simbrain.network;
 
+import java.io.BufferedInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.Channels;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.simbrain.network.core.Network;
@@ -33,6 +37,7 @@ import org.simbrain.network.groups.SynapseGroup;
 import org.simbrain.network.listeners.NetworkEvent;
 import org.simbrain.network.listeners.NeuronListener;
 import org.simbrain.network.listeners.SynapseListener;
+import org.simbrain.network.util.io_utilities.NetworkSnapshot;
 import org.simbrain.workspace.AttributeType;
 import org.simbrain.workspace.PotentialConsumer;
 import org.simbrain.workspace.PotentialProducer;
@@ -47,6 +52,9 @@ public final class NetworkComponent extends WorkspaceComponent {
     /** Reference to root network, the main model network. */
     private Network network = new Network();
 
+    /** Format used when saving without a format being given. */
+    private String defaultFormat = "xml";
+
     /**
      * Create a new network component.
      *
@@ -428,16 +436,73 @@ public final class NetworkComponent extends WorkspaceComponent {
      */
     public static NetworkComponent open(final InputStream input,
             final String name, final String format) {
-        Network newNetwork = (Network) Network.getXStream().fromXML(input);
+        // Snapshots are recognized by their header, whatever the format asked
+        // for, so that renamed files and workspace entries still open
+        BufferedInputStream stream = new BufferedInputStream(input);
+        try {
+            if (NetworkSnapshot.isSnapshot(stream)) {
+                NetworkComponent component = new NetworkComponent(name,
+                        NetworkSnapshot.read(Channels.newChannel(stream)));
+                component.setDefaultFormat(NetworkSnapshot.FORMAT);
+                return component;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        Network newNetwork = (Network) Network.getXStream().fromXML(stream);
         return new NetworkComponent(name, newNetwork);
     }
 
+    /**
+     * Save the network as XML or as a binary snapshot. The format last used
+     * becomes the default, so a network saved as a snapshot is also stored as
+     * one in workspace files.
+     *
+     * @param output the stream to write to
+     * @param format "xml", {@link NetworkSnapshot#FORMAT}, or null for the
+     *            default format
+     */
     @Override
     public void save(final OutputStream output, final String format) {
+        if (format != null && getFormats().contains(format)) {
+            defaultFormat = format;
+        }
+        if (NetworkSnapshot.FORMAT.equals(defaultFormat)) {
+            try {
+                NetworkSnapshot.write(network, Channels.newChannel(output));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            return;
+        }
         network.preSaveInit();
         Network.getXStream().toXML(network, output);
         network.postSaveReInit();
     }
+
+    @Override
+    public List<? extends String> getFormats() {
+        return Arrays.asList("xml", NetworkSnapshot.FORMAT);
+    }
+
+    @Override
+    public String getDefaultFormat() {
+        return defaultFormat;
+    }
+
+    /**
+     * Set the format used when none is given, e.g. when the network is saved
+     * in a workspace file.
+     *
+     * @param defaultFormat "xml" or {@link NetworkSnapshot#FORMAT}
+     */
+    public void setDefaultFormat(final String defaultFormat) {
+        if (!getFormats().contains(defaultFormat)) {
+            throw new IllegalArgumentException(
+                    "Unknown network format " + defaultFormat);
+        }
+        this.defaultFormat = defaultFormat;
+    }
     
     /**
      * Returns a copy of this NetworkComponent.
@@ -466,7 +531,7 @@ public final class NetworkComponent extends WorkspaceComponent {
 
     @Override
     public void closing() {
-        // TODO Auto-generated method stub
+        network.getUpdateManager().dispose();
     }
 
     @Override
@@ -19,7 +19,6 @@ package org.simbrain.network.connections;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
@@ -33,6 +32,7 @@ import org.simbrain.network.core.Synapse;
 import org.simbrain.network.groups.SynapseGroup;
 import org.simbrain.util.SimbrainConstants.Polarity;
 import org.simbrain.util.math.ProbDistribution;
+import org.simbrain.util.math.SimbrainRandom;
 
 /**
  *
@@ -77,6 +77,12 @@ public class Radial extends Sparse {
 
     public static final double DEFAULT_II_CONST = 0.1;
 
+    /**
+     * The number of source neurons connected by each task when connecting in
+     * parallel.
+     */
+    private static final int CHUNK_SIZE = 128;
+
     public static final double DEFAULT_LAMBDA = 2.5;
 
     /** The connection constant for connections between 2 excitatory neurons. */
@@ -136,7 +142,7 @@ public class Radial extends Sparse {
             * target.size() / 4);
         for (Neuron src : source) {
             for (Neuron tar : target) {
-                double randVal = Math.random();
+                double randVal = SimbrainRandom.nextDouble();
                 double probability;
                 if (src.getPolarity() == Polarity.EXCITATORY) {
                     if (tar.getPolarity() == Polarity.EXCITATORY) {
@@ -195,7 +201,7 @@ public class Radial extends Sparse {
             * target.size() / 4);
         for (Neuron src : source) {
             for (Neuron tar : target) {
-                double randVal = Math.random();
+                double randVal = SimbrainRandom.nextDouble();
                 double probability = calcConnectProb(src, tar, distConst,
                     lambda);
                 if (randVal < probability) {
@@ -275,33 +281,20 @@ public class Radial extends Sparse {
         	List<Callable<Collection<Synapse>>> workers =
         			new ArrayList<Callable<Collection<Synapse>>>();
         	int threads = Runtime.getRuntime().availableProcessors();
-        	int idealShare = (int) Math.floor(source.size() / threads);
-        	int remaining = source.size();
-        	Iterator<Neuron> srcIter = source.iterator();
-        	List<Neuron> srcChunk;
         	double runningPercentEx = 0;
-        	for (int i = 0; i < threads; i++) {
-        		srcChunk = new ArrayList<Neuron>((int) Math.ceil((idealShare
-        				* 2) / 0.75));
-        		int share;
-        		if (remaining < idealShare * 2) {
-        			share = remaining;
-        		} else {
-        			share = idealShare;
-        		}
-        		int j = 0;
-        		while (j < share) {
-        			Neuron n = srcIter.next();
-        			srcChunk.add(n);
-        			if (n.isPolarized()) {
-        				if (Polarity.EXCITATORY == n.getPolarity()) {
-        					runningPercentEx++;
-        				}
+        	// Fixed size chunks, each with its own seed drawn here, so the
+        	// synapses made do not depend on the number of processors
+        	for (int start = 0; start < source.size(); start += CHUNK_SIZE) {
+        		List<Neuron> srcChunk = new ArrayList<Neuron>(source.subList(
+        				start, Math.min(start + CHUNK_SIZE, source.size())));
+        		for (Neuron n : srcChunk) {
+        			if (n.isPolarized()
+        					&& Polarity.EXCITATORY == n.getPolarity()) {
+        				runningPercentEx++;
         			}
-        			j++;
         		}
-        		remaining -= j;
-        		workers.add(new ConnectorService(srcChunk, target, false));
+        		workers.add(new ConnectorService(srcChunk, target, false,
+        				SimbrainRandom.current().nextLong()));
         	}
         	runningPercentEx /= source.size();
         	synGroup.setExcitatoryRatio(runningPercentEx);
@@ -445,16 +438,22 @@ public class Radial extends Sparse {
     	private final Collection<Neuron> targColl;
     	
     	private final boolean loose;
+
+    	/** Seed for the random numbers of the worker thread. */
+    	private final long seed;
     	
     	public ConnectorService(final Collection<Neuron> srcColl,
-    			final Collection<Neuron> targColl, final boolean loose) {
+    			final Collection<Neuron> targColl, final boolean loose,
+    			final long seed) {
     		this.srcColl = srcColl;
     		this.targColl = targColl;
     		this.loose = loose;
+    		this.seed = seed;
     	}
 
 		@Override
 		public Collection<Synapse> call() throws Exception {
+			SimbrainRandom.setSeed(seed);
 			// Attempting to pre-allocate... assumes that connection density
 			// will be less than #src * #tar * 0.2 or 20% connectivity
 			List<Synapse> synapses = new ArrayList<Synapse>(
@@ -513,7 +512,7 @@ public class Radial extends Sparse {
             int count = 0;
             for (Neuron src : synapseGroup.getSourceNeurons()) {
                 for (Neuron tar : synapseGroup.getTargetNeurons()) {
-                    double randVal = Math.random();
+                    double randVal = SimbrainRandom.nextDouble();
                     double probability;
                     if (src.getPolarity() == Polarity.EXCITATORY) {
                         if (tar.getPolarity() == Polarity.EXCITATORY) {
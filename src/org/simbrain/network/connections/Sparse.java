@@ -27,6 +27,7 @@ import org.simbrain.network.core.Neuron;
 import org.simbrain.network.core.Synapse;
 import org.simbrain.network.groups.SynapseGroup;
 import org.simbrain.util.math.SimbrainMath;
+import org.simbrain.util.math.SimbrainRandom;
 
 import umontreal.iro.lecuyer.randvar.BinomialGen;
 
@@ -172,7 +173,7 @@ public class Sparse implements ConnectNeurons {
         Neuron target;
         Synapse synapse;
         ArrayList<Synapse> syns = new ArrayList<Synapse>();
-        Random rand = new Random(System.nanoTime());
+        Random rand = SimbrainRandom.current();
         if (equalizeEfferents) {
             ArrayList<Integer> targetList = new ArrayList<Integer>();
             ArrayList<Integer> tListCopy;
@@ -229,7 +230,7 @@ public class Sparse implements ConnectNeurons {
                     if (!selfConnectionAllowed && recurrent && i == j) {
                         continue;
                     } else {
-                        if (Math.random() < sparsity) {
+                        if (SimbrainRandom.nextDouble() < sparsity) {
                             source = sourceNeurons.get(i);
                             target = targetNeurons.get(j);
                             synapse = new Synapse(source, target);
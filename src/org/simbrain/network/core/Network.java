@@ -19,12 +19,17 @@
 package org.simbrain.network.core;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -43,12 +48,20 @@ import org.simbrain.network.listeners.NeuronListener;
 import org.simbrain.network.listeners.SynapseListener;
 import org.simbrain.network.listeners.TextListener;
 import org.simbrain.network.neuron_update_rules.interfaces.BiasedUpdateRule;
-import org.simbrain.network.update_actions.ConcurrentBufferedUpdate;
+import org.simbrain.network.synapse_update_rules.spikeresponders.RiseAndDecay;
+import org.simbrain.network.synapse_update_rules.spikeresponders.SpikeResponder;
+import org.simbrain.network.synapse_update_rules.spikeresponders.Step;
+import org.simbrain.network.synapse_update_rules.spikeresponders.UDF;
 import org.simbrain.network.update_actions.CustomUpdate;
+import org.simbrain.network.update_actions.ParallelBufferedUpdate;
+import org.simbrain.network.util.NetworkCopier;
 import org.simbrain.util.SimbrainConstants.Polarity;
 import org.simbrain.util.SimbrainPreferences;
 import org.simbrain.util.SimbrainPreferences.PropertyNotFoundException;
 import org.simbrain.util.SimpleId;
+import org.simbrain.util.metrics.Counter;
+import org.simbrain.util.metrics.Histogram;
+import org.simbrain.util.metrics.Metrics;
 import org.simbrain.util.Utils;
 import org.simbrain.util.math.SimbrainMath;
 
@@ -63,12 +76,43 @@ import com.thoughtworks.xstream.io.xml.DomDriver;
  */
 public class Network {
 
+    /** Counts synapse updates, while metrics are enabled. */
+    public static final Counter SYNAPSE_UPDATES = Metrics
+            .counter("network.synapseUpdates");
+
+    /** Counts update events delivered to listeners, while metrics are enabled. */
+    private static final Counter EVENTS = Metrics
+            .counter("network.eventsFired");
+
     /** Array list of neurons. */
     private final List<Neuron> neuronList = new ArrayList<Neuron>();
 
     /** Array list of synapses. */
     private final Set<Synapse> synapseList = new LinkedHashSet<Synapse>();
 
+    /**
+     * The contents of {@link #synapseList} as an array, so that update does
+     * not allocate an iterator. Null if it must be rebuilt after the list
+     * changes.
+     */
+    private Synapse[] synapseUpdateArray;
+
+    /**
+     * Timing histogram of each update action, while metrics are enabled, so
+     * that update does not build histogram names each iteration. Null if it
+     * must be rebuilt after the name of the network changes.
+     */
+    private Map<NetworkUpdateAction, Histogram> actionHistograms;
+
+    /** Metrics generation {@link #actionHistograms} was built in. */
+    private int actionHistogramGeneration;
+
+    /**
+     * Loose synapses held aside while a binary snapshot is written, since the
+     * snapshot writes them separately.
+     */
+    private Set<Synapse> synapseTemp;
+
     /** Since groups span all levels of the hierarchy they are stored here. */
     private final List<Group> groupList = new ArrayList<Group>();
 
@@ -128,6 +172,16 @@ public class Network {
     /** List of objects registered to observe text-related network events. */
     private List<TextListener> textListeners = new ArrayList<TextListener>();
 
+    /**
+     * Neurons whose input value has been set to a non-zero value since inputs
+     * were last cleared. Only these need to be visited in
+     * {@link #clearInputs()}.
+     */
+    private Neuron[] pendingInputs = new Neuron[16];
+
+    /** Number of neurons in {@link #pendingInputs}. */
+    private int numPendingInputs;
+
     /** Whether network has been updated yet; used by thread. */
     private AtomicBoolean updateCompleted = new AtomicBoolean(false);
 
@@ -140,6 +194,28 @@ public class Network {
     /** Comparator used for sorting the priority sorted neuron list. */
     private PriorityComparator priorityComparator = new PriorityComparator();
 
+    /**
+     * Neurons by id, built when first needed and discarded whenever neurons
+     * are added or removed or their ids change. Ids are matched ignoring case,
+     * so keys are lower case.
+     */
+    private Map<String, Neuron> neuronIndex;
+
+    /** Synapses by id, maintained like {@link #neuronIndex}. */
+    private Map<String, Synapse> synapseIndex;
+
+    /** Groups by id, maintained like {@link #neuronIndex}. */
+    private Map<String, Group> groupIndex;
+
+    /**
+     * Neurons by lower case label, in the order of
+     * {@link #getFlatNeuronList()}. Also discarded when labels change.
+     */
+    private Map<String, List<Neuron>> neuronLabelIndex;
+
+    /** Groups by lower case label, maintained like {@link #neuronLabelIndex}. */
+    private Map<String, List<Group>> groupLabelIndex;
+
     /** Neuron Id generator. */
     private SimpleId neuronIdGenerator = new SimpleId("Neuron", 1);
 
@@ -200,7 +276,12 @@ public class Network {
         }
         // Perform update
         for (int i = 0, n = updateManager.getActionList().size(); i < n; i++) {
-            updateManager.getActionList().get(i).invoke();
+            NetworkUpdateAction action = updateManager.getActionList().get(i);
+            long start = Metrics.start();
+            action.invoke();
+            if (start != 0) {
+                getActionHistogram(action).record(System.nanoTime() - start);
+            }
         }
 
         if (fireUpdates) {
@@ -270,28 +351,44 @@ public class Network {
     public void bufferedUpdateAllNeurons() {
 
         // First update the activation buffers
-        for (Neuron n : neuronList) {
-            n.update(); // update neuron buffers
+        for (int i = 0, n = neuronList.size(); i < n; i++) {
+            neuronList.get(i).update(); // update neuron buffers
         }
 
         // Then update the activations themselves
-        for (Neuron n : neuronList) {
-            n.setToBufferVals();
+        for (int i = 0, n = neuronList.size(); i < n; i++) {
+            neuronList.get(i).setToBufferVals();
         }
     }
 
     /**
      * Clears out input values of network nodes, which otherwise linger and
-     * cause problems.
+     * cause problems. Only neurons which have been given a non-zero input
+     * value since the last call are visited.
      */
-    public void clearInputs() {
+    public synchronized void clearInputs() {
+        for (int i = 0; i < numPendingInputs; i++) {
+            pendingInputs[i].clearInputValue();
+            pendingInputs[i] = null;
+        }
+        numPendingInputs = 0;
+    }
 
-        // TODO: Is there a more efficient way to handle this?
-        // i.e. a way to get a list of neurons that (1) are coupled or better,
-        // (2) have input values which consume.
-        for (Neuron neuron : this.getFlatNeuronList()) {
-            neuron.setInputValue(0);
+    /**
+     * Register a neuron whose input value must be cleared at the end of the
+     * current update. Called by {@link Neuron#setInputValue(double)}.
+     *
+     * @param neuron the neuron with a pending input value
+     */
+    synchronized void addPendingInput(final Neuron neuron) {
+        if (!neuron.markInputPending()) {
+            return;
         }
+        if (numPendingInputs == pendingInputs.length) {
+            pendingInputs = Arrays.copyOf(pendingInputs,
+                    pendingInputs.length * 2);
+        }
+        pendingInputs[numPendingInputs++] = neuron;
     }
 
     /**
@@ -365,12 +462,15 @@ public class Network {
      * @return neuron with that id, null otherwise
      */
     public Neuron getNeuron(final String id) {
-        for (Neuron n : getFlatNeuronList()) {
-            if (n.getId().equalsIgnoreCase(id)) {
-                return n;
+        Map<String, Neuron> index = neuronIndex;
+        if (index == null) {
+            index = new HashMap<String, Neuron>();
+            for (Neuron n : getFlatNeuronList()) {
+                addToIndex(index, n.getId(), n);
             }
+            neuronIndex = index;
         }
-        return null;
+        return id == null ? null : index.get(id.toLowerCase(Locale.ROOT));
     }
 
     /**
@@ -381,12 +481,15 @@ public class Network {
      * @return group with that id, null otherwise
      */
     public Group getGroup(final String id) {
-        for (Group group : getFlatGroupList()) {
-            if (group.getId().equalsIgnoreCase(id)) {
-                return group;
+        Map<String, Group> index = groupIndex;
+        if (index == null) {
+            index = new HashMap<String, Group>();
+            for (Group group : getFlatGroupList()) {
+                addToIndex(index, group.getId(), group);
             }
+            groupIndex = index;
         }
-        return null;
+        return id == null ? null : index.get(id.toLowerCase(Locale.ROOT));
     }
 
     /**
@@ -397,17 +500,17 @@ public class Network {
      * @return list of groups with that label found, null otherwise
      */
     public List<Group> getGroupsByLabel(final String label) {
-        List<Group> returnList = new ArrayList<Group>();
-        for (Group group : getFlatGroupList()) {
-            if (group.getLabel().equalsIgnoreCase(label)) {
-                returnList.add(group);
+        Map<String, List<Group>> index = groupLabelIndex;
+        if (index == null) {
+            index = new HashMap<String, List<Group>>();
+            for (Group group : getFlatGroupList()) {
+                addToLabelIndex(index, group.getLabel(), group);
             }
+            groupLabelIndex = index;
         }
-        if (returnList.isEmpty()) {
-            return null;
-        } else {
-            return returnList;
-        }
+        List<Group> found = label == null ? null
+                : index.get(label.toLowerCase(Locale.ROOT));
+        return found == null ? null : new ArrayList<Group>(found);
     }
 
     /**
@@ -488,12 +591,77 @@ public class Network {
      * @return synapse with that id, null otherwise
      */
     public Synapse getSynapse(final String id) {
-        for (Synapse s : getFlatSynapseList()) {
-            if (s.getId().equalsIgnoreCase(id)) {
-                return s;
+        Map<String, Synapse> index = synapseIndex;
+        if (index == null) {
+            index = new HashMap<String, Synapse>();
+            for (Synapse s : getFlatSynapseList()) {
+                addToIndex(index, s.getId(), s);
             }
+            synapseIndex = index;
+        }
+        return id == null ? null : index.get(id.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Discard the indexes used to find neurons, synapses and groups by id and
+     * label. They are rebuilt on the next lookup. Called whenever neurons,
+     * synapses or groups are added or removed, or their ids or labels change.
+     */
+    public void invalidateIndexes() {
+        neuronIndex = null;
+        synapseIndex = null;
+        groupIndex = null;
+        invalidateLabelIndexes();
+    }
+
+    /**
+     * Discard the indexes used to find neurons and groups by label.
+     */
+    public void invalidateLabelIndexes() {
+        neuronLabelIndex = null;
+        groupLabelIndex = null;
+    }
+
+    /**
+     * Add an object to an id index, unless an earlier object has the same id,
+     * so lookups find the first match in the flat lists as a search would.
+     *
+     * @param index the index
+     * @param id the object's id
+     * @param object the object
+     * @param <T> the type of object
+     */
+    private static <T> void addToIndex(final Map<String, T> index,
+            final String id, final T object) {
+        if (id == null) {
+            return;
         }
-        return null;
+        String key = id.toLowerCase(Locale.ROOT);
+        if (!index.containsKey(key)) {
+            index.put(key, object);
+        }
+    }
+
+    /**
+     * Add an object to a label index.
+     *
+     * @param index the index
+     * @param label the object's label
+     * @param object the object
+     * @param <T> the type of object
+     */
+    private static <T> void addToLabelIndex(final Map<String, List<T>> index,
+            final String label, final T object) {
+        if (label == null) {
+            return;
+        }
+        String key = label.toLowerCase(Locale.ROOT);
+        List<T> list = index.get(key);
+        if (list == null) {
+            list = new ArrayList<T>(1);
+            index.put(key, list);
+        }
+        list.add(object);
     }
 
     /**
@@ -505,6 +673,7 @@ public class Network {
     public void addNeuron(final Neuron neuron) {
         neuronList.add(neuron);
         neuron.setId(getNeuronIdGenerator().getId());
+        invalidateIndexes();
         updatePriorityList();
         fireNeuronAdded(neuron);
     }
@@ -519,10 +688,39 @@ public class Network {
     public void addSynapse(final Synapse synapse) {
         synapse.initSpikeResponder();
         synapseList.add(synapse);
+        synapseUpdateArray = null;
         synapse.setId(getSynapseIdGenerator().getId());
+        invalidateIndexes();
         fireSynapseAdded(synapse);
     }
 
+    /**
+     * Get the timing histogram of an update action, looking it up by name only
+     * the first time or after the histograms were reset.
+     *
+     * @param action the action
+     * @return its histogram
+     */
+    private Histogram getActionHistogram(final NetworkUpdateAction action) {
+        int generation = Metrics.getGeneration();
+        if (actionHistograms == null
+                || actionHistogramGeneration != generation
+                || actionHistograms.size() > updateManager.getActionList()
+                        .size()) {
+            // Also rebuilt when actions are removed, so none are kept alive
+            actionHistograms =
+                    new IdentityHashMap<NetworkUpdateAction, Histogram>();
+            actionHistogramGeneration = generation;
+        }
+        Histogram histogram = actionHistograms.get(action);
+        if (histogram == null) {
+            histogram = Metrics.histogram("network." + name + ".action."
+                    + action.getDescription());
+            actionHistograms.put(action, histogram);
+        }
+        return histogram;
+    }
+
     /**
      * Calls {@link Synapse#update} for each weight.
      */
@@ -530,8 +728,17 @@ public class Network {
 
         // No Buffering necessary because the values of weights don't depend on
         // one another
-        for (Synapse s : synapseList) {
-            s.update();
+        if (synapseList.isEmpty()) {
+            return;
+        }
+        Synapse[] synapses = synapseUpdateArray;
+        if (synapses == null) {
+            synapses = synapseList.toArray(new Synapse[synapseList.size()]);
+            synapseUpdateArray = synapses;
+        }
+        SYNAPSE_UPDATES.add(synapses.length);
+        for (int i = 0; i < synapses.length; i++) {
+            synapses[i].update();
         }
     }
 
@@ -559,6 +766,7 @@ public class Network {
         } else {
             neuronList.remove(toDelete);
         }
+        invalidateIndexes();
 
         // Notify listeners that this neuron has been deleted
         fireNeuronRemoved(toDelete);
@@ -572,6 +780,7 @@ public class Network {
      *            the weight to delete
      */
     public void removeSynapse(final Synapse toDelete) {
+        invalidateIndexes();
 
         // Remove references to this synapse from parent neurons
         if (toDelete.getSource() != null) {
@@ -593,6 +802,7 @@ public class Network {
             }
         } else {
             synapseList.remove(toDelete);
+            synapseUpdateArray = null;
             // Notify listeners that this synapse has been deleted
             fireSynapseRemoved(toDelete);
         }
@@ -621,6 +831,7 @@ public class Network {
             neuronList.remove(neuron);
             group.addNeuron(neuron, false);
         }
+        invalidateIndexes();
     }
 
     /**
@@ -804,6 +1015,7 @@ public class Network {
         if (group.isTopLevelGroup()) {
             groupList.add(group);
         }
+        invalidateIndexes();
 
         // Notify listeners (mainly network panel) that the group has been
         // added.
@@ -820,6 +1032,7 @@ public class Network {
 
         // Remove from the group list
         groupList.remove(toDelete);
+        invalidateIndexes();
 
         // Call delete method on this group being deleted
         toDelete.delete();
@@ -850,7 +1063,13 @@ public class Network {
      */
     public List<Neuron> getFlatNeuronList() {
 
-        List<Neuron> ret = new ArrayList<Neuron>();
+        int size = neuronList.size();
+        for (int i = 0; i < groupList.size(); i++) {
+            if (groupList.get(i) instanceof NeuronGroup) {
+                size += ((NeuronGroup) groupList.get(i)).size();
+            }
+        }
+        List<Neuron> ret = new ArrayList<Neuron>(size);
         ret.addAll(neuronList);
 
         // TODO: Base this on an overridable method?
@@ -874,7 +1093,13 @@ public class Network {
      * @return the flat list
      */
     public List<Synapse> getFlatSynapseList() {
-        List<Synapse> ret = new ArrayList<Synapse>(10000);
+        int size = synapseList.size();
+        for (int i = 0; i < groupList.size(); i++) {
+            if (groupList.get(i) instanceof SynapseGroup) {
+                size += ((SynapseGroup) groupList.get(i)).size();
+            }
+        }
+        List<Synapse> ret = new ArrayList<Synapse>(size);
         ret.addAll(synapseList);
         for (int i = 0; i < groupList.size(); i++) {
             if (groupList.get(i) instanceof SynapseGroup) {
@@ -964,11 +1189,12 @@ public class Network {
      */
     public static void updateNeurons(List<Neuron> neuronList) {
         // TODO: Update by priority if priority based update?
-        for (Neuron neuron : neuronList) {
-            neuron.update();
+        // Indexed loops, so that no iterators are allocated on each update
+        for (int i = 0, n = neuronList.size(); i < n; i++) {
+            neuronList.get(i).update();
         }
-        for (Neuron neuron : neuronList) {
-            neuron.setToBufferVals();
+        for (int i = 0, n = neuronList.size(); i < n; i++) {
+            neuronList.get(i).setToBufferVals();
         }
     }
 
@@ -991,15 +1217,13 @@ public class Network {
     }
     
     /**
-     * Returns a copy of this network based on its xml rep.
+     * Returns a copy of this network, holding the same state as a copy made
+     * by saving and re-opening it. See {@link NetworkCopier}.
      *
      * @return the copied network.
      */
     public Network copy() {
-        preSaveInit();
-        String xml_rep = Network.getXStream().toXML(this);
-        postSaveReInit();
-        return (Network) Network.getXStream().fromXML(xml_rep);
+        return NetworkCopier.copy(this);
     }
 
     /**
@@ -1007,6 +1231,7 @@ public class Network {
      *
      * @return the XStream object
      */
+    @SuppressWarnings("deprecation")
     public static XStream getXStream() {
         XStream xstream = Utils.getSimbrainXStream();
         xstream.omitField(Network.class, "groupListeners");
@@ -1015,26 +1240,64 @@ public class Network {
         xstream.omitField(Network.class, "synapseListeners");
         xstream.omitField(Network.class, "textListeners");
         xstream.omitField(Network.class, "updateCompleted");
+        xstream.omitField(Network.class, "pendingInputs");
+        xstream.omitField(Network.class, "numPendingInputs");
         xstream.omitField(Network.class, "logger");
         xstream.omitField(Network.class, "synapseVisibilityThreshold");
+        xstream.omitField(Network.class, "synapseTemp");
+        xstream.omitField(Network.class, "synapseUpdateArray");
+        xstream.omitField(Network.class, "actionHistograms");
+        xstream.omitField(Network.class, "actionHistogramGeneration");
+        xstream.omitField(Network.class, "neuronIndex");
+        xstream.omitField(Network.class, "synapseIndex");
+        xstream.omitField(Network.class, "groupIndex");
+        xstream.omitField(Network.class, "neuronLabelIndex");
+        xstream.omitField(Network.class, "groupLabelIndex");
 
         xstream.omitField(NetworkUpdateManager.class, "listeners");
-        xstream.omitField(ConcurrentBufferedUpdate.class, "consumerThreads");
-        xstream.omitField(ConcurrentBufferedUpdate.class, "neurons");
-        xstream.omitField(ConcurrentBufferedUpdate.class, "taskSet");
-        xstream.omitField(ConcurrentBufferedUpdate.class, "network");
-        xstream.omitField(ConcurrentBufferedUpdate.class, "producer");
-        xstream.omitField(ConcurrentBufferedUpdate.class, "collectorThread");
-//        xstream.omitField(ConcurrentBufferedUpdate.class,
+        // Networks saved with the deprecated concurrent updater still open
+        Class<?> concurrent = org.simbrain.network.update_actions
+                .ConcurrentBufferedUpdate.class;
+        xstream.omitField(concurrent, "consumerThreads");
+        xstream.omitField(concurrent, "neurons");
+        xstream.omitField(concurrent, "taskSet");
+        xstream.omitField(concurrent, "network");
+        xstream.omitField(concurrent, "producer");
+        xstream.omitField(concurrent, "collectorThread");
+//        xstream.omitField(concurrent,
 //                "synchronizingBarrier");
-        xstream.omitField(ConcurrentBufferedUpdate.class,
-                "executors");
-        
+        xstream.omitField(concurrent, "executors");
+
+        xstream.omitField(ParallelBufferedUpdate.class, "pool");
+        xstream.omitField(ParallelBufferedUpdate.class, "neurons");
+        xstream.omitField(ParallelBufferedUpdate.class, "neuronGroups");
+        xstream.omitField(ParallelBufferedUpdate.class, "sharedGroups");
+        xstream.omitField(ParallelBufferedUpdate.class, "synapseGroups");
+        xstream.omitField(ParallelBufferedUpdate.class, "partitions");
+        xstream.omitField(ParallelBufferedUpdate.class, "root");
+        xstream.omitField(ParallelBufferedUpdate.class, "neuronListener");
+        xstream.omitField(ParallelBufferedUpdate.class, "groupListener");
         xstream.omitField(CustomUpdate.class, "interpreter");
         xstream.omitField(CustomUpdate.class, "theAction");
 
         xstream.omitField(SynapseGroup.class, "exTemp");
         xstream.omitField(SynapseGroup.class, "inTemp");
+        xstream.omitField(SynapseGroup.class, "weightMatrix");
+        xstream.omitField(SynapseGroup.class, "compiledSynapses");
+        xstream.omitField(SynapseGroup.class, "compiledTarget");
+        xstream.omitField(SynapseGroup.class, "spikePropagator");
+        xstream.omitField(SynapseGroup.class, "propagatorTarget");
+        xstream.omitField(SynapseGroup.class, "exUpdateArray");
+        xstream.omitField(SynapseGroup.class, "inUpdateArray");
+        xstream.omitField(NeuronGroup.class, "stateArrays");
+        xstream.omitField(NeuronGroup.class, "recorder");
+        xstream.omitField(NeuronGroup.class, "inputSource");
+        xstream.omitField(NeuronGroup.class, "sharedInputs");
+        xstream.omitField(NeuronGroup.class, "sharedOutputs");
+        xstream.omitField(NeuronGroup.class, "ruleIndex");
+        xstream.omitField(NeuronGroup.class, "neuronInput");
+        xstream.omitField(NeuronGroup.class, "neuronOutput");
+        xstream.omitField(NeuronGroup.class, "neuronState");
         xstream.omitField(Sparse.class, "sparseOrdering");
         xstream.omitField(Sparse.class, "currentOrderingIndices");
         xstream.omitField(Sparse.class, "sourceNeurons");
@@ -1043,11 +1306,30 @@ public class Network {
         xstream.omitField(Neuron.class, "fanOut");
         xstream.omitField(Neuron.class, "fanIn");
         xstream.omitField(Neuron.class, "generator");
+        xstream.omitField(Neuron.class, "stateArrays");
+        xstream.omitField(Neuron.class, "stateIndex");
+        xstream.omitField(Neuron.class, "looseFanIn");
+        xstream.omitField(Neuron.class, "looseSynapticFanIn");
+        xstream.omitField(Neuron.class, "fanOutView");
+        xstream.omitField(Neuron.class, "inputPending");
 
         xstream.omitField(AllToAll.class, "selfConnectionAllowed");
 
         // TODO: Backwards compatible
         xstream.omitField(Synapse.class, "sendWeightedInput");
+        // Spike responder state now lives on synapses; skip the fields which
+        // held it in older files.
+        xstream.omitField(SpikeResponder.class, "value");
+        xstream.omitField(RiseAndDecay.class, "recovery");
+        xstream.omitField(Step.class, "timer");
+        for (String field : new String[] {"U", "D", "F", "u", "R",
+            "lastSpikeTime", "spikeDecay", "firstTime"}) {
+            xstream.omitField(UDF.class, field);
+        }
+        xstream.omitField(Synapse.class, "weightMatrix");
+        xstream.omitField(Synapse.class, "matrixIndex");
+        xstream.omitField(Synapse.class, "spikePropagator");
+        xstream.omitField(Synapse.class, "propagatorIndex");
 
         return xstream;
     }
@@ -1069,6 +1351,7 @@ public class Network {
         synapseListeners = new ArrayList<SynapseListener>();
         textListeners = new ArrayList<TextListener>();
         groupListeners = new ArrayList<GroupListener>();
+        pendingInputs = new Neuron[16];
 
         // Initialize update manager
         updateManager.postUnmarshallingInit();
@@ -1078,6 +1361,13 @@ public class Network {
             neuron.postUnmarshallingInit();
         }
 
+        // Rebuild state arrays of compiled neuron groups
+        for (Group group : this.getFlatGroupList()) {
+            if (group instanceof NeuronGroup) {
+                ((NeuronGroup) group).postUnmarshallingInit();
+            }
+        }
+
         // Uncompress compressed matrix rep if needed
         for (SynapseGroup group : this.getSynapseGroups()) {
             group.postUnmarshallingInit();
@@ -1101,6 +1391,22 @@ public class Network {
         }
     }
 
+    /**
+     * Perform operations required before writing a binary snapshot of the
+     * network. All synapses are held aside, since the snapshot writes them in
+     * their own sections. Call {@link #postSaveReInit()} afterwards.
+     *
+     * @see org.simbrain.network.util.io_utilities.NetworkSnapshot
+     */
+    public void preSnapshotInit() {
+        for (SynapseGroup group : this.getSynapseGroups()) {
+            group.preSnapshotInit();
+        }
+        synapseTemp = new LinkedHashSet<Synapse>(synapseList);
+        synapseList.clear();
+        synapseUpdateArray = null;
+    }
+
     /**
      * Returns synapse groups to a usable state after a save is performed.
      */
@@ -1108,6 +1414,11 @@ public class Network {
         for (SynapseGroup group : this.getSynapseGroups()) {
             group.postSaveReInit();
         }
+        if (synapseTemp != null) {
+            synapseList.addAll(synapseTemp);
+            synapseUpdateArray = null;
+            synapseTemp = null;
+        }
     }
 
     /**
@@ -1268,6 +1579,7 @@ public class Network {
      *            the neurons whose state has changed
      */
     public void fireNeuronsUpdated(Collection<Neuron> neurons) {
+        EVENTS.add(networkListeners.size());
     	for (int i = 0, n = networkListeners.size(); i < n; i++) {
     		networkListeners.get(i).updateNeurons(neurons);
     	}
@@ -1292,6 +1604,7 @@ public class Network {
      *            the synapses whose state has changed
      */
     public void fireSynapsesUpdated(Collection<Synapse> synapses) {
+        EVENTS.add(networkListeners.size());
         for (int i = 0, n = networkListeners.size(); i < n; i++) {
             networkListeners.get(i).updateSynapses(synapses);
         }
@@ -1567,6 +1880,7 @@ public class Network {
      *            reference to group that has been updated.
      */
     public void fireGroupUpdated(final Group groups) {
+        EVENTS.add(groupListeners.size());
         for (int i = 0, n = groupListeners.size(); i < n; i++) {
             groupListeners.get(i).groupUpdated(groups);
         }
@@ -1649,6 +1963,16 @@ public class Network {
         neuronListeners.add(listener);
     }
 
+    /**
+     * Remove a neuron listener.
+     *
+     * @param listener
+     *            the observer to remove
+     */
+    public void removeNeuronListener(final NeuronListener listener) {
+        neuronListeners.remove(listener);
+    }
+
     /**
      * Register a synapse listener.
      *
@@ -1708,17 +2032,17 @@ public class Network {
      * @return list of matched neurons, or null if none are found
      */
     public List<Neuron> getNeuronsByLabel(String inputString) {
-        ArrayList<Neuron> foundNeurons = new ArrayList<Neuron>();
-        for (Neuron neuron : this.getFlatNeuronList()) {
-            if (neuron.getLabel().equalsIgnoreCase(inputString)) {
-                foundNeurons.add(neuron);
+        Map<String, List<Neuron>> index = neuronLabelIndex;
+        if (index == null) {
+            index = new HashMap<String, List<Neuron>>();
+            for (Neuron neuron : getFlatNeuronList()) {
+                addToLabelIndex(index, neuron.getLabel(), neuron);
             }
+            neuronLabelIndex = index;
         }
-        if (foundNeurons.size() == 0) {
-            return null;
-        } else {
-            return foundNeurons;
-        }
+        List<Neuron> found = inputString == null ? null
+                : index.get(inputString.toLowerCase(Locale.ROOT));
+        return found == null ? null : new ArrayList<Neuron>(found);
     }
 
     /**
@@ -1928,6 +2252,7 @@ public class Network {
 
     public void setName(String name) {
     	this.name = name;
+    	actionHistograms = null;
     }
 
 }
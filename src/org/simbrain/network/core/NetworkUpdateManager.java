@@ -20,15 +20,14 @@ package org.simbrain.network.core;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Iterator;
 import java.util.List;
 
 import org.simbrain.network.groups.Group;
 import org.simbrain.network.listeners.GroupAdapter;
 import org.simbrain.network.listeners.NetworkEvent;
 import org.simbrain.network.update_actions.BufferedUpdate;
-import org.simbrain.network.update_actions.ConcurrentBufferedUpdate;
 import org.simbrain.network.update_actions.CustomUpdate;
+import org.simbrain.network.update_actions.ParallelBufferedUpdate;
 import org.simbrain.network.update_actions.PriorityUpdate;
 import org.simbrain.network.update_actions.UpdateGroup;
 
@@ -75,18 +74,20 @@ public class NetworkUpdateManager {
      * UpdateManager will have been created from a default no argument
      * constructor ands its fields populated using xstream.
      */
+    @SuppressWarnings("deprecation")
     public void postUnmarshallingInit() {
         listeners = new ArrayList<UpdateManagerListener>();
         addListeners();
-        Iterator<NetworkUpdateAction> actions = actionList.iterator();
-        // TODO: Hack-y solution. Revisit this.
-        while (actions.hasNext()) {
-            NetworkUpdateAction nua = actions.next();
-            if (nua instanceof ConcurrentBufferedUpdate) {
-                actions.remove();
-                actionList.add(ConcurrentBufferedUpdate
-                        .createConcurrentBufferedUpdate(network));
-                break;
+        // Parallel updaters hold threads and listeners which are not saved,
+        // so re-create them in place. Networks saved with the older
+        // concurrent updater get the work-stealing one.
+        for (int i = 0; i < actionList.size(); i++) {
+            NetworkUpdateAction nua = actionList.get(i);
+            if (nua instanceof org.simbrain.network.update_actions
+                    .ConcurrentBufferedUpdate
+                    || nua instanceof ParallelBufferedUpdate) {
+                actionList.set(i, ParallelBufferedUpdate
+                        .createParallelBufferedUpdate(network));
             }
         }
 
@@ -130,8 +131,8 @@ public class NetworkUpdateManager {
         // By default these guys are always available
         availableActionList.add(new BufferedUpdate(network));
         availableActionList.add(new PriorityUpdate(network));
-        availableActionList.add(ConcurrentBufferedUpdate
-                .createConcurrentBufferedUpdate(network));
+        availableActionList.add(ParallelBufferedUpdate
+                .createParallelBufferedUpdate(network));
 
         // Add update actions for all groups available
         for (Group group : network.getGroupList()) {
@@ -239,6 +240,7 @@ public class NetworkUpdateManager {
      */
     public void removeAction(NetworkUpdateAction action) {
         actionList.remove(action);
+        release(action);
         for (UpdateManagerListener listener : listeners) {
             listener.actionRemoved(action);
         }
@@ -274,6 +276,7 @@ public class NetworkUpdateManager {
      */
     public void clear() {
         for (NetworkUpdateAction action : actionList) {
+            release(action);
             for (UpdateManagerListener l : listeners) {
                 l.actionRemoved(action);
             }
@@ -281,4 +284,28 @@ public class NetworkUpdateManager {
         actionList.clear();
     }
 
+    /**
+     * Release threads and network listeners held by the current actions, e.g.
+     * when the network is closed. The actions stay in the list and acquire
+     * them again if they are invoked.
+     */
+    public void dispose() {
+        for (NetworkUpdateAction action : actionList) {
+            release(action);
+        }
+    }
+
+    /**
+     * Release threads and network listeners held by an action which is no
+     * longer used.
+     *
+     * @param action
+     *            the action to release
+     */
+    private static void release(NetworkUpdateAction action) {
+        if (action instanceof ParallelBufferedUpdate) {
+            ((ParallelBufferedUpdate) action).shutdown();
+        }
+    }
+
 }
@@ -29,11 +29,16 @@ import java.util.stream.Collectors;
 
 import org.simbrain.network.core.Network.TimeType;
 import org.simbrain.network.groups.Group;
+import org.simbrain.network.groups.NeuronGroup;
+import org.simbrain.network.groups.NeuronStateArrays;
 import org.simbrain.network.neuron_update_rules.LinearRule;
 import org.simbrain.network.neuron_update_rules.interfaces.ActivityGenerator;
 import org.simbrain.network.neuron_update_rules.interfaces.BiasedUpdateRule;
 import org.simbrain.network.neuron_update_rules.interfaces.BoundedUpdateRule;
 import org.simbrain.util.SimbrainConstants.Polarity;
+import org.simbrain.util.math.SimbrainRandom;
+import org.simbrain.util.metrics.Counter;
+import org.simbrain.util.metrics.Metrics;
 
 /**
  * <b>Neuron</b> represents a node in the neural network. Most of the "logic" of
@@ -60,6 +65,9 @@ public class Neuron {
     public static final int PRE_ALLOCATED_NUM_SYNAPSES = (int) Math.ceil(500
             / 0.75);
 
+    /** Counts spikes, while metrics are enabled. */
+    private static final Counter SPIKES = Metrics.counter("network.spikes");
+
     /**
      * The update method of this neuron, which corresponds to what kind of
      * neuron it is.
@@ -98,6 +106,12 @@ public class Neuron {
      */
     private double inputValue;
 
+    /**
+     * Whether this neuron is registered with its network as having an input
+     * value to clear at the end of the current update.
+     */
+    private volatile boolean inputPending;
+
     /** Reference to network this neuron is part of. */
     private final Network parent;
 
@@ -105,6 +119,10 @@ public class Neuron {
     private Map<Neuron, Synapse> fanOut = new HashMap<Neuron, Synapse>(
             PRE_ALLOCATED_NUM_SYNAPSES);
 
+    /** Unmodifiable view of the fan-out, returned by {@link #getFanOut()}. */
+    private Map<Neuron, Synapse> fanOutView = Collections
+            .unmodifiableMap(fanOut);
+
     /** List of synapses attaching to this neuron. */
     private ArrayList<Synapse> fanIn = new ArrayList<Synapse>(
             PRE_ALLOCATED_NUM_SYNAPSES);
@@ -152,7 +170,32 @@ public class Neuron {
      * values can be useful in scripts.
      */
     private double auxValue;
-    
+
+    /**
+     * Primitive state arrays of a compiled parent group, which activation and
+     * buffer values are written through to. Null if the neuron is not part of
+     * a compiled group.
+     */
+    private NeuronStateArrays stateArrays;
+
+    /** Index of this neuron in {@link #stateArrays}. */
+    private int stateIndex = -1;
+
+    /**
+     * The afferent synapses which are not part of a compiled weight matrix, and
+     * so must still be visited when summing weighted inputs. Lazily built from
+     * {@link #fanIn}; null when it must be rebuilt.
+     */
+    private Synapse[] looseFanIn;
+
+    /**
+     * The afferent synapses which are not handled by the spike propagator of
+     * an event-driven group, and so must still be visited when summing
+     * synaptic inputs. Lazily built from {@link #fanIn}; null when it must be
+     * rebuilt.
+     */
+    private Synapse[] looseSynapticFanIn;
+
     /**
      * Construct a neuron with all default values in the specified network.
      * Sometimes used as the basis for a template neuron which will be edited
@@ -235,7 +278,11 @@ public class Neuron {
      */
     public void postUnmarshallingInit() {
         fanOut = new HashMap<Neuron, Synapse>();
+        fanOutView = Collections.unmodifiableMap(fanOut);
         fanIn = new ArrayList<Synapse>();
+        if (inputValue != 0) {
+            setInputValue(inputValue);
+        }
         if (polarity == null) {
             polarity = Polarity.BOTH;
         }
@@ -311,12 +358,18 @@ public class Neuron {
     }
 
     /**
-     * Updates neuron.
+     * Updates neuron. Neurons of a group in shared rule mode are updated by
+     * their group, since their rule does not hold their state.
      */
     public void update() {
         if (isClamped()) {
             return;
         }
+        if (parentGroup instanceof NeuronGroup
+                && ((NeuronGroup) parentGroup).isSharedRule()) {
+            ((NeuronGroup) parentGroup).updateSharedRule(this);
+            return;
+        }
         updateRule.update(this);
     }
 
@@ -335,6 +388,9 @@ public class Neuron {
             return;
         } else {
             activation = act;
+            if (stateArrays != null) {
+                stateArrays.setActivation(stateIndex, act);
+            }
         }
     }
 
@@ -347,6 +403,9 @@ public class Neuron {
     public void setToBufferVals() {
         setActivation(getBuffer());
         setSpike(getSpkBuffer());
+        if (spike) {
+            SPIKES.increment();
+        }
     }
 
     /**
@@ -361,6 +420,9 @@ public class Neuron {
     public void forceSetActivation(final double act) {
         lastActivation = getActivation();
         activation = act;
+        if (stateArrays != null) {
+            stateArrays.setActivation(stateIndex, act);
+        }
     }
 
     /**
@@ -385,6 +447,9 @@ public class Neuron {
      */
     public void setId(final String theName) {
         id = theName;
+        if (parent != null) {
+            parent.invalidateIndexes();
+        }
     }
 
     /**
@@ -398,7 +463,7 @@ public class Neuron {
      * @return an unmodifiable version of the fanOut map.
      */
     public Map<Neuron, Synapse> getFanOut() {
-        return Collections.unmodifiableMap(fanOut);
+        return fanOutView;
     }
     
     public Map<Neuron, Synapse> getFanOutUnsafe() {
@@ -452,6 +517,8 @@ public class Neuron {
     public void addAfferent(final Synapse source) {
         if (fanIn != null) {
             fanIn.add(source);
+            looseFanIn = null;
+            looseSynapticFanIn = null;
         }
     }
 
@@ -464,6 +531,8 @@ public class Neuron {
     public void removeAfferent(final Synapse synapse) {
         if (fanIn != null) {
             fanIn.remove(synapse);
+            looseFanIn = null;
+            looseSynapticFanIn = null;
         }
     }
 
@@ -473,27 +542,161 @@ public class Neuron {
      * are called and thus this is <b>not</b> appropriate for most biological
      * models.
      *
+     * If this neuron belongs to a compiled group, inputs from compiled synapse
+     * groups are read from their weight matrices and only the remaining
+     * synapses are visited individually.
+     *
      * @return weighted input to this node
      */
     public double getWeightedInputs() {
         double wtdSum = inputValue;
+        NeuronStateArrays arrays = stateArrays;
+        if (arrays != null && arrays.hasIncomingMatrices()) {
+            wtdSum += arrays.getWeightedInput(stateIndex);
+            Synapse[] loose = getLooseFanIn();
+            for (int i = 0; i < loose.length; i++) {
+                wtdSum += loose[i].calcWeightedSum();
+            }
+            return wtdSum;
+        }
         for (int i = 0, n = fanIn.size(); i < n; i++) {
             wtdSum += fanIn.get(i).calcWeightedSum();
         }
         return wtdSum;
     }
 
+    /**
+     * Returns the afferent synapses which are not bound to a compiled weight
+     * matrix, rebuilding the cached array if needed.
+     *
+     * @return the loose afferent synapses
+     */
+    private Synapse[] getLooseFanIn() {
+        Synapse[] loose = looseFanIn;
+        if (loose == null) {
+            List<Synapse> ret = new ArrayList<Synapse>();
+            for (int i = 0, n = fanIn.size(); i < n; i++) {
+                if (!fanIn.get(i).isCompiled()) {
+                    ret.add(fanIn.get(i));
+                }
+            }
+            loose = ret.toArray(new Synapse[ret.size()]);
+            looseFanIn = loose;
+        }
+        return loose;
+    }
+
+    /**
+     * Returns the afferent synapses which are not bound to a spike propagator,
+     * rebuilding the cached array if needed.
+     *
+     * @return the loose afferent synapses
+     */
+    private Synapse[] getLooseSynapticFanIn() {
+        Synapse[] loose = looseSynapticFanIn;
+        if (loose == null) {
+            List<Synapse> ret = new ArrayList<Synapse>();
+            for (int i = 0, n = fanIn.size(); i < n; i++) {
+                if (!fanIn.get(i).isEventDriven()) {
+                    ret.add(fanIn.get(i));
+                }
+            }
+            loose = ret.toArray(new Synapse[ret.size()]);
+            looseSynapticFanIn = loose;
+        }
+        return loose;
+    }
+
+    /**
+     * Bind this neuron to the state arrays of a compiled group, so that its
+     * activation and buffer are written through to them. Used by
+     * {@link org.simbrain.network.groups.NeuronGroup}; pass null to unbind.
+     *
+     * @param arrays the state arrays, or null
+     * @param index the index of this neuron in the arrays
+     */
+    public void bindStateArrays(final NeuronStateArrays arrays,
+            final int index) {
+        stateArrays = arrays;
+        stateIndex = arrays == null ? -1 : index;
+        looseFanIn = null;
+        looseSynapticFanIn = null;
+    }
+
+    /**
+     * Signal that one of the afferent synapses of this neuron was bound to or
+     * released from a compiled weight matrix or spike propagator.
+     */
+    public void invalidateCompiledInputs() {
+        looseFanIn = null;
+        looseSynapticFanIn = null;
+    }
+
+    /**
+     * Put the fan-in of this neuron in the order of the fan-in of another
+     * neuron, of which this neuron is a copy, so that both sum their weighted
+     * inputs in the same order. Does nothing if the fan-ins do not correspond.
+     *
+     * @param original the neuron this neuron was copied from
+     * @param copies maps each synapse of the original to its copy
+     */
+    public void matchFanInOrder(final Neuron original, final Map<?, ?> copies) {
+        if (original.fanIn.size() != fanIn.size()) {
+            return;
+        }
+        ArrayList<Synapse> ordered = new ArrayList<Synapse>(fanIn.size());
+        for (Synapse synapse : original.fanIn) {
+            Object copy = copies.get(synapse);
+            if (!(copy instanceof Synapse)
+                    || ((Synapse) copy).getTarget() != this) {
+                return;
+            }
+            ordered.add((Synapse) copy);
+        }
+        fanIn.clear();
+        fanIn.addAll(ordered);
+        invalidateCompiledInputs();
+    }
+
+    /**
+     * @return the state arrays this neuron writes through to, or null if it is
+     *         not part of a compiled group
+     */
+    public NeuronStateArrays getStateArrays() {
+        return stateArrays;
+    }
+
+    /**
+     * @return the index of this neuron in its state arrays, or -1
+     */
+    public int getStateIndex() {
+        return stateIndex;
+    }
+
     /**
      * Sums the weighted <b>synaptic</b> inputs to a given neuron based on that
      * synapse's spike responder. This is usually only appropriate for
      * biological model neurons.
      *
+     * If this neuron belongs to a compiled group targeted by event-driven
+     * synapse groups, their responses are read from the groups' spike
+     * propagators and only the remaining synapses are visited individually.
+     *
      * @return the sum of the post-synaptic responses (synapse values in
      * response to spikes and mediated by spike responders) impinging on this
      * neuron.
      */
     public double getSynapticInput() {
         double wtdSum = inputValue;
+        NeuronStateArrays arrays = stateArrays;
+        if (arrays != null && arrays.hasPropagators()) {
+            wtdSum += arrays.getSynapticInput(stateIndex);
+            Synapse[] loose = getLooseSynapticFanIn();
+            for (int i = 0; i < loose.length; i++) {
+                wtdSum += loose[i].calcPSR();
+            }
+            return wtdSum;
+        }
         for (int i = 0, n = fanIn.size(); i < n; i++) {
         	wtdSum += fanIn.get(i).calcPSR();
         }
@@ -505,6 +708,7 @@ public class Neuron {
      * and calls their update functions.
      */
     public void updateFanIn() {
+        Network.SYNAPSE_UPDATES.add(fanIn.size());
     	for (int i = 0, n = fanIn.size(); i < n; i++) {
         	fanIn.get(i).update();
         }
@@ -634,6 +838,9 @@ public class Neuron {
     public void setBuffer(final double d) {
         lastActivation = getActivation();
         buffer = d;
+        if (stateArrays != null) {
+            stateArrays.setBuffer(stateIndex, d);
+        }
     }
 
     /**
@@ -661,6 +868,32 @@ public class Neuron {
      */
     public void setInputValue(final double inputValue) {
         this.inputValue = inputValue;
+        if (inputValue != 0 && !inputPending && parent != null) {
+            parent.addPendingInput(this);
+        }
+    }
+
+    /**
+     * Reset the input value to zero. Called by the network when it clears
+     * pending inputs at the end of an update.
+     */
+    void clearInputValue() {
+        inputValue = 0;
+        inputPending = false;
+    }
+
+    /**
+     * Mark this neuron as registered with its network for input clearing.
+     * Called by the network while holding its lock.
+     *
+     * @return false if the neuron was already registered
+     */
+    boolean markInputPending() {
+        if (inputPending) {
+            return false;
+        }
+        inputPending = true;
+        return true;
     }
 
     /**
@@ -984,7 +1217,10 @@ public class Neuron {
      */
     public void setLabel(final String label) {
         this.label = label;
-        this.getNetwork().fireNeuronLabelChanged(this);
+        if (parent != null) {
+            parent.invalidateLabelIndexes();
+            parent.fireNeuronLabelChanged(this);
+        }
     }
 
     /**
@@ -1050,7 +1286,7 @@ public class Neuron {
     public void randomizeBias(double lower, double upper) {
         if (this.getUpdateRule() instanceof BiasedUpdateRule) {
             ((BiasedUpdateRule) this.getUpdateRule()).setBias((upper - lower)
-                    * Math.random() + lower);
+                    * SimbrainRandom.nextDouble() + lower);
         }
     }
 
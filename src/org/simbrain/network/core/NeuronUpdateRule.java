@@ -21,6 +21,7 @@ package org.simbrain.network.core;
 import org.simbrain.network.core.Network.TimeType;
 import org.simbrain.network.neuron_update_rules.interfaces.BoundedUpdateRule;
 import org.simbrain.util.Utils;
+import org.simbrain.util.math.SimbrainRandom;
 
 /**
  * A rule for updating a neuron.
@@ -253,10 +254,10 @@ public abstract class NeuronUpdateRule {
         if (this instanceof BoundedUpdateRule) {
             return (((BoundedUpdateRule) this).getUpperBound() - ((BoundedUpdateRule) this)
                     .getLowerBound())
-                    * Math.random()
+                    * SimbrainRandom.nextDouble()
                     + ((BoundedUpdateRule) this).getLowerBound();
         } else {
-            return 2 * Math.random() - 1;
+            return 2 * SimbrainRandom.nextDouble() - 1;
         }
 
     }
@@ -32,6 +32,12 @@ import org.simbrain.network.core.Network.TimeType;
  */
 public abstract class SpikingNeuronUpdateRule extends NeuronUpdateRule {
 
+    /**
+     * Index of the per-neuron state variable in which spiking rules updated as
+     * a group record whether each neuron spiked: 1 if it did, otherwise 0.
+     */
+    public static final int SPIKE_STATE = 0;
+
     {
         inputType = InputType.SYNAPTIC;
     }
@@ -24,12 +24,15 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Properties;
 
+import org.simbrain.network.groups.RowCompressedWeightMatrix;
+import org.simbrain.network.groups.SpikePropagator;
 import org.simbrain.network.groups.SynapseGroup;
 import org.simbrain.network.synapse_update_rules.StaticSynapseRule;
 import org.simbrain.network.synapse_update_rules.spikeresponders.JumpAndDecay;
 import org.simbrain.network.synapse_update_rules.spikeresponders.SpikeResponder;
 import org.simbrain.util.SimbrainConstants.Polarity;
 import org.simbrain.util.Utils;
+import org.simbrain.util.math.SimbrainRandom;
 
 /**
  * <b>Synapse</b> objects represent "connections" between neurons, which learn
@@ -45,7 +48,10 @@ public class Synapse {
     /** A default update rule for the synapse. */
     private static final SynapseUpdateRule DEFAULT_LEARNING_RULE = new StaticSynapseRule();
 
-    /** A default spike responder. */
+    /**
+     * A default spike responder. Spike responders keep no per-synapse state,
+     * so a single instance can be shared by every synapse.
+     */
     private static final SpikeResponder DEFAULT_SPIKE_RESPONDER = new JumpAndDecay();
 
     /** Default upper bound. */
@@ -87,6 +93,13 @@ public class Synapse {
     /** Post-Synaptic Response */
     private double psr;
 
+    /**
+     * State variables used by the spike responder beyond the post-synaptic
+     * response, e.g. the recovery variable of a rise and decay response.
+     * Allocated on first use; see {@link SpikeResponder#getNumStateVariables()}.
+     */
+    private double[] responderState;
+
     /** Amount to increment the neuron. */
     private double increment = 1;
 
@@ -123,6 +136,26 @@ public class Synapse {
      */
     private int dlyPtr = 0;
 
+    /**
+     * The weight matrix of a compiled parent group, which the strength of
+     * this synapse is written through to. Null if the synapse is not part of
+     * a compiled group.
+     */
+    private RowCompressedWeightMatrix weightMatrix;
+
+    /** Index of this synapse's entry in {@link #weightMatrix}. */
+    private int matrixIndex = -1;
+
+    /**
+     * The spike propagator of an event-driven parent group, which keeps the
+     * post-synaptic response of this synapse. Null if the synapse is updated
+     * individually.
+     */
+    private SpikePropagator spikePropagator;
+
+    /** Index of this synapse in {@link #spikePropagator}. */
+    private int propagatorIndex = -1;
+
     /** The value {@link #dlyPtr} points to in the delay manager. */
     private double dlyVal = 0;
 
@@ -305,7 +338,7 @@ public class Synapse {
         if (source != null) {
             if (source.getUpdateRule() instanceof SpikingNeuronUpdateRule) {
                 if (getSpikeResponder() == null) {
-                    setSpikeResponder(new JumpAndDecay());
+                    setSpikeResponder(DEFAULT_SPIKE_RESPONDER);
                 }
             } else {
                 setSpikeResponder(null);
@@ -440,6 +473,7 @@ public class Synapse {
         }
         if (!isFrozen()) {
             strength = clip(source.getPolarity().clip(wt));
+            syncCompiledWeight();
         }
     }
 
@@ -449,6 +483,62 @@ public class Synapse {
      */
     public void forceSetStrength(final double wt) {
         strength = wt;
+        syncCompiledWeight();
+    }
+
+    /**
+     * Bind this synapse to an entry of a compiled weight matrix, so that its
+     * strength is written through to it. Used by {@link SynapseGroup}; pass
+     * null to unbind.
+     *
+     * @param matrix the weight matrix, or null
+     * @param index the index of this synapse's entry
+     */
+    public void bindWeightMatrix(final RowCompressedWeightMatrix matrix,
+            final int index) {
+        weightMatrix = matrix;
+        matrixIndex = matrix == null ? -1 : index;
+        syncCompiledWeight();
+    }
+
+    /**
+     * @return true if this synapse is bound to a compiled weight matrix and
+     *         so need not be visited when summing weighted inputs
+     */
+    public boolean isCompiled() {
+        return weightMatrix != null;
+    }
+
+    /**
+     * Bind this synapse to the spike propagator of an event-driven group,
+     * which then keeps its post-synaptic response. Used by
+     * {@link SynapseGroup}; pass null to unbind.
+     *
+     * @param propagator the spike propagator, or null
+     * @param index the index of this synapse in the propagator
+     */
+    public void bindSpikePropagator(final SpikePropagator propagator,
+            final int index) {
+        spikePropagator = propagator;
+        propagatorIndex = propagator == null ? -1 : index;
+    }
+
+    /**
+     * @return true if this synapse is bound to a spike propagator and so need
+     *         not be visited when summing synaptic inputs
+     */
+    public boolean isEventDriven() {
+        return spikePropagator != null;
+    }
+
+    /**
+     * Write the effective strength of this synapse to its compiled weight
+     * matrix, if any.
+     */
+    private void syncCompiledWeight() {
+        if (weightMatrix != null) {
+            weightMatrix.setValue(matrixIndex, enabled ? strength : 0);
+        }
     }
 
     /**
@@ -505,6 +595,7 @@ public class Synapse {
     public void incrementWeight() {
         if (strength < upperBound) {
             strength += increment;
+            syncCompiledWeight();
         }
         // target.weightChanged(this); // Maybe?
         if (getNetwork() != null && !isTemplate)
@@ -518,6 +609,7 @@ public class Synapse {
         if (strength > lowerBound) {
             strength -= increment;
             strength = Math.max(lowerBound,strength);
+            syncCompiledWeight();
         }
         if (getNetwork() != null && !isTemplate)
             getNetwork().fireSynapseChanged(this);
@@ -591,8 +683,9 @@ public class Synapse {
      * Randomize this weight to a value between its upper and lower bounds.
      */
     public void randomize() {
-        strength = (getUpperBound() - getLowerBound()) * Math.random()
-                + getLowerBound();
+        strength = (getUpperBound() - getLowerBound())
+                * SimbrainRandom.nextDouble() + getLowerBound();
+        syncCompiledWeight();
         if (getNetwork() != null && !isTemplate)
             getNetwork().fireSynapseChanged(this);
     }
@@ -608,6 +701,7 @@ public class Synapse {
         if (strength < lowerBound) {
             strength = lowerBound;
         }
+        syncCompiledWeight();
     }
 
     /**
@@ -645,6 +739,9 @@ public class Synapse {
      */
     public void setId(final String id) {
         this.id = id;
+        if (source != null && source.getNetwork() != null) {
+            source.getNetwork().invalidateIndexes();
+        }
     }
 
     /**
@@ -655,12 +752,43 @@ public class Synapse {
     }
 
     /**
+     * Set the spike responder. The per-synapse state of the current responder
+     * is kept if the new one is of the same class, e.g. a copy made to edit
+     * its parameters, and cleared otherwise.
+     *
      * @param sr The spikeResponder to set.
      */
     public void setSpikeResponder(final SpikeResponder sr) {
+        if (parentGroup != null && parentGroup.isEventDriven()) {
+            // The synapse may join or leave the group's spike propagator
+            parentGroup.invalidateCompiledWeights();
+        }
+        if (sr == null || spikeResponder == null
+                || sr.getClass() != spikeResponder.getClass()) {
+            responderState = null;
+        }
         this.spikeResponder = sr;
     }
 
+    /**
+     * Returns the spike responder state variables of this synapse, allocating
+     * them if needed. Spike responders keep all of their per-synapse state
+     * here (and in the post-synaptic response) rather than in their own
+     * fields, so that one responder can be shared by many synapses and
+     * evaluated from many threads.
+     *
+     * @return the state variables, with at least as many entries as the spike
+     *         responder requires, initially zero
+     */
+    public double[] getResponderState() {
+        int n = spikeResponder == null ? 0
+                : spikeResponder.getNumStateVariables();
+        if (responderState == null || responderState.length < n) {
+            responderState = new double[n];
+        }
+        return responderState;
+    }
+
     /**
      * Delay manager.
      *
@@ -671,6 +799,12 @@ public class Synapse {
             return;
         }
         delay = dly;
+        if (parentGroup != null && ((delay != 0 && weightMatrix != null)
+                || spikePropagator != null)) {
+            // Delayed synapses can't be read from the weight matrix, and the
+            // spike propagator sizes its ring buffer by the longest delay
+            parentGroup.invalidateCompiledWeights();
+        }
 
         if (delay <= 0) {
             delayManager = null;
@@ -718,6 +852,50 @@ public class Synapse {
         return delay;
     }
 
+    /**
+     * Copy the values in the delay buffer, in the order they will arrive, e.g.
+     * to checkpoint a run.
+     *
+     * @param dest array to copy to, with room for {@link #getDelay()} values
+     * @param offset where to start in the array
+     */
+    public void getDelayedValues(final double[] dest, final int offset) {
+        for (int i = 0; i < delay; i++) {
+            dest[offset + i] = delayManager[(dlyPtr + i) % delay];
+        }
+    }
+
+    /**
+     * Fill the delay buffer with values copied by
+     * {@link #getDelayedValues(double[], int)}.
+     *
+     * @param src array to copy from
+     * @param offset where to start in the array
+     */
+    public void setDelayedValues(final double[] src, final int offset) {
+        System.arraycopy(src, offset, delayManager, 0, delay);
+        dlyPtr = 0;
+    }
+
+    /**
+     * @return the post-synaptic response this synapse passed on most
+     *         recently, after its delay
+     */
+    public double getDelayedPsr() {
+        return delay == 0 ? getPsr() : dlyVal;
+    }
+
+    /**
+     * Set the post-synaptic response this synapse passed on most recently,
+     * e.g. when handing its delayed responses over to or from a spike
+     * propagator.
+     *
+     * @param value the response passed on most recently
+     */
+    public void setDelayedPsr(final double value) {
+        dlyVal = value;
+    }
+
     /**
      * @return the deque.
      */
@@ -769,6 +947,11 @@ public class Synapse {
      */
     public void setEnabled(final boolean enabled) {
         this.enabled = enabled;
+        syncCompiledWeight();
+        if (parentGroup != null && parentGroup.isEventDriven()) {
+            // Only enabled synapses are handled by the spike propagator
+            parentGroup.invalidateCompiledWeights();
+        }
     }
 
     /**
@@ -965,6 +1148,10 @@ public class Synapse {
      * @return the post-synaptic response
      */
     public double getPsr() {
+        SpikePropagator propagator = spikePropagator;
+        if (propagator != null) {
+            return propagator.getPsr(propagatorIndex);
+        }
         return psr;
     }
 
@@ -30,6 +30,7 @@ import org.simbrain.network.groups.SynapseGroup;
 import org.simbrain.network.gui.NetworkPanel;
 import org.simbrain.network.gui.actions.network.ShowNetworkPreferencesAction;
 import org.simbrain.network.gui.actions.network.ShowNetworkUpdaterDialog;
+import org.simbrain.network.util.io_utilities.NetworkSnapshot;
 import org.simbrain.util.genericframe.GenericFrame;
 import org.simbrain.workspace.WorkspaceComponentListener;
 import org.simbrain.workspace.component_actions.CloseAction;
@@ -204,6 +205,11 @@ public final class NetworkDesktopComponent extends
      *         operation should be cancelled.
      */
     private boolean showUncompressedSynapseGroupWarning() {
+        if (NetworkSnapshot.FORMAT
+                .equals(getWorkspaceComponent().getDefaultFormat())) {
+            // Snapshots store synapses compactly however they are set up
+            return true;
+        }
         boolean showPanel = false;
         for (SynapseGroup group : networkPanel.getNetwork().getSynapseGroups()) {
             if (group.getAllSynapses().size() > saveWarningThreshold) {
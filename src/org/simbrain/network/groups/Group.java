@@ -124,6 +124,9 @@ public abstract class Group {
      */
     public void setId(String id) {
         this.id = id;
+        if (parentNetwork != null) {
+            parentNetwork.invalidateIndexes();
+        }
     }
 
     /**
@@ -139,6 +142,7 @@ public abstract class Group {
     public void setLabel(String label) {
         this.label = label;
         if (parentNetwork != null) {
+            parentNetwork.invalidateLabelIndexes();
             parentNetwork.fireGroupParametersChanged(this);
         }
     }
@@ -19,26 +19,36 @@ package org.simbrain.network.groups;
 
 import java.awt.geom.Point2D;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.simbrain.network.core.Network;
 import org.simbrain.network.core.Neuron;
 import org.simbrain.network.core.NeuronUpdateRule;
+import org.simbrain.network.core.SpikingNeuronUpdateRule;
 import org.simbrain.network.core.Synapse;
 import org.simbrain.network.layouts.GridLayout;
 import org.simbrain.network.layouts.Layout;
 import org.simbrain.network.layouts.LineLayout;
 import org.simbrain.network.layouts.LineLayout.LineOrientation;
 import org.simbrain.network.neuron_update_rules.interfaces.BiasedUpdateRule;
+import org.simbrain.network.neuron_update_rules.interfaces.GroupUpdatable;
+import org.simbrain.network.util.io_utilities.ActivityRecorder;
+import org.simbrain.network.util.io_utilities.ArrayInputSource;
+import org.simbrain.network.util.io_utilities.BinaryActivityRecorder;
+import org.simbrain.network.util.io_utilities.CsvActivityRecorder;
+import org.simbrain.network.util.io_utilities.GroupSerializer.Precision;
+import org.simbrain.network.util.io_utilities.InputSource;
+import org.simbrain.network.util.io_utilities.SpikeTrainStore;
+import org.simbrain.network.util.io_utilities.StreamingInputSource;
 import org.simbrain.util.Utils;
 import org.simbrain.util.math.SimbrainMath;
 
@@ -55,8 +65,8 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
     //  Fix isSpiking
 
     /**
-     * The default for how often {@link #writeActsToFile()} should flush
-     * the output stream when writing to a file.
+     * The default for how often text recordings flush the output stream when
+     * writing to a file, in lines.
      */
     public static final int FLUSH_FREQUENCY = 1000;
 
@@ -105,14 +115,20 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
     /** Data (input vectors) for testing the network. */
     private double[][] testData;
 
+    /**
+     * Supplies inputs in input mode: either {@link #testData}, or rows
+     * streamed from a file.
+     */
+    private InputSource inputSource;
+
     /**
      * Whether or not {@link #writeActsToFile()} will write activations as a
      * state matrix or a spike train.
      */
     private boolean recordAsSpikes;
 
-    /** The output stream which writes activation values to a file.*/
-    private PrintWriter valueWriter;
+    /** Records activations or spikes while recording. */
+    private ActivityRecorder recorder;
 
     /** Whether or not this group is in a state that allows recording. */
     private boolean recording;
@@ -131,14 +147,56 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
      */
     private int inputIndex = 0;
 
-    /**
-     * A counter to keep track of how many times {@link #writeActsToFile()} has
-     * been called so as to determine when to flush the output stream.
-     */
-    private int writeCounter = 0;
-    
     /** Indices used with subsampling. */
     private int[] subsamplingIndices;
+
+    /**
+     * Whether this group keeps the state of its neurons in contiguous primitive
+     * arrays ({@link NeuronStateArrays}), which compiled synapse groups read
+     * from. The neurons remain in place and write through to the arrays.
+     */
+    private boolean compiled;
+
+    /**
+     * The state arrays of this group if it is compiled. Null if not compiled
+     * or if the arrays must be rebuilt after a change in the group's neurons.
+     */
+    private NeuronStateArrays stateArrays;
+
+    /**
+     * The update rule shared by every neuron in this group, which then holds
+     * the parameters of all the neurons once. Null unless the group is in
+     * shared rule mode; see {@link #setSharedRule(boolean)}.
+     */
+    private NeuronUpdateRule sharedRule;
+
+    /**
+     * Per-neuron state of {@link #sharedRule}, laid out as described in
+     * {@link GroupUpdatable#initGroupState(double[])}. Null if it must be
+     * (re)initialized.
+     */
+    private volatile double[] ruleState;
+
+    /**
+     * Index of each neuron in {@link #ruleState}, for neurons updated one at a
+     * time. Rebuilt along with the state.
+     */
+    private Map<Neuron, Integer> ruleIndex;
+
+    /** Scratch input of a neuron updated on its own by the shared rule. */
+    private double[] neuronInput;
+
+    /** Scratch activation of a neuron updated on its own by the shared rule. */
+    private double[] neuronOutput;
+
+    /** Scratch state of a neuron updated on its own by the shared rule. */
+    private double[] neuronState;
+
+    /** Scratch array of neuron inputs for shared rule updates. */
+    private double[] sharedInputs;
+
+    /** Scratch array of neuron activations for shared rule updates. */
+    private double[] sharedOutputs;
     
     /**
      * Reset the indices used for subsampling.
@@ -256,6 +314,13 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
         this.setLabel(toCopy.getLabel());
         this.updateRule = toCopy.updateRule;
         resetSubsamplingIndices();
+        setCompiled(toCopy.isCompiled());
+        if (toCopy.isSharedRule()) {
+            setSharedRule(true);
+            if (toCopy.ruleState != null) {
+                ruleState = toCopy.ruleState.clone();
+            }
+        }
     }
 
     @Override
@@ -283,6 +348,8 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
             }
         }
         stopRecording();
+        closeInputSource();
+        invalidateStateArrays();
         neuronList.clear();
         Runtime.getRuntime().gc();
     }
@@ -296,15 +363,25 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
     @Override
     public void update() {
         if (inputMode) {
-            if (testData == null) {
-                throw new NullPointerException("Test data variable is null,"
+            if (getInputSource() == null) {
+                throw new NullPointerException("Input source is null,"
                         + " but neuron group " + getLabel() + " is in input"
                         + " mode.");
             }
             // Surrounded by checks, so actually safe.
             readNextInputUnsafe();
         } else {
-            Network.updateNeurons(neuronList);
+            if (compiled && stateArrays == null) {
+                compileStateArrays();
+            }
+            if (sharedRule != null) {
+                updateSharedRule();
+                for (int i = 0, n = neuronList.size(); i < n; i++) {
+                    neuronList.get(i).setToBufferVals();
+                }
+            } else {
+                Network.updateNeurons(neuronList);
+            }
         }
         if (isRecording()) {
             writeActsToFile();
@@ -319,8 +396,8 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
      */
     public void readNextInputs() {
         if (inputMode) {
-            if (testData == null) {
-                throw new NullPointerException("Test data variable is null,"
+            if (getInputSource() == null) {
+                throw new NullPointerException("Input source is null,"
                         + " but neuron group " + getLabel() + " is in input"
                         + " mode.");
             }
@@ -333,30 +410,40 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
     }
     
     /**
-     * If this neuron group has an input table reads in the next entry on the
-     *  table. If all inputs have been read this method resets the counter and
-     *  starts again from the beginning of the table. 
+     * Reads the next row from the input source of this neuron group. An input
+     * table starts again from the beginning once all inputs have been read;
+     * a streamed source may instead run out, after which the group is left as
+     * it is.
      *  
      *  For spiking neuron update rules, values read in are treated as current
      *  being injected into the cell, for non-spiking neurons activations are
      *  set immediately to the value at that index in the table.
      *  
      *  This method is unsafe because it does not check if the group is in
-     *  input mode or if the input table is non-null. 
+     *  input mode or if the input source is non-null. 
      */
     private void readNextInputUnsafe() {
-        if (inputIndex >= testData.length) {
-            inputIndex = 0;
+        double[] row;
+        try {
+            row = inputSource.nextRow();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read the next input"
+                    + " of neuron group " + getLabel(), e);
+        }
+        if (inputSource instanceof ArrayInputSource) {
+            inputIndex = ((ArrayInputSource) inputSource).getIndex();
+        }
+        if (row == null) {
+            return;
         }
         if (isSpikingNeuronGroup()) {
-            setInputValues(testData[inputIndex]);
+            setInputValues(row);
             for (int i = 0; i < size(); i++) {
                 neuronList.get(i).setToBufferVals();
             }
         } else {
-            forceSetActivations(testData[inputIndex]);
+            forceSetActivations(row);
         }
-        inputIndex++;
     }
 
     /**
@@ -368,7 +455,10 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
      * neuron group is populated entirely by spiking neurons and if so, sets
      * {@link #recordAsSpikes} to true, since {@link #writeActsToFile()} writes
      * activations differently if the neuron group contains only spiking
-     * neurons.
+     * neurons. Files ending in ".{@value BinaryActivityRecorder#FORMAT}" are
+     * written in the binary format of {@link BinaryActivityRecorder}, spikes
+     * to files ending in ".{@value SpikeTrainStore#FORMAT}" are written to a
+     * {@link SpikeTrainStore}, and other files are written as text.
      *
      * @param outputFile the file to write the activations to 
      */
@@ -381,16 +471,34 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
             }
         }
         recordAsSpikes = spikeRecord;
-        recording = true;
         try {
-            if (valueWriter != null) {
-                valueWriter.close();
+            if (spikeRecord && outputFile.getName().endsWith(
+                    "." + SpikeTrainStore.FORMAT)) {
+                startRecording(new SpikeTrainStore(outputFile));
+            } else if (outputFile.getName().endsWith(
+                    "." + BinaryActivityRecorder.FORMAT)) {
+                startRecording(new BinaryActivityRecorder(outputFile,
+                        spikeRecord, Precision.FLOAT_64));
+            } else {
+                startRecording(
+                        new CsvActivityRecorder(outputFile, spikeRecord));
             }
-            FileWriter fw = new FileWriter(outputFile);
-            valueWriter = new PrintWriter(fw);
         } catch (IOException e) {
             e.printStackTrace();
         }
+    }
+
+    /**
+     * Start recording the activity of this group with the given recorder,
+     * which is called after each update of the group and closed when
+     * recording stops. Replaces any recording in progress.
+     *
+     * @param newRecorder the recorder
+     */
+    public void startRecording(final ActivityRecorder newRecorder) {
+        closeRecorder();
+        recorder = newRecorder;
+        recording = true;
         this.getParentNetwork().fireGroupParametersChanged(this);
         this.getParentNetwork().fireGroupChanged(this, "Recording Started");
     }
@@ -399,62 +507,43 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
      * Halts recording of activations. Closes all involved output streams.
      */
     public void stopRecording() {
-        if (valueWriter != null) {
-            valueWriter.close();
-            valueWriter = null;
-        }
+        closeRecorder();
         recording = false;
         this.getParentNetwork().fireGroupParametersChanged(this);
         this.getParentNetwork().fireGroupChanged(this, "Recording Stopped");
     }
 
     /**
-     * Writes the activations of the network to a file. When
-     * {@link #startRecording()} is called, the group checks whether or not the
-     * group is entirely populated by spiking neurons. If it is then this
-     * methods writes the activations to a file as spike trains in [neuron
-     * id][spk time] couplets. Otherwise it writes the neurons' activation
-     * values as a state matrix to the file. Flushes the output stream every
-     * {@link #FLUSH_FREQUENCY} invocations.
+     * Close the recorder, if any.
+     */
+    private void closeRecorder() {
+        if (recorder != null) {
+            try {
+                recorder.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            recorder = null;
+        }
+    }
+
+    /**
+     * Passes the current state of the group to the recorder set by
+     * {@link #startRecording(ActivityRecorder)}. Recordings started with
+     * {@link #startRecording(File)} hold spike trains as [spk time][neuron
+     * index] lines if the group was entirely populated by spiking neurons, and
+     * the neurons' activation values as a state matrix otherwise. Recording
+     * stops if the recorder fails.
      */
     public void writeActsToFile() {
+        if (recorder == null) {
+            return;
+        }
         try {
-            if (writeCounter >= FLUSH_FREQUENCY) {
-                valueWriter.flush();
-                writeCounter = 0;
-            }
-            boolean write = false;
-            if (recordAsSpikes) {
-                int start = 0;
-                for (int i = 0, n = size(); i < n; i++) {
-                    if (neuronList.get(i).isSpike()) {
-                        write = true;
-                        start = i;
-                        break;
-                    }
-                }
-                if (write) {
-                    valueWriter.print(this.getParentNetwork().getTime());
-                    valueWriter.print(" ");
-                    for (int i = start, n = size(); i < n; i++) {
-                        if (neuronList.get(i).isSpike()) {
-                            valueWriter.print(i);
-                            valueWriter.print(" ");
-                        }
-                    }
-                    valueWriter.println();
-                    writeCounter++;
-                }
-            } else {
-                for (int i = 0, n = size() - 1; i < n; i++) {
-                    valueWriter.print(neuronList.get(i).getActivation() + ", ");
-                }
-                valueWriter.print(neuronList.get(size()-1).getActivation());
-                valueWriter.println();
-                writeCounter++;
-            }
-        } catch (NullPointerException e) {
+            recorder.record(this);
+        } catch (IOException e) {
             e.printStackTrace();
+            stopRecording();
         }
     }
 
@@ -518,8 +607,21 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
      */
     public void setNeuronType(NeuronUpdateRule base) {
         isSpikingNeuronGroup = base.isSpikingNeuron();
-        for (Neuron neuron : neuronList) {
-            neuron.setUpdateRule(base.deepCopy());
+        if (sharedRule != null && base instanceof GroupUpdatable) {
+            sharedRule = base.deepCopy();
+            ruleState = null;
+            for (Neuron neuron : neuronList) {
+                neuron.setUpdateRule(sharedRule);
+            }
+        } else {
+            sharedRule = null;
+            ruleState = null;
+            for (Neuron neuron : neuronList) {
+                neuron.setUpdateRule(base.deepCopy());
+            }
+        }
+        if (stateArrays != null) {
+            stateArrays.refreshBiases(neuronList);
         }
     }
 
@@ -540,9 +642,14 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
         {
             e.printStackTrace();
         }
+        sharedRule = null;
+        ruleState = null;
         for (Neuron neuron : neuronList) {
             neuron.setUpdateRule(rule);
         }
+        if (stateArrays != null) {
+            stateArrays.refreshBiases(neuronList);
+        }
     }
 
     /**
@@ -640,6 +747,9 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
         for (Neuron neuron : this.getNeuronList()) {
             neuron.randomizeBias(lower, upper);
         }
+        if (stateArrays != null) {
+            stateArrays.refreshBiases(neuronList);
+        }
     }
 
     /**
@@ -651,6 +761,7 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
      *            whether to fire a neuron added event
      */
     public void addNeuron(Neuron neuron, boolean fireEvent) {
+        invalidateStateArrays();
         neuronList.add(neuron);
         neuron.setParentGroup(this);
         if (getParentNetwork() != null) {
@@ -681,7 +792,10 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
      *            the neuron to delete
      */
     public void removeNeuron(Neuron toDelete) {
+        invalidateStateArrays();
+        toDelete.bindStateArrays(null, -1);
         neuronList.remove(toDelete);
+        getParentNetwork().invalidateIndexes();
         if (isEmpty()) {
             delete();
         }
@@ -692,6 +806,7 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
      * Removes all neurons with no incoming or outgoing synapses from the group.
      */
     public void prune() {
+        invalidateStateArrays();
         Iterator<Neuron> reaper = neuronList.iterator();
         while (reaper.hasNext()) {
             Neuron n = reaper.next();
@@ -699,6 +814,7 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
                 reaper.remove();
             }
         }
+        getParentNetwork().invalidateIndexes();
     }
 
     @Override
@@ -781,6 +897,10 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
      * @return the activation array
      */
     public double[] getActivations() {
+        NeuronStateArrays arrays = stateArrays;
+        if (arrays != null) {
+            return arrays.getActivations().clone();
+        }
         double[] retArray = new double[neuronList.size()];
         int i = 0;
         for (Neuron neuron : neuronList) {
@@ -1388,7 +1508,66 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
             }
         }
         testAndSetIfSpiking();
+        closeInputSource();
         this.testData = testData;
+        inputIndex = 0;
+    }
+
+    /**
+     * Returns the source of inputs used in input mode. Unless a source was set
+     * with {@link #setInputSource(InputSource)}, this reads the test data.
+     *
+     * @return the input source, or null if there is neither a source nor test
+     *         data
+     */
+    public InputSource getInputSource() {
+        if (inputSource == null && testData != null) {
+            ArrayInputSource source = new ArrayInputSource(testData);
+            source.setIndex(inputIndex);
+            inputSource = source;
+        }
+        return inputSource;
+    }
+
+    /**
+     * Set the source of inputs used in input mode, e.g. a
+     * {@link StreamingInputSource} for inputs too large to hold in memory.
+     * Replaces the test data, and closes any previous source.
+     *
+     * @param source the input source
+     * @throws IllegalArgumentException if the rows of the source do not have
+     *             one value per neuron
+     */
+    public void setInputSource(final InputSource source)
+            throws IllegalArgumentException {
+        if (source.getNumColumns() != size()) {
+            throw new IllegalArgumentException("Data Inconsistency:"
+                    + " Input source does not have a column number equal"
+                    + " to the number of neurons in the group.");
+        }
+        testAndSetIfSpiking();
+        closeInputSource();
+        if (source instanceof ArrayInputSource) {
+            testData = ((ArrayInputSource) source).getData();
+            inputIndex = ((ArrayInputSource) source).getIndex();
+        } else {
+            testData = null;
+        }
+        inputSource = source;
+    }
+
+    /**
+     * Close the input source, if any.
+     */
+    private void closeInputSource() {
+        if (inputSource != null) {
+            try {
+                inputSource.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            inputSource = null;
+        }
     }
 
     /**
@@ -1474,7 +1653,9 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
      * Clear the neuron list.
      */
     public void clearNeuronList() {
+        invalidateStateArrays();
         neuronList.clear();
+        getParentNetwork().invalidateIndexes();
     }
 
     /**
@@ -1532,8 +1713,8 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
 
     /**
      * Sets whether or not this neuron group is in input mode. When in input
-     * mode the neuron group will draw activations from its {@link #testData}
-     *  field instead of from any impinging synapses or its own neuron update
+     * mode the neuron group will draw activations from its input source
+     *  (by default its {@link #testData}) instead of from any impinging synapses or its own neuron update
      *  functions. This function removes the neurons from the neuron set in
      *  ConcurrentBufferedUpdate, preventing it from updating the neurons in
      *  this group, and re-adds those neurons when input mode is turned off.
@@ -1542,15 +1723,15 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
      *  selected in order for input values to update the group properly.
      * @param inputMode whether or not this group will run in input mode during
      * network and workspace updates.
-     * @throws IllegalArgumentException if input mode is set to true, but the
-     * {@link #testData} field is set to null.
+     * @throws IllegalArgumentException if input mode is set to true, but
+     * there is no input source.
      */
     public void setInputMode(boolean inputMode)
             throws IllegalArgumentException {
-        if (testData == null && inputMode) {
+        if (getInputSource() == null && inputMode) {
             throw new IllegalArgumentException("Cannot set input mode to true"
                     + " if there is no input data stored in NeuronGroup field:"
-                    + " testData");
+                    + " testData, and no input source");
         }
         this.inputMode = inputMode;
         this.getParentNetwork().fireGroupChanged(this,
@@ -1664,4 +1845,296 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
         return false;
     }
     
+    /**
+     * @return true if this group keeps its state in primitive arrays
+     */
+    public boolean isCompiled() {
+        return compiled;
+    }
+
+    /**
+     * Turn the compiled representation of this group on or off. When compiled,
+     * activations, buffers and biases are kept in contiguous arrays (see
+     * {@link NeuronStateArrays}) and compiled synapse groups targeting this
+     * group compute weighted inputs from those arrays. Turning compilation off
+     * also releases any compiled synapse groups attached to this group.
+     *
+     * @param compiled whether to use the compiled representation
+     */
+    public void setCompiled(boolean compiled) {
+        this.compiled = compiled;
+        if (compiled) {
+            if (stateArrays == null) {
+                compileStateArrays();
+            }
+        } else {
+            for (SynapseGroup sg : incomingSgs) {
+                sg.setCompiled(false);
+            }
+            for (SynapseGroup sg : outgoingSgs) {
+                sg.setCompiled(false);
+            }
+            invalidateStateArrays();
+        }
+    }
+
+    /**
+     * Returns the state arrays of this group, building them first if the
+     * group is compiled but the arrays are out of date.
+     *
+     * @return the state arrays, or null if the group is not compiled
+     */
+    public NeuronStateArrays getStateArrays() {
+        if (compiled && stateArrays == null) {
+            compileStateArrays();
+        }
+        return stateArrays;
+    }
+
+    /**
+     * Build the state arrays from the current values of the neurons and bind
+     * each neuron to them.
+     */
+    private synchronized void compileStateArrays() {
+        if (stateArrays != null) {
+            return;
+        }
+        NeuronStateArrays arrays = new NeuronStateArrays(neuronList);
+        for (int i = 0, n = neuronList.size(); i < n; i++) {
+            neuronList.get(i).bindStateArrays(arrays, i);
+        }
+        stateArrays = arrays;
+    }
+
+    /**
+     * Discard the state arrays, after releasing the compiled synapse groups
+     * that read from them. Neurons fall back to their own fields, which are
+     * always current, and the arrays are rebuilt on the next update. Called
+     * whenever neurons are added to or removed from the group.
+     */
+    private synchronized void invalidateStateArrays() {
+        if (stateArrays == null) {
+            return;
+        }
+        for (SynapseGroup sg : incomingSgs) {
+            sg.invalidateCompiledWeights();
+        }
+        for (SynapseGroup sg : outgoingSgs) {
+            sg.invalidateCompiledWeights();
+        }
+        for (Neuron neuron : neuronList) {
+            neuron.bindStateArrays(null, -1);
+        }
+        stateArrays = null;
+    }
+
+    /**
+     * @return true if the neurons of this group share a single update rule
+     */
+    public boolean isSharedRule() {
+        return sharedRule != null;
+    }
+
+    /**
+     * Turn shared rule mode on or off. In shared rule mode every neuron in the
+     * group refers to one update rule object, so parameters are stored once,
+     * and the state each neuron needs is kept in a primitive array owned by
+     * the group. The group is then updated with a single call to
+     * {@link GroupUpdatable#updateGroup}. Turning the mode on shares the
+     * rule of the first neuron, and the state of every neuron starts as it
+     * would for a new rule; turning it off gives each neuron its own copy of
+     * the rule again.
+     * <p>
+     * Only rules which implement {@link GroupUpdatable} can be shared. Since spike times are
+     * kept on the rule, rules which other objects query for the last spike
+     * time of a particular neuron, e.g. for STDP, should not be shared.
+     *
+     * @param shared whether the neurons should share a single rule
+     * @throws IllegalArgumentException if the rule of the group's neurons
+     *             can not be updated as a group
+     */
+    public void setSharedRule(boolean shared) {
+        if (shared == (sharedRule != null)) {
+            return;
+        }
+        if (shared) {
+            if (neuronList.isEmpty()) {
+                return;
+            }
+            NeuronUpdateRule rule = neuronList.get(0).getUpdateRule();
+            if (!(rule instanceof GroupUpdatable)) {
+                throw new IllegalArgumentException(rule.getName()
+                        + " neurons can not share an update rule.");
+            }
+            sharedRule = rule;
+            ruleState = null;
+            for (Neuron neuron : neuronList) {
+                neuron.setUpdateRule(sharedRule);
+            }
+        } else {
+            NeuronUpdateRule rule = sharedRule;
+            sharedRule = null;
+            ruleState = null;
+            for (Neuron neuron : neuronList) {
+                neuron.setUpdateRule(rule.deepCopy());
+            }
+        }
+        getParentNetwork().fireGroupChanged(this,
+                getLabel() + " shared rule " + shared);
+    }
+
+    /**
+     * @return the rule shared by the neurons of this group, or null if the
+     *         group is not in shared rule mode
+     */
+    public NeuronUpdateRule getSharedRule() {
+        return sharedRule;
+    }
+
+    /**
+     * Returns the per-neuron state of the shared rule, laid out as described
+     * in {@link GroupUpdatable#initGroupState(double[])}. The array is live:
+     * changes to it change the state of the neurons.
+     *
+     * @return the state array, or null if the group is not in shared rule
+     *         mode
+     */
+    public double[] getSharedRuleState() {
+        if (sharedRule == null) {
+            return null;
+        }
+        checkRuleState();
+        return ruleState;
+    }
+
+    /**
+     * Initialize the shared rule state if needed, i.e. on first use or after
+     * neurons have been added or removed.
+     */
+    private void checkRuleState() {
+        double[] state = ruleState;
+        int k = ((GroupUpdatable) sharedRule).getNumStateVariables();
+        if (state == null || ruleIndex == null
+                || state.length != neuronList.size() * k) {
+            initRuleState();
+        }
+    }
+
+    /**
+     * Initialize the shared rule state, unless it is already the right size
+     * (e.g. after opening a saved network), and the index of each neuron in
+     * it. Neurons which have been added since the last initialization are
+     * pointed at the shared rule.
+     */
+    private synchronized void initRuleState() {
+        GroupUpdatable rule = (GroupUpdatable) sharedRule;
+        int k = rule.getNumStateVariables();
+        int size = neuronList.size() * k;
+        double[] state = ruleState;
+        if (state != null && state.length == size && ruleIndex != null) {
+            return;
+        }
+        if (state == null || state.length != size) {
+            state = new double[size];
+            rule.initGroupState(state);
+        }
+        Map<Neuron, Integer> index = new IdentityHashMap<Neuron, Integer>();
+        for (int i = 0, n = neuronList.size(); i < n; i++) {
+            Neuron neuron = neuronList.get(i);
+            if (neuron.getUpdateRule() != sharedRule) {
+                neuron.setUpdateRule(sharedRule);
+            }
+            index.put(neuron, i);
+        }
+        ruleIndex = index;
+        neuronInput = new double[1];
+        neuronOutput = new double[1];
+        neuronState = new double[k];
+        ruleState = state;
+    }
+
+    /**
+     * Update the buffers of every neuron using the shared rule, without
+     * setting activations from them. This is how a group in shared rule mode
+     * should be updated, including by parallel updates, which should run it
+     * on a single thread since the rule is not thread safe.
+     */
+    public void updateSharedRule() {
+        checkRuleState();
+        int n = neuronList.size();
+        if (sharedInputs == null || sharedInputs.length != n) {
+            sharedInputs = new double[n];
+            sharedOutputs = new double[n];
+        }
+        NeuronUpdateRule.InputType inputType = sharedRule.getInputType();
+        for (int i = 0; i < n; i++) {
+            Neuron neuron = neuronList.get(i);
+            sharedInputs[i] = inputType.getInput(neuron);
+            sharedOutputs[i] = neuron.getActivation();
+        }
+        GroupUpdatable rule = (GroupUpdatable) sharedRule;
+        rule.updateGroup(sharedInputs, ruleState, sharedOutputs,
+                getParentNetwork().getTimeStep());
+        int k = rule.getNumStateVariables();
+        for (int i = 0; i < n; i++) {
+            setSharedRuleResult(neuronList.get(i), sharedOutputs[i],
+                    ruleState, i * k);
+        }
+    }
+
+    /**
+     * Update the buffer of a single neuron of this group using the shared
+     * rule. Used when neurons are updated one at a time, for example by a
+     * priority update. Calls are serialized, since the shared rule is not
+     * thread safe, so updating the whole group at once with
+     * {@link #updateSharedRule()} is preferable.
+     *
+     * @param neuron the neuron to update
+     */
+    public synchronized void updateSharedRule(final Neuron neuron) {
+        checkRuleState();
+        GroupUpdatable rule = (GroupUpdatable) sharedRule;
+        int k = rule.getNumStateVariables();
+        int offset = ruleIndex.get(neuron) * k;
+        System.arraycopy(ruleState, offset, neuronState, 0, k);
+        neuronInput[0] = sharedRule.getInputType().getInput(neuron);
+        neuronOutput[0] = neuron.getActivation();
+        rule.updateGroup(neuronInput, neuronState, neuronOutput,
+                getParentNetwork().getTimeStep());
+        System.arraycopy(neuronState, 0, ruleState, offset, k);
+        setSharedRuleResult(neuron, neuronOutput[0], neuronState, 0);
+    }
+
+    /**
+     * Set the buffers of a neuron from the result of a shared rule update.
+     *
+     * @param neuron the neuron
+     * @param activation its new activation
+     * @param state an array holding its state variables
+     * @param offset the index of its first state variable
+     */
+    private void setSharedRuleResult(final Neuron neuron,
+            final double activation, final double[] state, final int offset) {
+        if (neuron.isClamped()) {
+            return;
+        }
+        neuron.setBuffer(activation);
+        if (sharedRule.isSpikingNeuron()) {
+            boolean spiked = state[offset
+                    + SpikingNeuronUpdateRule.SPIKE_STATE] != 0;
+            neuron.setSpkBuffer(spiked);
+            ((SpikingNeuronUpdateRule) sharedRule).setHasSpiked(spiked,
+                    neuron);
+        }
+    }
+
+    /**
+     * Perform operations required after opening a neuron group.
+     */
+    public void postUnmarshallingInit() {
+        if (compiled) {
+            compileStateArrays();
+        }
+    }
+
 }
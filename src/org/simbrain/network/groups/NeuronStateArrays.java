@@ -0,0 +1,261 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.groups;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.simbrain.network.core.Neuron;
+import org.simbrain.network.neuron_update_rules.interfaces.BiasedUpdateRule;
+
+/**
+ * Contiguous primitive storage for the state of the neurons in a compiled
+ * {@link NeuronGroup}. Activations, buffers and biases are held in parallel
+ * arrays indexed by the position of each neuron in the group. Neurons bound to
+ * these arrays write their activation and buffer through to them, so the
+ * arrays are always current and the neuron objects remain usable by the gui,
+ * couplings and serialization.
+ * <p>
+ * Compiled synapse groups targeting the group register a
+ * {@link RowCompressedWeightMatrix} here, which allows the weighted input to a
+ * neuron to be computed as a single pass over contiguous memory rather than by
+ * walking its fan-in. Likewise event-driven synapse groups register a
+ * {@link SpikePropagator}, which supplies the summed post-synaptic response
+ * of their synapses.
+ */
+public class NeuronStateArrays {
+
+    /** Empty matrix array, used when nothing projects to the group. */
+    private static final RowCompressedWeightMatrix[] NO_MATRICES =
+            new RowCompressedWeightMatrix[0];
+
+    /** Empty propagator array, used when no event-driven group targets us. */
+    private static final SpikePropagator[] NO_PROPAGATORS =
+            new SpikePropagator[0];
+
+    /** Neuron activations. */
+    private final double[] activations;
+
+    /** Neuron activation buffers. */
+    private final double[] buffers;
+
+    /**
+     * Neuron biases, for neurons with a {@link BiasedUpdateRule}. A snapshot
+     * taken when the arrays are built; see {@link #refreshBiases(List)}.
+     */
+    private final double[] biases;
+
+    /** Compiled weight matrices whose rows are the neurons of this group. */
+    private volatile RowCompressedWeightMatrix[] incoming = NO_MATRICES;
+
+    /** Spike propagators of event-driven groups targeting this group. */
+    private volatile SpikePropagator[] propagators = NO_PROPAGATORS;
+
+    /**
+     * Build state arrays for a list of neurons, copying their current values.
+     * Neurons are not bound; see {@link Neuron#bindStateArrays}.
+     *
+     * @param neurons the neurons whose state will be stored
+     */
+    NeuronStateArrays(final List<Neuron> neurons) {
+        int n = neurons.size();
+        activations = new double[n];
+        buffers = new double[n];
+        biases = new double[n];
+        for (int i = 0; i < n; i++) {
+            Neuron neuron = neurons.get(i);
+            activations[i] = neuron.getActivation();
+            buffers[i] = neuron.getBuffer();
+        }
+        refreshBiases(neurons);
+    }
+
+    /**
+     * Re-read the biases of the neurons from their update rules.
+     *
+     * @param neurons the neurons these arrays were built from, in order
+     */
+    void refreshBiases(final List<Neuron> neurons) {
+        for (int i = 0, n = biases.length; i < n; i++) {
+            if (neurons.get(i).getUpdateRule() instanceof BiasedUpdateRule) {
+                biases[i] = ((BiasedUpdateRule) neurons.get(i).getUpdateRule())
+                        .getBias();
+            } else {
+                biases[i] = 0;
+            }
+        }
+    }
+
+    /**
+     * Returns the weighted input to the neuron at the specified index from
+     * all compiled weight matrices projecting to this group.
+     *
+     * @param index the index of the neuron in the group
+     * @return the weighted input from compiled synapse groups
+     */
+    public double getWeightedInput(final int index) {
+        RowCompressedWeightMatrix[] mats = incoming;
+        double sum = 0;
+        for (int i = 0; i < mats.length; i++) {
+            sum += mats[i].rowDot(index);
+        }
+        return sum;
+    }
+
+    /**
+     * @return true if at least one compiled weight matrix targets this group
+     */
+    public boolean hasIncomingMatrices() {
+        return incoming.length > 0;
+    }
+
+    /**
+     * Returns the synaptic input to the neuron at the specified index from all
+     * spike propagators of event-driven groups targeting this group.
+     *
+     * @param index the index of the neuron in the group
+     * @return the summed post-synaptic response from event-driven groups
+     */
+    public double getSynapticInput(final int index) {
+        SpikePropagator[] props = propagators;
+        double sum = 0;
+        for (int i = 0; i < props.length; i++) {
+            sum += props[i].getSynapticInput(index);
+        }
+        return sum;
+    }
+
+    /**
+     * @return true if at least one spike propagator targets this group
+     */
+    public boolean hasPropagators() {
+        return propagators.length > 0;
+    }
+
+    /**
+     * Register the spike propagator of an event-driven group targeting this
+     * group.
+     *
+     * @param propagator the propagator to add
+     */
+    synchronized void addPropagator(final SpikePropagator propagator) {
+        SpikePropagator[] props = Arrays.copyOf(propagators,
+                propagators.length + 1);
+        props[props.length - 1] = propagator;
+        propagators = props;
+    }
+
+    /**
+     * Unregister a spike propagator.
+     *
+     * @param propagator the propagator to remove
+     */
+    synchronized void removePropagator(final SpikePropagator propagator) {
+        SpikePropagator[] props = new SpikePropagator[propagators.length];
+        int j = 0;
+        for (SpikePropagator p : propagators) {
+            if (p != propagator) {
+                props[j++] = p;
+            }
+        }
+        propagators = j == 0 ? NO_PROPAGATORS : Arrays.copyOf(props, j);
+    }
+
+    /**
+     * Register a compiled weight matrix whose rows are the neurons of this
+     * group.
+     *
+     * @param matrix the matrix to add
+     */
+    synchronized void addIncoming(final RowCompressedWeightMatrix matrix) {
+        RowCompressedWeightMatrix[] mats = Arrays.copyOf(incoming,
+                incoming.length + 1);
+        mats[mats.length - 1] = matrix;
+        incoming = mats;
+    }
+
+    /**
+     * Unregister a compiled weight matrix.
+     *
+     * @param matrix the matrix to remove
+     */
+    synchronized void removeIncoming(final RowCompressedWeightMatrix matrix) {
+        RowCompressedWeightMatrix[] mats =
+                new RowCompressedWeightMatrix[incoming.length];
+        int j = 0;
+        for (RowCompressedWeightMatrix m : incoming) {
+            if (m != matrix) {
+                mats[j++] = m;
+            }
+        }
+        incoming = j == 0 ? NO_MATRICES : Arrays.copyOf(mats, j);
+    }
+
+    /**
+     * @param index neuron index
+     * @param val the new activation
+     */
+    public void setActivation(final int index, final double val) {
+        activations[index] = val;
+    }
+
+    /**
+     * @param index neuron index
+     * @param val the new buffer value
+     */
+    public void setBuffer(final int index, final double val) {
+        buffers[index] = val;
+    }
+
+    /**
+     * Returns the backing activation array. Callers must not write to it;
+     * activations should be changed through the neurons.
+     *
+     * @return the activations
+     */
+    public double[] getActivations() {
+        return activations;
+    }
+
+    /**
+     * Returns the backing buffer array. Callers must not write to it.
+     *
+     * @return the buffers
+     */
+    public double[] getBuffers() {
+        return buffers;
+    }
+
+    /**
+     * Returns the backing bias array. Callers must not write to it.
+     *
+     * @return the biases
+     */
+    public double[] getBiases() {
+        return biases;
+    }
+
+    /**
+     * @return the number of neurons stored
+     */
+    public int size() {
+        return activations.length;
+    }
+
+}
@@ -0,0 +1,175 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.groups;
+
+/**
+ * The weights of a compiled {@link SynapseGroup} in compressed sparse row
+ * (CSR) form. Row <i>i</i> holds the weights onto neuron <i>i</i> of the
+ * target group, with column indices into the source group. Row pointers,
+ * column indices and values are stored in contiguous primitive arrays.
+ * <p>
+ * Synapses bound to the matrix write their strength through to
+ * {@link #values}; a disabled synapse is stored as a zero weight.
+ * <p>
+ * Copies of a network can share the arrays of a matrix (see
+ * {@link #share(double[])}). The value array is then copied by whichever
+ * matrix first changes a weight, so unchanged weights are stored once.
+ */
+public class RowCompressedWeightMatrix {
+
+    /** Start of each row in {@link #columnIndices}; length is rows + 1. */
+    private final int[] rowPointers;
+
+    /** Source neuron index of each entry. */
+    private final int[] columnIndices;
+
+    /** Effective weight of each entry. */
+    private double[] values;
+
+    /**
+     * Whether {@link #values} may be referenced by another matrix, in which
+     * case it is copied before the first write.
+     */
+    private volatile boolean shared;
+
+    /** Activations of the source group, read during multiplication. */
+    private final double[] sourceActivations;
+
+    /**
+     * Create a matrix. The arrays are used directly, not copied.
+     *
+     * @param rowPointers row start offsets, of length rows + 1
+     * @param columnIndices source index of each entry
+     * @param values weight of each entry
+     * @param sourceActivations the activation array of the source group
+     */
+    RowCompressedWeightMatrix(final int[] rowPointers,
+            final int[] columnIndices, final double[] values,
+            final double[] sourceActivations) {
+        this.rowPointers = rowPointers;
+        this.columnIndices = columnIndices;
+        this.values = values;
+        this.sourceActivations = sourceActivations;
+    }
+
+    /**
+     * Returns the dot product of a row of the matrix with the activations of
+     * the source group, i.e. the weighted input to one target neuron.
+     *
+     * @param row the index of the target neuron
+     * @return the weighted input
+     */
+    public double rowDot(final int row) {
+        double sum = 0;
+        for (int k = rowPointers[row], end = rowPointers[row + 1]; k < end;
+                k++) {
+            sum += values[k] * sourceActivations[columnIndices[k]];
+        }
+        return sum;
+    }
+
+    /**
+     * Multiply the matrix by the activations of the source group, adding the
+     * result into the provided array.
+     *
+     * @param out the array to accumulate into, one entry per target neuron
+     */
+    public void multiplyInto(final double[] out) {
+        for (int row = 0, n = rowPointers.length - 1; row < n; row++) {
+            out[row] += rowDot(row);
+        }
+    }
+
+    /**
+     * @param index entry index
+     * @param val the new effective weight
+     */
+    public void setValue(final int index, final double val) {
+        if (shared) {
+            if (values[index] == val) {
+                return;
+            }
+            values = values.clone();
+            shared = false;
+        }
+        values[index] = val;
+    }
+
+    /**
+     * Returns a matrix with the same structure and weights as this one that
+     * reads a different source activation array. Row pointers and column
+     * indices are never written and are shared outright; the value array is
+     * shared until either matrix changes a weight. Should not be called while
+     * weights of this matrix are being changed on another thread.
+     *
+     * @param activations the activation array of the new source group
+     * @return the sharing matrix
+     */
+    RowCompressedWeightMatrix share(final double[] activations) {
+        shared = true;
+        RowCompressedWeightMatrix copy = new RowCompressedWeightMatrix(
+                rowPointers, columnIndices, values, activations);
+        copy.shared = true;
+        return copy;
+    }
+
+    /**
+     * @return the number of rows (target neurons)
+     */
+    public int getNumRows() {
+        return rowPointers.length - 1;
+    }
+
+    /**
+     * @return the number of stored entries
+     */
+    public int getNumEntries() {
+        return values.length;
+    }
+
+    /**
+     * Returns the backing row pointer array. Callers must not write to it.
+     *
+     * @return row pointers
+     */
+    public int[] getRowPointers() {
+        return rowPointers;
+    }
+
+    /**
+     * Returns the backing column index array. Callers must not write to it.
+     *
+     * @return column indices
+     */
+    public int[] getColumnIndices() {
+        return columnIndices;
+    }
+
+    /**
+     * Returns the backing value array. Callers must not write to it or hold
+     * on to it; weights should be changed through the synapses, and the array
+     * is replaced when a shared matrix is first written.
+     *
+     * @return values
+     */
+    public double[] getValues() {
+        return values;
+    }
+
+}
@@ -0,0 +1,610 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.groups;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.simbrain.network.core.Network;
+import org.simbrain.network.core.Neuron;
+import org.simbrain.network.core.Synapse;
+import org.simbrain.network.synapse_update_rules.spikeresponders.ConvolvedJumpAndDecay;
+import org.simbrain.network.synapse_update_rules.spikeresponders.JumpAndDecay;
+import org.simbrain.network.synapse_update_rules.spikeresponders.SpikeResponder;
+
+/**
+ * Event-driven propagation of spikes through an event-driven
+ * {@link SynapseGroup}. Rather than every synapse updating its spike responder
+ * every iteration, spikes of source neurons are pushed as events into a ring
+ * buffer of pending arrivals indexed by delay, and only the synapses which
+ * receive an event are visited. Between events the post-synaptic responses
+ * decay exponentially, which is applied in closed form: once per iteration to
+ * the summed response onto each target neuron, and from the time of its last
+ * event for a single synapse.
+ * <p>
+ * Only synapses with a {@link JumpAndDecay} or {@link ConvolvedJumpAndDecay}
+ * responder are handled here. Synapses are grouped into channels of identical
+ * responder class, base line and time constant, each of which keeps its own
+ * summed response per target. The cost of an iteration is proportional to the
+ * number of target neurons and channels plus the number of spike arrivals,
+ * rather than to the number of synapses.
+ * <p>
+ * The propagator advances once per network iteration, on the first request
+ * for input in that iteration, reading the spikes of the source neurons at
+ * that time. Responder parameters are cached, and re-read in place at the
+ * start of an advance if the network time step or the parameters of one of
+ * the propagator's own responders changed (see
+ * {@link SpikeResponder#getParameterVersion()}); pending arrivals are kept.
+ * When the propagator is released, e.g. because synapses were added or a
+ * responder replaced, pending arrivals are written to the delay buffers of
+ * the synapses, from which the next propagator picks them up again.
+ */
+public class SpikePropagator {
+
+    /** Network whose time drives the propagator. */
+    private final Network network;
+
+    /** The network time step the decay factors were computed for. */
+    private double timeStep;
+
+    /**
+     * The latest responder parameter version when the parameters were last
+     * checked. Responders with a later version have changed since.
+     */
+    private long checkedVersion;
+
+    /** The distinct responders of the synapses. */
+    private final SpikeResponder[] responders;
+
+    /** Source neurons, in the order of their group. */
+    private final Neuron[] sources;
+
+    /**
+     * Start of the synapses of each source in {@link #synapses}; length is
+     * sources + 1.
+     */
+    private final int[] sourcePointers;
+
+    /** The synapses handled by this propagator, ordered by source. */
+    private final Synapse[] synapses;
+
+    /** Target neuron index of each synapse. */
+    private final int[] targets;
+
+    /** Delay of each synapse, in iterations. */
+    private final int[] delays;
+
+    /** Channel of each synapse. */
+    private final int[] channels;
+
+    /** Jump height of the responder of each synapse. */
+    private final double[] jumpHeights;
+
+    /**
+     * Response of each synapse, relative to the base line of its channel, as
+     * of its last event.
+     */
+    private final double[] excess;
+
+    /** Iteration of the last event of each synapse. */
+    private final long[] lastEvent;
+
+    /** Whether the responses of each channel add up (convolve) on a spike. */
+    private boolean[] convolved;
+
+    /** Base line of each channel. */
+    private double[] baseLines;
+
+    /** Time constant of each channel. */
+    private double[] timeConstants;
+
+    /** Per iteration decay factor of each channel. */
+    private double[] decayFactors;
+
+    /**
+     * Summed response onto each target per channel, relative to the base
+     * line, as of the current iteration.
+     */
+    private double[][] targetExcess;
+
+    /** Summed base line of the synapses onto each target. */
+    private final double[] targetBaseLine;
+
+    /** Pending arrivals, one slot of synapse indices per iteration. */
+    private final int[][] ring;
+
+    /** The number of arrivals in each slot of {@link #ring}. */
+    private final int[] ringCounts;
+
+    /** The total number of pending arrivals. */
+    private int pending;
+
+    /**
+     * The number of arrivals applied in the current iteration, which are
+     * still listed in the current slot of {@link #ring}.
+     */
+    private int delivered;
+
+    /** The current iteration, counted from when the propagator was built. */
+    private long step;
+
+    /** The network time of the last advance, or NaN before the first. */
+    private volatile double advancedTime;
+
+    /**
+     * Build a propagator and bind each synapse to it. Synapses which cannot
+     * be handled should already have been left out. The post-synaptic
+     * responses of the synapses, and the arrivals pending in the delay
+     * buffers of delayed synapses, are taken over.
+     *
+     * @param network the parent network
+     * @param sources the source neurons, in order
+     * @param sourcePointers start of each source's synapses
+     * @param synapses the synapses, ordered by source
+     * @param numTargets the number of neurons in the target group
+     */
+    SpikePropagator(final Network network, final Neuron[] sources,
+            final int[] sourcePointers, final Synapse[] synapses,
+            final int numTargets) {
+        this.network = network;
+        this.timeStep = network.getTimeStep();
+        this.checkedVersion = SpikeResponder.getLatestParameterVersion();
+        this.sources = sources;
+        this.sourcePointers = sourcePointers;
+        this.synapses = synapses;
+        int n = synapses.length;
+        targets = new int[n];
+        delays = new int[n];
+        channels = new int[n];
+        jumpHeights = new double[n];
+        excess = new double[n];
+        lastEvent = new long[n];
+        targetBaseLine = new double[numTargets];
+
+        Map<SpikeResponder, Boolean> distinct =
+                new IdentityHashMap<SpikeResponder, Boolean>();
+        double[] psr = new double[n];
+        int maxDelay = 0;
+        for (int k = 0; k < n; k++) {
+            Synapse s = synapses[k];
+            distinct.put(s.getSpikeResponder(), Boolean.TRUE);
+            targets[k] = s.getTarget().getStateIndex();
+            delays[k] = s.getDelay();
+            maxDelay = Math.max(maxDelay, delays[k]);
+            psr[k] = delays[k] == 0 ? s.getPsr() : s.getDelayedPsr();
+        }
+        responders = distinct.keySet()
+                .toArray(new SpikeResponder[distinct.size()]);
+        readParameters(psr);
+
+        ring = new int[maxDelay + 1][];
+        ringCounts = new int[maxDelay + 1];
+        for (int i = 0; i < ring.length; i++) {
+            ring[i] = new int[4];
+        }
+        for (int k = 0; k < n; k++) {
+            if (delays[k] > 0) {
+                takeDelayedArrivals(k, psr[k]);
+            }
+        }
+        // Not yet advanced, so the first read takes the spikes of its iteration
+        advancedTime = Double.NaN;
+        for (int k = 0; k < n; k++) {
+            synapses[k].bindSpikePropagator(this, k);
+        }
+    }
+
+    /**
+     * Read the parameters of the responders into channels, decay factors and
+     * jump heights, and set the response of each synapse, as of the current
+     * iteration.
+     *
+     * @param psr the post-synaptic response of each synapse
+     */
+    private void readParameters(final double[] psr) {
+        int n = synapses.length;
+        SpikeResponder[] prototypes = new SpikeResponder[responders.length];
+        int numChannels = 0;
+        for (int k = 0; k < n; k++) {
+            SpikeResponder sr = synapses[k].getSpikeResponder();
+            int c = 0;
+            while (c < numChannels && !sameChannel(prototypes[c], sr)) {
+                c++;
+            }
+            if (c == numChannels) {
+                prototypes[numChannels++] = sr;
+            }
+            channels[k] = c;
+            jumpHeights[k] = jumpHeight(sr);
+        }
+
+        convolved = new boolean[numChannels];
+        baseLines = new double[numChannels];
+        timeConstants = new double[numChannels];
+        decayFactors = new double[numChannels];
+        targetExcess = new double[numChannels][targetBaseLine.length];
+        Arrays.fill(targetBaseLine, 0);
+        for (int c = 0; c < numChannels; c++) {
+            convolved[c] = prototypes[c] instanceof ConvolvedJumpAndDecay;
+            baseLines[c] = baseLine(prototypes[c]);
+            timeConstants[c] = timeConstant(prototypes[c]);
+            decayFactors[c] = 1 - timeStep / timeConstants[c];
+        }
+        for (int k = 0; k < n; k++) {
+            int c = channels[k];
+            excess[k] = psr[k] - baseLines[c];
+            lastEvent[k] = step;
+            targetExcess[c][targets[k]] += excess[k];
+            targetBaseLine[targets[k]] += baseLines[c];
+        }
+    }
+
+    /**
+     * Schedule the arrivals pending in the delay buffer of a delayed synapse.
+     * An arrival is recognized where a buffered response is the jump of the
+     * synapse (jump and decay) or the previous response plus the jump
+     * (convolved), rather than the decay of the previous response.
+     *
+     * @param k the synapse index
+     * @param current the response the synapse passed on most recently
+     */
+    private void takeDelayedArrivals(final int k, final double current) {
+        Synapse s = synapses[k];
+        double[] buffered = new double[delays[k]];
+        s.getDelayedValues(buffered, 0);
+        double jump = jumpHeights[k] * s.getStrength();
+        boolean conv = convolved[channels[k]];
+        double previous = current;
+        for (int j = 0; j < buffered.length; j++) {
+            if (buffered[j] == (conv ? previous + jump : jump)) {
+                schedule(k, j + 1);
+            }
+            previous = buffered[j];
+        }
+    }
+
+    /**
+     * Whether a synapse can be handled by a spike propagator.
+     *
+     * @param s the synapse to check
+     * @return true if the synapse is enabled and has an exponentially
+     *         decaying spike responder
+     */
+    static boolean isPropagatable(final Synapse s) {
+        SpikeResponder sr = s.getSpikeResponder();
+        return s.isEnabled() && sr != null
+                && (sr.getClass() == JumpAndDecay.class
+                || sr.getClass() == ConvolvedJumpAndDecay.class);
+    }
+
+    /**
+     * Returns the summed post-synaptic response of this propagator's synapses
+     * onto a target neuron, advancing the propagator to the current network
+     * iteration first if needed.
+     *
+     * @param target the index of the target neuron in its group
+     * @return the summed post-synaptic response
+     */
+    public double getSynapticInput(final int target) {
+        if (network.getTime() != advancedTime) {
+            advance();
+        }
+        double sum = targetBaseLine[target];
+        for (int c = 0; c < targetExcess.length; c++) {
+            sum += targetExcess[c][target];
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the current post-synaptic response of one synapse.
+     *
+     * @param index the index of the synapse in this propagator
+     * @return its post-synaptic response
+     */
+    public double getPsr(final int index) {
+        int c = channels[index];
+        return baseLines[c] + excess[index]
+                * Math.pow(decayFactors[c], step - lastEvent[index]);
+    }
+
+    /**
+     * Re-read the responder parameters if the network time step or the
+     * parameters of one of this propagator's responders changed since they
+     * were read. The responses of the synapses and pending arrivals are kept.
+     */
+    private void checkParameters() {
+        long latest = SpikeResponder.getLatestParameterVersion();
+        boolean changed = network.getTimeStep() != timeStep;
+        if (latest != checkedVersion) {
+            for (int i = 0; !changed && i < responders.length; i++) {
+                changed = responders[i].getParameterVersion() > checkedVersion;
+            }
+            checkedVersion = latest;
+        }
+        if (!changed) {
+            return;
+        }
+        double[] psr = new double[synapses.length];
+        for (int k = 0; k < psr.length; k++) {
+            psr[k] = getPsr(k);
+        }
+        timeStep = network.getTimeStep();
+        readParameters(psr);
+    }
+
+    /**
+     * Unbind the synapses, writing their post-synaptic responses back to them
+     * so they can carry on being updated individually. The arrivals pending
+     * for a delayed synapse are written to its delay buffer, as the responses
+     * it will pass on in the coming iterations.
+     * <p>
+     * If the propagator has already advanced to the current network
+     * iteration, the synapses will go through that iteration again on their
+     * own, so they are handed back as they were before it: responses are
+     * taken back by one decay (or one jump, for a convolved synapse which
+     * received a spike), and the arrivals of the spikes pushed in this
+     * iteration are left for the synapses to push again.
+     */
+    synchronized void release() {
+        writeBack(true);
+    }
+
+    /**
+     * Write the post-synaptic responses and pending arrivals to the synapses
+     * as {@link #release()} does, but keep the synapses bound, so the
+     * propagator carries on as before. The synapses then hold the full state
+     * of the propagator, from which a new propagator would carry on the same
+     * way, e.g. after restoring a checkpoint.
+     */
+    synchronized void store() {
+        writeBack(false);
+    }
+
+    /**
+     * Write the post-synaptic responses and pending arrivals to the synapses.
+     *
+     * @param unbind whether to unbind the synapses from this propagator
+     */
+    private void writeBack(final boolean unbind) {
+        int n = synapses.length;
+        boolean redo = advancedTime == network.getTime();
+        boolean[] arrivedNow = new boolean[n];
+        if (redo) {
+            int[] arrivals = ring[(int) (step % ring.length)];
+            for (int i = 0; i < delivered; i++) {
+                arrivedNow[arrivals[i]] = true;
+            }
+        }
+
+        // Arrival offsets of each synapse, in order, as a compressed list
+        int[] pointers = new int[n + 1];
+        for (int j = 1; j < ring.length; j++) {
+            int slot = (int) ((step + j) % ring.length);
+            for (int i = 0; i < ringCounts[slot]; i++) {
+                pointers[ring[slot][i] + 1]++;
+            }
+        }
+        for (int k = 0; k < n; k++) {
+            pointers[k + 1] += pointers[k];
+        }
+        int[] offsets = new int[pending];
+        int[] fill = Arrays.copyOf(pointers, n);
+        for (int j = 1; j < ring.length; j++) {
+            int slot = (int) ((step + j) % ring.length);
+            for (int i = 0; i < ringCounts[slot]; i++) {
+                offsets[fill[ring[slot][i]]++] = j;
+            }
+        }
+
+        for (int k = 0; k < n; k++) {
+            Synapse s = synapses[k];
+            int c = channels[k];
+            double jump = jumpHeights[k] * s.getStrength();
+            double psr = getPsr(k);
+            double before = psr;
+            if (redo) {
+                if (arrivedNow[k] && convolved[c]) {
+                    before = psr - jump;
+                } else if (decayFactors[c] != 0) {
+                    before = baseLines[c]
+                            + (psr - baseLines[c]) / decayFactors[c];
+                }
+            }
+            if (unbind) {
+                s.bindSpikePropagator(null, -1);
+            }
+            if (delays[k] == 0) {
+                s.setPsr(before);
+                continue;
+            }
+            double[] buffered = new double[delays[k]];
+            double value = psr;
+            int next = pointers[k];
+            for (int i = 0; i < buffered.length; i++) {
+                int j = redo ? i : i + 1;
+                if (j == 0) {
+                    // The response passed on in the current iteration
+                } else if (next < pointers[k + 1] && offsets[next] == j) {
+                    value = convolved[c] ? value + jump : jump;
+                    next++;
+                } else {
+                    // As the responders decay individually
+                    value += timeStep * (baseLines[c] - value)
+                            / timeConstants[c];
+                }
+                buffered[i] = value;
+            }
+            s.setDelayedValues(buffered, 0);
+            s.setDelayedPsr(before);
+            s.setPsr(value);
+        }
+    }
+
+    /**
+     * Advance to the current network iteration: decay the summed responses,
+     * push the spikes of the source neurons and apply the arrivals which are
+     * due. Iterations in which the propagator was not read are caught up on.
+     */
+    private synchronized void advance() {
+        double now = network.getTime();
+        if (now == advancedTime) {
+            return;
+        }
+        checkParameters();
+        long elapsed = Double.isNaN(advancedTime) ? 1
+                : Math.max(1, Math.round((now - advancedTime) / timeStep));
+        // Catch up on skipped iterations, one at a time only while arrivals
+        // are pending
+        long skipped = elapsed - 1;
+        while (skipped > 0 && pending > 0) {
+            step++;
+            decay(1);
+            deliver();
+            skipped--;
+        }
+        if (skipped > 0) {
+            step += skipped;
+            decay(skipped);
+        }
+        step++;
+        decay(1);
+        for (int i = 0; i < sources.length; i++) {
+            if (sources[i].isSpike()) {
+                for (int k = sourcePointers[i], end = sourcePointers[i + 1];
+                        k < end; k++) {
+                    schedule(k, delays[k]);
+                }
+            }
+        }
+        deliver();
+        advancedTime = now;
+    }
+
+    /**
+     * Decay the summed responses onto every target.
+     *
+     * @param iterations the number of iterations to decay by
+     */
+    private void decay(final long iterations) {
+        for (int c = 0; c < targetExcess.length; c++) {
+            double f = iterations == 1 ? decayFactors[c]
+                    : Math.pow(decayFactors[c], iterations);
+            double[] ex = targetExcess[c];
+            for (int t = 0; t < ex.length; t++) {
+                ex[t] *= f;
+            }
+        }
+    }
+
+    /**
+     * Schedule the arrival of a spike at a synapse.
+     *
+     * @param k the synapse index
+     * @param after the number of iterations until the arrival, at most the
+     *            delay of the synapse
+     */
+    private void schedule(final int k, final int after) {
+        int slot = (int) ((step + after) % ring.length);
+        if (ringCounts[slot] == ring[slot].length) {
+            ring[slot] = Arrays.copyOf(ring[slot], ring[slot].length * 2);
+        }
+        ring[slot][ringCounts[slot]++] = k;
+        pending++;
+    }
+
+    /**
+     * Apply the arrivals due in the current iteration. A synapse receiving a
+     * spike does not decay in that iteration; a jump and decay responder is
+     * reset to the jump while a convolved one adds it.
+     */
+    private void deliver() {
+        int slot = (int) (step % ring.length);
+        int[] arrivals = ring[slot];
+        for (int i = 0, n = ringCounts[slot]; i < n; i++) {
+            int k = arrivals[i];
+            int c = channels[k];
+            double previous = excess[k]
+                    * Math.pow(decayFactors[c], step - 1 - lastEvent[k]);
+            double jump = jumpHeights[k] * synapses[k].getStrength();
+            double updated = convolved[c] ? previous + jump
+                    : jump - baseLines[c];
+            targetExcess[c][targets[k]] += updated
+                    - previous * decayFactors[c];
+            excess[k] = updated;
+            lastEvent[k] = step;
+        }
+        pending -= ringCounts[slot];
+        delivered = ringCounts[slot];
+        ringCounts[slot] = 0;
+    }
+
+    /**
+     * Whether two responders belong in the same channel.
+     *
+     * @param a a responder
+     * @param b another responder
+     * @return true if they are of the same class with the same base line and
+     *         time constant
+     */
+    private static boolean sameChannel(final SpikeResponder a,
+            final SpikeResponder b) {
+        return a.getClass() == b.getClass() && baseLine(a) == baseLine(b)
+                && timeConstant(a) == timeConstant(b);
+    }
+
+    /**
+     * @param sr a jump and decay or convolved jump and decay responder
+     * @return its base line
+     */
+    private static double baseLine(final SpikeResponder sr) {
+        return sr instanceof ConvolvedJumpAndDecay
+                ? ((ConvolvedJumpAndDecay) sr).getBaseLine()
+                : ((JumpAndDecay) sr).getBaseLine();
+    }
+
+    /**
+     * @param sr a jump and decay or convolved jump and decay responder
+     * @return its time constant
+     */
+    private static double timeConstant(final SpikeResponder sr) {
+        return sr instanceof ConvolvedJumpAndDecay
+                ? ((ConvolvedJumpAndDecay) sr).getTimeConstant()
+                : ((JumpAndDecay) sr).getTimeConstant();
+    }
+
+    /**
+     * @param sr a jump and decay or convolved jump and decay responder
+     * @return its jump height
+     */
+    private static double jumpHeight(final SpikeResponder sr) {
+        return sr instanceof ConvolvedJumpAndDecay
+                ? ((ConvolvedJumpAndDecay) sr).getJumpHeight()
+                : ((JumpAndDecay) sr).getJumpHeight();
+    }
+
+    /**
+     * @return the number of synapses handled by this propagator
+     */
+    public int getNumSynapses() {
+        return synapses.length;
+    }
+
+}
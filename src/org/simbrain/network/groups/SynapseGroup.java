@@ -39,12 +39,15 @@ import org.simbrain.network.core.Synapse;
 import org.simbrain.network.core.SynapseUpdateRule;
 import org.simbrain.network.synapse_update_rules.StaticSynapseRule;
 import org.simbrain.network.synapse_update_rules.spikeresponders.SpikeResponder;
+import org.simbrain.network.util.SimnetUtils;
 import org.simbrain.network.util.io_utilities.GroupDeserializer;
 import org.simbrain.network.util.io_utilities.GroupSerializer;
 import org.simbrain.network.util.io_utilities.GroupSerializer.Precision;
 import org.simbrain.util.SimbrainConstants;
 import org.simbrain.util.SimbrainConstants.Polarity;
 import org.simbrain.util.Utils;
+import org.simbrain.util.math.SimbrainRandom;
+import org.simbrain.util.math.SparseMatrix;
 import org.simbrain.util.randomizer.PolarizedRandomizer;
 
 /**
@@ -86,6 +89,19 @@ public class SynapseGroup extends Group {
     /** A set containing all the inhibitory (wt < 0) synapses in the group. */
     private Set<Synapse> inSynapseSet = new HashSet<Synapse>();
 
+    /**
+     * The contents of {@link #exSynapseSet} as an array, so that update does
+     * not allocate an iterator. Null if it must be rebuilt after the set
+     * changes.
+     */
+    private Synapse[] exUpdateArray;
+
+    /**
+     * The contents of {@link #inSynapseSet} as an array. Null if it must be
+     * rebuilt after the set changes.
+     */
+    private Synapse[] inUpdateArray;
+
     /**
      * A temporary set containing all the excitatory synapses in the group. Used
      * when saving synapse groups since the regular set is destroyed. If the
@@ -230,6 +246,42 @@ public class SynapseGroup extends Group {
     /** Whether or not to use the compressed rep or the full rep. */
     private boolean useFullRepOnSave = false;
 
+    /**
+     * Whether this group keeps its weights in a compressed sparse row matrix
+     * ({@link RowCompressedWeightMatrix}) which the target neurons read their
+     * weighted inputs from. Synapses remain in place and write through to
+     * the matrix.
+     */
+    private boolean compiled;
+
+    /**
+     * The compiled weights of this group. Null if not compiled or if the
+     * matrix must be rebuilt after a change in the group's synapses.
+     */
+    private RowCompressedWeightMatrix weightMatrix;
+
+    /** The synapses bound to each entry of {@link #weightMatrix}. */
+    private Synapse[] compiledSynapses;
+
+    /** The state arrays {@link #weightMatrix} is registered with. */
+    private NeuronStateArrays compiledTarget;
+
+    /**
+     * Whether spikes are propagated through this group as events, with the
+     * post-synaptic responses of its synapses kept by a
+     * {@link SpikePropagator} rather than updated synapse by synapse.
+     */
+    private boolean eventDriven;
+
+    /**
+     * The spike propagator of this group. Null if the group is not event
+     * driven or if the propagator must be rebuilt.
+     */
+    private SpikePropagator spikePropagator;
+
+    /** The state arrays {@link #spikePropagator} is registered with. */
+    private NeuronStateArrays propagatorTarget;
+
     /**
      * Completely creates a synapse group between the two neuron groups with all
      * default parameters. This method creates the individual connections.
@@ -408,6 +460,7 @@ public class SynapseGroup extends Group {
                 (int) (expectedNumSynapses * excitatoryRatio / 0.8));
         inSynapseSet = new HashSet<Synapse>(
                 (int) (expectedNumSynapses * (1 - excitatoryRatio) / 0.8));
+        clearUpdateArrays();
     }
 
     /**
@@ -439,6 +492,7 @@ public class SynapseGroup extends Group {
         }
         exSynapseSet.addAll(inSwitches);
         inSynapseSet.addAll(exSwitches);
+        clearUpdateArrays();
         excitatoryRatio = exSynapseSet.size() / (double) (size());
 
     }
@@ -448,6 +502,10 @@ public class SynapseGroup extends Group {
      * call super.update() some time during the custom update.
      */
     public void update() {
+        if (compiled && weightMatrix == null) {
+            compileWeights();
+        }
+        checkSpikePropagator();
         if (useGroupLevelSettings) {
             if (!exStatic) { // Only iterate if excitatory synapses aren't
                              // static
@@ -476,8 +534,14 @@ public class SynapseGroup extends Group {
      *
      */
     private void updateExcitatorySynapses() {
-        for (Synapse synapse : exSynapseSet) {
-            synapse.update();
+        Synapse[] synapses = exUpdateArray;
+        if (synapses == null) {
+            synapses = exSynapseSet.toArray(new Synapse[exSynapseSet.size()]);
+            exUpdateArray = synapses;
+        }
+        Network.SYNAPSE_UPDATES.add(synapses.length);
+        for (int i = 0; i < synapses.length; i++) {
+            synapses[i].update();
         }
     }
 
@@ -485,11 +549,26 @@ public class SynapseGroup extends Group {
      *
      */
     private void updateInhibitorySynapses() {
-        for (Synapse synapse : inSynapseSet) {
-            synapse.update();
+        Synapse[] synapses = inUpdateArray;
+        if (synapses == null) {
+            synapses = inSynapseSet.toArray(new Synapse[inSynapseSet.size()]);
+            inUpdateArray = synapses;
+        }
+        Network.SYNAPSE_UPDATES.add(synapses.length);
+        for (int i = 0; i < synapses.length; i++) {
+            synapses[i].update();
         }
     }
 
+    /**
+     * Discard the arrays used by update after synapses are added, removed or
+     * moved between the excitatory and inhibitory sets.
+     */
+    private void clearUpdateArrays() {
+        exUpdateArray = null;
+        inUpdateArray = null;
+    }
+
     /** {@inheritDoc} */
     public int size() {
         return exSynapseSet.size() + inSynapseSet.size();
@@ -592,8 +671,10 @@ public class SynapseGroup extends Group {
      * @return the deleted synapse
      */
     public Synapse removeSynapse(Synapse toDelete) {
+        invalidateCompiledWeights();
         exSynapseSet.remove(toDelete);
         inSynapseSet.remove(toDelete);
+        getParentNetwork().invalidateIndexes();
         toDelete.getSource().removeEfferent(toDelete);
         toDelete.getTarget().removeAfferent(toDelete);
         this.excitatoryRatio = getExcitatoryRatioPrecise();
@@ -623,6 +704,7 @@ public class SynapseGroup extends Group {
      * synapses in this group.
      */
     public void clear() {
+        invalidateCompiledWeights();
         for (Synapse toDelete : exSynapseSet) {
             // Remove references to this synapse from parent neurons
             toDelete.getSource().removeEfferent(toDelete);
@@ -641,6 +723,7 @@ public class SynapseGroup extends Group {
         }
         exSynapseSet.clear();
         inSynapseSet.clear();
+        getParentNetwork().invalidateIndexes();
     }
 
     /**
@@ -661,7 +744,7 @@ public class SynapseGroup extends Group {
                 addNewInhibitorySynapse(synapse);
             }
         } else {
-            double rand = Math.random();
+            double rand = SimbrainRandom.nextDouble();
             double correctionTerm = size() == 0 ? 0
                     : excitatoryRatio - (exSynapseSet.size() / (double) size());
             if (rand < (excitatoryRatio + correctionTerm)) {
@@ -678,6 +761,7 @@ public class SynapseGroup extends Group {
      *            this group.
      */
     public void addNewExcitatorySynapse(final Synapse synapse) {
+        invalidateCompiledWeights();
         getParentNetwork().fireGroupChanged(this, this, "synapseAdded");
         synapse.setId(getParentNetwork().getSynapseIdGenerator().getId());
         synapse.setParentGroup(this);
@@ -705,6 +789,7 @@ public class SynapseGroup extends Group {
      *            this group.
      */
     public void addNewInhibitorySynapse(final Synapse synapse) {
+        invalidateCompiledWeights();
         getParentNetwork().fireGroupChanged(this, this, "synapseAdded");
         synapse.setId(getParentNetwork().getSynapseIdGenerator().getId());
         synapse.setParentGroup(this);
@@ -760,6 +845,7 @@ public class SynapseGroup extends Group {
      * @param synapse the synapse to add.
      */
     public void addExcitatorySynapseUnsafe(final Synapse synapse) {
+        invalidateCompiledWeights();
         exSynapseSet.add(synapse);
         excitatoryRatio = exSynapseSet.size() / (double) size();
         if (getParentNetwork() != null) {
@@ -776,6 +862,7 @@ public class SynapseGroup extends Group {
      * @param synapse the synapse to add.
      */
     public void addInhibitorySynapseUnsafe(final Synapse synapse) {
+        invalidateCompiledWeights();
         inSynapseSet.add(synapse);
         excitatoryRatio = exSynapseSet.size() / (double) size();
         if (getParentNetwork() != null) {
@@ -873,6 +960,7 @@ public class SynapseGroup extends Group {
                 }
             }
         }
+        clearUpdateArrays();
         this.excitatoryRatio = excitatoryRatio;
     }
 
@@ -1237,6 +1325,7 @@ public class SynapseGroup extends Group {
             if (newWeight < 0) {
                 exSynapseSet.remove(synapse);
                 inSynapseSet.add(synapse);
+                clearUpdateArrays();
             }
             return true;
         }
@@ -1245,6 +1334,7 @@ public class SynapseGroup extends Group {
             if (newWeight > 0) {
                 inSynapseSet.remove(synapse);
                 exSynapseSet.add(synapse);
+                clearUpdateArrays();
             }
             return true;
         }
@@ -1383,6 +1473,58 @@ public class SynapseGroup extends Group {
         return recurrent;
     }
 
+    /**
+     * Estimate the spectral radius (the largest eigenvalue by modulus) of this
+     * group's weight matrix, working on the sparse connectivity so that it is
+     * practical for large recurrent groups. See
+     * {@link SparseMatrix#spectralRadius(double, int)}.
+     *
+     * @param tolerance relative tolerance of the estimate
+     * @param maxIterations limit on the number of matrix-vector products
+     * @param numThreads number of threads to multiply with
+     * @return the estimated spectral radius
+     * @throws IllegalStateException if the group is not recurrent
+     */
+    public double estimateSpectralRadius(double tolerance, int maxIterations,
+            int numThreads) {
+        if (!isRecurrent()) {
+            throw new IllegalStateException("Only a recurrent synapse group"
+                    + " has a spectral radius");
+        }
+        SparseMatrix weights = SimnetUtils.getSparseWeights(
+                getSourceNeurons(), getTargetNeurons());
+        weights.setNumThreads(numThreads);
+        return weights.spectralRadius(tolerance, maxIterations);
+    }
+
+    /**
+     * Estimate the spectral radius of this group's weight matrix with default
+     * settings, on as many threads as there are processors.
+     *
+     * @return the estimated spectral radius
+     * @throws IllegalStateException if the group is not recurrent
+     */
+    public double estimateSpectralRadius() {
+        return estimateSpectralRadius(SparseMatrix.DEFAULT_TOLERANCE,
+                SparseMatrix.DEFAULT_MAX_ITERATIONS, Runtime.getRuntime()
+                        .availableProcessors());
+    }
+
+    /**
+     * Scale the weights of this group so that their spectral radius is the
+     * given one. Does nothing if the spectral radius is zero.
+     *
+     * @param spectralRadius the desired spectral radius
+     * @throws IllegalStateException if the group is not recurrent
+     */
+    public void scaleSpectralRadius(double spectralRadius) {
+        double current = estimateSpectralRadius();
+        if (current > 0) {
+            SimnetUtils.scaleWeights(getSourceNeurons(), getTargetNeurons(),
+                    spectralRadius / current);
+        }
+    }
+
     /**
      * Tests if this synapse group is in fact recurrent (it's target and source
      * neuron groups are the same).
@@ -1648,6 +1790,7 @@ public class SynapseGroup extends Group {
                 exSynapseSet.clear();
                 excitatoryRatio = 0;
             }
+            clearUpdateArrays();
         }
     }
 
@@ -1702,15 +1845,21 @@ public class SynapseGroup extends Group {
      * @return
      */
     public Boolean isFrozen(Polarity polarity) {
-        SynapseParameterGetter<Boolean> frozenCheck = new SynapseParameterGetter<Boolean>() {
-            @Override
-            public Boolean getParameterFromSynapse(Synapse synapse) {
-                return synapse.isFrozen();
-            }
-        };
-        return checkSynapses(frozenCheck, polarity);
+        return checkSynapses(FROZEN_CHECK, polarity);
     }
 
+    /**
+     * Gets whether a synapse is frozen. Kept in a constant since
+     * {@link #update()} checks it every iteration.
+     */
+    private static final SynapseParameterGetter<Boolean> FROZEN_CHECK =
+            new SynapseParameterGetter<Boolean>() {
+                @Override
+                public Boolean getParameterFromSynapse(Synapse synapse) {
+                    return synapse.isFrozen();
+                }
+            };
+
     /**
      *
      * @param polarity
@@ -1947,13 +2096,29 @@ public class SynapseGroup extends Group {
         exSynapseSet = null;
     }
 
+    /**
+     * Perform operations required before writing a binary snapshot of the
+     * network. The synapses are written separately, so the group is left with
+     * empty synapse sets until {@link #postSaveReInit()} is called.
+     *
+     * @see org.simbrain.network.util.io_utilities.NetworkSnapshot
+     */
+    public void preSnapshotInit() {
+        compressedMatrixRep = null;
+        fullSynapseRep = null;
+        inTemp = inSynapseSet;
+        exTemp = exSynapseSet;
+        inSynapseSet = new HashSet<Synapse>();
+        exSynapseSet = new HashSet<Synapse>();
+    }
+
     /**
      * A post initialization which must be done if the user wants to save the
      * network, but continue using the network after saving (since the saving
      * process sets the synapse sets to null.
      */
     public void postSaveReInit() {
-        if (isUseGroupLevelSettings()) {
+        if (exTemp != null) {
             inSynapseSet = inTemp;
             exSynapseSet = exTemp;
             inTemp = null;
@@ -2034,6 +2199,12 @@ public class SynapseGroup extends Group {
         if (connectionManager instanceof Sparse) {
             ((Sparse) connectionManager).setPermitDensityEditing(false);
         }
+        if (compiled) {
+            setCompiled(true);
+        }
+        if (eventDriven) {
+            setEventDriven(true);
+        }
     }
 
     /**
@@ -2070,4 +2241,325 @@ public class SynapseGroup extends Group {
             }
         }        
     }
+    /**
+     * @return true if this group keeps its weights in a compiled matrix
+     */
+    public boolean isCompiled() {
+        return compiled;
+    }
+
+    /**
+     * Turn the compiled representation of this group on or off. When compiled,
+     * the weights are kept in a {@link RowCompressedWeightMatrix} and the
+     * target neurons compute their weighted input by multiplying its rows
+     * with the activation array of the source group, instead of visiting
+     * each synapse. Compiling a synapse group also compiles its source and
+     * target neuron groups. Synapses with a delay are left out of the matrix
+     * and handled individually as before.
+     * <p>
+     * Only weighted input ({@link Neuron#getWeightedInputs()}) is affected.
+     * Compiled synapses do not update their post-synaptic response when
+     * weighted inputs are summed.
+     *
+     * @param compiled whether to use the compiled representation
+     */
+    public void setCompiled(boolean compiled) {
+        this.compiled = compiled;
+        if (compiled) {
+            if (!sourceNeuronGroup.isCompiled()) {
+                sourceNeuronGroup.setCompiled(true);
+            }
+            if (!targetNeuronGroup.isCompiled()) {
+                targetNeuronGroup.setCompiled(true);
+            }
+            compileWeights();
+        } else {
+            invalidateCompiledWeights();
+        }
+    }
+
+    /**
+     * Returns the compiled weights of this group, building them first if the
+     * group is compiled but the matrix is out of date.
+     *
+     * @return the weight matrix, or null if the group is not compiled
+     */
+    public RowCompressedWeightMatrix getCompiledWeights() {
+        if (compiled && weightMatrix == null) {
+            compileWeights();
+        }
+        return weightMatrix;
+    }
+
+    /**
+     * Build the weight matrix and bind each synapse to its entry. Source
+     * neurons are visited in order so column indices within each row are
+     * sorted.
+     */
+    private synchronized void compileWeights() {
+        if (weightMatrix != null || exSynapseSet == null) {
+            return;
+        }
+        NeuronStateArrays src = sourceNeuronGroup.getStateArrays();
+        NeuronStateArrays tar = targetNeuronGroup.getStateArrays();
+        if (src == null || tar == null) {
+            return;
+        }
+        List<Neuron> sources = sourceNeuronGroup.getNeuronListUnsafe();
+        int numRows = tar.size();
+        int[] rowPointers = new int[numRows + 1];
+        for (Neuron source : sources) {
+            for (Synapse s : source.getFanOutUnsafe().values()) {
+                if (isCompilable(s, src, tar)) {
+                    rowPointers[s.getTarget().getStateIndex() + 1]++;
+                }
+            }
+        }
+        for (int i = 0; i < numRows; i++) {
+            rowPointers[i + 1] += rowPointers[i];
+        }
+        int numEntries = rowPointers[numRows];
+        int[] next = Arrays.copyOf(rowPointers, numRows);
+        int[] columnIndices = new int[numEntries];
+        double[] values = new double[numEntries];
+        Synapse[] bound = new Synapse[numEntries];
+        for (Neuron source : sources) {
+            for (Synapse s : source.getFanOutUnsafe().values()) {
+                if (isCompilable(s, src, tar)) {
+                    int k = next[s.getTarget().getStateIndex()]++;
+                    columnIndices[k] = source.getStateIndex();
+                    bound[k] = s;
+                }
+            }
+        }
+        RowCompressedWeightMatrix matrix = new RowCompressedWeightMatrix(
+                rowPointers, columnIndices, values, src.getActivations());
+        for (int k = 0; k < numEntries; k++) {
+            bound[k].bindWeightMatrix(matrix, k);
+        }
+        tar.addIncoming(matrix);
+        for (Neuron target : targetNeuronGroup.getNeuronListUnsafe()) {
+            target.invalidateCompiledInputs();
+        }
+        weightMatrix = matrix;
+        compiledSynapses = bound;
+        compiledTarget = tar;
+    }
+
+    /**
+     * Replace the weight matrix of this group with one that shares the arrays
+     * of the matrix of another group, of which this group is an exact copy.
+     * The weight values are copied by whichever group first changes a weight
+     * (see {@link RowCompressedWeightMatrix#share(double[])}), so many copies
+     * of a network can hold one set of unchanged weights. Does nothing if
+     * either group is not compiled.
+     *
+     * @param original the group this group was copied from
+     * @param copies maps each synapse of the original group to its copy in
+     *            this group
+     */
+    public synchronized void shareCompiledWeights(final SynapseGroup original,
+            final Map<?, ?> copies) {
+        RowCompressedWeightMatrix source = original.getCompiledWeights();
+        Synapse[] originalSynapses = original.compiledSynapses;
+        if (!compiled || source == null || originalSynapses == null) {
+            return;
+        }
+        Synapse[] bound = new Synapse[originalSynapses.length];
+        for (int k = 0; k < bound.length; k++) {
+            Object copy = copies.get(originalSynapses[k]);
+            if (!(copy instanceof Synapse)
+                    || ((Synapse) copy).getParentGroup() != this) {
+                return;
+            }
+            bound[k] = (Synapse) copy;
+        }
+        invalidateCompiledWeights();
+        NeuronStateArrays src = sourceNeuronGroup.getStateArrays();
+        NeuronStateArrays tar = targetNeuronGroup.getStateArrays();
+        if (src == null || tar == null) {
+            return;
+        }
+        RowCompressedWeightMatrix matrix = source.share(src.getActivations());
+        for (int k = 0; k < bound.length; k++) {
+            bound[k].bindWeightMatrix(matrix, k);
+        }
+        tar.addIncoming(matrix);
+        for (Neuron target : targetNeuronGroup.getNeuronListUnsafe()) {
+            target.invalidateCompiledInputs();
+        }
+        weightMatrix = matrix;
+        compiledSynapses = bound;
+        compiledTarget = tar;
+    }
+
+    /**
+     * Whether a synapse can be stored in the weight matrix of this group.
+     *
+     * @param s the synapse to check
+     * @param src the source state arrays
+     * @param tar the target state arrays
+     * @return true if the synapse belongs to this group, has no delay and
+     *         connects neurons bound to the source and target arrays
+     */
+    private boolean isCompilable(Synapse s, NeuronStateArrays src,
+            NeuronStateArrays tar) {
+        return s.getParentGroup() == this && s.getDelay() == 0
+                && s.getSource().getStateArrays() == src
+                && s.getTarget().getStateArrays() == tar;
+    }
+
+    /**
+     * Release the weight matrix and spike propagator, if any. Synapses fall
+     * back to being visited individually, and the matrix and propagator are
+     * rebuilt on the next update if the group is still compiled or event
+     * driven. Called whenever synapses are added or removed, or when the
+     * neuron groups this group connects change.
+     */
+    public synchronized void invalidateCompiledWeights() {
+        clearUpdateArrays();
+        releaseSpikePropagator();
+        if (weightMatrix == null) {
+            return;
+        }
+        compiledTarget.removeIncoming(weightMatrix);
+        for (Synapse s : compiledSynapses) {
+            s.bindWeightMatrix(null, -1);
+        }
+        for (Neuron target : targetNeuronGroup.getNeuronListUnsafe()) {
+            target.invalidateCompiledInputs();
+        }
+        weightMatrix = null;
+        compiledSynapses = null;
+        compiledTarget = null;
+    }
+
+    /**
+     * @return true if spikes are propagated through this group as events
+     */
+    public boolean isEventDriven() {
+        return eventDriven;
+    }
+
+    /**
+     * Turn event-driven spike propagation on or off. When event driven, the
+     * spikes of source neurons are pushed to a {@link SpikePropagator} which
+     * delivers them after each synapse's delay, and the exponential decay of
+     * post-synaptic responses is computed in closed form, so the cost of an
+     * update scales with the number of spikes rather than the number of
+     * synapses. Making a group event driven also compiles its source and
+     * target neuron groups, since the propagator indexes their neurons.
+     * <p>
+     * Only synaptic input ({@link Neuron#getSynapticInput()}) is affected,
+     * and only synapses with a jump and decay or convolved jump and decay
+     * responder are propagated as events; other synapses are updated
+     * individually as before.
+     *
+     * @param eventDriven whether to propagate spikes as events
+     */
+    public void setEventDriven(boolean eventDriven) {
+        this.eventDriven = eventDriven;
+        if (eventDriven) {
+            if (!sourceNeuronGroup.isCompiled()) {
+                sourceNeuronGroup.setCompiled(true);
+            }
+            if (!targetNeuronGroup.isCompiled()) {
+                targetNeuronGroup.setCompiled(true);
+            }
+            buildSpikePropagator();
+        } else {
+            releaseSpikePropagator();
+        }
+    }
+
+    /**
+     * @return the spike propagator of this group, or null if it is not event
+     *         driven or the propagator has not been built
+     */
+    public SpikePropagator getSpikePropagator() {
+        return spikePropagator;
+    }
+
+    /**
+     * Write the post-synaptic responses kept by the spike propagator, and the
+     * spikes in flight in it, to the synapses, whose post-synaptic responses
+     * and delay buffers then hold the whole state of the group. The
+     * propagator is kept, so the group updates as before. Does nothing if
+     * there is no propagator.
+     */
+    public synchronized void storeSpikePropagator() {
+        if (spikePropagator != null) {
+            spikePropagator.store();
+        }
+    }
+
+    /**
+     * Build the spike propagator if the group is event driven and the
+     * propagator was released since the last update. Called at the start of
+     * {@link #update()}, and by update actions which do not call it, so that
+     * the group does not stay updated synapse by synapse.
+     */
+    public void checkSpikePropagator() {
+        if (eventDriven && spikePropagator == null) {
+            buildSpikePropagator();
+        }
+    }
+
+    /**
+     * Build the spike propagator and register it with the target group.
+     * Source neurons are visited in order, so each source's synapses are
+     * contiguous.
+     */
+    private synchronized void buildSpikePropagator() {
+        if (spikePropagator != null || exSynapseSet == null
+                || getParentNetwork() == null) {
+            return;
+        }
+        NeuronStateArrays src = sourceNeuronGroup.getStateArrays();
+        NeuronStateArrays tar = targetNeuronGroup.getStateArrays();
+        if (src == null || tar == null) {
+            return;
+        }
+        List<Neuron> sourceList = sourceNeuronGroup.getNeuronListUnsafe();
+        Neuron[] sources = sourceList.toArray(new Neuron[sourceList.size()]);
+        int[] sourcePointers = new int[sources.length + 1];
+        List<Synapse> bound = new ArrayList<Synapse>();
+        for (int i = 0; i < sources.length; i++) {
+            for (Synapse s : sources[i].getFanOutUnsafe().values()) {
+                if (s.getParentGroup() == this
+                        && s.getTarget().getStateArrays() == tar
+                        && SpikePropagator.isPropagatable(s)) {
+                    bound.add(s);
+                }
+            }
+            sourcePointers[i + 1] = bound.size();
+        }
+        SpikePropagator propagator = new SpikePropagator(getParentNetwork(),
+                sources, sourcePointers,
+                bound.toArray(new Synapse[bound.size()]), tar.size());
+        tar.addPropagator(propagator);
+        for (Neuron target : targetNeuronGroup.getNeuronListUnsafe()) {
+            target.invalidateCompiledInputs();
+        }
+        spikePropagator = propagator;
+        propagatorTarget = tar;
+    }
+
+    /**
+     * Release the spike propagator, if any, handing the post-synaptic
+     * responses it kept back to the synapses.
+     */
+    private synchronized void releaseSpikePropagator() {
+        if (spikePropagator == null) {
+            return;
+        }
+        propagatorTarget.removePropagator(spikePropagator);
+        spikePropagator.release();
+        for (Neuron target : targetNeuronGroup.getNeuronListUnsafe()) {
+            target.invalidateCompiledInputs();
+        }
+        spikePropagator = null;
+        propagatorTarget = null;
+    }
+
 }
\ No newline at end of file
@@ -217,15 +217,16 @@ public class WeightMatrixViewer extends SimbrainJTableScrollPanel {
 
 
         @Override
-        public void setLogicalValue(int row, int column, Double value,
+        public void setLogicalDouble(int row, int column, double value,
                 boolean fireEvent) {
             setValue(row, column+1, value, fireEvent);
         }
 
 
         @Override
-        public Double getLogicalValueAt(int row, int col) {
-            return getValueAt(row, col+1);
+        public double getLogicalDoubleAt(int row, int col) {
+            Double value = getValueAt(row, col+1);
+            return value == null ? 0 : value;
         }
 
 
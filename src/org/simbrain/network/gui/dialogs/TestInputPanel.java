@@ -272,7 +272,7 @@ public class TestInputPanel extends DataPanel {
         table.updateRowSelection();
         for (int j = 0; j < inputNeurons.size(); j++) {
             inputNeurons.get(j).forceSetActivation(
-                    ((NumericTable) table.getData()).getLogicalValueAt(testRow,
+                    ((NumericTable) table.getData()).getLogicalDoubleAt(testRow,
                             j));
         }
         if (network != null) {
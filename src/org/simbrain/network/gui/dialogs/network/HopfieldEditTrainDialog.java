@@ -18,9 +18,15 @@
  */
 package org.simbrain.network.gui.dialogs.network;
 
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
 import javax.swing.Action;
 import javax.swing.Box;
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
+import javax.swing.JLabel;
 import javax.swing.JSeparator;
 import javax.swing.JTabbedPane;
 import javax.swing.SwingConstants;
@@ -79,8 +85,34 @@ public class HopfieldEditTrainDialog extends StandardDialog {
         propsBox.add(hopfieldPropsPanel);
         JSeparator separator = new JSeparator(SwingConstants.HORIZONTAL);
         propsBox.add(separator);
+        final HopfieldTrainer trainer = new HopfieldTrainer(hop);
+        final JComboBox<HopfieldTrainer.LearningRule> learningRules =
+                new JComboBox<HopfieldTrainer.LearningRule>(
+                        HopfieldTrainer.LearningRule.values());
+        learningRules.setSelectedItem(trainer.getLearningRule());
+        learningRules.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                trainer.setLearningRule((HopfieldTrainer.LearningRule)
+                        learningRules.getSelectedItem());
+            }
+        });
+        Box ruleBox = Box.createHorizontalBox();
+        ruleBox.add(new JLabel("Learning rule: "));
+        ruleBox.add(learningRules);
+        propsBox.add(ruleBox);
+        final JCheckBox normalized = new JCheckBox(
+                "Average Hebbian weights over patterns",
+                trainer.isNormalized());
+        normalized.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                trainer.setNormalized(normalized.isSelected());
+            }
+        });
+        propsBox.add(normalized);
         SimpleTrainerControlPanel controlPanel = new SimpleTrainerControlPanel(
-                np, new HopfieldTrainer(hop));
+                np, trainer);
         propsBox.add(controlPanel);
         tabbedPane.addTab("Properties", propsBox);
 
@@ -168,6 +168,24 @@ public abstract class AbstractSpikeResponsePanel extends JPanel {
     protected abstract void writeValuesToRules(
             final Collection<Synapse> synapses);
 
+    /**
+     * Give each synapse its own copy of its current spike responder. Spike
+     * responders may be shared by many synapses (e.g. the default responder),
+     * and {@link #writeValuesToRules(Collection)} sets their parameters in
+     * place, so this must be done before editing existing responders. The
+     * state each synapse keeps for its responder is unaffected.
+     *
+     * @param synapses
+     *            the synapses whose spike responders will be edited
+     */
+    protected static void copyResponders(final Collection<Synapse> synapses) {
+        for (Synapse s : synapses) {
+            if (s.getSpikeResponder() != null) {
+                s.setSpikeResponder(s.getSpikeResponder().deepCopy());
+            }
+        }
+    }
+
     /**
      * Tells this panel whether it is going to be editing spike responders, or
      * creating new ones and replacing the spike responders of each of the
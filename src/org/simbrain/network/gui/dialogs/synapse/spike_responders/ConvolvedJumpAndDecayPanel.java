@@ -131,6 +131,8 @@ public class ConvolvedJumpAndDecayPanel extends AbstractSpikeResponsePanel {
 
         if (!(synapse.getSpikeResponder() instanceof ConvolvedJumpAndDecay)) {
             synapse.setSpikeResponder(PROTOTYPE_RESPONDER.deepCopy());
+        } else {
+            copyResponders(Collections.singletonList(synapse));
         }
 
         writeValuesToRules(Collections.singletonList(synapse));
@@ -146,6 +148,8 @@ public class ConvolvedJumpAndDecayPanel extends AbstractSpikeResponsePanel {
             for (Synapse s : synapses) {
                 s.setSpikeResponder(PROTOTYPE_RESPONDER.deepCopy());
             }
+        } else {
+            copyResponders(synapses);
         }
 
         writeValuesToRules(synapses);
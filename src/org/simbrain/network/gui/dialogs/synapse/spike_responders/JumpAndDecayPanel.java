@@ -128,6 +128,8 @@ public class JumpAndDecayPanel extends AbstractSpikeResponsePanel {
 
         if (!(synapse.getSpikeResponder() instanceof JumpAndDecay)) {
             synapse.setSpikeResponder(PROTOTYPE_RESPONDER.deepCopy());
+        } else {
+            copyResponders(Collections.singletonList(synapse));
         }
 
         writeValuesToRules(Collections.singletonList(synapse));
@@ -143,6 +145,8 @@ public class JumpAndDecayPanel extends AbstractSpikeResponsePanel {
             for (Synapse s : synapses) {
                 s.setSpikeResponder(PROTOTYPE_RESPONDER.deepCopy());
             }
+        } else {
+            copyResponders(synapses);
         }
 
         writeValuesToRules(synapses);
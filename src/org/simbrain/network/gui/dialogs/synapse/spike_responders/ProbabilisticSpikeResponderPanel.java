@@ -118,6 +118,8 @@ public class ProbabilisticSpikeResponderPanel extends
 
         if (!(synapse.getSpikeResponder() instanceof ProbabilisticResponder)) {
             synapse.setSpikeResponder(PROTOTYPE_RESPONDER.deepCopy());
+        } else {
+            copyResponders(Collections.singletonList(synapse));
         }
 
         writeValuesToRules(Collections.singletonList(synapse));
@@ -134,6 +136,8 @@ public class ProbabilisticSpikeResponderPanel extends
             for (Synapse s : synapses) {
                 s.setSpikeResponder(PROTOTYPE_RESPONDER.deepCopy());
             }
+        } else {
+            copyResponders(synapses);
         }
 
         writeValuesToRules(synapses);
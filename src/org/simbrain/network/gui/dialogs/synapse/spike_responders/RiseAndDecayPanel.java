@@ -119,6 +119,8 @@ public class RiseAndDecayPanel extends AbstractSpikeResponsePanel {
 
         if (!(synapse.getSpikeResponder() instanceof RiseAndDecay)) {
             synapse.setSpikeResponder(PROTOTYPE_RESPONDER.deepCopy());
+        } else {
+            copyResponders(Collections.singletonList(synapse));
         }
 
         writeValuesToRules(Collections.singletonList(synapse));
@@ -135,6 +137,8 @@ public class RiseAndDecayPanel extends AbstractSpikeResponsePanel {
             for (Synapse s : synapses) {
                 s.setSpikeResponder(PROTOTYPE_RESPONDER.deepCopy());
             }
+        } else {
+            copyResponders(synapses);
         }
 
         writeValuesToRules(synapses);
@@ -356,9 +356,16 @@ public class IterativeControlsPanel extends JPanel {
             }
             ReflectivePropertyEditor editor = new ReflectivePropertyEditor();
             // TODO: un-exclude once those features are implemented!
-            editor.setExcludeList(new String[] { "iteration",
-                    "updateCompleted", "stoppingCond", "stoppingCondition",
-                    "iterationsBeforeStopping", "errorThreshold" });
+            if (trainer.isDataParallelSupported()) {
+                editor.setExcludeList(new String[] { "iteration",
+                        "updateCompleted", "stoppingCond", "stoppingCondition",
+                        "iterationsBeforeStopping", "errorThreshold" });
+            } else {
+                editor.setExcludeList(new String[] { "iteration",
+                        "updateCompleted", "stoppingCond", "stoppingCondition",
+                        "iterationsBeforeStopping", "errorThreshold",
+                        "dataParallel", "numThreads", "seed" });
+            }
             editor.setObject(trainer);
             JDialog dialog = editor.getDialog();
             dialog.setModal(true);
@@ -18,16 +18,27 @@
  */
 package org.simbrain.network.gui.trainer.subnetworkTrainingPanels;
 
+import java.awt.Cursor;
 import java.awt.Window;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 
 import javax.swing.BorderFactory;
+import javax.swing.Box;
+import javax.swing.BoxLayout;
+import javax.swing.JButton;
+import javax.swing.JLabel;
+import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JProgressBar;
+import javax.swing.JTextField;
+import javax.swing.SwingWorker;
 
 import org.simbrain.network.gui.NetworkPanel;
 import org.simbrain.network.subnetworks.EchoStateNetwork;
-import org.simbrain.network.trainers.LMSOffline;
+import org.simbrain.network.trainers.RidgeReadoutTrainer;
+import org.simbrain.network.trainers.Trainer.DataNotInitializedException;
+import org.simbrain.network.trainers.TrainerListener;
 
 /**
  * Panel for training ESN's.
@@ -38,14 +49,27 @@ import org.simbrain.network.trainers.LMSOffline;
  * harvested data from the reservoir network as inputs and the visible target
  * data as targets.
  *
- * This is similar to LMSOfflineTrainingPanel, but customized in light of the
- * above.
+ * The readout is trained by ridge regression on states streamed straight from
+ * the reservoir (see {@link EchoStateNetwork#getReadoutTrainer()}), so the
+ * harvested data is never stored. The washout and ridge penalty are set here.
  */
 @SuppressWarnings("serial")
 public class ESNOfflineTrainingPanel extends JPanel {
 
-    /** Reference to the controls panel. */
-    private final LMSOfflineControlPanel controlPanel;
+    /** The network being trained. */
+    private final EchoStateNetwork esn;
+
+    /** Number of initial rows not trained on. */
+    private final JTextField washout = new JTextField(10);
+
+    /** Ridge penalty. */
+    private final JTextField ridge = new JTextField(10);
+
+    /** The button which starts training. */
+    private final JButton applyButton = new JButton("Start");
+
+    /** The progress bar, tracking the progress of training. */
+    private final JProgressBar progressBar = new JProgressBar();
 
     /**
      * Construct an ESN Training Panel.
@@ -56,25 +80,117 @@ public class ESNOfflineTrainingPanel extends JPanel {
      */
     public ESNOfflineTrainingPanel(final NetworkPanel panel,
         final EchoStateNetwork esn, final Window frame) {
-        // Initialize control panel with no trainer. It has to be set
-        // After the apply button is pressed
-        controlPanel = new LMSOfflineControlPanel(frame);
+        this.esn = esn;
+        washout.setText(Integer.toString(esn.getWashout()));
+        washout.setMaximumSize(washout.getPreferredSize());
+        ridge.setText(Double.toString(RidgeReadoutTrainer.DEFAULT_RIDGE));
+        ridge.setMaximumSize(ridge.getPreferredSize());
+
+        JPanel controlPanel = new JPanel();
+        controlPanel.setLayout(new BoxLayout(controlPanel, BoxLayout.Y_AXIS));
         controlPanel.setBorder(BorderFactory.createTitledBorder("Controls"));
+        controlPanel.add(Box.createVerticalStrut(10));
+
+        Box washoutBox = Box.createHorizontalBox();
+        washoutBox.add(new JLabel("Washout (rows): "));
+        washoutBox.add(Box.createHorizontalGlue());
+        washoutBox.add(Box.createHorizontalStrut(100));
+        washoutBox.add(washout);
+        controlPanel.add(washoutBox);
+        controlPanel.add(Box.createVerticalStrut(10));
+
+        Box ridgeBox = Box.createHorizontalBox();
+        ridgeBox.add(new JLabel("Ridge Penalty: "));
+        ridgeBox.add(Box.createHorizontalGlue());
+        ridgeBox.add(Box.createHorizontalStrut(100));
+        ridgeBox.add(ridge);
+        controlPanel.add(ridgeBox);
+        controlPanel.add(Box.createVerticalStrut(10));
+
+        Box applyPanel = Box.createHorizontalBox();
+        applyPanel.add(Box.createHorizontalStrut(5));
+        applyPanel.add(progressBar);
+        applyPanel.add(Box.createHorizontalGlue());
+        applyPanel.add(Box.createHorizontalStrut(15));
+        applyPanel.add(applyButton);
+        applyPanel.add(Box.createHorizontalStrut(5));
+        controlPanel.add(applyPanel);
 
         // Add the panel
         add(controlPanel);
 
-        controlPanel.getApplyButton().addActionListener(new ActionListener() {
+        applyButton.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent arg0) {
-                if (controlPanel.getTrainer() == null) {
-                    controlPanel.setTrainer((LMSOffline) esn.getTrainer());
-                    controlPanel.addTrainerListeners();
-                }
-                controlPanel.runTrainer();
+                runTrainer();
             }
 
         });
     }
 
+    /**
+     * Make a trainer from the current settings and data, and run it.
+     */
+    private void runTrainer() {
+        final RidgeReadoutTrainer trainer;
+        try {
+            esn.setWashout(Integer.parseInt(washout.getText().trim()));
+            trainer = esn.getReadoutTrainer();
+            trainer.setRidge(Double.parseDouble(ridge.getText().trim()));
+        } catch (RuntimeException e) {
+            showError(e);
+            return;
+        }
+        trainer.addListener(new TrainerListener() {
+
+            @Override
+            public void beginTraining() {
+                progressBar.setValue(0);
+                applyButton.setEnabled(false);
+                setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+            }
+
+            @Override
+            public void endTraining() {
+                progressBar.setValue(100);
+            }
+
+            @Override
+            public void progressUpdated(String progressUpdate,
+                int percentComplete) {
+                progressBar.setValue(percentComplete);
+            }
+        });
+        SwingWorker<Void, Void> worker = new SwingWorker<Void, Void>() {
+            public Void doInBackground() {
+                try {
+                    trainer.apply();
+                } catch (DataNotInitializedException e) {
+                    showError(e);
+                } catch (RuntimeException e) {
+                    showError(e);
+                }
+                return null;
+            }
+
+            @Override
+            protected void done() {
+                applyButton.setEnabled(true);
+                setCursor(null); // Turn off wait cursor
+            }
+        };
+        worker.execute();
+    }
+
+    /**
+     * Tell the user why training could not be done.
+     *
+     * @param e the reason
+     */
+    private void showError(Exception e) {
+        progressBar.setValue(0);
+        JOptionPane.showMessageDialog(this, e.getMessage(), "Training Failed",
+            JOptionPane.ERROR_MESSAGE);
+    }
+
 }
@@ -21,6 +21,7 @@ package org.simbrain.network.neuron_update_rules;
 import org.simbrain.network.core.Network.TimeType;
 import org.simbrain.network.core.Neuron;
 import org.simbrain.network.core.NeuronUpdateRule;
+import org.simbrain.network.neuron_update_rules.interfaces.GroupUpdatable;
 import org.simbrain.network.neuron_update_rules.interfaces.NoisyUpdateRule;
 import org.simbrain.util.randomizer.Randomizer;
 
@@ -31,7 +32,7 @@ import org.simbrain.util.randomizer.Randomizer;
  * Vickrey.
  */
 public class HodgkinHuxleyRule extends NeuronUpdateRule
-        implements NoisyUpdateRule {
+        implements NoisyUpdateRule, GroupUpdatable {
 
     /** Sodium Channels */
     private float perNaChannels = 100f;
@@ -127,6 +128,56 @@ public class HodgkinHuxleyRule extends NeuronUpdateRule
 
     }
     
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getNumStateVariables() {
+        // Gating variables n, m and h
+        return 3;
+    }
+
+    /**
+     * {@inheritDoc} Gating variables start in the same steady state as a
+     * newly created rule.
+     */
+    @Override
+    public void initGroupState(final double[] state) {
+        for (int j = 0; j < state.length; j += 3) {
+            state[j] = n;
+            state[j + 1] = m;
+            state[j + 2] = h;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateGroup(final double[] in, final double[] state,
+            final double[] out, final double timeStep) {
+        for (int i = 0, j = 0, len = out.length; i < len; i++, j += 3) {
+            final double gn = state[j];
+            final double gm = state[j + 1];
+            final double gh = state[j + 2];
+            final double v = in[i];
+            final double bhv = 1 / (Math.exp((v + 30) / 10) + 1);
+            final double ahv = 0.07 * Math.exp(v / 20);
+            final double bmv = 4 * Math.exp(v / 18);
+            final double amv = 0.1 * (v + 25) / (Math.exp((v + 25) / 10) - 1);
+            final double bnv = 0.125 * Math.exp(v / 80);
+            final double anv = 0.01 * (v + 10) / (Math.exp((v + 10) / 10) - 1);
+            final double naCurrent = gna * (gm * gm * gm * gh) * (v - vna);
+            final double kCurrent = gk * (gn * gn * gn * gn) * (v - vk);
+            final double dvv = -1 * timeStep
+                    * (kCurrent + naCurrent + gl * (v - vl)) / cm;
+            out[i] = -1 * (v + dvv + resting_v);
+            state[j] = gn + (anv * (1 - gn) - bnv * gn) * timeStep;
+            state[j + 1] = gm + (amv * (1 - gm) - bmv * gm) * timeStep;
+            state[j + 2] = gh + (ahv * (1 - gh) - bhv * gh) * timeStep;
+        }
+    }
+
     // Initializer quickly hacked from old init. Zoë this is in your hands to fix! :)
      {
         cm = 1.0;
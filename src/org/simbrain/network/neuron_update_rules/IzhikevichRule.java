@@ -20,7 +20,9 @@ package org.simbrain.network.neuron_update_rules;
 
 import org.simbrain.network.core.Neuron;
 import org.simbrain.network.core.SpikingNeuronUpdateRule;
+import org.simbrain.network.neuron_update_rules.interfaces.GroupUpdatable;
 import org.simbrain.network.neuron_update_rules.interfaces.NoisyUpdateRule;
+import org.simbrain.util.math.SimbrainRandom;
 import org.simbrain.util.randomizer.Randomizer;
 
 /**
@@ -30,7 +32,7 @@ import org.simbrain.util.randomizer.Randomizer;
  * faster/cooler. Just a thought.
  */
 public class IzhikevichRule extends SpikingNeuronUpdateRule implements
-    NoisyUpdateRule {
+    NoisyUpdateRule, GroupUpdatable {
 
     /** Recovery. */
     private double recovery;
@@ -120,6 +122,53 @@ public class IzhikevichRule extends SpikingNeuronUpdateRule implements
         neuron.setBuffer(val);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getNumStateVariables() {
+        // Spike flag and recovery
+        return 2;
+    }
+
+    /**
+     * {@inheritDoc} Neurons start neither spiking nor recovering.
+     */
+    @Override
+    public void initGroupState(final double[] state) {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateGroup(final double[] in, final double[] state,
+            final double[] out, final double timeStep) {
+        for (int i = 0, j = 0, n = out.length; i < n; i++, j += 2) {
+            final double activation = out[i];
+            double inputs = in[i];
+            if (addNoise) {
+                inputs += noiseGenerator.getRandom();
+            }
+            inputs += iBg;
+            double rec = state[j + 1]
+                    + (timeStep * (a * ((b * activation) - state[j + 1])));
+            double v = activation
+                + (timeStep * (((.04 * (activation * activation))
+                    + (5 * activation) + 140)
+                    - rec + inputs));
+            if (v >= threshold) {
+                v = c;
+                rec += d;
+                state[j + SPIKE_STATE] = 1;
+            } else {
+                state[j + SPIKE_STATE] = 0;
+            }
+            state[j + 1] = rec;
+            out[i] = v;
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -127,7 +176,7 @@ public class IzhikevichRule extends SpikingNeuronUpdateRule implements
     public double getRandomValue() {
         // Equal chance of spiking or not spiking, taking on any value between
         // the resting potential and the threshold if not.
-        return 2 * (threshold - c) * Math.random() + c;
+        return 2 * (threshold - c) * SimbrainRandom.nextDouble() + c;
     }
 
     /**
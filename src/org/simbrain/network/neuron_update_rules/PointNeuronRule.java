@@ -30,6 +30,7 @@ import org.simbrain.network.listeners.NetworkEvent;
 import org.simbrain.network.listeners.SynapseListener;
 import org.simbrain.network.neuron_update_rules.interfaces.BiasedUpdateRule;
 import org.simbrain.util.math.SimbrainMath;
+import org.simbrain.util.math.SimbrainRandom;
 
 /**
  * <b>PointNeuron</b> from O'Reilley and Munakata, Computational Explorations in
@@ -340,7 +341,7 @@ public class PointNeuronRule extends NeuronUpdateRule implements
      */
     @Override
     public double getRandomValue() {
-        Random rand = new Random();
+        Random rand = SimbrainRandom.current();
         if (outputFunction == OutputFunction.DISCRETE_SPIKING) {
             return rand.nextBoolean() ? 1.0 : 0.0;
         } else if (outputFunction == OutputFunction.RATE_CODE) {
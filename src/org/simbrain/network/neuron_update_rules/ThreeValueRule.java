@@ -23,6 +23,7 @@ import java.util.Random;
 import org.simbrain.network.core.Network.TimeType;
 import org.simbrain.network.core.Neuron;
 import org.simbrain.network.core.NeuronUpdateRule;
+import org.simbrain.util.math.SimbrainRandom;
 
 /**
  * <b>ThreeValuedNeuron</b> is a natural extension of a binary neuron, which
@@ -91,7 +92,7 @@ public class ThreeValueRule extends NeuronUpdateRule {
      */
     @Override
     public double getRandomValue() {
-        Random rand = new Random();
+        Random rand = SimbrainRandom.current();
         int d = rand.nextInt(3);
         if (d == 0) {
             return lowerValue;
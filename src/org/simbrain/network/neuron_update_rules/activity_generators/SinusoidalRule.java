@@ -24,6 +24,7 @@ import org.simbrain.network.core.NeuronUpdateRule;
 import org.simbrain.network.neuron_update_rules.interfaces.ActivityGenerator;
 import org.simbrain.network.neuron_update_rules.interfaces.BoundedUpdateRule;
 import org.simbrain.network.neuron_update_rules.interfaces.NoisyUpdateRule;
+import org.simbrain.util.math.SimbrainRandom;
 import org.simbrain.util.randomizer.Randomizer;
 
 /**
@@ -155,7 +156,7 @@ public class SinusoidalRule extends NeuronUpdateRule implements
 
     @Override
     public double getRandomValue() {
-        double rand = (2 * Math.PI) * Math.random();
+        double rand = (2 * Math.PI) * SimbrainRandom.nextDouble();
         double range = getUpperBound() - getLowerBound();
         return ((range / 2) * Math.sin(frequency * rand + phase))
                 + ((getUpperBound() + getLowerBound()) / 2);
@@ -22,6 +22,7 @@ import org.simbrain.network.core.Network.TimeType;
 import org.simbrain.network.core.Neuron;
 import org.simbrain.network.core.SpikingNeuronUpdateRule;
 import org.simbrain.network.neuron_update_rules.interfaces.ActivityGenerator;
+import org.simbrain.util.math.SimbrainRandom;
 
 /**
  * <b>StochasticNeuron</b> is a simple type of random neuron which takes the
@@ -57,7 +58,7 @@ public class StochasticRule extends SpikingNeuronUpdateRule implements
 
     @Override
     public void update(Neuron neuron) {
-        double rand = Math.random();
+        double rand = SimbrainRandom.nextDouble();
         if (rand > 1-firingProbability) {
             neuron.setSpkBuffer(true);
             setHasSpiked(true, neuron);
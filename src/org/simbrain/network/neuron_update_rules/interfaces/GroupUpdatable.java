@@ -0,0 +1,63 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.neuron_update_rules.interfaces;
+
+/**
+ * An interface which should be implemented by any neuron update rule that can
+ * be shared by all the neurons of a group and update them in one pass over
+ * primitive arrays.
+ *
+ * @see org.simbrain.network.groups.NeuronGroup#setSharedRule(boolean)
+ */
+public interface GroupUpdatable {
+
+    /**
+     * Returns the number of state variables each neuron needs when this rule
+     * is shared by all the neurons of a group.
+     *
+     * @return the number of per-neuron state variables
+     */
+    int getNumStateVariables();
+
+    /**
+     * Set the initial state of every neuron in a group sharing this rule. The
+     * state of neuron <i>i</i> is held in the {@link #getNumStateVariables()}
+     * consecutive entries starting at <i>i</i> times that number.
+     *
+     * @param state the state array to initialize, all zeros on entry
+     */
+    void initGroupState(double[] state);
+
+    /**
+     * Update a whole group of neurons sharing this rule. Parameters come from
+     * the rule, which must not be modified; per-neuron state is kept in the
+     * state array laid out as in {@link #initGroupState(double[])}. Spiking
+     * rules flag a spike in state variable
+     * {@link org.simbrain.network.core.SpikingNeuronUpdateRule#SPIKE_STATE}.
+     *
+     * @param in the input to each neuron
+     * @param state the state variables of each neuron, updated in place
+     * @param out on entry the activation of each neuron, on return its new
+     *            activation
+     * @param timeStep the network time step
+     */
+    void updateGroup(double[] in, double[] state, double[] out,
+            double timeStep);
+
+}
@@ -34,14 +34,15 @@ import org.simbrain.network.groups.SynapseGroup;
 import org.simbrain.network.neuron_update_rules.LinearRule;
 import org.simbrain.network.neuron_update_rules.SigmoidalRule;
 import org.simbrain.network.trainers.LMSOffline;
+import org.simbrain.network.trainers.RidgeReadoutTrainer;
 import org.simbrain.network.trainers.Trainable;
 import org.simbrain.network.trainers.Trainer;
 import org.simbrain.network.trainers.TrainerListener;
 import org.simbrain.network.trainers.TrainingSet;
 import org.simbrain.network.util.NetworkLayoutManager;
 import org.simbrain.network.util.NetworkLayoutManager.Direction;
-import org.simbrain.network.util.SimnetUtils;
 import org.simbrain.util.math.NumericMatrix;
+import org.simbrain.util.math.RidgeRegression;
 import org.simbrain.util.math.SquashingFunction;
 import org.simbrain.util.randomizer.Randomizer;
 
@@ -94,6 +95,9 @@ public class EchoStateNetwork extends Subnetwork {
     /** Reference to input layer. */
     private NeuronGroup outputLayer;
 
+    /** The reservoir's recurrent weights. */
+    private SynapseGroup reservoirSynapses;
+
     /** Default TANH neurons for the reservoir */
     {
         ((SigmoidalRule) reservoirNeuronType)
@@ -134,6 +138,12 @@ public class EchoStateNetwork extends Subnetwork {
      */
     private double[][] targetData;
 
+    /**
+     * Number of initial rows of data which only let the reservoir settle and
+     * are not trained on by the readout trainer.
+     */
+    private int washout = 100;
+
     /**
      * Constructor with size of layers specified.
      *
@@ -213,9 +223,9 @@ public class EchoStateNetwork extends Subnetwork {
         numResNodes = reservoirLayer.size();
         addNeuronGroup(neuronGroup);
         addSynapseGroup(synapseGroup);
+        reservoirSynapses = synapseGroup;
         // Scale the reservoir's weights to have the desired spectral radius
-        SimnetUtils.scaleEigenvalue(reservoirLayer.getNeuronList(),
-            reservoirLayer.getNeuronList(), spectralRadius);
+        reservoirSynapses.scaleSpectralRadius(spectralRadius);
     }
 
     /**
@@ -278,8 +288,9 @@ public class EchoStateNetwork extends Subnetwork {
         Sparse outToRes) {
 
         addSynapseGroup(connectNeuronGroups(inputLayer, reservoirLayer, inToRes));
-        addSynapseGroup(connectNeuronGroups(reservoirLayer, reservoirLayer,
-            resRecurrent));
+        reservoirSynapses = connectNeuronGroups(reservoirLayer,
+            reservoirLayer, resRecurrent);
+        addSynapseGroup(reservoirSynapses);
 
         if (backWeights) {
             addSynapseGroup(connectNeuronGroups(outputLayer, reservoirLayer,
@@ -303,8 +314,7 @@ public class EchoStateNetwork extends Subnetwork {
         }
 
         // Scale the reservoir's weights to have the desired spectral radius
-        SimnetUtils.scaleEigenvalue(reservoirLayer.getNeuronList(),
-            reservoirLayer.getNeuronList(), spectralRadius);
+        reservoirSynapses.scaleSpectralRadius(spectralRadius);
 
     }
 
@@ -346,20 +356,7 @@ public class EchoStateNetwork extends Subnetwork {
         }
 
         // Build the network to be used in state harvesting
-        final ArrayList<Neuron> full = new ArrayList<Neuron>();
-        if (directInOutWeights) {
-            for (Neuron node : getInputLayer().getNeuronList()) {
-                full.add(node);
-            }
-        }
-        for (Neuron node : reservoirLayer.getNeuronList()) {
-            full.add(node);
-        }
-        if (recurrentOutWeights) {
-            for (Neuron node : this.getOutputLayer().getNeuronList()) {
-                full.add(node);
-            }
-        }
+        final List<Neuron> full = getStateNeurons();
 
         // Handle non-linearities in the outputs.
         // If output layer neurons are sigmoidal, transform the desired
@@ -422,6 +419,90 @@ public class EchoStateNetwork extends Subnetwork {
 
     }
 
+    /**
+     * Return a trainer which trains the readout of this ESN by ridge
+     * regression in a single pass over the data. States are added to the
+     * regression as they are produced and never stored, so memory does not
+     * depend on the length of the data. The first {@link #getWashout()} rows
+     * only let the reservoir settle and are not trained on. Targets for
+     * sigmoidal outputs are put through the inverse of the sigmoid as they are
+     * used; the target data itself is left unchanged.
+     *
+     * @return the trainer
+     */
+    public RidgeReadoutTrainer getReadoutTrainer() {
+
+        if (targetData != null
+            && targetData[0].length != outputLayer.getNeuronList().size()) {
+            throw new IllegalArgumentException("Output data length does not "
+                + "match the number of output nodes");
+        }
+
+        final List<Neuron> full = getStateNeurons();
+        Trainable trainable = Trainer.getTrainable(this, full,
+            outputLayer.getNeuronList(), inputData, targetData);
+
+        return new RidgeReadoutTrainer(trainable) {
+            @Override
+            protected void harvest(RidgeRegression regression)
+                throws DataNotInitializedException {
+                if (inputData == null) {
+                    throw new DataNotInitializedException(
+                        "Input data not initalized");
+                }
+                if (targetData == null) {
+                    throw new DataNotInitializedException(
+                        "Target data not initalized");
+                }
+                List<Neuron> outputs = outputLayer.getNeuronList();
+                double[] state = new double[full.size()];
+                double[] target = new double[outputs.size()];
+                int rows = Math.min(inputData.length, targetData.length);
+                int reportEvery = Math.max(1, rows / 45);
+                for (int row = 0; row < rows; row++) {
+                    step(row);
+                    if (row % reportEvery == 0) {
+                        fireProgressUpdate("Harvesting States...",
+                            90 * row / rows);
+                    }
+                    if (row < washout) {
+                        continue;
+                    }
+                    getState(row, state);
+                    for (int i = 0; i < target.length; i++) {
+                        NeuronUpdateRule rule = outputs.get(i).getUpdateRule();
+                        if (rule instanceof SigmoidalRule) {
+                            target[i] = ((SigmoidalRule) rule)
+                                .getInverse(targetData[row][i]);
+                        } else {
+                            target[i] = targetData[row][i];
+                        }
+                    }
+                    regression.addRow(state, target);
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns the neurons whose states the readout is trained on: the inputs
+     * if there are direct input to output weights, the reservoir, and the
+     * outputs if there are recurrent output weights, in that order.
+     *
+     * @return the state neurons
+     */
+    private List<Neuron> getStateNeurons() {
+        List<Neuron> full = new ArrayList<Neuron>();
+        if (directInOutWeights) {
+            full.addAll(inputLayer.getNeuronList());
+        }
+        full.addAll(reservoirLayer.getNeuronList());
+        if (recurrentOutWeights) {
+            full.addAll(outputLayer.getNeuronList());
+        }
+        return full;
+    }
+
     /**
      * A general method for harvesting state data for an arbitrary Echo-State
      * Network. This method iterates through each row of input and teacher data
@@ -449,76 +530,90 @@ public class EchoStateNetwork extends Subnetwork {
         // State matrix
         double[][] returnMatrix = new double[inputData.length][columnNumber];
 
-        boolean harvest = false;
-
         // Two full passes over the data, one where states are being harvested
         // and one where internal dynamics are being allowed to settle.
         for (int t = 0; t < 2; t++) {
-
-            // Iterate through each row of input data
             for (int row = 0; row < inputData.length; row++) {
-
-                int col = 0;
-
-                // Clamp input neurons based on input data
-                for (Neuron neuron : getInputLayer().getNeuronList()) {
-                    double clampValue = inputData[row][col];
-                    neuron.setActivation(clampValue);
-                    if (directInOutWeights && harvest) {
-                        // Add input states to state matrix if direct in to out
-                        // connections are desired
-                        returnMatrix[row][col] = neuron.getActivation();
-                        col++;
-                    }
-
+                step(row);
+                if (t == 1) {
+                    getState(row, returnMatrix[row]);
                 }
+            }
+        }
 
-                if (backWeights) {
-                    int count = 0;
-                    double clampValue = 0.5;
-                    for (Neuron neuron : getOutputLayer().getNeuronList()) {
-                        // Teacher forcing
-                        if (row > 0) {
-                            clampValue = targetData[row - 1][count];
-                        }
-                        neuron.setActivation(clampValue);
-                        count++;
-                    }
-                }
+        return returnMatrix;
+    }
 
-                // Update the reservoir: handles teacher-forced back-weights
-                for (Neuron n : getReservoirLayer().getNeuronList()) {
-                    n.update();
-                }
-                for (Neuron n : getReservoirLayer().getNeuronList()) {
-                    double val = n.getBuffer();
+    /**
+     * Run the reservoir on one row of data: clamp the inputs, teacher-force
+     * the outputs to the previous row of targets if there are back weights,
+     * and update the reservoir.
+     *
+     * @param row the row of data
+     */
+    private void step(int row) {
 
-                    if (noise) {
-                        n.setActivation(val + reservoirNoise());
-                    } else {
-                        n.setActivation(val);
-                    }
+        // Clamp input neurons based on input data. The input layer is
+        // clamped, so activations must be forced.
+        int col = 0;
+        for (Neuron neuron : getInputLayer().getNeuronList()) {
+            neuron.forceSetActivation(inputData[row][col]);
+            col++;
+        }
 
-                    if (harvest) {
-                        returnMatrix[row][col] = n.getActivation();
-                    }
-                    col++;
+        if (backWeights) {
+            int count = 0;
+            double clampValue = 0.5;
+            for (Neuron neuron : getOutputLayer().getNeuronList()) {
+                // Teacher forcing
+                if (row > 0) {
+                    clampValue = targetData[row - 1][count];
                 }
+                neuron.forceSetActivation(clampValue);
+                count++;
+            }
+        }
 
-                // Add output states to state matrix if there are recurrent
-                // outputs
-                if (recurrentOutWeights && harvest) {
-                    for (int i = 0; i < targetData[0].length; i++) {
-                        // Teacher-forcing
-                        returnMatrix[row][col] = targetData[row][i];
-                        col++;
-                    }
-                }
+        // Update the reservoir: handles teacher-forced back-weights
+        for (Neuron n : getReservoirLayer().getNeuronList()) {
+            n.update();
+        }
+        for (Neuron n : getReservoirLayer().getNeuronList()) {
+            double val = n.getBuffer();
+            if (noise) {
+                n.setActivation(val + reservoirNoise());
+            } else {
+                n.setActivation(val);
             }
-            harvest = true;
         }
+    }
 
-        return returnMatrix;
+    /**
+     * Copy the current state into an array, as concatenated input (if there
+     * are direct input to output weights), reservoir, and teacher-forced
+     * output (if there are recurrent output weights) states.
+     *
+     * @param row the row of data just run
+     * @param state array of length the number of state neurons
+     */
+    private void getState(int row, double[] state) {
+        int col = 0;
+        if (directInOutWeights) {
+            // Add input states if direct in to out connections are desired
+            for (Neuron neuron : getInputLayer().getNeuronList()) {
+                state[col++] = neuron.getActivation();
+            }
+        }
+        for (Neuron n : getReservoirLayer().getNeuronList()) {
+            state[col++] = n.getActivation();
+        }
+        // Add output states if there are recurrent outputs
+        if (recurrentOutWeights) {
+            for (int i = 0; i < targetData[0].length; i++) {
+                // Teacher-forcing
+                state[col++] = targetData[row][i];
+            }
+        }
     }
 
     /**
@@ -531,13 +626,25 @@ public class EchoStateNetwork extends Subnetwork {
     }
 
     /**
-     * Set spectral radius.
+     * @return the desired spectral radius of the reservoir's weights
+     */
+    public double getSpectralRadius() {
+        return spectralRadius;
+    }
+
+    /**
+     * Set spectral radius. If the reservoir has been connected its weights are
+     * rescaled to have it, using an estimate from the sparse weights (see
+     * {@link SynapseGroup#scaleSpectralRadius(double)}).
      *
      * @param spectralRadius
      *            the spectral radius
      */
     public void setSpectralRadius(double spectralRadius) {
         this.spectralRadius = spectralRadius;
+        if (reservoirSynapses != null) {
+            reservoirSynapses.scaleSpectralRadius(spectralRadius);
+        }
     }
 
     /**
@@ -629,6 +736,21 @@ public class EchoStateNetwork extends Subnetwork {
         this.targetData = targetData;
     }
 
+    /**
+     * @return the number of initial rows not trained on
+     */
+    public int getWashout() {
+        return washout;
+    }
+
+    /**
+     * @param washout
+     *            the number of initial rows not trained on
+     */
+    public void setWashout(int washout) {
+        this.washout = Math.max(0, washout);
+    }
+
     /**
      * @return the noise
      */
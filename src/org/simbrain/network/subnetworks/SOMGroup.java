@@ -28,6 +28,7 @@ import org.simbrain.network.groups.NeuronGroup;
 import org.simbrain.network.layouts.HexagonalGridLayout;
 import org.simbrain.network.layouts.Layout;
 import org.simbrain.network.neuron_update_rules.LinearRule;
+import org.simbrain.util.math.SimbrainRandom;
 
 /**
  * <b>SOM</b> implements a Self-Organizing Map network.
@@ -152,7 +153,7 @@ public class SOMGroup extends NeuronGroup {
         for (Neuron n : getNeuronList()) {
             for (Synapse s : n.getFanIn()) {
                 s.setLowerBound(0);
-                s.setStrength(s.getUpperBound() * Math.random());
+                s.setStrength(s.getUpperBound() * SimbrainRandom.nextDouble());
             }
         }
     }
@@ -19,13 +19,13 @@
 package org.simbrain.network.subnetworks;
 
 import java.util.List;
-import java.util.Random;
 import java.util.ArrayList;
 
 import org.simbrain.network.core.Network;
 import org.simbrain.network.core.Neuron;
 import org.simbrain.network.groups.NeuronGroup;
 import org.simbrain.network.neuron_update_rules.LinearRule;
+import org.simbrain.util.math.SimbrainRandom;
 
 /**
  * <b>WinnerTakeAll</b>.The neuron with the highest weighted input in a
@@ -53,9 +53,6 @@ public class WinnerTakeAll extends NeuronGroup {
     /** Probability of setting the winner randomly, when useRandom is true. */
     private double randomProb = .1;
 
-    /** Random number generator. */
-    private static Random rand = new Random();
-
     /**
      * Copy constructor.
      *
@@ -100,9 +97,9 @@ public class WinnerTakeAll extends NeuronGroup {
     public void update() {
         Neuron winner = getWinner();
         if (useRandom) {
-            if (Math.random() < randomProb) {
-                winner = getNeuronList()
-                        .get(rand.nextInt(getNeuronList().size()));
+            if (SimbrainRandom.nextDouble() < randomProb) {
+                winner = getNeuronList().get(SimbrainRandom.current()
+                        .nextInt(getNeuronList().size()));
             }
         }
         for (Neuron neuron : getNeuronList()) {
@@ -169,7 +166,8 @@ public class WinnerTakeAll extends NeuronGroup {
         if (winners.size() == 1) {
             return winner;
         } else {
-            return winners.get(rand.nextInt(winners.size()));
+            return winners.get(
+                    SimbrainRandom.current().nextInt(winners.size()));
         }
 
     }
@@ -0,0 +1,339 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.sweep;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Supplier;
+
+import org.simbrain.network.core.Network;
+import org.simbrain.network.core.NetworkUpdateAction;
+import org.simbrain.network.update_actions.ParallelBufferedUpdate;
+import org.simbrain.network.util.NetworkCopier;
+import org.simbrain.util.math.SimbrainRandom;
+
+/**
+ * Runs many variants of a network in parallel and collects measurements of
+ * each into a table. Every combination of the values of the parameters is
+ * run, {@link #setRepetitions(int) repetitions} times each. For example:
+ *
+ * <pre>
+ * ParameterSweep sweep = new ParameterSweep(network);
+ * sweep.addParameter(SweepParameter.synapseGroupStrength("Recurrent", 0.5, 1, 2));
+ * sweep.addParameter(SweepParameter.neuronGroupRule("Input", new LinearRule(),
+ *         new SigmoidalRule()));
+ * sweep.addMetric("mean activation", n -> mean(n.getActivations()));
+ * sweep.setIterations(1000);
+ * SweepResult result = sweep.run();
+ * </pre>
+ *
+ * Each run gets its own copy of the network and is updated on a single thread
+ * with network events turned off; parallel update actions of the copy are
+ * replaced with single threaded ones. The random number generators of that
+ * thread are seeded for the run (see {@link SimbrainRandom}), so a run with
+ * the same seed gives the same results whatever the number of threads.
+ */
+public class ParameterSweep {
+
+    /** Creates a fresh copy of the network for each run. */
+    private final Supplier<Network> networkSource;
+
+    /** The parameters to sweep. */
+    private final List<SweepParameter<?>> parameters =
+            new ArrayList<SweepParameter<?>>();
+
+    /** Measurements to make after each run, by name. */
+    private final Map<String, SweepMetric> metrics =
+            new LinkedHashMap<String, SweepMetric>();
+
+    /** Number of iterations in each run. */
+    private int iterations = 1000;
+
+    /** Number of runs of each combination of parameter values. */
+    private int repetitions = 1;
+
+    /** Number of runs made at once. */
+    private int numThreads = Runtime.getRuntime().availableProcessors();
+
+    /** Seed from which the seed of each run is derived. */
+    private long seed = System.nanoTime();
+
+    /**
+     * Sweep copies of a network. The network is copied once, when this
+     * constructor is called, and that copy is copied for each run; later
+     * changes to the network do not affect the sweep.
+     *
+     * @param base the network to copy
+     */
+    public ParameterSweep(final Network base) {
+        final Network template = NetworkCopier.copy(base);
+        networkSource = new Supplier<Network>() {
+            @Override
+            public Network get() {
+                return NetworkCopier.copy(template);
+            }
+        };
+    }
+
+    /**
+     * Sweep networks built by a factory. Building a network in code is often
+     * faster than copying one. The factory is called from several threads at
+     * once.
+     *
+     * @param factory creates a new network for each run
+     */
+    public ParameterSweep(final Supplier<Network> factory) {
+        networkSource = factory;
+    }
+
+    /**
+     * Add a parameter to sweep. Parameters are set in the order they are
+     * added.
+     *
+     * @param parameter the parameter
+     */
+    public void addParameter(final SweepParameter<?> parameter) {
+        parameters.add(parameter);
+    }
+
+    /**
+     * Add a measurement to make at the end of each run.
+     *
+     * @param name the name of the metric, used as a column name
+     * @param metric the metric
+     */
+    public void addMetric(final String name, final SweepMetric metric) {
+        metrics.put(name, metric);
+    }
+
+    /**
+     * @return the number of runs the sweep will make
+     */
+    public int getNumRuns() {
+        int runs = repetitions;
+        for (SweepParameter<?> p : parameters) {
+            runs *= p.getValues().size();
+        }
+        return runs;
+    }
+
+    /**
+     * Run the sweep.
+     *
+     * @return the results, one row per run, in order: the last parameter
+     *         varies fastest, then the repetitions of each combination
+     * @throws InterruptedException if interrupted while waiting for runs
+     * @throws IllegalStateException if a run fails
+     */
+    public SweepResult run() throws InterruptedException {
+        int numRuns = getNumRuns();
+        List<String> columns = new ArrayList<String>();
+        for (SweepParameter<?> p : parameters) {
+            columns.add(p.getName());
+        }
+        columns.add(SweepResult.SEED);
+        int firstMetric = columns.size();
+        columns.addAll(metrics.keySet());
+
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(numThreads, numRuns)),
+                new ThreadFactory() {
+                    private int count;
+
+                    @Override
+                    public synchronized Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "Sweep " + ++count);
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        try {
+            List<Future<Object[]>> futures = new ArrayList<Future<Object[]>>();
+            for (int run = 0; run < numRuns; run++) {
+                final int runIndex = run;
+                final int numColumns = columns.size();
+                futures.add(executor.submit(new Callable<Object[]>() {
+                    @Override
+                    public Object[] call() {
+                        return doRun(runIndex, numColumns);
+                    }
+                }));
+            }
+            Object[][] rows = new Object[numRuns][];
+            for (int run = 0; run < numRuns; run++) {
+                try {
+                    rows[run] = futures.get(run).get();
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException(
+                            "Run " + run + " of the sweep failed",
+                            e.getCause());
+                }
+            }
+            return new SweepResult(columns, firstMetric, rows);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Make one run.
+     *
+     * @param run index of the run
+     * @param numColumns number of columns in the results
+     * @return the row of results
+     */
+    private Object[] doRun(final int run, final int numColumns) {
+        long runSeed = mix(seed + run);
+        SimbrainRandom.setSeed(runSeed);
+        Network network = networkSource.get();
+        network.setFireUpdates(false);
+
+        // Decode the combination, last parameter fastest
+        int[] indices = new int[parameters.size()];
+        int combination = run / repetitions;
+        for (int i = parameters.size() - 1; i >= 0; i--) {
+            int size = parameters.get(i).getValues().size();
+            indices[i] = combination % size;
+            combination /= size;
+        }
+        Object[] row = new Object[numColumns];
+        int column = 0;
+        for (int i = 0; i < parameters.size(); i++) {
+            parameters.get(i).apply(network, indices[i]);
+            row[column++] = parameters.get(i).describe(indices[i]);
+        }
+
+        useSingleThread(network);
+        try {
+            for (int i = 0; i < iterations; i++) {
+                network.update();
+            }
+        } finally {
+            network.getUpdateManager().dispose();
+        }
+
+        row[column++] = runSeed;
+        for (SweepMetric metric : metrics.values()) {
+            row[column++] = metric.measure(network);
+        }
+        return row;
+    }
+
+    /**
+     * Replace parallel update actions of a network with single threaded
+     * ones, so that every random number of a run comes from the seeded
+     * generators of the run's thread.
+     *
+     * @param network the network of a run
+     */
+    private static void useSingleThread(final Network network) {
+        List<NetworkUpdateAction> actions = network.getUpdateManager()
+                .getActionList();
+        for (int i = 0; i < actions.size(); i++) {
+            if (actions.get(i) instanceof ParallelBufferedUpdate) {
+                ((ParallelBufferedUpdate) actions.get(i)).shutdown();
+                actions.set(i, new ParallelBufferedUpdate(network, 1));
+            }
+        }
+    }
+
+    /**
+     * Scramble a number, so that the seeds of consecutive runs are unrelated.
+     * This is the finalizer of the SplitMix64 generator.
+     *
+     * @param z the number
+     * @return the scrambled number
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * @return the number of iterations in each run
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * @param iterations the number of iterations in each run
+     */
+    public void setIterations(final int iterations) {
+        this.iterations = iterations;
+    }
+
+    /**
+     * @return the number of runs of each combination of parameter values
+     */
+    public int getRepetitions() {
+        return repetitions;
+    }
+
+    /**
+     * @param repetitions the number of runs of each combination of parameter
+     *            values, each with a different seed
+     */
+    public void setRepetitions(final int repetitions) {
+        if (repetitions < 1) {
+            throw new IllegalArgumentException("At least one repetition");
+        }
+        this.repetitions = repetitions;
+    }
+
+    /**
+     * @return the number of runs made at once
+     */
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    /**
+     * @param numThreads the number of runs to make at once; by default the
+     *            number of processors
+     */
+    public void setNumThreads(final int numThreads) {
+        this.numThreads = numThreads;
+    }
+
+    /**
+     * @return the seed from which the seed of each run is derived
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * @param seed the seed from which the seed of each run is derived; the
+     *            same seed gives the same runs
+     */
+    public void setSeed(final long seed) {
+        this.seed = seed;
+    }
+
+}
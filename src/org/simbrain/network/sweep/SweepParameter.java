@@ -0,0 +1,212 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.sweep;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.simbrain.network.core.Network;
+import org.simbrain.network.core.NeuronUpdateRule;
+import org.simbrain.network.core.SynapseUpdateRule;
+import org.simbrain.network.groups.Group;
+import org.simbrain.network.groups.NeuronGroup;
+import org.simbrain.network.groups.SynapseGroup;
+import org.simbrain.util.SimbrainConstants.Polarity;
+
+/**
+ * One axis of a parameter sweep: a name, the values to try, and how to set a
+ * value on a copy of the network. Static factories cover the common cases;
+ * anything else can be set with a custom {@link Setter}.
+ *
+ * @param <T> the type of the values
+ */
+public class SweepParameter<T> {
+
+    /**
+     * Sets a parameter value on a network.
+     *
+     * @param <T> the type of the value
+     */
+    public interface Setter<T> {
+
+        /**
+         * Set the value. Called on the thread which runs the network, so the
+         * network is not shared, but the value is: anything mutable (e.g. an
+         * update rule) must be copied before it is used.
+         *
+         * @param network the network to change
+         * @param value the value to set
+         */
+        void set(Network network, T value);
+    }
+
+    /** Name of the parameter, used as a column name in the results. */
+    private final String name;
+
+    /** The values to try. */
+    private final List<T> values;
+
+    /** Sets values on networks. */
+    private final Setter<T> setter;
+
+    /**
+     * Create a parameter.
+     *
+     * @param name the name of the parameter
+     * @param values the values to try
+     * @param setter sets a value on a network
+     */
+    public SweepParameter(final String name, final List<T> values,
+            final Setter<T> setter) {
+        if (values.isEmpty()) {
+            throw new IllegalArgumentException(
+                    "No values given for " + name);
+        }
+        this.name = name;
+        this.values = Collections.unmodifiableList(new ArrayList<T>(values));
+        this.setter = setter;
+    }
+
+    /**
+     * Sweep the strength of all synapses in a synapse group.
+     *
+     * @param label label of the synapse group
+     * @param strengths the strengths to try; negative strengths make the
+     *            synapses inhibitory
+     * @return the parameter
+     */
+    public static SweepParameter<Double> synapseGroupStrength(
+            final String label, final double... strengths) {
+        List<Double> values = new ArrayList<Double>();
+        for (double s : strengths) {
+            values.add(s);
+        }
+        return new SweepParameter<Double>(label + " strength", values,
+                new Setter<Double>() {
+                    @Override
+                    public void set(Network network, Double value) {
+                        findGroup(network, label, SynapseGroup.class)
+                                .setStrength(value, Polarity.BOTH);
+                    }
+                });
+    }
+
+    /**
+     * Sweep the learning rule of all synapses in a synapse group.
+     *
+     * @param label label of the synapse group
+     * @param rules the rules to try; each synapse gets its own copy
+     * @return the parameter
+     */
+    public static SweepParameter<SynapseUpdateRule> synapseGroupLearningRule(
+            final String label, final SynapseUpdateRule... rules) {
+        return new SweepParameter<SynapseUpdateRule>(label + " learning rule",
+                Arrays.asList(rules), new Setter<SynapseUpdateRule>() {
+                    @Override
+                    public void set(Network network, SynapseUpdateRule value) {
+                        findGroup(network, label, SynapseGroup.class)
+                                .setLearningRule(value, Polarity.BOTH);
+                    }
+                });
+    }
+
+    /**
+     * Sweep the update rule of the neurons in a neuron group.
+     *
+     * @param label label of the neuron group
+     * @param rules the rules to try; the group gets its own copy
+     * @return the parameter
+     */
+    public static SweepParameter<NeuronUpdateRule> neuronGroupRule(
+            final String label, final NeuronUpdateRule... rules) {
+        return new SweepParameter<NeuronUpdateRule>(label + " neuron type",
+                Arrays.asList(rules), new Setter<NeuronUpdateRule>() {
+                    @Override
+                    public void set(Network network, NeuronUpdateRule value) {
+                        findGroup(network, label, NeuronGroup.class)
+                                .setNeuronType(value);
+                    }
+                });
+    }
+
+    /**
+     * Find a group by label.
+     *
+     * @param network the network to search
+     * @param label the label of the group
+     * @param type the type of group expected
+     * @param <G> the type of group expected
+     * @return the group
+     * @throws IllegalArgumentException if there is no such group
+     */
+    static <G extends Group> G findGroup(final Network network,
+            final String label, final Class<G> type) {
+        for (Group group : network.getFlatGroupList()) {
+            if (type.isInstance(group) && label.equals(group.getLabel())) {
+                return type.cast(group);
+            }
+        }
+        throw new IllegalArgumentException("No " + type.getSimpleName()
+                + " labeled " + label);
+    }
+
+    /**
+     * Set one of the values on a network.
+     *
+     * @param network the network
+     * @param index index of the value
+     */
+    void apply(final Network network, final int index) {
+        setter.set(network, values.get(index));
+    }
+
+    /**
+     * A description of one of the values, for the results. Update rules are
+     * described by name.
+     *
+     * @param index index of the value
+     * @return the description
+     */
+    Object describe(final int index) {
+        T value = values.get(index);
+        if (value instanceof NeuronUpdateRule) {
+            return ((NeuronUpdateRule) value).getName();
+        } else if (value instanceof SynapseUpdateRule) {
+            return ((SynapseUpdateRule) value).getName();
+        }
+        return value;
+    }
+
+    /**
+     * @return the name of the parameter
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the values to try
+     */
+    public List<T> getValues() {
+        return values;
+    }
+
+}
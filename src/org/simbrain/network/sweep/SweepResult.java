@@ -0,0 +1,136 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.sweep;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The results of a parameter sweep, one row per run. The columns are the
+ * parameter values, the seed of the run, and then the metrics.
+ */
+public class SweepResult {
+
+    /** Name of the column holding the seed of each run. */
+    public static final String SEED = "seed";
+
+    /** Column names. */
+    private final List<String> columnNames;
+
+    /** Index of the first metric column. */
+    private final int firstMetric;
+
+    /** The rows. */
+    private final Object[][] rows;
+
+    /**
+     * Create a result table.
+     *
+     * @param columnNames the column names
+     * @param firstMetric index of the first metric column
+     * @param rows the rows
+     */
+    SweepResult(final List<String> columnNames, final int firstMetric,
+            final Object[][] rows) {
+        this.columnNames = Collections.unmodifiableList(columnNames);
+        this.firstMetric = firstMetric;
+        this.rows = rows;
+    }
+
+    /**
+     * @return the column names
+     */
+    public List<String> getColumnNames() {
+        return columnNames;
+    }
+
+    /**
+     * @return the number of runs
+     */
+    public int getRowCount() {
+        return rows.length;
+    }
+
+    /**
+     * Get a value. Parameter values are as given to the sweep (update rules
+     * are given by name), seeds are longs and metrics are doubles.
+     *
+     * @param row the run
+     * @param column the column
+     * @return the value
+     */
+    public Object getValue(final int row, final int column) {
+        return rows[row][column];
+    }
+
+    /**
+     * Get a metric for a run.
+     *
+     * @param row the run
+     * @param metric the name of the metric
+     * @return the value of the metric
+     * @throws IllegalArgumentException if there is no such metric
+     */
+    public double getMetric(final int row, final String metric) {
+        int column = columnNames.indexOf(metric);
+        if (column < firstMetric) {
+            throw new IllegalArgumentException("No metric named " + metric);
+        }
+        return (Double) rows[row][column];
+    }
+
+    /**
+     * Write the results as comma separated values, with a header row.
+     *
+     * @param writer where to write
+     * @throws IOException if writing fails
+     */
+    public void toCsv(final Writer writer) throws IOException {
+        writeRow(writer, columnNames.toArray());
+        for (Object[] row : rows) {
+            writeRow(writer, row);
+        }
+        writer.flush();
+    }
+
+    /**
+     * Write one row, quoting values which contain commas or quotes.
+     *
+     * @param writer where to write
+     * @param row the values
+     * @throws IOException if writing fails
+     */
+    private static void writeRow(final Writer writer, final Object[] row)
+            throws IOException {
+        for (int i = 0; i < row.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            String value = String.valueOf(row[i]);
+            if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0) {
+                value = '"' + value.replace("\"", "\"\"") + '"';
+            }
+            writer.write(value);
+        }
+        writer.write('\n');
+    }
+
+}
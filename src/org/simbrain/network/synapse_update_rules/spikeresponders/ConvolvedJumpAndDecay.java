@@ -24,9 +24,10 @@ public class ConvolvedJumpAndDecay extends SpikeResponder {
     @Override
     public ConvolvedJumpAndDecay deepCopy() {
         ConvolvedJumpAndDecay jad = new ConvolvedJumpAndDecay();
-        jad.setBaseLine(this.getBaseLine());
-        jad.setJumpHeight(this.getJumpHeight());
-        jad.setTimeConstant(this.getTimeConstant());
+        // Not a parameter change, since the copy is not in use yet
+        jad.baseLine = baseLine;
+        jad.jumpHeight = jumpHeight;
+        jad.timeConstant = timeConstant;
         return jad;
     }
 
@@ -34,7 +35,7 @@ public class ConvolvedJumpAndDecay extends SpikeResponder {
      * {@inheritDoc}
      */
     public void update(final Synapse s) {
-        value = s.getPsr();
+        double value = s.getPsr();
         if (s.getSource().isSpike()) {
             value += jumpHeight * s.getStrength();
         } else {
@@ -45,7 +46,7 @@ public class ConvolvedJumpAndDecay extends SpikeResponder {
     }
 
     public void update(final Synapse s, double jump) {
-        value = s.getPsr();
+        double value = s.getPsr();
         if (s.getSource().isSpike()) {
             value += jump;
         } else {
@@ -75,6 +76,7 @@ public class ConvolvedJumpAndDecay extends SpikeResponder {
      */
     public void setBaseLine(final double baseLine) {
         this.baseLine = baseLine;
+        parametersChanged();
     }
 
     /**
@@ -89,6 +91,7 @@ public class ConvolvedJumpAndDecay extends SpikeResponder {
      */
     public void setJumpHeight(final double jumpHeight) {
         this.jumpHeight = jumpHeight;
+        parametersChanged();
     }
 
     /**
@@ -112,6 +115,7 @@ public class ConvolvedJumpAndDecay extends SpikeResponder {
      */
     public void setTimeConstant(double decayTimeConstant) {
         this.timeConstant = decayTimeConstant;
+        parametersChanged();
     }
 
 }
@@ -40,9 +40,10 @@ public class JumpAndDecay extends SpikeResponder {
     @Override
     public JumpAndDecay deepCopy() {
         JumpAndDecay jad = new JumpAndDecay();
-        jad.setBaseLine(this.getBaseLine());
-        jad.setJumpHeight(this.getJumpHeight());
-        jad.setTimeConstant(this.getTimeConstant());
+        // Not a parameter change, since the copy is not in use yet
+        jad.baseLine = baseLine;
+        jad.jumpHeight = jumpHeight;
+        jad.timeConstant = timeConstant;
         return jad;
     }
 
@@ -50,7 +51,7 @@ public class JumpAndDecay extends SpikeResponder {
      * {@inheritDoc}
      */
     public void update(final Synapse s) {
-        value = s.getPsr();
+        double value = s.getPsr();
         if (s.getSource().isSpike()) {
             value = jumpHeight * s.getStrength();
         } else {
@@ -80,6 +81,7 @@ public class JumpAndDecay extends SpikeResponder {
      */
     public void setBaseLine(final double baseLine) {
         this.baseLine = baseLine;
+        parametersChanged();
     }
 
     /**
@@ -94,6 +96,7 @@ public class JumpAndDecay extends SpikeResponder {
      */
     public void setJumpHeight(final double jumpHeight) {
         this.jumpHeight = jumpHeight;
+        parametersChanged();
     }
 
     /**
@@ -117,6 +120,7 @@ public class JumpAndDecay extends SpikeResponder {
      */
     public void setTimeConstant(double decayTimeConstant) {
         this.timeConstant = decayTimeConstant;
+        parametersChanged();
     }
 
 }
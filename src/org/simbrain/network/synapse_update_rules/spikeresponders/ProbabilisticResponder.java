@@ -19,6 +19,7 @@
 package org.simbrain.network.synapse_update_rules.spikeresponders;
 
 import org.simbrain.network.core.Synapse;
+import org.simbrain.util.math.SimbrainRandom;
 
 /**
  * <b>Probabilistic</b> spike responders produces a response with some
@@ -51,8 +52,9 @@ public class ProbabilisticResponder extends SpikeResponder {
      * {@inheritDoc}
      */
     public void update(Synapse s) {
+        double value;
         if (s.getSource().isSpike()) {
-            if (Math.random() > (1 - activationProbability)) {
+            if (SimbrainRandom.nextDouble() > (1 - activationProbability)) {
                 value = responseValue * s.getStrength();
             } else {
                 value = 0;
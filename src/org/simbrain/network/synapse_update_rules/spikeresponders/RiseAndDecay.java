@@ -31,9 +31,6 @@ public class RiseAndDecay extends SpikeResponder {
     /** The time constant of decay and recovery (ms). */
     private double timeConstant = 3;
 
-    /** Recovery value. */
-    private double recovery;
-
     /**
      * {@inheritDoc}
      */
@@ -49,7 +46,11 @@ public class RiseAndDecay extends SpikeResponder {
      * {@inheritDoc}
      */
     public void update(Synapse s) {
+        // state[0]: recovery, state[1]: unscaled response
+        double[] state = s.getResponderState();
         double timeStep = s.getParentNetwork().getTimeStep();
+        double recovery = state[0];
+        double value = state[1];
         if (s.getSource().isSpike()) {
             recovery = 1;
         }
@@ -57,9 +58,15 @@ public class RiseAndDecay extends SpikeResponder {
         recovery += ((timeStep / timeConstant) * (-recovery));
         value += ((timeStep / timeConstant) * ((Math.E * maximumResponse
                 * recovery * (1 - value)) - value));
+        state[0] = recovery;
+        state[1] = value;
 
         s.setPsr(value * s.getStrength());
+    }
 
+    @Override
+    public int getNumStateVariables() {
+        return 2;
     }
 
     /**
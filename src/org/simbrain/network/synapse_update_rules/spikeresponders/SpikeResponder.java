@@ -21,16 +21,35 @@ package org.simbrain.network.synapse_update_rules.spikeresponders;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.simbrain.network.core.Synapse;
 
 /**
- * <b>SpikeResponder</b>.
+ * <b>SpikeResponder</b>. Determines the post-synaptic response of a synapse
+ * whose source neuron is spiking.
+ * <p>
+ * Spike responders hold parameters only. Everything that changes as a synapse
+ * is updated is kept on the synapse: the post-synaptic response itself
+ * ({@link Synapse#getPsr()}) and, for responders which need more, the array
+ * returned by {@link Synapse#getResponderState()}. A single responder may
+ * therefore be shared by many synapses and updated from many threads at once.
  */
 public abstract class SpikeResponder {
 
-    /** Value. */
-    protected double value;
+    /**
+     * The source of parameter versions, increased by every parameter change
+     * of any responder whose parameters are cached elsewhere, e.g. by the
+     * spike propagator of an event-driven synapse group.
+     */
+    private static final AtomicLong VERSIONS = new AtomicLong();
+
+    /**
+     * The version of the parameters of this responder: the value drawn from
+     * {@link #VERSIONS} at its last parameter change, or 0 if they have not
+     * changed since it was created.
+     */
+    private transient volatile long parameterVersion;
 
     /**
      * @return Spike responder to duplicate.
@@ -38,13 +57,54 @@ public abstract class SpikeResponder {
     public abstract SpikeResponder deepCopy();
 
     /**
-     * Update the synapse.
+     * Update the post-synaptic response of the synapse. Implementations must
+     * not write to fields of the responder.
      *
      * @param s
      *            the synapse being updated
      */
     public abstract void update(final Synapse s);
 
+    /**
+     * Returns the number of state variables (beyond the post-synaptic
+     * response) this responder keeps on each synapse, in the array returned
+     * by {@link Synapse#getResponderState()}.
+     *
+     * @return the number of per-synapse state variables
+     */
+    public int getNumStateVariables() {
+        return 0;
+    }
+
+    /**
+     * Record that a parameter of this responder changed. Setters of responders
+     * whose parameters are cached must call this.
+     */
+    protected void parametersChanged() {
+        parameterVersion = VERSIONS.incrementAndGet();
+    }
+
+    /**
+     * Returns the version of the parameters of this responder. Caches of its
+     * parameters are out of date if the version is later than the latest
+     * version when they were filled.
+     *
+     * @return the parameter version
+     */
+    public long getParameterVersion() {
+        return parameterVersion;
+    }
+
+    /**
+     * Returns the latest parameter version of any responder, so that caches
+     * only need to check their own responders when it has changed.
+     *
+     * @return the latest parameter version
+     */
+    public static long getLatestParameterVersion() {
+        return VERSIONS.get();
+    }
+
     /**
      * @return the name of the spike responder
      */
@@ -79,19 +139,4 @@ public abstract class SpikeResponder {
         return srList;
     }
 
-    /**
-     * @return Returns the value.
-     */
-    public double getValue() {
-        return value;
-    }
-
-    /**
-     * @param value
-     *            The value to set.
-     */
-    public void setValue(final double value) {
-        this.value = value;
-    }
-
 }
@@ -25,9 +25,6 @@ import org.simbrain.network.core.Synapse;
  */
 public class Step extends SpikeResponder {
 
-    /** Timer. */
-    private double timer;
-
     /**
      * Response height: The value by which the strength of the synapse is scaled
      * to determine the post synaptic response.
@@ -41,6 +38,10 @@ public class Step extends SpikeResponder {
      * {@inheritDoc}
      */
     public void update(Synapse s) {
+        // state[0]: time remaining in the current response
+        double[] state = s.getResponderState();
+        double timer = state[0];
+        double value = s.getPsr();
         if (s.getSource().isSpike()) {
             timer = responseDuration;
             value = responseHeight * s.getStrength();
@@ -54,9 +55,14 @@ public class Step extends SpikeResponder {
         if (timer <= 0) {
             value = 0;
         }
+        state[0] = timer;
 
         s.setPsr(value);
+    }
 
+    @Override
+    public int getNumStateVariables() {
+        return 1;
     }
 
     /**
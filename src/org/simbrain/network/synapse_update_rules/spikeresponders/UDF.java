@@ -33,36 +33,41 @@ import org.simbrain.util.randomizer.Randomizer;
  */
 public class UDF extends JumpAndDecay {
 
+    // Indices of the per-synapse state variables. U, D, F and the PSR decay
+    // time constant are drawn for each synapse the first time it is updated.
+
+    /** Whether the synapse's variables have been drawn (1) or not (0). */
+    private static final int INITIALIZED = 0;
+
     /** Use constant. */
-    private double U;
+    private static final int U = 1;
 
     /** Depression constant. */
-    private double D;
+    private static final int D = 2;
 
     /** Facilitation constant. */
-    private double F;
+    private static final int F = 3;
+
+    /** Use/Facilitation variable. */
+    private static final int USE = 4;
+
+    /** Depression variable. */
+    private static final int DEPRESSION = 5;
 
     /**
      * The time of the last spike (recorded here since
      * SpikingNeuronUpdateRule writes over its own copy).
      */
-    private double lastSpikeTime;
-
-    /** Use/Facilitation variable */
-    private double u = 0.0;
-
-    /** Depression variable. */
-    private double R = 1.0;
+    private static final int LAST_SPIKE_TIME = 6;
 
-    /** The actual spike responder for the post synaptic response for UDF. */
-    private final ConvolvedJumpAndDecay spikeDecay =
-            new ConvolvedJumpAndDecay();
+    /** Time constant of the decay of the post synaptic response. */
+    private static final int TAU = 7;
 
     /**
-     * Whether or not this is the first time this is being updated. If so it
-     * initializes the variables.
+     * If set, overrides the polarity-dependent time constant for the decay of
+     * the PSR.
      */
-    private boolean firstTime = true;
+    private double psrDecayTimeConstant = Double.NaN;
 
     /**
      * Default constructor.
@@ -71,32 +76,47 @@ public class UDF extends JumpAndDecay {
     }
 
     /**
-     * Does not actually copy this UDF object. Since UDF has values always
-     * drawn from a distribution, it simply gives a new UDF object which
-     * proceeds to draw its parameters from the same distributions.
+     * Since UDF draws its per-synapse values from distributions, a copy simply
+     * gives a new UDF object which proceeds to draw its parameters from the
+     * same distributions.
      */
     @Override
     public UDF deepCopy() {
-        return new UDF();
+        UDF udf = new UDF();
+        udf.psrDecayTimeConstant = psrDecayTimeConstant;
+        return udf;
     }
 
     @Override
     public void update(Synapse s) {
-        if (firstTime) {
-            init(s);
-            firstTime = false;
+        double[] state = s.getResponderState();
+        if (state[INITIALIZED] == 0) {
+            init(s, state);
         }
-        final double A;
+        // The PSR is governed by a convolved jump and decay response whose
+        // jump height is determined by the UDF variables.
+        double value = s.getPsr();
         if (s.getSource().isSpike()) {
-        	final double ISI = lastSpikeTime - s.getNetwork().getTime();
-            u = U + (u * (1 - U) * Math.exp(ISI / F));
-            R = 1 + ((R - (u * R) - 1) * Math.exp(ISI / D));
-            A = R * s.getStrength() * u;
-            lastSpikeTime = s.getNetwork().getTime();
-            spikeDecay.update(s, A);
+            final double time = s.getNetwork().getTime();
+            final double ISI = state[LAST_SPIKE_TIME] - time;
+            final double u = state[U] + (state[USE] * (1 - state[U])
+                    * Math.exp(ISI / state[F]));
+            final double R = 1 + ((state[DEPRESSION] - (u
+                    * state[DEPRESSION]) - 1) * Math.exp(ISI / state[D]));
+            state[USE] = u;
+            state[DEPRESSION] = R;
+            state[LAST_SPIKE_TIME] = time;
+            value += R * s.getStrength() * u;
         } else {
-            spikeDecay.update(s);
+            double timeStep = s.getParentNetwork().getTimeStep();
+            value += timeStep * (-value) / state[TAU];
         }
+        s.setPsr(value);
+    }
+
+    @Override
+    public int getNumStateVariables() {
+        return 8;
     }
 
 //    @Override
@@ -105,29 +125,41 @@ public class UDF extends JumpAndDecay {
 //    }
 
     /**
-     * Sets the time constant for the decay of the PSR which is always
-     * governed by a ConvolvedJumpAndDecay spike responder.
+     * Sets the time constant for the decay of the PSR, overriding the value
+     * that would otherwise be chosen based on the polarities of the source and
+     * target neurons. Applies to synapses not yet updated.
      * @param timeConstant the time constant for PSR decay
      */
     public void setPSRDecayTimeConstant(double timeConstant) {
-        spikeDecay.setTimeConstant(timeConstant);
+        psrDecayTimeConstant = timeConstant;
     }
 
     /**
-     * @return the decay time constant for the PSR.
+     * @return the decay time constant for the PSR if one has been set, NaN
+     * if it is chosen based on neuron polarities.
      */
     public double getPSRDecayTimeConstant() {
-        return spikeDecay.getTimeConstant();
+        return psrDecayTimeConstant;
     }
 
     /**
-     * Initializes this UDF object based on the synapse it governs. UDF draws
+     * Initializes the UDF variables of a synapse. UDF draws
      * its values from different distributions based on the polarity of the
      * source and target neurons.
      * @param s the synapse which is used to determine what polarities of
      * neurons the synapse connects and draw values based on that.
      */
     public void init(Synapse s) {
+        init(s, s.getResponderState());
+    }
+
+    /**
+     * Draws the UDF variables of a synapse into its state array.
+     * @param s the synapse whose source and target polarities determine the
+     * distributions values are drawn from
+     * @param state the state array of the synapse
+     */
+    private void init(Synapse s, double[] state) {
         Randomizer rand = new Randomizer();
         rand.setPdf(ProbDistribution.NORMAL);
         rand.setClipping(true);
@@ -138,66 +170,71 @@ public class UDF extends JumpAndDecay {
         {
             rand.setParam1(0.5);
             rand.setParam2(0.25);
-            U = rand.getRandom();
+            state[U] = rand.getRandom();
             rand.setParam1(1100);
             rand.setParam2(550);
-            D = rand.getRandom();
+            state[D] = rand.getRandom();
             rand.setParam1(50);
             rand.setParam2(25);
-            F = rand.getRandom();
-            spikeDecay.setTimeConstant(3);
+            state[F] = rand.getRandom();
+            state[TAU] = 3;
         } else if (s.getSource().getPolarity() == Polarity.EXCITATORY
                 && s.getTarget().getPolarity() == Polarity.INHIBITORY)
         {
             rand.setParam1(0.05);
             rand.setParam2(0.025);
-            U = rand.getRandom();
+            state[U] = rand.getRandom();
             rand.setParam1(125);
             rand.setParam2(62.5);
-            D = rand.getRandom();
+            state[D] = rand.getRandom();
             rand.setParam1(120);
             rand.setParam2(60);
-            F = rand.getRandom();
-            spikeDecay.setTimeConstant(3);
+            state[F] = rand.getRandom();
+            state[TAU] = 3;
         } else if (s.getSource().getPolarity() == Polarity.INHIBITORY
                 && s.getTarget().getPolarity() == Polarity.EXCITATORY)
         {
             rand.setParam1(0.25);
             rand.setParam2(0.125);
-            U = rand.getRandom();
+            state[U] = rand.getRandom();
             rand.setParam1(700);
             rand.setParam2(350);
-            D = rand.getRandom();
+            state[D] = rand.getRandom();
             rand.setParam1(20);
             rand.setParam2(10);
-            F = rand.getRandom();
-            spikeDecay.setTimeConstant(6);
+            state[F] = rand.getRandom();
+            state[TAU] = 6;
         } else if (s.getSource().getPolarity() == Polarity.INHIBITORY
                 && s.getTarget().getPolarity() == Polarity.INHIBITORY)
         {
             rand.setParam1(0.32);
             rand.setParam2(0.16);
-            U = rand.getRandom();
+            state[U] = rand.getRandom();
             rand.setParam1(144);
             rand.setParam2(72);
-            D = rand.getRandom();
+            state[D] = rand.getRandom();
             rand.setParam1(60);
             rand.setParam2(30);
-            F = rand.getRandom();
-            spikeDecay.setTimeConstant(6);
+            state[F] = rand.getRandom();
+            state[TAU] = 6;
         } else {
             rand.setParam1(0.5);
             rand.setParam2(0.25);
-            U = rand.getRandom();
+            state[U] = rand.getRandom();
             rand.setParam1(1100);
             rand.setParam2(550);
-            D = rand.getRandom();
+            state[D] = rand.getRandom();
             rand.setParam1(50);
             rand.setParam2(25);
-            F = rand.getRandom();
-            spikeDecay.setTimeConstant(3);
+            state[F] = rand.getRandom();
+            state[TAU] = 3;
+        }
+        if (!Double.isNaN(psrDecayTimeConstant)) {
+            state[TAU] = psrDecayTimeConstant;
         }
-        u = U;
+        state[USE] = state[U];
+        state[DEPRESSION] = 1.0;
+        state[INITIALIZED] = 1;
     }
 
 }
@@ -18,6 +18,7 @@
  */
 package org.simbrain.network.trainers;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 
@@ -91,6 +92,14 @@ public class BPTTTrainer extends IterableTrainer {
             return;
         }
 
+        if (isDataParallel()) {
+            mse = applyDataParallel()
+                    / (numRows * network.getOutputNeurons().size());
+            setIteration(getIteration() + numRows);
+            fireErrorUpdated();
+            return;
+        }
+
         for (int row = 0; row < numRows; row++) {
             if (firstPatternInSet()) {
                 // System.out.println("First in set:" + iteration);
@@ -242,6 +251,53 @@ public class BPTTTrainer extends IterableTrainer {
         }
     }
 
+    /**
+     * Returns a model for data-parallel training in which each sample is a
+     * sequence of {@link BPTTNetwork#getStepsPerSequences()} rows, starting
+     * from the first row. The first row of a sequence is set on the input
+     * layer and the network is then run as {@link BPTTNetwork#update()} runs
+     * it, copying outputs to inputs. The gradient of each step is computed as
+     * in {@link #apply()}, and divided by the number of steps.
+     */
+    @Override
+    public GradientModel getGradientModel() {
+        final int steps = Math.max(1, bptt.getStepsPerSequences());
+        List<List<Neuron>> layers = new ArrayList<List<Neuron>>();
+        layers.add(bptt.getInputLayer().getNeuronList());
+        layers.add(bptt.getHiddenLayer().getNeuronList());
+        layers.add(bptt.getOutputLayer().getNeuronList());
+        return new LayeredGradientModel(layers, network.getTrainingSet(),
+                getMinimumNumRows(network), true, learningRate, momentum) {
+            @Override
+            public int getNumSamples() {
+                return (numRows + steps - 1) / steps;
+            }
+
+            @Override
+            protected double addGradient(final Pass pass, final int sample,
+                    final double[] gradient) {
+                int first = sample * steps;
+                int last = Math.min(numRows, first + steps);
+                pass.setInputs(inputs[first]);
+                double sse = 0;
+                for (int row = first; row < last; row++) {
+                    pass.forward();
+                    sse += pass.backward(targets[row], gradient,
+                            1.0 / steps);
+                    if (row > first) {
+                        pass.copyOutputsToInputs();
+                    }
+                }
+                return sse;
+            }
+        };
+    }
+
+    @Override
+    public boolean isDataParallelSupported() {
+        return true;
+    }
+
     @Override
     public double getError() {
         return mse;
@@ -112,6 +112,14 @@ public class BackpropTrainer extends IterableTrainer {
             return;
         }
 
+        if (isDataParallel()) {
+            mse = applyDataParallel()
+                    / (numRows * network.getOutputNeurons().size());
+            incrementIteration();
+            fireErrorUpdated();
+            return;
+        }
+
         network.initNetwork();
         for (int row = 0; row < numRows; row++) {
 
@@ -280,6 +288,21 @@ public class BackpropTrainer extends IterableTrainer {
         return mse;
     }
 
+    /**
+     * Returns a model in which errors are backpropagated as in
+     * {@link #apply()}, for data-parallel training.
+     */
+    @Override
+    public GradientModel getGradientModel() {
+        return new LayeredGradientModel(layers, network.getTrainingSet(),
+                getMinimumNumRows(network), true, learningRate, momentum);
+    }
+
+    @Override
+    public boolean isDataParallelSupported() {
+        return true;
+    }
+
     /**
      * Update internally constructed network.
      */
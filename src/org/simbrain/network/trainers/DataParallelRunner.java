@@ -0,0 +1,249 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.trainers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Runs epochs of mini-batch gradient descent with momentum on a
+ * {@link GradientModel}, sharing each mini-batch among threads. Every thread
+ * computes the summed gradient of a fixed share of the batch with its own
+ * worker, and the shares are added in thread order, so that training is
+ * repeatable for a given seed and number of threads.
+ */
+final class DataParallelRunner {
+
+    /** Number of threads. */
+    private final int numThreads;
+
+    /** Source of sample orders. */
+    private final Random random;
+
+    /** Runs the shares of a batch, or null when there is one thread. */
+    private final ExecutorService executor;
+
+    /** The parameters being trained. */
+    private double[] parameters;
+
+    /** Last change to each parameter, for momentum. */
+    private double[] velocity;
+
+    /** Summed gradient of each thread's share of a batch. */
+    private double[][] gradients;
+
+    /**
+     * Make a runner.
+     *
+     * @param numThreads number of threads
+     * @param seed seed for the order in which samples are visited
+     */
+    DataParallelRunner(final int numThreads, final long seed) {
+        this.numThreads = Math.max(1, numThreads);
+        random = new Random(seed);
+        if (this.numThreads > 1) {
+            executor = Executors.newFixedThreadPool(this.numThreads,
+                    new ThreadFactory() {
+                        private int count;
+
+                        @Override
+                        public synchronized Thread newThread(Runnable r) {
+                            Thread t = new Thread(r, "Trainer " + ++count);
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+        } else {
+            executor = null;
+        }
+    }
+
+    /**
+     * Run one pass through the samples in a new random order, updating the
+     * parameters after each mini-batch, and write the parameters to the
+     * network at the end.
+     *
+     * @param model the network and data, as they are now
+     * @param batchSize number of samples in a mini-batch
+     * @return sum of squared errors over the epoch
+     */
+    double epoch(final GradientModel model, final int batchSize) {
+        int numSamples = model.getNumSamples();
+        int numParameters = model.getNumParameters();
+        if (numSamples == 0) {
+            return 0;
+        }
+        if (parameters == null || parameters.length != numParameters) {
+            parameters = new double[numParameters];
+            velocity = new double[numParameters];
+            gradients = new double[numThreads][numParameters];
+        }
+        model.getParameters(parameters);
+        List<GradientModel.Worker> workers =
+                new ArrayList<GradientModel.Worker>();
+        for (int t = 0; t < numThreads; t++) {
+            workers.add(model.newWorker());
+        }
+
+        int[] order = new int[numSamples];
+        for (int i = 0; i < numSamples; i++) {
+            order[i] = i;
+        }
+        for (int i = numSamples - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = order[i];
+            order[i] = order[j];
+            order[j] = swap;
+        }
+
+        double learningRate = model.getLearningRate();
+        double momentum = model.getMomentum();
+        int size = Math.max(1, batchSize);
+        double sse = 0;
+        for (int start = 0; start < numSamples; start += size) {
+            int end = Math.min(numSamples, start + size);
+            List<Callable<Double>> shares = new ArrayList<Callable<Double>>();
+            for (int t = 0; t < numThreads; t++) {
+                shares.add(share(workers.get(t), gradients[t], order,
+                        start + (end - start) * t / numThreads,
+                        start + (end - start) * (t + 1) / numThreads));
+            }
+            for (double shareError : run(shares)) {
+                sse += shareError;
+            }
+            List<Callable<Double>> updates = new ArrayList<Callable<Double>>();
+            for (int t = 0; t < numThreads; t++) {
+                updates.add(update(numParameters * t / numThreads,
+                        numParameters * (t + 1) / numThreads,
+                        learningRate / (end - start), momentum));
+            }
+            run(updates);
+        }
+        model.setParameters(parameters);
+        return sse;
+    }
+
+    /**
+     * @param worker the worker to use
+     * @param gradient where to sum the gradient
+     * @param order order in which samples are visited
+     * @param from position in the order of the first sample of the share
+     * @param to position in the order after the last sample of the share
+     * @return a task computing the summed gradient of a share of a batch, and
+     *         returning its sum of squared errors
+     */
+    private Callable<Double> share(final GradientModel.Worker worker,
+            final double[] gradient, final int[] order, final int from,
+            final int to) {
+        return new Callable<Double>() {
+            @Override
+            public Double call() {
+                Arrays.fill(gradient, 0);
+                double sse = 0;
+                if (from < to) {
+                    worker.setParameters(parameters);
+                    for (int i = from; i < to; i++) {
+                        sse += worker.addGradient(order[i], gradient);
+                    }
+                }
+                return sse;
+            }
+        };
+    }
+
+    /**
+     * @param from index of the first parameter to update
+     * @param to index after the last parameter to update
+     * @param rate learning rate divided by the number of samples in the batch
+     * @param momentum momentum
+     * @return a task adding up the threads' gradients for a range of
+     *         parameters and updating them
+     */
+    private Callable<Double> update(final int from, final int to,
+            final double rate, final double momentum) {
+        return new Callable<Double>() {
+            @Override
+            public Double call() {
+                for (int i = from; i < to; i++) {
+                    double sum = 0;
+                    for (int t = 0; t < numThreads; t++) {
+                        sum += gradients[t][i];
+                    }
+                    double change = momentum * velocity[i] - rate * sum;
+                    velocity[i] = change;
+                    parameters[i] += change;
+                }
+                return 0.0;
+            }
+        };
+    }
+
+    /**
+     * Run tasks, on the pool if there is one.
+     *
+     * @param tasks the tasks
+     * @return their results, in order
+     */
+    private double[] run(final List<Callable<Double>> tasks) {
+        double[] results = new double[tasks.size()];
+        try {
+            if (executor == null) {
+                for (int i = 0; i < results.length; i++) {
+                    results[i] = tasks.get(i).call();
+                }
+                return results;
+            }
+            List<Future<Double>> futures = executor.invokeAll(tasks);
+            for (int i = 0; i < results.length; i++) {
+                results[i] = futures.get(i).get();
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Training was interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Training failed", e.getCause());
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("Training failed", e);
+        }
+    }
+
+    /**
+     * Stop the threads.
+     */
+    void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.trainers;
+
+/**
+ * A view of a network being trained as a vector of parameters (weights and
+ * biases) and an error gradient summed over independent samples of the
+ * training data (rows, or sequences of rows). This is what an
+ * {@link IterableTrainer} provides to be trained data-parallel: each thread
+ * gets its own {@link Worker}, holding its own copy of the parameters, and
+ * the gradients of the workers are combined for each mini-batch.
+ *
+ * @see IterableTrainer#getGradientModel()
+ */
+public interface GradientModel {
+
+    /**
+     * @return the number of samples the training data is divided into
+     */
+    int getNumSamples();
+
+    /**
+     * @return the number of parameters
+     */
+    int getNumParameters();
+
+    /**
+     * Copy the network's parameters into an array.
+     *
+     * @param parameters array of length {@link #getNumParameters()}
+     */
+    void getParameters(double[] parameters);
+
+    /**
+     * Write parameters to the network.
+     *
+     * @param parameters array of length {@link #getNumParameters()}
+     */
+    void setParameters(double[] parameters);
+
+    /**
+     * @return the learning rate
+     */
+    double getLearningRate();
+
+    /**
+     * @return the momentum, or 0 for none
+     */
+    double getMomentum();
+
+    /**
+     * Make a worker. Workers do not share state with each other or with the
+     * network, so each may be used on its own thread.
+     *
+     * @return a new worker
+     */
+    Worker newWorker();
+
+    /**
+     * Computes gradients on its own copy of the parameters.
+     */
+    public interface Worker {
+
+        /**
+         * Set this worker's copy of the parameters.
+         *
+         * @param parameters the parameters, which are copied
+         */
+        void setParameters(double[] parameters);
+
+        /**
+         * Add the gradient of the error on one sample, with respect to the
+         * parameters, to an array. The error is half the sum of squared
+         * differences between outputs and targets, so that descending the
+         * gradient is the delta rule.
+         *
+         * @param sample index of the sample
+         * @param gradient array of length {@link #getNumParameters()}
+         * @return the sum of squared errors on the sample
+         */
+        double addGradient(int sample, double[] gradient);
+    }
+
+}
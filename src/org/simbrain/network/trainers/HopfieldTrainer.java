@@ -18,17 +18,43 @@
  */
 package org.simbrain.network.trainers;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
 import org.simbrain.network.core.Neuron;
 import org.simbrain.network.core.Synapse;
 import org.simbrain.network.subnetworks.Hopfield;
-import org.simbrain.util.SimbrainConstants.Polarity;
-import org.simbrain.util.math.SimbrainMath;
+import org.simbrain.util.math.Matrices;
+import org.simbrain.util.propertyeditor.ComboBoxWrapper;
+
+import Jama.LUDecomposition;
+import Jama.Matrix;
 
 /**
- * Trainer for a Hopfield network.
- *
- * TODO: Add better Hopfield training! See
- * https://www.doc.ic.ac.uk/project/2012/163/g1216318/web/Refinements.html
+ * Trainer for a Hopfield network. The training patterns are converted to
+ * bipolar values and the whole weight matrix is computed at once, with its
+ * rows shared among threads, before being written to the synapses in a single
+ * pass. Three rules are available:
+ * <ul>
+ * <li>Hebbian: the sum of the outer products of the patterns with themselves,
+ * or optionally their average, which keeps the weights in [-1, 1] however many
+ * patterns are stored.</li>
+ * <li>Storkey: patterns are learned one at a time, each update correcting for
+ * the local fields due to the patterns already learned, which increases
+ * capacity over the Hebbian rule.</li>
+ * <li>Pseudo-inverse (projection): the weights project onto the span of the
+ * patterns, so that any linearly independent set of patterns is stored
+ * exactly.</li>
+ * </ul>
+ * See https://www.doc.ic.ac.uk/project/2012/163/g1216318/web/Refinements.html
  *
  * @author Jeff Yoshimi
  */
@@ -37,6 +63,48 @@ public class HopfieldTrainer extends Trainer {
     /** Reference to network being trained. */
     private final Hopfield hopfield;
 
+    /** The learning rule. */
+    private LearningRule learningRule = LearningRule.HEBBIAN;
+
+    /**
+     * Whether the Hebbian rule averages the outer products of the patterns
+     * rather than summing them.
+     */
+    private boolean normalized;
+
+    /** Number of threads used to compute the weights. */
+    private int numThreads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Hopfield learning rules.
+     */
+    public enum LearningRule {
+
+        /** Sum (or average) of the outer products of the patterns. */
+        HEBBIAN {
+            @Override
+            public String toString() {
+                return "Hebbian";
+            }
+        },
+
+        /** Storkey's incremental rule. */
+        STORKEY {
+            @Override
+            public String toString() {
+                return "Storkey";
+            }
+        },
+
+        /** Projection onto the span of the patterns. */
+        PSEUDO_INVERSE {
+            @Override
+            public String toString() {
+                return "Pseudo-inverse";
+            }
+        }
+    };
+
     /**
      * Construct the Hopfield trainer.
      *
@@ -54,28 +122,73 @@ public class HopfieldTrainer extends Trainer {
             throw new DataNotInitializedException("Input data not initalized");
         }
 
-        hopfield.getSynapseGroup().setStrength(0, Polarity.BOTH);
-        int numRows = hopfield.getTrainingSet().getInputData().length;
-        int numInputs = hopfield.getInputNeurons().size();
-        float normConstant = 1 / (float) numRows;
-
-        double[] vals = new double[numInputs * numInputs - numInputs];
-        for (int row = 0; row < numRows; row++) {
-            double[] pattern = hopfield.getTrainingSet().getInputData()[row];
-            Neuron[] neurons = hopfield.getSynapseGroup().getSourceNeurons()
-                .toArray(new Neuron[pattern.length]);
-            for (int i = 0; i < pattern.length; i++) {
-                for (int j = 0; j < pattern.length; j++) {
-                    if (i != j) {
-                        Synapse s = neurons[i].getFanOut().get(neurons[j]);
-                        s.setStrength(s.getStrength()
-                                + Hopfield.bipolar(pattern[i])
-                                * Hopfield.bipolar(pattern[j]));
-                    }
+        double[][] data = hopfield.getTrainingSet().getInputData();
+        List<Neuron> neurons = hopfield.getSynapseGroup().getSourceNeurons();
+        int numUnits = neurons.size();
+        for (double[] row : data) {
+            if (row.length != numUnits) {
+                throw new IllegalArgumentException("Input data length does"
+                        + " not match the number of neurons");
+            }
+        }
+
+        // Bipolar patterns, one per row, and transposed, one row per unit
+        int numPatterns = data.length;
+        double[][] patterns = new double[numPatterns][numUnits];
+        double[][] unitPatterns = new double[numUnits][numPatterns];
+        for (int p = 0; p < numPatterns; p++) {
+            for (int i = 0; i < numUnits; i++) {
+                patterns[p][i] = Hopfield.bipolar(data[p][i]);
+                unitPatterns[i][p] = patterns[p][i];
+            }
+        }
+
+        ExecutorService executor = null;
+        if (numThreads > 1) {
+            executor = Executors.newFixedThreadPool(numThreads,
+                    new ThreadFactory() {
+                        private int count;
+
+                        @Override
+                        public synchronized Thread newThread(Runnable r) {
+                            Thread t = new Thread(r, "Hopfield Trainer "
+                                    + ++count);
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+        }
+        double[][] weights;
+        try {
+            if (numPatterns == 0) {
+                weights = new double[numUnits][numUnits];
+            } else if (learningRule == LearningRule.STORKEY) {
+                weights = storkey(patterns, executor);
+            } else if (learningRule == LearningRule.PSEUDO_INVERSE) {
+                weights = pseudoInverse(patterns, unitPatterns, executor);
+            } else {
+                weights = outerProducts(unitPatterns, unitPatterns,
+                        normalized ? 1.0 / numPatterns : 1, executor);
+            }
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+
+        // Write the weights in one pass over the synapses
+        Map<Neuron, Integer> indices = new HashMap<Neuron, Integer>();
+        for (int i = 0; i < numUnits; i++) {
+            indices.put(neurons.get(i), i);
+        }
+        for (int i = 0; i < numUnits; i++) {
+            for (Synapse s : neurons.get(i).getFanOut().values()) {
+                Integer j = indices.get(s.getTarget());
+                if (j != null) {
+                    s.setStrength(weights[i][j]);
                 }
             }
         }
-        vals = SimbrainMath.multVector(vals, normConstant);
 
         // Make sure excitatory/inhibitory are in proper lists
         revalidateSynapseGroups();
@@ -84,4 +197,289 @@ public class HopfieldTrainer extends Trainer {
         hopfield.getParentNetwork().fireGroupUpdated(hopfield);
     }
 
+    /**
+     * Returns the symmetric matrix of dot products of rows of two arrays,
+     * times a scale, with a zero diagonal. Each element is computed once, four
+     * columns at a time, by the thread that owns its row.
+     *
+     * @param a array whose rows index the rows of the result
+     * @param b array whose rows index the columns of the result, such that
+     *            the result is symmetric
+     * @param scale factor applied to every dot product
+     * @param executor runs rows on threads, or null
+     * @return the matrix
+     */
+    private double[][] outerProducts(final double[][] a, final double[][] b,
+            final double scale, final ExecutorService executor) {
+        final int n = a.length;
+        final int m = a[0].length;
+        final double[][] weights = new double[n][n];
+        forEachRow(n, executor, new RowTask() {
+            @Override
+            public void run(int i) {
+                double[] ai = a[i];
+                double[] wi = weights[i];
+                int j = i + 1;
+                for (; j + 3 < n; j += 4) {
+                    double[] b0 = b[j];
+                    double[] b1 = b[j + 1];
+                    double[] b2 = b[j + 2];
+                    double[] b3 = b[j + 3];
+                    double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+                    for (int p = 0; p < m; p++) {
+                        double v = ai[p];
+                        s0 += v * b0[p];
+                        s1 += v * b1[p];
+                        s2 += v * b2[p];
+                        s3 += v * b3[p];
+                    }
+                    wi[j] = s0 * scale;
+                    wi[j + 1] = s1 * scale;
+                    wi[j + 2] = s2 * scale;
+                    wi[j + 3] = s3 * scale;
+                }
+                for (; j < n; j++) {
+                    wi[j] = dot(ai, b[j]) * scale;
+                }
+                // Fill in the lower triangle, whose entries (j, i) with j > i
+                // belong to this row alone
+                for (j = i + 1; j < n; j++) {
+                    weights[j][i] = wi[j];
+                }
+            }
+        });
+        return weights;
+    }
+
+    /**
+     * Storkey's rule. Patterns are learned one at a time; for each, the local
+     * fields h are computed with the weights so far and then
+     * w_ij += (x_i x_j - x_i h_ji - h_ij x_j) / n, where h_ij is the field on
+     * unit i excluding units i and j.
+     *
+     * @param patterns bipolar patterns, one per row
+     * @param executor runs rows on threads, or null
+     * @return the weights
+     */
+    private double[][] storkey(final double[][] patterns,
+            final ExecutorService executor) {
+        final int n = patterns[0].length;
+        final double[][] weights = new double[n][n];
+        final double[] fields = new double[n];
+        for (final double[] x : patterns) {
+            forEachRow(n, executor, new RowTask() {
+                @Override
+                public void run(int i) {
+                    fields[i] = dot(weights[i], x);
+                }
+            });
+            forEachRow(n, executor, new RowTask() {
+                @Override
+                public void run(int i) {
+                    // The weights stay symmetric, so w_ji is read as w_ij
+                    // and each thread reads and writes only its own rows
+                    double[] wi = weights[i];
+                    double xi = x[i];
+                    double hi = fields[i];
+                    for (int j = 0; j < n; j++) {
+                        if (j != i) {
+                            double xj = x[j];
+                            double w = wi[j];
+                            wi[j] = w + (xi * xj - xi * (fields[j] - w * xi)
+                                    - (hi - w * xj) * xj) / n;
+                        }
+                    }
+                }
+            });
+        }
+        return weights;
+    }
+
+    /**
+     * The pseudo-inverse (projection) rule, W = X'(XX')^+ X with a zero
+     * diagonal, where the rows of X are the patterns.
+     *
+     * @param patterns bipolar patterns, one per row
+     * @param unitPatterns the same, one row per unit
+     * @param executor runs rows on threads, or null
+     * @return the weights
+     */
+    private double[][] pseudoInverse(final double[][] patterns,
+            final double[][] unitPatterns, final ExecutorService executor) {
+        final int numPatterns = patterns.length;
+        final int n = unitPatterns.length;
+
+        // Overlaps between patterns, and their (pseudo-)inverse
+        double[][] overlaps = outerProducts(patterns, patterns, 1, executor);
+        for (int p = 0; p < numPatterns; p++) {
+            overlaps[p][p] = dot(patterns[p], patterns[p]);
+        }
+        Matrix overlapMatrix = new Matrix(overlaps);
+        LUDecomposition lu = overlapMatrix.lu();
+        final double[][] inverse;
+        if (lu.isNonsingular()) {
+            inverse = lu.solve(Matrix.identity(numPatterns, numPatterns))
+                    .getArray();
+        } else {
+            // The patterns are linearly dependent
+            inverse = Matrices.pinv(overlapMatrix).getArray();
+        }
+
+        // Coefficients of each unit: (XX')^+ times its column of X
+        final double[][] coefficients = new double[n][numPatterns];
+        forEachRow(n, executor, new RowTask() {
+            @Override
+            public void run(int i) {
+                double[] xi = unitPatterns[i];
+                for (int p = 0; p < numPatterns; p++) {
+                    coefficients[i][p] = dot(inverse[p], xi);
+                }
+            }
+        });
+        return outerProducts(unitPatterns, coefficients, 1, executor);
+    }
+
+    /**
+     * Something to be done for each row of a matrix.
+     */
+    private interface RowTask {
+
+        /**
+         * @param row index of the row
+         */
+        void run(int row);
+    }
+
+    /**
+     * Run a task for each row, interleaving the rows among threads so that
+     * each gets about the same share of a triangular matrix. Each row is run
+     * by exactly one thread.
+     *
+     * @param numRows number of rows
+     * @param executor runs the rows, or null to run them on this thread
+     * @param task the task
+     */
+    private void forEachRow(final int numRows, final ExecutorService executor,
+            final RowTask task) {
+        if (executor == null) {
+            for (int i = 0; i < numRows; i++) {
+                task.run(i);
+            }
+            return;
+        }
+        List<Callable<Object>> shares = new ArrayList<Callable<Object>>();
+        for (int t = 0; t < numThreads; t++) {
+            final int first = t;
+            shares.add(new Callable<Object>() {
+                @Override
+                public Object call() {
+                    for (int i = first; i < numRows; i += numThreads) {
+                        task.run(i);
+                    }
+                    return null;
+                }
+            });
+        }
+        try {
+            for (Future<Object> future : executor.invokeAll(shares)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Training was interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Training failed", e.getCause());
+        }
+    }
+
+    /**
+     * @param a a vector
+     * @param b another vector of the same length
+     * @return their dot product
+     */
+    private static double dot(final double[] a, final double[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    /**
+     * @return the learning rule
+     */
+    public LearningRule getLearningRule() {
+        return learningRule;
+    }
+
+    /**
+     * @param learningRule the learning rule to set
+     */
+    public void setLearningRule(LearningRule learningRule) {
+        this.learningRule = learningRule;
+    }
+
+    /**
+     * Returns the current learning rule inside a comboboxwrapper. Used by
+     * preference dialog.
+     *
+     * @return the the comboBox
+     */
+    public ComboBoxWrapper getRule() {
+        return new ComboBoxWrapper() {
+            public Object getCurrentObject() {
+                return learningRule;
+            }
+
+            public Object[] getObjects() {
+                return LearningRule.values();
+            }
+        };
+    }
+
+    /**
+     * Set the current learning rule. Used by preference dialog.
+     *
+     * @param ruleWrapper the current learning rule set up for combo box.
+     */
+    public void setRule(ComboBoxWrapper ruleWrapper) {
+        setLearningRule((LearningRule) ruleWrapper.getCurrentObject());
+    }
+
+    /**
+     * @return whether the Hebbian rule averages rather than sums the outer
+     *         products of the patterns
+     */
+    public boolean isNormalized() {
+        return normalized;
+    }
+
+    /**
+     * Set whether the Hebbian rule averages the outer products of the
+     * patterns, dividing the weights by the number of patterns, rather than
+     * summing them. Has no effect on the other rules.
+     *
+     * @param normalized true to average, false (the default) to sum
+     */
+    public void setNormalized(boolean normalized) {
+        this.normalized = normalized;
+    }
+
+    /**
+     * @return the number of threads used to compute the weights
+     */
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    /**
+     * @param numThreads the number of threads used to compute the weights
+     */
+    public void setNumThreads(int numThreads) {
+        this.numThreads = Math.max(1, numThreads);
+    }
+
 }
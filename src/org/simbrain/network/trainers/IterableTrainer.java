@@ -81,6 +81,24 @@ public abstract class IterableTrainer extends Trainer {
     /** Current stopping condition. */
     private StoppingCondition stoppingCondition = StoppingCondition.NONE;
 
+    /**
+     * If true, train in mini-batches whose gradients are computed on several
+     * threads at once. See {@link #getGradientModel()}.
+     */
+    private boolean dataParallel = false;
+
+    /** Number of threads used when training data-parallel. */
+    private int numThreads = Runtime.getRuntime().availableProcessors();
+
+    /** Number of samples in a mini-batch, for trainers which use them. */
+    private int batchSize = 32;
+
+    /** Seed for the order of samples when training data-parallel. */
+    private long seed = 0;
+
+    /** Runs data-parallel epochs. Made when first needed. */
+    private DataParallelRunner dataParallelRunner;
+
     /**
      * Construct the iterable trainer.
      *
@@ -353,4 +371,126 @@ public abstract class IterableTrainer extends Trainer {
     public void commitChanges() {
     }
 
+    /**
+     * Returns a gradient model of the network and training data as they are
+     * now, used to train data-parallel. Override, along with
+     * {@link #isDataParallelSupported()}, to support data-parallel training.
+     *
+     * @return the gradient model, or null if not supported
+     */
+    public GradientModel getGradientModel() {
+        return null;
+    }
+
+    /**
+     * @return true if this trainer can be trained data-parallel
+     */
+    public boolean isDataParallelSupported() {
+        return false;
+    }
+
+    /**
+     * Run one epoch of data-parallel training: mini-batch gradient descent on
+     * the {@link #getGradientModel() gradient model}, with each batch shared
+     * among the threads. Results depend only on the starting weights, the
+     * seed and the number of threads.
+     *
+     * @return sum of squared errors over the epoch
+     */
+    protected double applyDataParallel() {
+        GradientModel model = getGradientModel();
+        if (model == null) {
+            throw new UnsupportedOperationException(getClass()
+                    .getSimpleName() + " cannot be trained data-parallel");
+        }
+        if (dataParallelRunner == null) {
+            dataParallelRunner = new DataParallelRunner(numThreads, seed);
+        }
+        double sse = dataParallelRunner.epoch(model, batchSize);
+        revalidateSynapseGroups();
+        return sse;
+    }
+
+    /**
+     * Stop data-parallel threads and forget momentum, so that training starts
+     * afresh with the current settings.
+     */
+    private void resetDataParallel() {
+        if (dataParallelRunner != null) {
+            dataParallelRunner.close();
+            dataParallelRunner = null;
+        }
+    }
+
+    /**
+     * @return true if training data-parallel
+     */
+    public boolean isDataParallel() {
+        return dataParallel;
+    }
+
+    /**
+     * @param dataParallel whether to train data-parallel, if supported
+     */
+    public void setDataParallel(boolean dataParallel) {
+        dataParallel = dataParallel && isDataParallelSupported();
+        if (dataParallel != this.dataParallel) {
+            this.dataParallel = dataParallel;
+            resetDataParallel();
+        }
+    }
+
+    /**
+     * @return the number of threads used when training data-parallel
+     */
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    /**
+     * @param numThreads the number of threads to use when training
+     *            data-parallel
+     */
+    public void setNumThreads(int numThreads) {
+        numThreads = Math.max(1, numThreads);
+        if (numThreads != this.numThreads) {
+            this.numThreads = numThreads;
+            resetDataParallel();
+        }
+    }
+
+    /**
+     * @return the number of samples in a mini-batch
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @param batchSize the number of samples in a mini-batch
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * @return the seed for the order of samples when training data-parallel
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Set the seed for the order of samples when training data-parallel. The
+     * order starts over from the seed when it is changed.
+     *
+     * @param seed the seed to set
+     */
+    public void setSeed(long seed) {
+        if (seed != this.seed) {
+            this.seed = seed;
+            resetDataParallel();
+        }
+    }
+
 }
@@ -18,6 +18,8 @@
  */
 package org.simbrain.network.trainers;
 
+import java.util.Arrays;
+
 import org.simbrain.network.core.Network;
 import org.simbrain.network.core.Neuron;
 import org.simbrain.network.core.Synapse;
@@ -62,6 +64,14 @@ public class LMSIterative extends IterableTrainer {
         int numInputs = network.getInputNeurons().size();
         int numOutputs = network.getOutputNeurons().size();
 
+        if (isDataParallel()) {
+            rmsError = Math.sqrt(applyDataParallel()
+                    / (getMinimumNumRows(network) * numOutputs));
+            fireErrorUpdated();
+            incrementIteration();
+            return;
+        }
+
         // Run through training data
         for (int row = 0; row < numRows; row++) {
 
@@ -128,6 +138,24 @@ public class LMSIterative extends IterableTrainer {
         revalidateSynapseGroups();
     }
 
+    /**
+     * Returns a model of the single layer of weights trained by the delta
+     * rule, for data-parallel training. Errors are not scaled by the
+     * derivatives of the output neurons, as in {@link #apply()}.
+     */
+    @Override
+    public GradientModel getGradientModel() {
+        return new LayeredGradientModel(Arrays.asList(
+                network.getInputNeurons(), network.getOutputNeurons()),
+                network.getTrainingSet(), getMinimumNumRows(network), false,
+                learningRate, 0);
+    }
+
+    @Override
+    public boolean isDataParallelSupported() {
+        return true;
+    }
+
     /**
      * @return the learningRate
      */
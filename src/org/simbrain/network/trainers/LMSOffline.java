@@ -27,16 +27,13 @@ package org.simbrain.network.trainers;
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
 
-import org.ojalgo.access.Access2D.Builder;
-import org.ojalgo.matrix.BasicMatrix;
-import org.ojalgo.matrix.BasicMatrix.Factory;
-import org.ojalgo.matrix.PrimitiveMatrix;
 import org.simbrain.network.core.Neuron;
 import org.simbrain.network.groups.Subnetwork;
 import org.simbrain.network.groups.SynapseGroup;
 import org.simbrain.network.neuron_update_rules.SigmoidalRule;
 import org.simbrain.network.util.SimnetUtils;
 import org.simbrain.util.math.Matrices;
+import org.simbrain.util.math.RidgeRegression;
 import org.simbrain.util.propertyeditor.ComboBoxWrapper;
 import org.simbrain.util.randomizer.Randomizer;
 
@@ -184,8 +181,9 @@ public class LMSOffline extends Trainer {
     }
 
     /**
-     * Implements the Wiener-Hopf solution to LMS linear regression.
-     * TODO: Fix progress updates to reflect actual training times &#38; %s
+     * Implements the Wiener-Hopf solution to LMS linear regression. Rows are
+     * streamed into the correlation matrices R = S'S and P = S'D, and
+     * (R + alpha^2 I) W = P is solved by Cholesky decomposition.
      * @param network the trainable network being trained
      */
     public void weinerHopfSolution(Trainable network) {
@@ -195,66 +193,32 @@ public class LMSOffline extends Trainer {
             .getTargetData();
         try {
 
-            Factory<?> mf = PrimitiveMatrix.FACTORY;
-
-            Builder<?> tmpBuilder = mf.getBuilder(inputMatrix.length,
-                inputMatrix[0].length);
-            for (int i = 0; i < tmpBuilder.countRows(); i++) {
-                for (int j = 0; j < tmpBuilder.countColumns(); j++) {
-                    tmpBuilder.set(i, j, inputMatrix[i][j]);
-                }
-            }
-
-            BasicMatrix stateMat = (BasicMatrix) tmpBuilder.build();
-
-            tmpBuilder = mf.getBuilder(trainingMatrix.length,
-                trainingMatrix[0].length);
-            for (int i = 0; i < tmpBuilder.countRows(); i++) {
-                for (int j = 0; j < tmpBuilder.countColumns(); j++) {
-                    tmpBuilder.set(i, j, trainingMatrix[i][j]);
-                    if (Double.isInfinite(trainingMatrix[i][j])
-                        || Double.isNaN(trainingMatrix[i][j])) {
-                        throw new NumberFormatException("Invalid target"
-                            + " values.");
+            RidgeRegression regression = new RidgeRegression(
+                inputMatrix[0].length, trainingMatrix[0].length,
+                Runtime.getRuntime().availableProcessors());
+            double[][] wOut;
+            try {
+                int rows = Math.min(inputMatrix.length, trainingMatrix.length);
+                int reportEvery = Math.max(1, rows / 20);
+                for (int i = 0; i < rows; i++) {
+                    for (int j = 0; j < trainingMatrix[i].length; j++) {
+                        if (Double.isInfinite(trainingMatrix[i][j])
+                            || Double.isNaN(trainingMatrix[i][j])) {
+                            throw new NumberFormatException("Invalid target"
+                                + " values.");
+                        }
                     }
+                    if (i % reportEvery == 0) {
+                        fireProgressUpdate("Correlating States with Teacher"
+                            + " data (R = S'S, P = S'D)...", 80 * i / rows);
+                    }
+                    regression.addRow(inputMatrix[i], trainingMatrix[i]);
                 }
-            }
-
-            BasicMatrix teachMat = (BasicMatrix) tmpBuilder.build();
-
-            fireProgressUpdate("Correlating State Matrix (R = S'S)...", 0);
-            teachMat = stateMat.transpose().multiplyRight(teachMat);
-
-            fireProgressUpdate(
-                "Cross-Correlating States with Teacher data (P = S'D)...",
-                15);
-            stateMat = stateMat.transpose().multiplyRight(stateMat);
-
-            fireProgressUpdate("Computing Inverse Correlation Matrix...", 30);
-
-            if (ridgeRegression) {
-                tmpBuilder = mf.getBuilder((int) stateMat.countRows(),
-                    (int) stateMat.countColumns());
-                for (int i = 0, n = (int) stateMat.countColumns(); i < n; i++) {
-                    tmpBuilder.set(i, i, alpha * alpha);
-                }
-                BasicMatrix scaleMat = (BasicMatrix) tmpBuilder.build();
-                stateMat = stateMat.add(scaleMat);
-            }
 
-            stateMat = stateMat.invert();
-
-            fireProgressUpdate("Computing Weights...", 80);
-            tmpBuilder =
-                stateMat.multiplyRight(teachMat).copyToBuilder();
-            BasicMatrix finalMat = (BasicMatrix) tmpBuilder.build();
-            double[][] wOut = new double[(int) tmpBuilder.countRows()]
-                [(int) tmpBuilder.countColumns()];
-            for (int i = 0, n = (int) tmpBuilder.countRows(); i < n; i++) {
-                for (int j = 0, m = (int) tmpBuilder.countColumns(); j < m; j++)
-                {
-                    wOut[i][j] = finalMat.doubleValue(i, j);
-                }
+                fireProgressUpdate("Computing Weights...", 80);
+                wOut = regression.solve(ridgeRegression ? alpha * alpha : 0);
+            } finally {
+                regression.close();
             }
             fireProgressUpdate("Setting Weights...", 95);
             SimnetUtils.setWeights(network.getInputNeurons(),
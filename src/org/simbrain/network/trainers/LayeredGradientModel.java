@@ -0,0 +1,427 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.trainers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.simbrain.network.core.Neuron;
+import org.simbrain.network.core.NeuronUpdateRule;
+import org.simbrain.network.core.Synapse;
+import org.simbrain.network.neuron_update_rules.LinearRule;
+import org.simbrain.network.neuron_update_rules.SigmoidalRule;
+import org.simbrain.network.neuron_update_rules.interfaces.BiasedUpdateRule;
+import org.simbrain.network.neuron_update_rules.interfaces.DifferentiableUpdateRule;
+import org.simbrain.util.math.SquashingFunction;
+
+/**
+ * Gradient model of a network given as a list of layers, the first of which
+ * is set from the input data and the last of which is compared with the
+ * target data. The parameters are the fan-in weights of each neuron past the
+ * input layer, then their biases. Errors are passed back through the fan-in
+ * of each neuron to neurons in earlier layers, scaled by the derivatives of
+ * their update rules as {@link BackpropTrainer} does, or not scaled, as in
+ * the delta rule of {@link LMSIterative}.
+ * <p>
+ * The samples are the rows of the training data; subclasses can group rows
+ * into sequences by overriding {@link #getNumSamples()} and
+ * {@link #addGradient(Pass, int, double[])}. Neurons past the input layer
+ * must use linear or (discrete) sigmoidal rules; noise is not simulated.
+ * Frozen synapses are not trained, and synapse bounds are applied when the
+ * parameters are written to the network.
+ */
+class LayeredGradientModel implements GradientModel {
+
+    /** Input data. */
+    protected final double[][] inputs;
+
+    /** Target data. */
+    protected final double[][] targets;
+
+    /** Number of rows used. */
+    protected final int numRows;
+
+    /** Learning rate. */
+    private final double learningRate;
+
+    /** Momentum. */
+    private final double momentum;
+
+    /** Whether errors are scaled by the derivatives of the update rules. */
+    private final boolean useDerivatives;
+
+    /** Activation of every neuron in the layers or feeding them. */
+    private final double[] activations;
+
+    /** Layer of each activation, or -1 for neurons outside the layers. */
+    private final int[] layerOf;
+
+    /** Index among the trained neurons of each activation, or -1. */
+    private final int[] trainedIndex;
+
+    /** Activation indices of the input layer. */
+    private final int[] inputSlots;
+
+    /** Activation indices of the output layer. */
+    private final int[] outputSlots;
+
+    /** Activation index of each trained neuron. */
+    private final int[] trainedSlots;
+
+    /** Layer of each trained neuron. */
+    private final int[] trainedLayer;
+
+    /** Where each trained neuron's fan-in starts in the synapse arrays. */
+    private final int[] fanInStart;
+
+    /** The synapses, which are the first parameters. */
+    private final Synapse[] synapses;
+
+    /** Activation index of the source of each synapse. */
+    private final int[] sources;
+
+    /** Whether each synapse is frozen. */
+    private final boolean[] frozen;
+
+    /** Update rule of each trained neuron. */
+    private final NeuronUpdateRule[] rules;
+
+    /** Squashing function of each trained neuron, or null if linear. */
+    private final SquashingFunction[] squash;
+
+    /** Slope of each trained neuron. */
+    private final double[] slopes;
+
+    /** Upper bound of each trained neuron. */
+    private final double[] upperBounds;
+
+    /** Lower bound of each trained neuron. */
+    private final double[] lowerBounds;
+
+    /** Whether each linear trained neuron clips its activation. */
+    private final boolean[] clipped;
+
+    /**
+     * Build the model of a network as it is now.
+     *
+     * @param layers the layers, starting with the input layer
+     * @param trainingSet the training data
+     * @param numRows number of rows of the data to use
+     * @param useDerivatives whether to scale errors by the derivatives of the
+     *            update rules
+     * @param learningRate the learning rate
+     * @param momentum the momentum
+     */
+    LayeredGradientModel(final List<List<Neuron>> layers,
+            final TrainingSet trainingSet, final int numRows,
+            final boolean useDerivatives, final double learningRate,
+            final double momentum) {
+        this.inputs = trainingSet.getInputData();
+        this.targets = trainingSet.getTargetData();
+        this.numRows = numRows;
+        this.useDerivatives = useDerivatives;
+        this.learningRate = learningRate;
+        this.momentum = momentum;
+
+        // Index the neurons of the layers, then the trained neurons' fan-in
+        Map<Neuron, Integer> slots = new HashMap<Neuron, Integer>();
+        List<Neuron> neurons = new ArrayList<Neuron>();
+        List<Integer> layerList = new ArrayList<Integer>();
+        for (int l = 0; l < layers.size(); l++) {
+            for (Neuron neuron : layers.get(l)) {
+                slots.put(neuron, neurons.size());
+                neurons.add(neuron);
+                layerList.add(l);
+            }
+        }
+        int numTrained = neurons.size() - layers.get(0).size();
+        trainedSlots = new int[numTrained];
+        trainedLayer = new int[numTrained];
+        fanInStart = new int[numTrained + 1];
+        rules = new NeuronUpdateRule[numTrained];
+        squash = new SquashingFunction[numTrained];
+        slopes = new double[numTrained];
+        upperBounds = new double[numTrained];
+        lowerBounds = new double[numTrained];
+        clipped = new boolean[numTrained];
+        List<Synapse> synapseList = new ArrayList<Synapse>();
+        List<Integer> sourceList = new ArrayList<Integer>();
+        for (int j = 0; j < numTrained; j++) {
+            int slot = layers.get(0).size() + j;
+            Neuron neuron = neurons.get(slot);
+            trainedSlots[j] = slot;
+            trainedLayer[j] = layerList.get(slot);
+            fanInStart[j] = synapseList.size();
+            for (Synapse synapse : neuron.getFanIn()) {
+                Integer source = slots.get(synapse.getSource());
+                if (source == null) {
+                    // A neuron outside the layers, whose activation is fixed
+                    source = neurons.size();
+                    slots.put(synapse.getSource(), source);
+                    neurons.add(synapse.getSource());
+                    layerList.add(-1);
+                }
+                synapseList.add(synapse);
+                sourceList.add(source);
+            }
+            NeuronUpdateRule rule = neuron.getUpdateRule();
+            rules[j] = rule;
+            if (rule instanceof SigmoidalRule) {
+                SigmoidalRule sigmoidal = (SigmoidalRule) rule;
+                squash[j] = sigmoidal.getSquashFunctionType();
+                slopes[j] = sigmoidal.getSlope();
+                upperBounds[j] = sigmoidal.getUpperBound();
+                lowerBounds[j] = sigmoidal.getLowerBound();
+            } else if (rule instanceof LinearRule) {
+                LinearRule linear = (LinearRule) rule;
+                slopes[j] = linear.getSlope();
+                upperBounds[j] = linear.getUpperBound();
+                lowerBounds[j] = linear.getLowerBound();
+                clipped[j] = linear.isClipped();
+            } else {
+                throw new IllegalArgumentException("Data-parallel training "
+                        + "needs linear or sigmoidal neurons, not "
+                        + rule.getName());
+            }
+        }
+        fanInStart[numTrained] = synapseList.size();
+
+        synapses = synapseList.toArray(new Synapse[synapseList.size()]);
+        sources = new int[synapses.length];
+        frozen = new boolean[synapses.length];
+        for (int k = 0; k < synapses.length; k++) {
+            sources[k] = sourceList.get(k);
+            frozen[k] = synapses[k].isFrozen();
+        }
+        activations = new double[neurons.size()];
+        layerOf = new int[neurons.size()];
+        trainedIndex = new int[neurons.size()];
+        for (int i = 0; i < neurons.size(); i++) {
+            activations[i] = neurons.get(i).getActivation();
+            layerOf[i] = layerList.get(i);
+            trainedIndex[i] = layerOf[i] > 0 ? i - layers.get(0).size() : -1;
+        }
+        inputSlots = new int[layers.get(0).size()];
+        for (int i = 0; i < inputSlots.length; i++) {
+            inputSlots[i] = i;
+        }
+        List<Neuron> outputLayer = layers.get(layers.size() - 1);
+        outputSlots = new int[outputLayer.size()];
+        for (int i = 0; i < outputSlots.length; i++) {
+            outputSlots[i] = slots.get(outputLayer.get(i));
+        }
+    }
+
+    @Override
+    public int getNumSamples() {
+        return numRows;
+    }
+
+    @Override
+    public int getNumParameters() {
+        return synapses.length + rules.length;
+    }
+
+    @Override
+    public void getParameters(final double[] parameters) {
+        for (int k = 0; k < synapses.length; k++) {
+            parameters[k] = synapses[k].getStrength();
+        }
+        for (int j = 0; j < rules.length; j++) {
+            parameters[synapses.length + j] = ((BiasedUpdateRule) rules[j])
+                    .getBias();
+        }
+    }
+
+    @Override
+    public void setParameters(final double[] parameters) {
+        for (int k = 0; k < synapses.length; k++) {
+            synapses[k].setStrength(parameters[k]);
+        }
+        for (int j = 0; j < rules.length; j++) {
+            ((BiasedUpdateRule) rules[j])
+                    .setBias(parameters[synapses.length + j]);
+        }
+    }
+
+    @Override
+    public double getLearningRate() {
+        return learningRate;
+    }
+
+    @Override
+    public double getMomentum() {
+        return momentum;
+    }
+
+    @Override
+    public Worker newWorker() {
+        return new Pass();
+    }
+
+    /**
+     * Add the gradient of one sample using a pass. By default the sample is
+     * a row, which is run forward and compared with its target.
+     *
+     * @param pass the pass to use
+     * @param sample index of the sample
+     * @param gradient where to add the gradient
+     * @return sum of squared errors on the sample
+     */
+    protected double addGradient(final Pass pass, final int sample,
+            final double[] gradient) {
+        pass.setInputs(inputs[sample]);
+        pass.forward();
+        return pass.backward(targets[sample], gradient, 1);
+    }
+
+    /**
+     * A worker's copy of the parameters and activations.
+     */
+    protected final class Pass implements Worker {
+
+        /** Weights, then biases. */
+        private final double[] parameters = new double[getNumParameters()];
+
+        /** Activations, starting from those of the network. */
+        private final double[] values = activations.clone();
+
+        /** Weighted input of each trained neuron. */
+        private final double[] weightedInputs = new double[rules.length];
+
+        /** Derivative applied to the error of each trained neuron. */
+        private final double[] derivatives = new double[rules.length];
+
+        /** Error of each trained neuron. */
+        private final double[] errors = new double[rules.length];
+
+        @Override
+        public void setParameters(final double[] parameters) {
+            System.arraycopy(parameters, 0, this.parameters, 0,
+                    this.parameters.length);
+        }
+
+        @Override
+        public double addGradient(final int sample, final double[] gradient) {
+            return LayeredGradientModel.this.addGradient(this, sample,
+                    gradient);
+        }
+
+        /**
+         * Set the input layer from a row of data.
+         *
+         * @param row the row
+         */
+        public void setInputs(final double[] row) {
+            for (int i = 0; i < inputSlots.length; i++) {
+                values[inputSlots[i]] = row[i];
+            }
+        }
+
+        /**
+         * Copy activations of the output layer to the input layer, as far as
+         * they both go.
+         */
+        public void copyOutputsToInputs() {
+            int n = Math.min(inputSlots.length, outputSlots.length);
+            for (int i = 0; i < n; i++) {
+                values[inputSlots[i]] = values[outputSlots[i]];
+            }
+        }
+
+        /**
+         * Update the layers past the input layer in order.
+         */
+        public void forward() {
+            int biases = synapses.length;
+            for (int j = 0; j < rules.length; j++) {
+                double input = 0;
+                for (int k = fanInStart[j]; k < fanInStart[j + 1]; k++) {
+                    input += parameters[k] * values[sources[k]];
+                }
+                weightedInputs[j] = input;
+                double bias = parameters[biases + j];
+                double value;
+                if (squash[j] != null) {
+                    value = squash[j].valueOf(input + bias, upperBounds[j],
+                            lowerBounds[j], slopes[j]);
+                } else {
+                    value = slopes[j] * input + bias;
+                    if (clipped[j]) {
+                        value = Math.max(lowerBounds[j],
+                                Math.min(upperBounds[j], value));
+                    }
+                }
+                values[trainedSlots[j]] = value;
+                if (!useDerivatives) {
+                    derivatives[j] = 1;
+                } else if (rules[j] instanceof DifferentiableUpdateRule) {
+                    derivatives[j] = ((DifferentiableUpdateRule) rules[j])
+                            .getDerivative(input);
+                } else {
+                    derivatives[j] = 0;
+                }
+            }
+        }
+
+        /**
+         * Compare the output layer with a row of targets and add the
+         * resulting gradient.
+         *
+         * @param target the targets
+         * @param gradient where to add the gradient
+         * @param scale factor applied to the gradient
+         * @return sum of squared errors
+         */
+        public double backward(final double[] target, final double[] gradient,
+                final double scale) {
+            Arrays.fill(errors, 0);
+            double sse = 0;
+            for (int i = 0; i < outputSlots.length; i++) {
+                double error = target[i] - values[outputSlots[i]];
+                errors[trainedIndex[outputSlots[i]]] += error;
+                sse += error * error;
+            }
+            int biases = synapses.length;
+            for (int j = rules.length - 1; j >= 0; j--) {
+                double signal = errors[j] * derivatives[j];
+                if (signal == 0) {
+                    continue;
+                }
+                for (int k = fanInStart[j]; k < fanInStart[j + 1]; k++) {
+                    int source = sources[k];
+                    if (!frozen[k]) {
+                        gradient[k] -= scale * signal * values[source];
+                    }
+                    if (layerOf[source] > 0
+                            && layerOf[source] < trainedLayer[j]) {
+                        errors[trainedIndex[source]] += signal
+                                * parameters[k];
+                    }
+                }
+                gradient[biases + j] -= scale * signal;
+            }
+            return sse;
+        }
+    }
+
+}
@@ -0,0 +1,852 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.trainers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.ojalgo.matrix.store.PrimitiveDenseStore;
+import org.simbrain.network.core.Neuron;
+import org.simbrain.network.core.NeuronUpdateRule;
+import org.simbrain.network.core.Synapse;
+import org.simbrain.network.groups.NeuronGroup;
+import org.simbrain.network.groups.SynapseGroup;
+import org.simbrain.network.neuron_update_rules.LinearRule;
+import org.simbrain.network.neuron_update_rules.SigmoidalRule;
+import org.simbrain.network.neuron_update_rules.interfaces.BiasedUpdateRule;
+import org.simbrain.network.subnetworks.FeedForward;
+import org.simbrain.util.math.SquashingFunction;
+import org.simbrain.util.propertyeditor.ComboBoxWrapper;
+
+/**
+ * Backprop trainer for feed-forward networks that works on matrices rather
+ * than on individual neurons and synapses. The weights and biases are copied
+ * out of the network once, each epoch is run as a series of mini-batches in
+ * which the forward and backward passes are dense matrix products, and the
+ * results are written back to the synapses and neurons at the end of each
+ * epoch (or only when {@link #commitChanges()} is called). This is much
+ * faster than {@link BackpropTrainer}, which remains the trainer to use for
+ * watching backprop at work one pattern at a time.
+ * <p>
+ * The layers are the neuron groups of the network, connected in order by
+ * synapse groups. Neurons past the input layer must use a linear or a
+ * (discrete) sigmoidal rule, whose bounds, slopes and biases are respected;
+ * noise is not simulated. Weight updates respect the bounds and polarity of
+ * each synapse, and frozen or missing synapses are left alone. Gradients are
+ * averaged over each mini-batch, and can be applied by plain gradient
+ * descent, with momentum, or with Adam.
+ * <p>
+ * Changes made to the network's weights while the trainer is in use are
+ * overwritten when it next writes back, unless {@link #loadWeights()} is
+ * called first.
+ */
+public class MiniBatchBackpropTrainer extends IterableTrainer {
+
+    /** Ways of applying gradients to the weights. */
+    public enum Optimizer {
+        SGD {
+            public String toString() {
+                return "Gradient descent";
+            }
+        },
+        MOMENTUM {
+            public String toString() {
+                return "Momentum";
+            }
+        },
+        ADAM {
+            public String toString() {
+                return "Adam";
+            }
+        }
+    };
+
+    /** Default learning rate. */
+    private static final double DEFAULT_LEARNING_RATE = .1;
+
+    /** Default momentum. */
+    private static final double DEFAULT_MOMENTUM = .9;
+
+    /** Decay rate of Adam's first moment estimates. */
+    private static final double BETA1 = .9;
+
+    /** Decay rate of Adam's second moment estimates. */
+    private static final double BETA2 = .999;
+
+    /** Keeps Adam's updates finite. */
+    private static final double EPSILON = 1e-8;
+
+    /** Current error. */
+    private double mse;
+
+    /** Learning rate. */
+    private double learningRate = DEFAULT_LEARNING_RATE;
+
+    /** Momentum. Must be between 0 and 1. */
+    private double momentum = DEFAULT_MOMENTUM;
+
+    /** How gradients are applied. */
+    private Optimizer optimizer = Optimizer.MOMENTUM;
+
+    /** Whether to visit the rows in a new random order each epoch. */
+    private boolean shuffle = true;
+
+    /** Whether to write weights back to the network after each epoch. */
+    private boolean commitEachEpoch = true;
+
+    /** Number of updates made with Adam, for its bias correction. */
+    private long adamSteps;
+
+    /** The layers past the input layer, in order. */
+    private final List<Layer> layers = new ArrayList<Layer>();
+
+    /** Work space for mini-batches, by number of rows. */
+    private final Map<Integer, Batch> batches = new HashMap<Integer, Batch>();
+
+    /** Source of row orders. */
+    private final Random random = new Random();
+
+    /**
+     * Construct the trainer.
+     *
+     * @param network the network to train, whose {@link Trainable#getNetwork()}
+     *            must be a {@link FeedForward} network
+     */
+    public MiniBatchBackpropTrainer(final Trainable network) {
+        super(network);
+        if (!(network.getNetwork() instanceof FeedForward)) {
+            throw new IllegalArgumentException(
+                    "Mini-batch backprop needs a feed-forward network");
+        }
+        loadWeights();
+    }
+
+    /**
+     * Copy the weights and biases out of the network, discarding anything
+     * not yet written back. Called when the trainer is made; call it again
+     * after changing the network's weights, biases or structure.
+     */
+    public synchronized void loadWeights() {
+        List<NeuronGroup> groups = ((FeedForward) network.getNetwork())
+                .getNeuronGroupList();
+        if (groups.size() < 2) {
+            throw new IllegalArgumentException(
+                    "A feed-forward network needs at least two layers");
+        }
+        List<SynapseGroup> synapseGroups = ((FeedForward) network
+                .getNetwork()).getSynapseGroupList();
+        layers.clear();
+        batches.clear();
+        for (int l = 1; l < groups.size(); l++) {
+            SynapseGroup connecting = null;
+            for (SynapseGroup group : synapseGroups) {
+                if (group.getSourceNeuronGroup() == groups.get(l - 1)
+                        && group.getTargetNeuronGroup() == groups.get(l)) {
+                    connecting = group;
+                }
+            }
+            if (connecting == null) {
+                throw new IllegalArgumentException("No synapse group connects "
+                        + groups.get(l - 1).getLabel() + " to "
+                        + groups.get(l).getLabel());
+            }
+            layers.add(new Layer(groups.get(l - 1), groups.get(l),
+                    connecting));
+        }
+        resetOptimizer();
+    }
+
+    /**
+     * Forget the optimizer's memory of earlier updates.
+     */
+    private void resetOptimizer() {
+        adamSteps = 0;
+        for (Layer layer : layers) {
+            layer.velocity = null;
+            layer.biasVelocity = null;
+            layer.squares = null;
+            layer.biasSquares = null;
+        }
+    }
+
+    // One pass through the training data
+    @Override
+    public synchronized void apply() {
+        mse = 0;
+        int numRows = getMinimumNumRows(network);
+        int numInputs = layers.get(0).numInputs;
+        int numOutputs = layers.get(layers.size() - 1).numOutputs;
+        if ((numRows == 0) || (numInputs == 0)) {
+            return;
+        }
+        double[][] inputs = network.getTrainingSet().getInputData();
+        double[][] targets = network.getTrainingSet().getTargetData();
+        checkWidth(inputs, numInputs, "Input");
+        checkWidth(targets, numOutputs, "Target");
+
+        network.initNetwork();
+        int[] order = new int[numRows];
+        for (int i = 0; i < numRows; i++) {
+            order[i] = i;
+        }
+        if (shuffle) {
+            for (int i = numRows - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int swap = order[i];
+                order[i] = order[j];
+                order[j] = swap;
+            }
+        }
+        int size = getBatchSize();
+        double sse = 0;
+        for (int start = 0; start < numRows; start += size) {
+            sse += trainBatch(getBatch(Math.min(size, numRows - start)),
+                    inputs, targets, order, start);
+        }
+        mse = sse / (numRows * numOutputs);
+        incrementIteration();
+        if (commitEachEpoch) {
+            commitChanges();
+        }
+        fireErrorUpdated();
+    }
+
+    /**
+     * Check that every row of a dataset is wide enough.
+     *
+     * @param data the data
+     * @param width values needed per row
+     * @param name name of the data, for the message
+     */
+    private static void checkWidth(final double[][] data, final int width,
+            final String name) {
+        for (double[] row : data) {
+            if (row.length < width) {
+                throw new InvalidDataException(name + " data has rows of "
+                        + row.length + " values but " + width
+                        + " are needed");
+            }
+        }
+    }
+
+    /**
+     * @param rows number of rows
+     * @return the work space for a mini-batch of that many rows
+     */
+    private Batch getBatch(final int rows) {
+        Batch batch = batches.get(rows);
+        if (batch == null) {
+            if (batches.size() > 1) {
+                batches.clear();
+            }
+            batch = new Batch(rows, layers);
+            batches.put(rows, batch);
+        }
+        return batch;
+    }
+
+    /**
+     * Run one mini-batch forwards and backwards and update the weights.
+     *
+     * @param batch work space sized for the batch
+     * @param inputs the input data
+     * @param targets the target data
+     * @param order order in which to visit the rows
+     * @param start position in the order of the first row of the batch
+     * @return sum of squared errors over the batch
+     */
+    private double trainBatch(final Batch batch, final double[][] inputs,
+            final double[][] targets, final int[] order, final int start) {
+        int m = batch.rows;
+
+        // Load the inputs, one column per input neuron
+        PrimitiveDenseStore input = batch.activations[0];
+        int numInputs = layers.get(0).numInputs;
+        for (int r = 0; r < m; r++) {
+            double[] row = inputs[order[start + r]];
+            for (int c = 0; c < numInputs; c++) {
+                input.set(r + (long) c * m, row[c]);
+            }
+        }
+
+        // Forward pass
+        for (int l = 0; l < layers.size(); l++) {
+            Layer layer = layers.get(l);
+            PrimitiveDenseStore out = batch.activations[l + 1];
+            out.fillByMultiplying(batch.activations[l], layer.weights);
+            layer.activate(out, m, batch.inputDerivatives[l],
+                    batch.biasDerivatives[l]);
+        }
+
+        // Output error
+        int last = layers.size() - 1;
+        PrimitiveDenseStore output = batch.activations[last + 1];
+        PrimitiveDenseStore error = batch.errors[last];
+        int numOutputs = layers.get(last).numOutputs;
+        double sse = 0;
+        for (int r = 0; r < m; r++) {
+            double[] row = targets[order[start + r]];
+            for (int c = 0; c < numOutputs; c++) {
+                long index = r + (long) c * m;
+                double e = output.doubleValue(index) - row[c];
+                error.set(index, e);
+                sse += e * e;
+            }
+        }
+
+        // Backward pass, updating each layer once its error has been passed
+        // down
+        if (optimizer == Optimizer.ADAM) {
+            adamSteps++;
+        }
+        for (int l = last; l >= 0; l--) {
+            Layer layer = layers.get(l);
+            layer.toDeltas(batch.errors[l], m, batch.inputDerivatives[l],
+                    batch.biasDerivatives[l]);
+            batch.transposedInputs[l].fillTransposed(batch.activations[l]);
+            layer.gradient.fillByMultiplying(batch.transposedInputs[l],
+                    batch.errors[l]);
+            if (l > 0) {
+                layer.transposedWeights.fillTransposed(layer.weights);
+                batch.errors[l - 1].fillByMultiplying(batch.errors[l],
+                        layer.transposedWeights);
+            }
+            update(layer, 1.0 / m);
+        }
+        return sse;
+    }
+
+    /**
+     * Apply a layer's gradients to its weights and biases.
+     *
+     * @param layer the layer
+     * @param scale factor turning summed gradients into averages
+     */
+    private void update(final Layer layer, final double scale) {
+        int size = layer.numInputs * layer.numOutputs;
+        switch (optimizer) {
+        case SGD:
+            for (int i = 0; i < size; i++) {
+                double w = layer.weights.doubleValue(i) - learningRate
+                        * scale * layer.gradient.doubleValue(i);
+                layer.setWeight(i, w);
+            }
+            for (int j = 0; j < layer.numOutputs; j++) {
+                layer.biases[j] -= learningRate * scale
+                        * layer.biasGradient[j];
+            }
+            break;
+        case MOMENTUM:
+            if (layer.velocity == null) {
+                layer.velocity = new double[size];
+                layer.biasVelocity = new double[layer.numOutputs];
+            }
+            for (int i = 0; i < size; i++) {
+                double v = momentum * layer.velocity[i] - learningRate
+                        * scale * layer.gradient.doubleValue(i);
+                layer.velocity[i] = v;
+                layer.setWeight(i, layer.weights.doubleValue(i) + v);
+            }
+            for (int j = 0; j < layer.numOutputs; j++) {
+                double v = momentum * layer.biasVelocity[j] - learningRate
+                        * scale * layer.biasGradient[j];
+                layer.biasVelocity[j] = v;
+                layer.biases[j] += v;
+            }
+            break;
+        case ADAM:
+            if (layer.velocity == null || layer.squares == null) {
+                layer.velocity = new double[size];
+                layer.biasVelocity = new double[layer.numOutputs];
+                layer.squares = new double[size];
+                layer.biasSquares = new double[layer.numOutputs];
+            }
+            double step = learningRate
+                    * Math.sqrt(1 - Math.pow(BETA2, adamSteps))
+                    / (1 - Math.pow(BETA1, adamSteps));
+            for (int i = 0; i < size; i++) {
+                double g = scale * layer.gradient.doubleValue(i);
+                double m = BETA1 * layer.velocity[i] + (1 - BETA1) * g;
+                double v = BETA2 * layer.squares[i] + (1 - BETA2) * g * g;
+                layer.velocity[i] = m;
+                layer.squares[i] = v;
+                layer.setWeight(i, layer.weights.doubleValue(i) - step * m
+                        / (Math.sqrt(v) + EPSILON));
+            }
+            for (int j = 0; j < layer.numOutputs; j++) {
+                double g = scale * layer.biasGradient[j];
+                double m = BETA1 * layer.biasVelocity[j] + (1 - BETA1) * g;
+                double v = BETA2 * layer.biasSquares[j] + (1 - BETA2) * g * g;
+                layer.biasVelocity[j] = m;
+                layer.biasSquares[j] = v;
+                layer.biases[j] -= step * m / (Math.sqrt(v) + EPSILON);
+            }
+            break;
+        default:
+            break;
+        }
+    }
+
+    /**
+     * Write the trained weights and biases back to the network.
+     */
+    @Override
+    public synchronized void commitChanges() {
+        for (Layer layer : layers) {
+            layer.commit();
+        }
+        revalidateSynapseGroups();
+    }
+
+    /**
+     * Randomize weights and biases uniformly in (-.05, .05), as
+     * {@link BackpropTrainer} does, and write them to the network.
+     */
+    @Override
+    public synchronized void randomize() {
+        for (Layer layer : layers) {
+            for (int i = 0; i < layer.synapses.length; i++) {
+                if (layer.synapses[i] != null) {
+                    layer.setWeight(i, .1 * Math.random() - .05);
+                }
+            }
+            for (int j = 0; j < layer.numOutputs; j++) {
+                layer.biases[j] = .1 * Math.random() - .05;
+                layer.neurons.get(j).clear(); // Looks nicer in the GUI
+            }
+        }
+        resetOptimizer();
+        commitChanges();
+    }
+
+    @Override
+    public double getError() {
+        return mse;
+    }
+
+    /**
+     * @return the learningRate
+     */
+    public double getLearningRate() {
+        return learningRate;
+    }
+
+    /**
+     * @param learningRate the learningRate to set
+     */
+    public void setLearningRate(double learningRate) {
+        this.learningRate = learningRate;
+    }
+
+    /**
+     * @return the momentum
+     */
+    public double getMomentum() {
+        return momentum;
+    }
+
+    /**
+     * @param momentum the momentum to set, used by the momentum optimizer
+     */
+    public void setMomentum(double momentum) {
+        this.momentum = momentum;
+    }
+
+    /**
+     * @return the optimizer
+     */
+    public Optimizer getOptimizer() {
+        return optimizer;
+    }
+
+    /**
+     * Set the optimizer, forgetting the memory of the previous one.
+     *
+     * @param optimizer the optimizer to set
+     */
+    public synchronized void setOptimizer(Optimizer optimizer) {
+        if (optimizer != this.optimizer) {
+            this.optimizer = optimizer;
+            resetOptimizer();
+        }
+    }
+
+    /**
+     * Returns the current optimizer inside a comboboxwrapper. Used by
+     * preference dialog.
+     *
+     * @return the the comboBox
+     */
+    public ComboBoxWrapper getOptimizationMethod() {
+        return new ComboBoxWrapper() {
+            public Object getCurrentObject() {
+                return optimizer;
+            }
+
+            public Object[] getObjects() {
+                return Optimizer.values();
+            }
+        };
+    }
+
+    /**
+     * Set the current optimizer. Used by preference dialog.
+     *
+     * @param optimizerWrapper the optimizer set up for combo box.
+     */
+    public void setOptimizationMethod(ComboBoxWrapper optimizerWrapper) {
+        setOptimizer((Optimizer) optimizerWrapper.getCurrentObject());
+    }
+
+    /**
+     * @return whether rows are visited in a new random order each epoch
+     */
+    public boolean isShuffle() {
+        return shuffle;
+    }
+
+    /**
+     * @param shuffle whether to visit rows in a new random order each epoch
+     */
+    public void setShuffle(boolean shuffle) {
+        this.shuffle = shuffle;
+    }
+
+    /**
+     * @return whether weights are written back to the network after each
+     *         epoch
+     */
+    public boolean isCommitEachEpoch() {
+        return commitEachEpoch;
+    }
+
+    /**
+     * @param commitEachEpoch whether to write weights back to the network
+     *            after each epoch, rather than only when
+     *            {@link #commitChanges()} is called
+     */
+    public void setCommitEachEpoch(boolean commitEachEpoch) {
+        this.commitEachEpoch = commitEachEpoch;
+    }
+
+    /**
+     * The weights into a layer, the layer's biases and its transfer
+     * functions. Matrices have a row per neuron in the layer below and a
+     * column per neuron in this layer, and like all ojalgo stores are kept a
+     * column at a time, so the value of cell (i, j) is at i + j * rows.
+     */
+    private static final class Layer {
+
+        /** Number of neurons in the layer below. */
+        private final int numInputs;
+
+        /** Number of neurons in this layer. */
+        private final int numOutputs;
+
+        /** The neurons of this layer. */
+        private final List<Neuron> neurons;
+
+        /** The weights. */
+        private final PrimitiveDenseStore weights;
+
+        /** Space for the transposed weights, used to pass errors down. */
+        private final PrimitiveDenseStore transposedWeights;
+
+        /** Summed weight gradients of the current batch. */
+        private final PrimitiveDenseStore gradient;
+
+        /** The synapse behind each weight, or null if there is none. */
+        private final Synapse[] synapses;
+
+        /** Smallest value each weight may take. */
+        private final double[] lowest;
+
+        /** Largest value each weight may take. */
+        private final double[] highest;
+
+        /** Bias of each neuron. */
+        private final double[] biases;
+
+        /** Summed bias gradients of the current batch. */
+        private final double[] biasGradient;
+
+        /** Squashing function of each neuron, or null for linear neurons. */
+        private final SquashingFunction[] squash;
+
+        /** Slope of each neuron's transfer function. */
+        private final double[] slopes;
+
+        /** Upper bound of each neuron. */
+        private final double[] upperBounds;
+
+        /** Lower bound of each neuron. */
+        private final double[] lowerBounds;
+
+        /** Whether each linear neuron clips its output to its bounds. */
+        private final boolean[] clipped;
+
+        /** Momentum, or Adam's first moments, of the weights. */
+        private double[] velocity;
+
+        /** Momentum, or Adam's first moments, of the biases. */
+        private double[] biasVelocity;
+
+        /** Adam's second moments of the weights. */
+        private double[] squares;
+
+        /** Adam's second moments of the biases. */
+        private double[] biasSquares;
+
+        /**
+         * Copy a layer out of the network.
+         *
+         * @param below the layer below
+         * @param layer this layer
+         * @param connection the synapses from the layer below to this one
+         */
+        Layer(final NeuronGroup below, final NeuronGroup layer,
+                final SynapseGroup connection) {
+            numInputs = below.size();
+            numOutputs = layer.size();
+            neurons = layer.getNeuronList();
+            weights = PrimitiveDenseStore.FACTORY.makeZero(numInputs,
+                    numOutputs);
+            transposedWeights = PrimitiveDenseStore.FACTORY
+                    .makeZero(numOutputs, numInputs);
+            gradient = PrimitiveDenseStore.FACTORY.makeZero(numInputs,
+                    numOutputs);
+            int size = numInputs * numOutputs;
+            synapses = new Synapse[size];
+            lowest = new double[size];
+            highest = new double[size];
+
+            Map<Neuron, Integer> sourceIndex = new HashMap<Neuron, Integer>();
+            for (Neuron neuron : below.getNeuronList()) {
+                sourceIndex.put(neuron, sourceIndex.size());
+            }
+            Map<Neuron, Integer> targetIndex = new HashMap<Neuron, Integer>();
+            for (Neuron neuron : neurons) {
+                targetIndex.put(neuron, targetIndex.size());
+            }
+            for (Synapse synapse : connection.getAllSynapses()) {
+                int index = sourceIndex.get(synapse.getSource())
+                        + targetIndex.get(synapse.getTarget()) * numInputs;
+                synapses[index] = synapse;
+                weights.set(index, synapse.getStrength());
+                if (synapse.isFrozen()) {
+                    lowest[index] = synapse.getStrength();
+                    highest[index] = synapse.getStrength();
+                } else {
+                    // Setting a strength clips it by polarity then bounds;
+                    // together these clip to the range of the result
+                    lowest[index] = synapse.clip(synapse.getSource()
+                            .getPolarity().clip(Double.NEGATIVE_INFINITY));
+                    highest[index] = synapse.clip(synapse.getSource()
+                            .getPolarity().clip(Double.POSITIVE_INFINITY));
+                }
+            }
+
+            biases = new double[numOutputs];
+            biasGradient = new double[numOutputs];
+            squash = new SquashingFunction[numOutputs];
+            slopes = new double[numOutputs];
+            upperBounds = new double[numOutputs];
+            lowerBounds = new double[numOutputs];
+            clipped = new boolean[numOutputs];
+            for (int j = 0; j < numOutputs; j++) {
+                NeuronUpdateRule rule = neurons.get(j).getUpdateRule();
+                if (rule instanceof SigmoidalRule) {
+                    SigmoidalRule sigmoidal = (SigmoidalRule) rule;
+                    squash[j] = sigmoidal.getSquashFunctionType();
+                    slopes[j] = sigmoidal.getSlope();
+                    upperBounds[j] = sigmoidal.getUpperBound();
+                    lowerBounds[j] = sigmoidal.getLowerBound();
+                } else if (rule instanceof LinearRule) {
+                    LinearRule linear = (LinearRule) rule;
+                    slopes[j] = linear.getSlope();
+                    upperBounds[j] = linear.getUpperBound();
+                    lowerBounds[j] = linear.getLowerBound();
+                    clipped[j] = linear.isClipped();
+                } else {
+                    throw new IllegalArgumentException("Mini-batch backprop "
+                            + "needs linear or sigmoidal neurons, but "
+                            + layer.getLabel() + " has a "
+                            + rule.getName() + " neuron");
+                }
+                biases[j] = ((BiasedUpdateRule) rule).getBias();
+            }
+        }
+
+        /**
+         * Set a weight, within its allowed range.
+         *
+         * @param index index of the weight
+         * @param value the new value
+         */
+        void setWeight(final int index, final double value) {
+            weights.set(index, Math.min(highest[index],
+                    Math.max(lowest[index], value)));
+        }
+
+        /**
+         * Turn weighted inputs into activations in place, and store the
+         * derivatives of the activations with respect to the weighted inputs
+         * and to the biases.
+         *
+         * @param values weighted inputs, one row per pattern
+         * @param rows number of patterns
+         * @param inputDerivatives where to store derivatives with respect to
+         *            the weighted inputs
+         * @param biasDerivatives where to store derivatives with respect to
+         *            the biases
+         */
+        void activate(final PrimitiveDenseStore values, final int rows,
+                final double[] inputDerivatives,
+                final double[] biasDerivatives) {
+            int index = 0;
+            for (int j = 0; j < numOutputs; j++) {
+                SquashingFunction function = squash[j];
+                double bias = biases[j];
+                double slope = slopes[j];
+                double upper = upperBounds[j];
+                double lower = lowerBounds[j];
+                for (int r = 0; r < rows; r++, index++) {
+                    double input = values.doubleValue(index);
+                    if (function != null) {
+                        double x = input + bias;
+                        values.set(index,
+                                function.valueOf(x, upper, lower, slope));
+                        double d = function.derivVal(x, upper, lower, slope);
+                        inputDerivatives[index] = d;
+                        biasDerivatives[index] = d;
+                    } else {
+                        double y = slope * input + bias;
+                        if (clipped[j] && (y >= upper || y <= lower)) {
+                            values.set(index, y >= upper ? upper : lower);
+                            inputDerivatives[index] = 0;
+                            biasDerivatives[index] = 0;
+                        } else {
+                            values.set(index, y);
+                            inputDerivatives[index] = slope;
+                            biasDerivatives[index] = 1;
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Sum the bias gradients for a batch of errors in the activations,
+         * and turn the errors in place into errors in the weighted inputs.
+         *
+         * @param errors errors in the activations, one row per pattern
+         * @param rows number of patterns
+         * @param inputDerivatives derivatives stored by
+         *            {@link #activate}
+         * @param biasDerivatives derivatives stored by {@link #activate}
+         */
+        void toDeltas(final PrimitiveDenseStore errors, final int rows,
+                final double[] inputDerivatives,
+                final double[] biasDerivatives) {
+            int index = 0;
+            for (int j = 0; j < numOutputs; j++) {
+                double sum = 0;
+                for (int r = 0; r < rows; r++, index++) {
+                    double e = errors.doubleValue(index);
+                    sum += e * biasDerivatives[index];
+                    errors.set(index, e * inputDerivatives[index]);
+                }
+                biasGradient[j] = sum;
+            }
+        }
+
+        /**
+         * Write the weights and biases to the network.
+         */
+        void commit() {
+            for (int i = 0; i < synapses.length; i++) {
+                if (synapses[i] != null) {
+                    synapses[i].setStrength(weights.doubleValue(i));
+                }
+            }
+            for (int j = 0; j < numOutputs; j++) {
+                ((BiasedUpdateRule) neurons.get(j).getUpdateRule())
+                        .setBias(biases[j]);
+            }
+        }
+    }
+
+    /**
+     * Work space for one size of mini-batch. Matrices have a row per pattern
+     * and a column per neuron.
+     */
+    private static final class Batch {
+
+        /** Number of patterns. */
+        private final int rows;
+
+        /** Activations of every layer, starting with the inputs. */
+        private final PrimitiveDenseStore[] activations;
+
+        /** Transposed activations of the layer below each layer. */
+        private final PrimitiveDenseStore[] transposedInputs;
+
+        /** Errors of each layer past the input layer. */
+        private final PrimitiveDenseStore[] errors;
+
+        /** Derivatives with respect to weighted inputs, per layer. */
+        private final double[][] inputDerivatives;
+
+        /** Derivatives with respect to biases, per layer. */
+        private final double[][] biasDerivatives;
+
+        /**
+         * Allocate the work space.
+         *
+         * @param rows number of patterns
+         * @param layers the layers
+         */
+        Batch(final int rows, final List<Layer> layers) {
+            this.rows = rows;
+            int n = layers.size();
+            activations = new PrimitiveDenseStore[n + 1];
+            transposedInputs = new PrimitiveDenseStore[n];
+            errors = new PrimitiveDenseStore[n];
+            inputDerivatives = new double[n][];
+            biasDerivatives = new double[n][];
+            activations[0] = PrimitiveDenseStore.FACTORY.makeZero(rows,
+                    layers.get(0).numInputs);
+            for (int l = 0; l < n; l++) {
+                Layer layer = layers.get(l);
+                activations[l + 1] = PrimitiveDenseStore.FACTORY
+                        .makeZero(rows, layer.numOutputs);
+                transposedInputs[l] = PrimitiveDenseStore.FACTORY
+                        .makeZero(layer.numInputs, rows);
+                errors[l] = PrimitiveDenseStore.FACTORY.makeZero(rows,
+                        layer.numOutputs);
+                inputDerivatives[l] = new double[rows * layer.numOutputs];
+                biasDerivatives[l] = new double[rows * layer.numOutputs];
+            }
+        }
+    }
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.trainers;
+
+import org.simbrain.network.util.SimnetUtils;
+import org.simbrain.util.math.RidgeRegression;
+
+/**
+ * Trains the weights from the input neurons to the output neurons of a
+ * trainable network by ridge regression, on states which are streamed in as
+ * they are produced rather than stored in a training set. Subclasses produce
+ * the states, for example by running a reservoir over a sequence of inputs,
+ * and add each one with its targets to a {@link RidgeRegression}. Memory
+ * depends only on the number of inputs and outputs, not on the length of the
+ * data.
+ */
+public abstract class RidgeReadoutTrainer extends Trainer {
+
+    /** Default ridge penalty. */
+    public static final double DEFAULT_RIDGE = 0.0001;
+
+    /** Ridge penalty added to the diagonal of the state correlation matrix. */
+    private double ridge = DEFAULT_RIDGE;
+
+    /** Number of threads used to correlate states. */
+    private int numThreads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Construct the trainer.
+     *
+     * @param network the network whose input to output weights are trained
+     */
+    public RidgeReadoutTrainer(Trainable network) {
+        super(network);
+    }
+
+    /**
+     * Add a row to the regression for each state to be trained on, with the
+     * targets for the output neurons' net input in that state. Progress can be
+     * reported with {@link #fireProgressUpdate(String, int)}, up to 90
+     * percent.
+     *
+     * @param regression the regression to add rows to
+     * @throws DataNotInitializedException if the data needed is not set
+     */
+    protected abstract void harvest(RidgeRegression regression)
+            throws DataNotInitializedException;
+
+    @Override
+    public void apply() throws DataNotInitializedException {
+        fireTrainingBegin();
+        RidgeRegression regression = new RidgeRegression(network
+                .getInputNeurons().size(), network.getOutputNeurons().size(),
+                numThreads);
+        double[][] weights;
+        try {
+            harvest(regression);
+            if (regression.getNumRows() == 0) {
+                throw new DataNotInitializedException("No states to train on");
+            }
+            fireProgressUpdate("Solving for Weights...", 90);
+            weights = regression.solve(ridge);
+        } finally {
+            regression.close();
+        }
+        fireProgressUpdate("Setting Weights...", 95);
+        SimnetUtils.setWeights(network.getInputNeurons(),
+                network.getOutputNeurons(), weights);
+        revalidateSynapseGroups();
+        fireProgressUpdate("Done!", 100);
+        fireTrainingEnd();
+    }
+
+    /**
+     * @return the ridge penalty
+     */
+    public double getRidge() {
+        return ridge;
+    }
+
+    /**
+     * @param ridge the ridge penalty to set
+     */
+    public void setRidge(double ridge) {
+        this.ridge = ridge;
+    }
+
+    /**
+     * @return the number of threads used to correlate states
+     */
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    /**
+     * @param numThreads the number of threads used to correlate states
+     */
+    public void setNumThreads(int numThreads) {
+        this.numThreads = Math.max(1, numThreads);
+    }
+
+}
@@ -91,7 +91,11 @@ import org.simbrain.util.randomizer.Randomizer;
  *         thread does not set the activation of each neuron to their buffer
  *         values until all tasks have been completed.
  *
+ * @deprecated Use {@link ParallelBufferedUpdate}. Kept so that networks saved
+ *             with this action can be opened; it is replaced with a
+ *             {@link ParallelBufferedUpdate} when loaded.
  */
+@Deprecated
 public class ConcurrentBufferedUpdate implements NetworkUpdateAction,
         NeuronListener, GroupListener {
 
@@ -157,7 +161,8 @@ public class ConcurrentBufferedUpdate implements NetworkUpdateAction,
                     }
                 }
             } catch (InterruptedException e) {
-                e.printStackTrace();
+                // Interrupted by shutdown()
+                return;
             }
         }
     });
@@ -266,6 +271,20 @@ public class ConcurrentBufferedUpdate implements NetworkUpdateAction,
         }
     }
 
+    /**
+     * Stop the consumer and collector threads and stop listening to the
+     * network. The action can not be invoked afterwards.
+     */
+    public void shutdown() {
+        executors.shutdownNow();
+        for (Consumer c : consumerThreads) {
+            c.shutdown();
+        }
+        collectorThread.interrupt();
+        network.removeGroupListener(this);
+        network.removeNeuronListener(this);
+    }
+
     @Override
     public String getDescription() {
         return "Parallel Buffered Update";
@@ -0,0 +1,434 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.update_actions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import org.simbrain.network.core.Network;
+import org.simbrain.network.core.NetworkUpdateAction;
+import org.simbrain.network.core.Neuron;
+import org.simbrain.network.groups.Group;
+import org.simbrain.network.groups.NeuronGroup;
+import org.simbrain.network.groups.SynapseGroup;
+import org.simbrain.network.listeners.GroupAdapter;
+import org.simbrain.network.listeners.NetworkEvent;
+import org.simbrain.network.listeners.NeuronAdapter;
+
+/**
+ * A parallel buffered update of every neuron in the network, built on a
+ * work-stealing {@link ForkJoinPool}. As in {@link ConcurrentBufferedUpdate},
+ * the thread updating a neuron also updates the afferent synapses of that
+ * neuron, and activations are only set from buffers once every neuron has
+ * been updated, so the result does not depend on the order of update.
+ * <p>
+ * Neurons are split into contiguous partitions of roughly equal cost, where
+ * the cost of a neuron is taken to be one plus the size of its fan-in. There
+ * are several partitions per worker so that idle workers can steal from busy
+ * ones. Each iteration runs two phases over the same partitions: an update
+ * phase and a buffer commit phase.
+ * <p>
+ * Changes to the network (neurons or groups added or removed, input mode
+ * turned on or off) only mark the partitions as stale. They are rebuilt on the
+ * update thread at the start of the next invocation, which is the only point
+ * where this action allocates.
+ * <p>
+ * Neurons in neuron groups which are in input mode are not updated; instead the
+ * group reads its next inputs. Neuron groups in shared rule mode are updated
+ * as a block, on the update thread while the workers update the other
+ * neurons, since their rule is not thread safe. Recording groups write their
+ * activations after each iteration.
+ */
+public class ParallelBufferedUpdate implements NetworkUpdateAction {
+
+    /**
+     * The number of partitions per worker thread. More partitions give work
+     * stealing more room to even out imbalances at a small scheduling cost.
+     */
+    private static final int PARTITIONS_PER_WORKER = 4;
+
+    /** Reference to network to update. */
+    private final Network network;
+
+    /** The number of worker threads. */
+    private final int parallelism;
+
+    /** The worker pool. Created on first invocation. */
+    private ForkJoinPool pool;
+
+    /** The neurons updated by this action, ordered by partition. */
+    private Neuron[] neurons = new Neuron[0];
+
+    /** Neuron groups in the network, checked for input mode and recording. */
+    private NeuronGroup[] neuronGroups = new NeuronGroup[0];
+
+    /** Neuron groups in shared rule mode, each updated as a block. */
+    private NeuronGroup[] sharedGroups = new NeuronGroup[0];
+
+    /**
+     * Synapse groups in the network, whose spike propagators are checked
+     * before each iteration since their update method is not called.
+     */
+    private SynapseGroup[] synapseGroups = new SynapseGroup[0];
+
+    /** One task per partition, re-used every iteration. */
+    private PartitionTask[] partitions = new PartitionTask[0];
+
+    /** Root task forking all partitions, re-used every iteration. */
+    private final RootTask root = new RootTask();
+
+    /** Whether the current phase is the buffer commit phase. */
+    private boolean commitPhase;
+
+    /**
+     * Set when the network changes and the partitions need to be rebuilt
+     * before the next iteration.
+     */
+    private volatile boolean stale = true;
+
+    /** Listens for neurons added to or removed from the network. */
+    private NeuronAdapter neuronListener;
+
+    /** Listens for groups added to, removed from or changed in the network. */
+    private GroupAdapter groupListener;
+
+    /**
+     * A static factory method that creates a parallel buffered update for a
+     * network, using one worker per available processor.
+     *
+     * @param network the network to update
+     * @return the update action
+     */
+    public static ParallelBufferedUpdate createParallelBufferedUpdate(
+            final Network network) {
+        return new ParallelBufferedUpdate(network,
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Construct a parallel buffered update with a specific number of worker
+     * threads.
+     *
+     * @param network the network to update
+     * @param parallelism the number of worker threads
+     */
+    public ParallelBufferedUpdate(final Network network,
+            final int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least"
+                    + " 1.");
+        }
+        this.network = network;
+        this.parallelism = parallelism;
+    }
+
+    @Override
+    public void invoke() {
+        if (neuronListener == null) {
+            addListeners();
+        }
+        if (stale) {
+            repartition();
+        }
+        for (int i = 0; i < neuronGroups.length; i++) {
+            if (neuronGroups[i].isInputMode()) {
+                neuronGroups[i].readNextInputs();
+            }
+        }
+        for (int i = 0; i < synapseGroups.length; i++) {
+            synapseGroups[i].checkSpikePropagator();
+        }
+        runPhase(false);
+        runPhase(true);
+        for (int i = 0; i < neuronGroups.length; i++) {
+            if (neuronGroups[i].isRecording()) {
+                neuronGroups[i].writeActsToFile();
+            }
+        }
+    }
+
+    /**
+     * Run one phase over all partitions and wait for it to complete.
+     *
+     * @param commit true for the buffer commit phase, false for the update
+     *            phase
+     */
+    private void runPhase(final boolean commit) {
+        commitPhase = commit;
+        if (partitions.length == 1) {
+            // Nothing to gain from forking a single partition
+            partitions[0].run(commit);
+            runSharedGroups(commit);
+            return;
+        }
+        root.reinitialize();
+        pool.execute(root);
+        runSharedGroups(commit);
+        root.join();
+    }
+
+    /**
+     * Update or commit the neuron groups in shared rule mode, one group at a
+     * time on the calling thread, so that the shared rules are never used from
+     * two threads at once and draw their noise from the same generator on
+     * every iteration.
+     *
+     * @param commit true to set activations from buffers, false to update
+     *            neurons and their afferent synapses
+     */
+    private void runSharedGroups(final boolean commit) {
+        for (int g = 0; g < sharedGroups.length; g++) {
+            NeuronGroup group = sharedGroups[g];
+            List<Neuron> list = group.getNeuronListUnsafe();
+            int n = list.size();
+            if (commit) {
+                for (int i = 0; i < n; i++) {
+                    list.get(i).setToBufferVals();
+                }
+                continue;
+            }
+            if (group.isSharedRule()) {
+                group.updateSharedRule();
+            } else {
+                // Mode turned off since the last repartition
+                for (int i = 0; i < n; i++) {
+                    list.get(i).update();
+                }
+            }
+            for (int i = 0; i < n; i++) {
+                list.get(i).updateFanIn();
+            }
+        }
+    }
+
+    /**
+     * Listen for changes in the network which require the partitions to be
+     * rebuilt. Done lazily so that instances which are never invoked (e.g.
+     * those offered in the update dialog) do not register listeners.
+     */
+    private void addListeners() {
+        neuronListener = new NeuronAdapter() {
+            @Override
+            public void neuronAdded(NetworkEvent<Neuron> networkEvent) {
+                stale = true;
+            }
+
+            @Override
+            public void neuronRemoved(NetworkEvent<Neuron> networkEvent) {
+                stale = true;
+            }
+        };
+        groupListener = new GroupAdapter() {
+            @Override
+            public void groupAdded(NetworkEvent<Group> e) {
+                stale = true;
+            }
+
+            @Override
+            public void groupRemoved(NetworkEvent<Group> e) {
+                stale = true;
+            }
+
+            @Override
+            public void groupChanged(NetworkEvent<Group> networkEvent,
+                    String changeDescription) {
+                stale = true;
+            }
+        };
+        network.addNeuronListener(neuronListener);
+        network.addGroupListener(groupListener);
+    }
+
+    /**
+     * Rebuild the neuron array and the cost-balanced partitions. Called on the
+     * update thread between iterations.
+     */
+    private void repartition() {
+        stale = false;
+        if (pool == null && parallelism > 1) {
+            pool = new ForkJoinPool(parallelism);
+        }
+        List<NeuronGroup> groups = new ArrayList<NeuronGroup>();
+        List<NeuronGroup> shared = new ArrayList<NeuronGroup>();
+        List<SynapseGroup> synapseGroupList = new ArrayList<SynapseGroup>();
+        for (Group g : network.getFlatGroupList()) {
+            if (g instanceof SynapseGroup) {
+                synapseGroupList.add((SynapseGroup) g);
+            } else if (g instanceof NeuronGroup) {
+                NeuronGroup ng = (NeuronGroup) g;
+                groups.add(ng);
+                if (ng.isSharedRule() && !ng.isInputMode()) {
+                    shared.add(ng);
+                }
+            }
+        }
+        neuronGroups = groups.toArray(new NeuronGroup[groups.size()]);
+        sharedGroups = shared.toArray(new NeuronGroup[shared.size()]);
+        synapseGroups = synapseGroupList
+                .toArray(new SynapseGroup[synapseGroupList.size()]);
+
+        List<Neuron> toUpdate = new ArrayList<Neuron>();
+        for (Neuron n : network.getFlatNeuronList()) {
+            if (n.getParentGroup() instanceof NeuronGroup) {
+                NeuronGroup ng = (NeuronGroup) n.getParentGroup();
+                if (ng.isInputMode() || shared.contains(ng)) {
+                    continue;
+                }
+            }
+            toUpdate.add(n);
+        }
+        neurons = toUpdate.toArray(new Neuron[toUpdate.size()]);
+
+        long totalCost = 0;
+        for (Neuron n : neurons) {
+            totalCost += cost(n);
+        }
+        int numPartitions = Math.max(1, Math.min(neurons.length,
+                pool == null ? 1 : parallelism * PARTITIONS_PER_WORKER));
+        List<PartitionTask> parts = new ArrayList<PartitionTask>(
+                numPartitions);
+        int start = 0;
+        long accumulated = 0;
+        for (int i = 0; i < neurons.length; i++) {
+            accumulated += cost(neurons[i]);
+            long boundary = totalCost * (parts.size() + 1) / numPartitions;
+            if (accumulated >= boundary && parts.size() < numPartitions - 1) {
+                parts.add(new PartitionTask(start, i + 1));
+                start = i + 1;
+            }
+        }
+        if (start < neurons.length || parts.isEmpty()) {
+            parts.add(new PartitionTask(start, neurons.length));
+        }
+        partitions = parts.toArray(new PartitionTask[parts.size()]);
+    }
+
+    /**
+     * The estimated cost of updating a neuron.
+     *
+     * @param n the neuron
+     * @return one plus the size of its fan-in
+     */
+    private static long cost(final Neuron n) {
+        return 1 + n.getFanIn().size();
+    }
+
+    /**
+     * @return the number of partitions currently in use
+     */
+    public int getNumPartitions() {
+        return partitions.length;
+    }
+
+    /**
+     * Shut down the worker pool and stop listening to the network. Called by
+     * the update manager when this action is removed or the network is
+     * closed. The pool and listeners are re-created if the action is invoked
+     * again.
+     */
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+        if (neuronListener != null) {
+            network.removeNeuronListener(neuronListener);
+            network.removeGroupListener(groupListener);
+            neuronListener = null;
+            groupListener = null;
+        }
+        stale = true;
+    }
+
+    @Override
+    public String getDescription() {
+        return "Parallel Buffered Update";
+    }
+
+    @Override
+    public String getLongDescription() {
+        return "Parallel Buffered Update (All Neurons, work-stealing)";
+    }
+
+    /**
+     * Forks one task per partition and waits for them all.
+     */
+    private class RootTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected void compute() {
+            for (int i = 0; i < partitions.length; i++) {
+                partitions[i].reinitialize();
+            }
+            ForkJoinTask.invokeAll(partitions);
+        }
+    }
+
+    /**
+     * Updates or commits a contiguous range of neurons.
+     */
+    private class PartitionTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        /** First neuron index, inclusive. */
+        private final int from;
+
+        /** Last neuron index, exclusive. */
+        private final int to;
+
+        /**
+         * @param from first neuron index, inclusive
+         * @param to last neuron index, exclusive
+         */
+        PartitionTask(final int from, final int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            run(commitPhase);
+        }
+
+        /**
+         * @param commit true to set activations from buffers, false to update
+         *            neurons and their afferent synapses
+         */
+        void run(final boolean commit) {
+            Neuron[] arr = neurons;
+            if (commit) {
+                for (int i = from; i < to; i++) {
+                    arr[i].setToBufferVals();
+                }
+            } else {
+                for (int i = from; i < to; i++) {
+                    arr[i].update();
+                    arr[i].updateFanIn();
+                }
+            }
+        }
+    }
+
+}
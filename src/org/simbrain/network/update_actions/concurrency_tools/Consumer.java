@@ -20,8 +20,6 @@ package org.simbrain.network.update_actions.concurrency_tools;
 
 import java.util.concurrent.BrokenBarrierException;
 
-import org.simbrain.network.update_actions.ConcurrentBufferedUpdate.CyclicTaskQueue;
-
 /**
  * The underlying runnable consumer assigned to a thread, which consumes network
  * update tasks i.e. executes them.
@@ -29,13 +27,15 @@ import org.simbrain.network.update_actions.ConcurrentBufferedUpdate.CyclicTaskQu
  * @author Zoë Tosi
  *
  */
+@SuppressWarnings("deprecation")
 public class Consumer implements Runnable {
 
     /**
      * The blocking queue containing tasks this consumer will attempt to
      * execute.
      */
-    private final CyclicTaskQueue taskQueue;
+    private final org.simbrain.network.update_actions.ConcurrentBufferedUpdate
+        .CyclicTaskQueue taskQueue;
 
     /**
      * An optional int identifier number used to label this consumer should such
@@ -60,7 +60,8 @@ public class Consumer implements Runnable {
      *            for debugging, but can be used to call out an individual
      *            consumer elsewhere.
      */
-    public Consumer(CyclicTaskQueue taskQueue, int no) {
+    public Consumer(org.simbrain.network.update_actions.ConcurrentBufferedUpdate
+        .CyclicTaskQueue taskQueue, int no) {
         this.taskQueue = taskQueue;
         this.idNo = no;
     }
@@ -0,0 +1,489 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.util;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.io.File;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.simbrain.network.core.Network;
+import org.simbrain.network.core.Neuron;
+import org.simbrain.network.groups.SynapseGroup;
+
+import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.converters.reflection.ReflectionProvider;
+import com.thoughtworks.xstream.mapper.Mapper;
+
+/**
+ * Copies a network by walking its object graph directly, instead of writing
+ * it to xml and parsing it back as {@link Network#copy()} used to. The copy
+ * holds the same state the xml round trip would produce: every field that
+ * {@link Network#getXStream()} writes is copied, omitted fields are left at
+ * their defaults, and <code>readResolve</code> is called on each copied
+ * object, so the copy is re-initialized just as an opened network is.
+ * <p>
+ * Compared to the xml round trip, primitive state is copied at full precision
+ * (weights of large synapse groups are not compressed), primitive arrays are
+ * cloned rather than written out element by element, and immutable values
+ * (strings, boxed primitives, enums, colors and the like) are shared with the
+ * original network. Sharing between objects, including cycles, is preserved,
+ * and each neuron of the copy sums its inputs in the same order as the
+ * original, so both produce identical activations.
+ * <p>
+ * Compiled synapse groups of the copy can share the weight matrix of the
+ * original (see {@link SynapseGroup#shareCompiledWeights(SynapseGroup, Map)}),
+ * so a large population of copies holds one set of unchanged weights, with
+ * each copy taking its own values on its first weight change.
+ * <p>
+ * The network being copied should not be updated while it is copied. Copying
+ * the same network on several threads at once is safe.
+ */
+public final class NetworkCopier {
+
+    /** Source of the xml field rules and of new instances. */
+    private static final XStream XSTREAM = Network.getXStream();
+
+    /** Cached copy plans, by class. */
+    private static final Map<Class<?>, ClassPlan> PLANS =
+            new ConcurrentHashMap<Class<?>, ClassPlan>();
+
+    /** Classes whose instances are never changed and can be shared. */
+    private static final Set<Class<?>> IMMUTABLE = new HashSet<Class<?>>();
+    static {
+        Collections.addAll(IMMUTABLE, String.class, Boolean.class,
+                Character.class, Byte.class, Short.class, Integer.class,
+                Long.class, Float.class, Double.class, BigInteger.class,
+                BigDecimal.class, Class.class, Color.class, Font.class,
+                File.class, UUID.class);
+    }
+
+    /**
+     * Fields that hold a serialized form of live objects. They are only set
+     * while a network is being saved, and copying them would make the copy
+     * rebuild objects it already has.
+     */
+    private static final Set<String> SKIPPED = new HashSet<String>();
+    static {
+        Collections.addAll(SKIPPED,
+                SynapseGroup.class.getName() + ".compressedMatrixRep",
+                SynapseGroup.class.getName() + ".fullSynapseRep");
+    }
+
+    /** Copies made so far, keyed by original. */
+    private final Map<Object, Object> copies =
+            new IdentityHashMap<Object, Object>();
+
+    /** Mapper deciding which fields are written. */
+    private final Mapper mapper = XSTREAM.getMapper();
+
+    /** Creates instances without calling constructors. */
+    private final ReflectionProvider provider =
+            XSTREAM.getReflectionProvider();
+
+    /**
+     * Use the static methods.
+     */
+    private NetworkCopier() {
+    }
+
+    /**
+     * Returns a deep copy of a network, with compiled weight matrices shared
+     * copy-on-write.
+     *
+     * @param network the network to copy
+     * @return the copy
+     */
+    public static Network copy(final Network network) {
+        return copy(network, true);
+    }
+
+    /**
+     * Returns a deep copy of a network.
+     *
+     * @param network the network to copy
+     * @param shareWeights if true, compiled synapse groups of the copy share
+     *            the weight matrices of the original until a weight changes;
+     *            if false, each copy builds its own matrices
+     * @return the copy
+     */
+    public static Network copy(final Network network,
+            final boolean shareWeights) {
+        NetworkCopier copier = new NetworkCopier();
+        Network copy = (Network) copier.copyObject(network);
+        for (Neuron neuron : network.getFlatNeuronList()) {
+            Object copiedNeuron = copier.copies.get(neuron);
+            if (copiedNeuron instanceof Neuron) {
+                ((Neuron) copiedNeuron).matchFanInOrder(neuron, copier.copies);
+            }
+        }
+        if (shareWeights) {
+            for (SynapseGroup group : network.getSynapseGroups()) {
+                if (group.isCompiled()) {
+                    Object copiedGroup = copier.copies.get(group);
+                    if (copiedGroup instanceof SynapseGroup) {
+                        ((SynapseGroup) copiedGroup)
+                                .shareCompiledWeights(group, copier.copies);
+                    }
+                }
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Returns the copy of an object, copying it if this has not been done
+     * yet.
+     *
+     * @param original the object to copy
+     * @return the copy
+     */
+    private Object copyObject(final Object original) {
+        if (original == null) {
+            return null;
+        }
+        Object copy = copies.get(original);
+        if (copy != null) {
+            return copy;
+        }
+        Class<?> cls = original.getClass();
+        if (isImmutable(original, cls)) {
+            return original;
+        }
+        if (cls.isArray()) {
+            copy = copyArray(original, cls);
+        } else {
+            ClassPlan plan = getPlan(cls);
+            if (original instanceof Collection && plan.constructor != null) {
+                copy = copyCollection((Collection<?>) original, plan);
+            } else if (original instanceof Map && plan.constructor != null) {
+                copy = copyMap((Map<?, ?>) original, plan);
+            } else {
+                copy = provider.newInstance(cls);
+                copies.put(original, copy);
+                copyFields(original, copy, plan);
+            }
+            if (plan.readResolve != null) {
+                Object resolved = invoke(plan.readResolve, copy);
+                if (resolved != copy) {
+                    copies.put(original, resolved);
+                    copy = resolved;
+                }
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Whether an object can be shared between the original and the copy.
+     * Lambdas are shared as well, since they cannot be instantiated.
+     *
+     * @param o the object
+     * @param cls its class
+     * @return true if the object is not copied
+     */
+    private static boolean isImmutable(final Object o, final Class<?> cls) {
+        return IMMUTABLE.contains(cls) || o instanceof Enum
+                || cls.isSynthetic() || cls.getName().contains("$$Lambda");
+    }
+
+    /**
+     * Copy an array. Primitive arrays are cloned; object arrays are copied
+     * element by element.
+     *
+     * @param original the array
+     * @param cls its class
+     * @return the copy
+     */
+    private Object copyArray(final Object original, final Class<?> cls) {
+        Class<?> component = cls.getComponentType();
+        if (component.isPrimitive()) {
+            Object copy = cloneArray(original, component);
+            copies.put(original, copy);
+            return copy;
+        }
+        Object[] source = (Object[]) original;
+        Object[] copy = (Object[]) Array.newInstance(component, source.length);
+        copies.put(original, copy);
+        for (int i = 0; i < source.length; i++) {
+            copy[i] = copyObject(source[i]);
+        }
+        return copy;
+    }
+
+    /**
+     * Clone a primitive array.
+     *
+     * @param array the array
+     * @param component its component type
+     * @return the clone
+     */
+    private static Object cloneArray(final Object array,
+            final Class<?> component) {
+        if (component == double.class) {
+            return ((double[]) array).clone();
+        } else if (component == int.class) {
+            return ((int[]) array).clone();
+        } else if (component == boolean.class) {
+            return ((boolean[]) array).clone();
+        } else if (component == float.class) {
+            return ((float[]) array).clone();
+        } else if (component == long.class) {
+            return ((long[]) array).clone();
+        } else if (component == byte.class) {
+            return ((byte[]) array).clone();
+        } else if (component == short.class) {
+            return ((short[]) array).clone();
+        } else {
+            return ((char[]) array).clone();
+        }
+    }
+
+    /**
+     * Copy a collection by adding copies of its elements to a new instance of
+     * its class. Sorted sets keep their comparator.
+     *
+     * @param original the collection
+     * @param plan the plan for its class
+     * @return the copy
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private Object copyCollection(final Collection<?> original,
+            final ClassPlan plan) {
+        Collection copy;
+        if (original instanceof SortedSet && plan.cls == TreeSet.class) {
+            copy = new TreeSet(((SortedSet) original).comparator());
+        } else {
+            copy = (Collection) construct(plan.constructor);
+        }
+        copies.put(original, copy);
+        List<Object> elements = new ArrayList<Object>(original.size());
+        for (Object element : original) {
+            elements.add(copyObject(element));
+        }
+        copy.addAll(elements);
+        return copy;
+    }
+
+    /**
+     * Copy a map by putting copies of its entries in a new instance of its
+     * class. Sorted maps keep their comparator.
+     *
+     * @param original the map
+     * @param plan the plan for its class
+     * @return the copy
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private Object copyMap(final Map<?, ?> original, final ClassPlan plan) {
+        Map copy;
+        if (original instanceof SortedMap && plan.cls == TreeMap.class) {
+            copy = new TreeMap(((SortedMap) original).comparator());
+        } else {
+            copy = (Map) construct(plan.constructor);
+        }
+        copies.put(original, copy);
+        List<Object> entries = new ArrayList<Object>(original.size() * 2);
+        for (Map.Entry<?, ?> entry : original.entrySet()) {
+            entries.add(copyObject(entry.getKey()));
+            entries.add(copyObject(entry.getValue()));
+        }
+        for (int i = 0; i < entries.size(); i += 2) {
+            copy.put(entries.get(i), entries.get(i + 1));
+        }
+        return copy;
+    }
+
+    /**
+     * Copy the written fields of an object into a new instance.
+     *
+     * @param original the object
+     * @param copy the new instance
+     * @param plan the plan for the class of the object
+     */
+    private void copyFields(final Object original, final Object copy,
+            final ClassPlan plan) {
+        try {
+            for (Field field : plan.fields) {
+                Class<?> type = field.getType();
+                if (!type.isPrimitive()) {
+                    field.set(copy, copyObject(field.get(original)));
+                } else if (type == double.class) {
+                    field.setDouble(copy, field.getDouble(original));
+                } else if (type == int.class) {
+                    field.setInt(copy, field.getInt(original));
+                } else if (type == boolean.class) {
+                    field.setBoolean(copy, field.getBoolean(original));
+                } else if (type == float.class) {
+                    field.setFloat(copy, field.getFloat(original));
+                } else if (type == long.class) {
+                    field.setLong(copy, field.getLong(original));
+                } else if (type == byte.class) {
+                    field.setByte(copy, field.getByte(original));
+                } else if (type == short.class) {
+                    field.setShort(copy, field.getShort(original));
+                } else {
+                    field.setChar(copy, field.getChar(original));
+                }
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(
+                    "Could not copy " + plan.cls.getName(), e);
+        }
+    }
+
+    /**
+     * Returns the plan for a class, building it the first time.
+     *
+     * @param cls the class
+     * @return the plan
+     */
+    private ClassPlan getPlan(final Class<?> cls) {
+        ClassPlan plan = PLANS.get(cls);
+        if (plan == null) {
+            plan = new ClassPlan(cls, mapper);
+            PLANS.put(cls, plan);
+        }
+        return plan;
+    }
+
+    /**
+     * Create an instance with a no-argument constructor.
+     *
+     * @param constructor the constructor
+     * @return the instance
+     */
+    private static Object construct(final Constructor<?> constructor) {
+        try {
+            return constructor.newInstance();
+        } catch (InstantiationException | IllegalAccessException
+                | InvocationTargetException e) {
+            throw new IllegalStateException("Could not create "
+                    + constructor.getDeclaringClass().getName(), e);
+        }
+    }
+
+    /**
+     * Call a <code>readResolve</code> method.
+     *
+     * @param method the method
+     * @param target the object to call it on
+     * @return the resolved object
+     */
+    private static Object invoke(final Method method, final Object target) {
+        try {
+            return method.invoke(target);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException(
+                    "Could not resolve " + target.getClass().getName(), e);
+        }
+    }
+
+    /**
+     * How to copy instances of one class: the fields to copy, the no-argument
+     * constructor for collections and maps, and the
+     * <code>readResolve</code> method, if any.
+     */
+    private static final class ClassPlan {
+
+        /** The class. */
+        private final Class<?> cls;
+
+        /** Fields written to xml, from the class and its superclasses. */
+        private final Field[] fields;
+
+        /**
+         * No-argument constructor, for collections and maps that can be
+         * rebuilt from their elements; null otherwise.
+         */
+        private final Constructor<?> constructor;
+
+        /** The readResolve method, or null. */
+        private final Method readResolve;
+
+        /**
+         * Build the plan for a class.
+         *
+         * @param cls the class
+         * @param mapper the xstream mapper deciding which fields are written
+         */
+        ClassPlan(final Class<?> cls, final Mapper mapper) {
+            this.cls = cls;
+            List<Field> list = new ArrayList<Field>();
+            Method resolve = null;
+            for (Class<?> c = cls; c != null && c != Object.class;
+                    c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    int mod = field.getModifiers();
+                    if (Modifier.isStatic(mod) || Modifier.isTransient(mod)
+                            || !mapper.shouldSerializeMember(c,
+                                    field.getName())
+                            || SKIPPED.contains(
+                                    c.getName() + "." + field.getName())) {
+                        continue;
+                    }
+                    field.setAccessible(true);
+                    list.add(field);
+                }
+                if (resolve == null) {
+                    try {
+                        resolve = c.getDeclaredMethod("readResolve");
+                        resolve.setAccessible(true);
+                    } catch (NoSuchMethodException | RuntimeException e) {
+                        resolve = null;
+                    }
+                }
+            }
+            fields = list.toArray(new Field[list.size()]);
+            readResolve = resolve;
+            Constructor<?> noArg = null;
+            if (Collection.class.isAssignableFrom(cls)
+                    || Map.class.isAssignableFrom(cls)) {
+                try {
+                    noArg = cls.getDeclaredConstructor();
+                    noArg.setAccessible(true);
+                } catch (NoSuchMethodException | RuntimeException e) {
+                    noArg = null;
+                }
+            }
+            constructor = noArg;
+        }
+    }
+
+}
@@ -17,7 +17,9 @@ import java.awt.geom.Point2D;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.ojalgo.access.Access2D.Builder;
@@ -28,6 +30,7 @@ import org.ojalgo.scalar.ComplexNumber;
 import org.simbrain.network.core.Network;
 import org.simbrain.network.core.Neuron;
 import org.simbrain.network.core.Synapse;
+import org.simbrain.util.math.SparseMatrix;
 
 /**
  * <b>SimnetUtils</b> provides utility classes relating to Simbrain networks.
@@ -134,12 +137,11 @@ public class SimnetUtils {
      */
     public static void scaleWeights(List<Neuron> src, List<Neuron> tar,
             double scalar) {
-        for (Neuron source : src) {
-            for (Neuron target : tar) {
-                Synapse weight = Network.getSynapse(source, target);
-                if (weight != null) {
-                    Network.getSynapse(source, target).forceSetStrength(
-                            weight.getStrength() * scalar);
+        Set<Neuron> targets = new HashSet<Neuron>(tar);
+        for (Neuron source : new HashSet<Neuron>(src)) {
+            for (Synapse weight : source.getFanOut().values()) {
+                if (targets.contains(weight.getTarget())) {
+                    weight.forceSetStrength(weight.getStrength() * scalar);
                 }
             }
         }
@@ -179,6 +181,71 @@ public class SimnetUtils {
     }
 
     /**
+     * Returns the weights connecting two lists of neurons as a sparse matrix
+     * with one row per target neuron and one column per source neuron, built
+     * from the targets' fan-in without ever making the matrix dense. It is the
+     * transpose of {@link #getWeights(List, List)}, and has the same
+     * eigenvalues.
+     *
+     * @param src list of source neurons
+     * @param tar list of target neurons
+     * @return the sparse weight matrix
+     */
+    public static SparseMatrix getSparseWeights(List<Neuron> src,
+            List<Neuron> tar) {
+        Map<Neuron, Integer> columns = new HashMap<Neuron, Integer>();
+        for (int i = 0; i < src.size(); i++) {
+            columns.put(src.get(i), i);
+        }
+        int[] rowPointers = new int[tar.size() + 1];
+        for (int j = 0; j < tar.size(); j++) {
+            int count = 0;
+            for (Synapse s : tar.get(j).getFanIn()) {
+                if (columns.containsKey(s.getSource())) {
+                    count++;
+                }
+            }
+            rowPointers[j + 1] = rowPointers[j] + count;
+        }
+        int[] columnIndices = new int[rowPointers[tar.size()]];
+        double[] values = new double[columnIndices.length];
+        int k = 0;
+        for (Neuron target : tar) {
+            for (Synapse s : target.getFanIn()) {
+                Integer column = columns.get(s.getSource());
+                if (column != null) {
+                    columnIndices[k] = column;
+                    values[k] = s.getStrength();
+                    k++;
+                }
+            }
+        }
+        return new SparseMatrix(src.size(), rowPointers, columnIndices,
+                values);
+    }
+
+    /**
+     * Estimate the spectral radius (the largest eigenvalue by modulus) of the
+     * weights connecting a list of neurons to a list of the same size, by
+     * Arnoldi iteration on the sparse weight matrix. Suitable for large sparse
+     * networks, where {@link #findMaxEig(double[][])} is too slow.
+     *
+     * @param src list of source neurons
+     * @param tar list of target neurons
+     * @return the estimated spectral radius
+     */
+    public static double estimateSpectralRadius(List<Neuron> src,
+            List<Neuron> tar) {
+        SparseMatrix weights = getSparseWeights(src, tar);
+        weights.setNumThreads(Runtime.getRuntime().availableProcessors());
+        return weights.spectralRadius();
+    }
+
+    /**
+     * Scale the weights connecting two lists of neurons so that their spectral
+     * radius (the largest eigenvalue by modulus) is the desired one. Does
+     * nothing if there are no weights, or all eigenvalues are zero.
+     *
      * @param src list of source neurons
      * @param tar list of target neurons
      * @param desiredEigen : the new max eig or spectral radius for the weight
@@ -186,8 +253,10 @@ public class SimnetUtils {
      */
     public static void scaleEigenvalue(List<Neuron> src, List<Neuron> tar,
             double desiredEigen) {
-        double maxEigen = findMaxEig(getWeights(src, tar));
-        scaleWeights(src, tar, desiredEigen / maxEigen);
+        double maxEigen = estimateSpectralRadius(src, tar);
+        if (maxEigen > 0) {
+            scaleWeights(src, tar, desiredEigen / maxEigen);
+        }
     }
 
     /**
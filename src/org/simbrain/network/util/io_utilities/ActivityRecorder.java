@@ -0,0 +1,52 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.util.io_utilities;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import org.simbrain.network.groups.NeuronGroup;
+
+/**
+ * Records the activity of a neuron group as the network runs. A recorder is
+ * given to {@link NeuronGroup#startRecording(ActivityRecorder)} and is called
+ * on the update thread after each update of the group, so implementations
+ * should return quickly. Closing the recorder finishes the recording.
+ *
+ * @see CsvActivityRecorder
+ * @see BinaryActivityRecorder
+ */
+public interface ActivityRecorder extends Closeable {
+
+    /**
+     * Record the current activations or spikes of a group.
+     *
+     * @param group the group that was just updated
+     * @throws IOException if the recording cannot be written
+     */
+    void record(NeuronGroup group) throws IOException;
+
+    /**
+     * Write out everything recorded so far.
+     *
+     * @throws IOException if the recording cannot be written
+     */
+    void flush() throws IOException;
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.util.io_utilities;
+
+/**
+ * Supplies rows of input from an array held in memory, starting over after
+ * the last row. The rows are used directly, not copied.
+ */
+public class ArrayInputSource implements InputSource {
+
+    /** The rows. */
+    private final double[][] data;
+
+    /** Index of the next row. */
+    private int index;
+
+    /**
+     * Supply the rows of an array.
+     *
+     * @param data the rows, all of the same length
+     */
+    public ArrayInputSource(final double[][] data) {
+        this.data = data;
+    }
+
+    @Override
+    public int getNumColumns() {
+        return data.length == 0 ? 0 : data[0].length;
+    }
+
+    @Override
+    public double[] nextRow() {
+        if (data.length == 0) {
+            return null;
+        }
+        if (index >= data.length) {
+            index = 0;
+        }
+        return data[index++];
+    }
+
+    @Override
+    public void reset() {
+        index = 0;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * @return the rows
+     */
+    public double[][] getData() {
+        return data;
+    }
+
+    /**
+     * @return the index of the next row
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * @param index the index of the next row
+     */
+    public void setIndex(final int index) {
+        this.index = index;
+    }
+
+}
@@ -0,0 +1,497 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.util.io_utilities;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.simbrain.network.core.Neuron;
+import org.simbrain.network.groups.NeuronGroup;
+import org.simbrain.network.util.io_utilities.GroupSerializer.Precision;
+
+/**
+ * Records the activity of a neuron group in a binary, columnar format. The
+ * update thread only copies the activations (or the indices of the neurons
+ * that spiked) into one of a fixed number of preallocated slots; a background
+ * thread encodes the slots and writes them to the file. The update thread
+ * waits only if the writer falls a full ring of slots behind.
+ * <p>
+ * A recording starts with a header: the magic number "SBRC", the version, a
+ * byte which is 1 for spikes and 0 for activations, the number of bytes per
+ * value (4 or 8), the number of neurons and the time step of the network.
+ * Activations follow as fixed-width rows, one per update: the iteration as an
+ * int, then one float or double per neuron. Spikes follow as (iteration,
+ * neuron index) int pairs, one per spike. All values are big-endian.
+ * <p>
+ * Recordings can be exported to the text format of
+ * {@link CsvActivityRecorder} with {@link #exportCsv(File, File)}.
+ */
+public final class BinaryActivityRecorder implements ActivityRecorder {
+
+    /** Name of the format, also used as a file extension. */
+    public static final String FORMAT = "sbrec";
+
+    /** Version of the format written by this class. */
+    public static final int VERSION = 1;
+
+    /** Default number of slots between the update thread and the writer. */
+    public static final int DEFAULT_CAPACITY = 64;
+
+    /** First four bytes of every recording: "SBRC". */
+    static final int MAGIC = 0x53425243;
+
+    /** Size of the header in bytes. */
+    static final int HEADER_SIZE = 22;
+
+    /** Size of the write buffer, unless a row needs more. */
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /** Queued after the last slot to stop the writer. */
+    private static final Slot END = new Slot();
+
+    /** The file being written. */
+    private final FileChannel channel;
+
+    /** Whether spikes are recorded rather than activations. */
+    private final boolean spikes;
+
+    /** Whether values are written as floats or doubles. */
+    private final Precision precision;
+
+    /** Number of slots. */
+    private final int capacity;
+
+    /** Slots ready to be filled by the update thread. */
+    private final BlockingQueue<Slot> free;
+
+    /** Filled slots waiting to be written, in order. */
+    private final BlockingQueue<Slot> full;
+
+    /** Guards {@link #written}. */
+    private final Object lock = new Object();
+
+    /** Number of slots handed to the writer, counted on the update thread. */
+    private long submitted;
+
+    /** Number of slots written to the file. */
+    private long written;
+
+    /** Number of times the update thread had to wait for a free slot. */
+    private volatile long stalls;
+
+    /** The first error of the writer, reported on the update thread. */
+    private volatile IOException error;
+
+    /** The writer, started with the first record. */
+    private Thread writer;
+
+    /** Number of neurons, fixed by the first record. */
+    private int numNeurons = -1;
+
+    /** Whether the recorder was closed. */
+    private boolean closed;
+
+    /**
+     * Record to a file, with the default number of slots.
+     *
+     * @param file the file to write, replaced if it exists
+     * @param spikes true to record spikes, false to record activations
+     * @param precision whether activations are written as floats or doubles
+     * @throws IOException if the file cannot be opened
+     */
+    public BinaryActivityRecorder(final File file, final boolean spikes,
+            final Precision precision) throws IOException {
+        this(file, spikes, precision, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Record to a file.
+     *
+     * @param file the file to write, replaced if it exists
+     * @param spikes true to record spikes, false to record activations
+     * @param precision whether activations are written as floats or doubles
+     * @param capacity number of updates that can be waiting to be written
+     * @throws IOException if the file cannot be opened
+     */
+    public BinaryActivityRecorder(final File file, final boolean spikes,
+            final Precision precision, final int capacity)
+            throws IOException {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.spikes = spikes;
+        this.precision = precision;
+        this.capacity = capacity;
+        free = new ArrayBlockingQueue<Slot>(capacity);
+        full = new ArrayBlockingQueue<Slot>(capacity + 1);
+        channel = new FileOutputStream(file).getChannel();
+    }
+
+    @Override
+    public void record(final NeuronGroup group) throws IOException {
+        if (closed) {
+            throw new IOException("Recorder is closed");
+        }
+        checkError();
+        List<Neuron> neurons = group.getNeuronListUnsafe();
+        int n = neurons.size();
+        if (writer == null) {
+            start(n, group.getParentNetwork().getTimeStep());
+        } else if (n != numNeurons) {
+            throw new IOException("Group size changed from " + numNeurons
+                    + " to " + n + " while recording");
+        }
+        Slot slot = free.poll();
+        if (slot == null) {
+            stalls++;
+            try {
+                slot = free.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while recording", e);
+            }
+        }
+        slot.iteration = (int) group.getParentNetwork().getIterations();
+        if (spikes) {
+            int count = 0;
+            for (int i = 0; i < n; i++) {
+                if (neurons.get(i).isSpike()) {
+                    slot.indices[count++] = i;
+                }
+            }
+            slot.count = count;
+        } else {
+            for (int i = 0; i < n; i++) {
+                slot.values[i] = neurons.get(i).getActivation();
+            }
+        }
+        submitted++;
+        full.add(slot);
+    }
+
+    /**
+     * Allocate the slots, write the header and start the writer.
+     *
+     * @param n number of neurons in the group
+     * @param timeStep time step of the network
+     * @throws IOException if the header cannot be written
+     */
+    private void start(final int n, final double timeStep)
+            throws IOException {
+        numNeurons = n;
+        for (int i = 0; i < capacity; i++) {
+            Slot slot = new Slot();
+            if (spikes) {
+                slot.indices = new int[n];
+            } else {
+                slot.values = new double[n];
+            }
+            free.add(slot);
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.put((byte) (spikes ? 1 : 0));
+        header.put((byte) bytesPerValue(precision));
+        header.putInt(n);
+        header.putDouble(timeStep);
+        header.flip();
+        writeFully(channel, header);
+        writer = new Thread(this::write, "Activity recorder");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Body of the writer thread: encode filled slots into a buffer, write the
+     * buffer whenever it fills or no slots are waiting, and return the slots.
+     */
+    private void write() {
+        int rowBytes = spikes ? 8 * numNeurons
+                : 4 + numNeurons * bytesPerValue(precision);
+        ByteBuffer buffer = ByteBuffer
+                .allocateDirect(Math.max(BUFFER_SIZE, rowBytes));
+        long encoded = 0;
+        while (true) {
+            Slot slot;
+            try {
+                slot = full.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (slot == END) {
+                drain(buffer);
+                publish(encoded);
+                return;
+            }
+            int bytes = spikes ? 8 * slot.count : rowBytes;
+            if (buffer.remaining() < bytes) {
+                drain(buffer);
+            }
+            if (spikes) {
+                for (int i = 0; i < slot.count; i++) {
+                    buffer.putInt(slot.iteration);
+                    buffer.putInt(slot.indices[i]);
+                }
+            } else {
+                buffer.putInt(slot.iteration);
+                if (precision == Precision.FLOAT_64) {
+                    buffer.asDoubleBuffer().put(slot.values, 0, numNeurons);
+                    buffer.position(buffer.position() + numNeurons * 8);
+                } else {
+                    for (int i = 0; i < numNeurons; i++) {
+                        buffer.putFloat((float) slot.values[i]);
+                    }
+                }
+            }
+            free.add(slot);
+            encoded++;
+            if (full.isEmpty()) {
+                drain(buffer);
+                publish(encoded);
+            }
+        }
+    }
+
+    /**
+     * Write out and clear the buffer of the writer. After an error the
+     * buffer is discarded, so the update thread is never held up.
+     *
+     * @param buffer the buffer
+     */
+    private void drain(final ByteBuffer buffer) {
+        buffer.flip();
+        if (error == null) {
+            try {
+                writeFully(channel, buffer);
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Record that slots were written and wake up {@link #flush()}.
+     *
+     * @param count total number of slots written
+     */
+    private void publish(final long count) {
+        synchronized (lock) {
+            written = count;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Waits until everything recorded so far has been written to the file.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (writer != null) {
+            synchronized (lock) {
+                while (written < submitted && writer.isAlive()) {
+                    try {
+                        lock.wait(100);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted while flushing",
+                                e);
+                    }
+                }
+            }
+        }
+        checkError();
+    }
+
+    /**
+     * Write everything recorded, stop the writer and close the file.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (writer != null) {
+                full.add(END);
+                try {
+                    writer.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        } finally {
+            channel.close();
+        }
+        checkError();
+    }
+
+    /**
+     * @return the number of times recording waited for the writer to catch
+     *         up; if this grows, a larger capacity may help
+     */
+    public long getStalls() {
+        return stalls;
+    }
+
+    /**
+     * Report an error of the writer.
+     *
+     * @throws IOException the error, if there was one
+     */
+    private void checkError() throws IOException {
+        IOException e = error;
+        if (e != null) {
+            throw new IOException("Writing the recording failed", e);
+        }
+    }
+
+    /**
+     * Export a recording to the text format of {@link CsvActivityRecorder}.
+     * Spike times are the iteration times the time step of the network.
+     *
+     * @param recording the binary recording
+     * @param csv the text file to write, replaced if it exists
+     * @throws IOException if the recording cannot be read or the text file
+     *             cannot be written
+     */
+    public static void exportCsv(final File recording, final File csv)
+            throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(recording),
+                        1 << 16));
+                CsvActivityRecorder out = new CsvActivityRecorder(
+                        new BufferedWriter(new FileWriter(csv), 1 << 16),
+                        false)) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(recording + " is not a recording");
+            }
+            int version = in.readInt();
+            if (version > VERSION) {
+                throw new IOException("Recording version " + version
+                        + " is newer than supported version " + VERSION);
+            }
+            boolean spikes = in.readByte() == 1;
+            int bytesPerValue = in.readByte();
+            int n = in.readInt();
+            double timeStep = in.readDouble();
+            StringBuilder line = new StringBuilder();
+            if (spikes) {
+                int current = -1;
+                while (true) {
+                    int iteration;
+                    try {
+                        iteration = in.readInt();
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    int index = in.readInt();
+                    if (iteration != current) {
+                        if (current >= 0) {
+                            out.writeLine(line);
+                        }
+                        line.setLength(0);
+                        line.append(iteration * timeStep).append(' ');
+                        current = iteration;
+                    }
+                    line.append(index).append(' ');
+                }
+                if (current >= 0) {
+                    out.writeLine(line);
+                }
+            } else {
+                while (true) {
+                    try {
+                        in.readInt();
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    line.setLength(0);
+                    for (int i = 0; i < n; i++) {
+                        if (i > 0) {
+                            line.append(", ");
+                        }
+                        if (bytesPerValue == 8) {
+                            line.append(in.readDouble());
+                        } else {
+                            line.append((double) in.readFloat());
+                        }
+                    }
+                    out.writeLine(line);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param precision a precision
+     * @return the number of bytes per value at that precision
+     */
+    private static int bytesPerValue(final Precision precision) {
+        return precision == Precision.FLOAT_64 ? 8 : 4;
+    }
+
+    /**
+     * Write all of a buffer to a channel.
+     *
+     * @param channel the channel
+     * @param buffer the buffer, positioned at the data
+     * @throws IOException if writing fails
+     */
+    private static void writeFully(final FileChannel channel,
+            final ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * The state of the group after one update, passed from the update thread
+     * to the writer.
+     */
+    private static final class Slot {
+
+        /** Iteration of the network at the update. */
+        private int iteration;
+
+        /** Activations, when recording activations. */
+        private double[] values;
+
+        /** Indices of the neurons that spiked, when recording spikes. */
+        private int[] indices;
+
+        /** Number of entries of {@link #indices} in use. */
+        private int count;
+    }
+
+}
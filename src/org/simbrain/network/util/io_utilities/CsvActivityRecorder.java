@@ -0,0 +1,134 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.util.io_utilities;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+import org.simbrain.network.core.Neuron;
+import org.simbrain.network.groups.NeuronGroup;
+
+/**
+ * Records the activity of a neuron group as text, written on the update
+ * thread. Activations are written one row per update, separated by commas.
+ * Spikes are written one line per update in which some neuron spiked: the
+ * time, followed by the index of each neuron that spiked, separated by
+ * spaces.
+ * <p>
+ * This is the format neuron groups have always recorded in. It is slow for
+ * large groups; {@link BinaryActivityRecorder} records much faster and can
+ * export its recordings to this format afterwards.
+ */
+public class CsvActivityRecorder implements ActivityRecorder {
+
+    /** Where the text goes. */
+    private final Writer writer;
+
+    /** Whether spikes are recorded rather than activations. */
+    private final boolean spikes;
+
+    /** Holds the line being written. */
+    private final StringBuilder line = new StringBuilder();
+
+    /** Lines written since the last flush. */
+    private int linesSinceFlush;
+
+    /**
+     * Record to a file.
+     *
+     * @param file the file to write, replaced if it exists
+     * @param spikes true to record spikes, false to record activations
+     * @throws IOException if the file cannot be opened
+     */
+    public CsvActivityRecorder(final File file, final boolean spikes)
+            throws IOException {
+        this(new BufferedWriter(new FileWriter(file)), spikes);
+    }
+
+    /**
+     * Record to a writer, which is closed with this recorder.
+     *
+     * @param writer where to write
+     * @param spikes true to record spikes, false to record activations
+     */
+    public CsvActivityRecorder(final Writer writer, final boolean spikes) {
+        this.writer = writer;
+        this.spikes = spikes;
+    }
+
+    @Override
+    public void record(final NeuronGroup group) throws IOException {
+        List<Neuron> neurons = group.getNeuronListUnsafe();
+        line.setLength(0);
+        if (spikes) {
+            boolean spiked = false;
+            for (int i = 0, n = neurons.size(); i < n; i++) {
+                if (neurons.get(i).isSpike()) {
+                    if (!spiked) {
+                        line.append(group.getParentNetwork().getTime())
+                                .append(' ');
+                        spiked = true;
+                    }
+                    line.append(i).append(' ');
+                }
+            }
+            if (!spiked) {
+                return;
+            }
+        } else {
+            for (int i = 0, n = neurons.size(); i < n; i++) {
+                if (i > 0) {
+                    line.append(", ");
+                }
+                line.append(neurons.get(i).getActivation());
+            }
+        }
+        writeLine(line);
+    }
+
+    /**
+     * Write a line, flushing every {@link NeuronGroup#FLUSH_FREQUENCY} lines.
+     *
+     * @param text the line, without a line separator
+     * @throws IOException if the line cannot be written
+     */
+    void writeLine(final CharSequence text) throws IOException {
+        writer.append(text).append(System.lineSeparator());
+        if (++linesSinceFlush >= NeuronGroup.FLUSH_FREQUENCY) {
+            writer.flush();
+            linesSinceFlush = 0;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writer.flush();
+        linesSinceFlush = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+}
@@ -0,0 +1,56 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.util.io_utilities;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import org.simbrain.network.groups.NeuronGroup;
+
+/**
+ * Supplies rows of input to a neuron group in input mode, one row per update.
+ * See {@link NeuronGroup#setInputSource(InputSource)}.
+ *
+ * @see ArrayInputSource
+ * @see StreamingInputSource
+ */
+public interface InputSource extends Closeable {
+
+    /**
+     * @return the number of values in each row
+     */
+    int getNumColumns();
+
+    /**
+     * Returns the next row. The returned array may be reused for later rows,
+     * so callers should copy values they want to keep.
+     *
+     * @return the row, or null if the source has no more rows
+     * @throws IOException if the row cannot be read
+     */
+    double[] nextRow() throws IOException;
+
+    /**
+     * Start again from the first row.
+     *
+     * @throws IOException if the source cannot be restarted
+     */
+    void reset() throws IOException;
+
+}
@@ -0,0 +1,640 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.util.io_utilities;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.simbrain.network.core.Network;
+import org.simbrain.network.core.Neuron;
+import org.simbrain.network.core.SpikingNeuronUpdateRule;
+import org.simbrain.network.core.Synapse;
+import org.simbrain.network.groups.Group;
+import org.simbrain.network.groups.NeuronGroup;
+import org.simbrain.network.groups.SynapseGroup;
+import org.simbrain.network.neuron_update_rules.AdExIFRule;
+import org.simbrain.network.neuron_update_rules.ContinuousSigmoidalRule;
+import org.simbrain.network.neuron_update_rules.FitzhughNagumo;
+import org.simbrain.network.neuron_update_rules.HodgkinHuxleyRule;
+import org.simbrain.network.neuron_update_rules.IzhikevichRule;
+import org.simbrain.network.neuron_update_rules.MorrisLecarRule;
+import org.simbrain.network.neuron_update_rules.NakaRushtonRule;
+import org.simbrain.network.neuron_update_rules.PointNeuronRule;
+import org.simbrain.network.neuron_update_rules.RunningAverageRule;
+import org.simbrain.network.neuron_update_rules.TimedAccumulatorRule;
+import org.simbrain.network.synapse_update_rules.HebbianThresholdRule;
+import org.simbrain.network.synapse_update_rules.STDPRule;
+import org.simbrain.util.math.SimbrainRandom;
+
+/**
+ * Checkpoints of the dynamic state of a running network, for resuming a long
+ * run after a crash without re-reading the network. Only state which changes
+ * as the network runs is written: activations, buffers, input values and spike
+ * flags of neurons, the state variables of their update rules (e.g. Izhikevich
+ * recovery) or the state of shared rules, strengths, post-synaptic responses,
+ * delay buffers and responder state of synapses, the state variables of
+ * learning rules, the network time and the state of the random number
+ * generators of the calling thread. The state variables of each rule class
+ * are listed in {@link #STATE_FIELD_NAMES}; rule parameters are not written.
+ * Spikes in flight in event driven synapse groups (see
+ * {@link SynapseGroup#setEventDriven(boolean)}) are written to the delay
+ * buffers of their synapses first, from which the groups carry on after a
+ * restore.
+ * <p>
+ * The state is laid out in a memory mapped file, neuron group by neuron group
+ * and synapse group by synapse group, so taking a checkpoint is little more
+ * than copying values into memory. The file holds two slots which are written
+ * alternately; a slot is marked complete only after it is flushed, so a crash
+ * while writing a checkpoint leaves the previous one intact.
+ * <p>
+ * A checkpoint can only be restored into a network with the same structure as
+ * the one it was taken from, e.g. the same network loaded again from its file.
+ */
+public class NetworkCheckpoint implements Closeable {
+
+    /** First four bytes of each slot: "SBCP". */
+    private static final int MAGIC = 0x53424350;
+
+    /** Version of the layout. */
+    private static final int VERSION = 2;
+
+    /**
+     * Size of the fixed part of a slot header: magic, version, fingerprint,
+     * sequence number, complete flag, random state length, network time and
+     * caller's iteration.
+     */
+    private static final int FIXED_HEADER = 4 + 4 + 8 + 8 + 4 + 4 + 8 + 8;
+
+    /** Offset of the complete flag in a slot. */
+    private static final int COMPLETE_OFFSET = 24;
+
+    /** Number of values written for each neuron, before rule fields. */
+    private static final int NEURON_VALUES = 7;
+
+    /**
+     * Names of the fields of each rule class which hold state that changes as
+     * the network runs. Fields declared by superclasses are listed under the
+     * superclass.
+     */
+    private static final Map<Class<?>, String[]> STATE_FIELD_NAMES =
+            new HashMap<Class<?>, String[]>();
+
+    static {
+        STATE_FIELD_NAMES.put(SpikingNeuronUpdateRule.class,
+                new String[] { "lastSpikeTime" });
+        STATE_FIELD_NAMES.put(AdExIFRule.class, new String[] { "v_mem", "w" });
+        STATE_FIELD_NAMES.put(ContinuousSigmoidalRule.class,
+                new String[] { "netActivation" });
+        STATE_FIELD_NAMES.put(FitzhughNagumo.class, new String[] { "v", "w" });
+        STATE_FIELD_NAMES.put(HodgkinHuxleyRule.class,
+                new String[] { "n", "m", "h" });
+        STATE_FIELD_NAMES.put(IzhikevichRule.class,
+                new String[] { "recovery" });
+        STATE_FIELD_NAMES.put(MorrisLecarRule.class, new String[] { "w_K" });
+        STATE_FIELD_NAMES.put(NakaRushtonRule.class, new String[] { "a" });
+        STATE_FIELD_NAMES.put(PointNeuronRule.class,
+                new String[] { "excitatoryConductance",
+                    "inhibitoryConductance", "membranePotential" });
+        STATE_FIELD_NAMES.put(RunningAverageRule.class,
+                new String[] { "val" });
+        STATE_FIELD_NAMES.put(TimedAccumulatorRule.class,
+                new String[] { "currentState" });
+        STATE_FIELD_NAMES.put(HebbianThresholdRule.class,
+                new String[] { "outputThreshold" });
+        STATE_FIELD_NAMES.put(STDPRule.class, new String[] { "delta_w" });
+    }
+
+    /** State fields of each rule class, see {@link #stateFields}. */
+    private static final Map<Class<?>, Field[]> STATE_FIELDS =
+            new ConcurrentHashMap<Class<?>, Field[]>();
+
+    /** The network. */
+    private final Network network;
+
+    /** The checkpoint file. */
+    private final File file;
+
+    /** Neuron groups, in layout order. */
+    private final List<NeuronGroup> neuronGroups = new ArrayList<NeuronGroup>();
+
+    /** Neurons, in layout order: by group, then those not in groups. */
+    private final Neuron[] neurons;
+
+    /** Synapses, in layout order: by group, then loose synapses. */
+    private final Synapse[] synapses;
+
+    /** Number of values in a checkpoint. */
+    private final int numValues;
+
+    /** Identifies the structure of the network. */
+    private final long fingerprint;
+
+    /** Size of a slot header, with the random state. */
+    private final int headerSize;
+
+    /** Size of one slot. */
+    private final long slotSize;
+
+    /** Scratch space for values which are not in a primitive array. */
+    private final double[] scratch = new double[64];
+
+    /** The mapped file, once opened. */
+    private MappedByteBuffer buffer;
+
+    /** The open file. */
+    private FileChannel channel;
+
+    /** Sequence number of the last checkpoint written or restored. */
+    private long sequence;
+
+    /**
+     * Prepare to checkpoint a network. The layout is worked out now, so the
+     * network's structure must not change while the checkpoint is used.
+     *
+     * @param network the network
+     * @param file the checkpoint file
+     */
+    public NetworkCheckpoint(final Network network, final File file) {
+        this.network = network;
+        this.file = file;
+
+        List<Neuron> neuronList = new ArrayList<Neuron>();
+        List<Synapse> synapseList = new ArrayList<Synapse>();
+        List<SynapseGroup> synapseGroups = new ArrayList<SynapseGroup>();
+        for (Group group : network.getFlatGroupList()) {
+            if (group instanceof NeuronGroup) {
+                neuronGroups.add((NeuronGroup) group);
+                neuronList.addAll(((NeuronGroup) group).getNeuronList());
+            } else if (group instanceof SynapseGroup) {
+                synapseGroups.add((SynapseGroup) group);
+            }
+        }
+        neuronList.addAll(network.getNeuronList());
+        neurons = neuronList.toArray(new Neuron[neuronList.size()]);
+
+        // Synapse sets have no stable order, so sort the synapses of each
+        // group by source and target
+        Map<Neuron, Integer> index = new IdentityHashMap<Neuron, Integer>();
+        for (int i = 0; i < neurons.length; i++) {
+            index.put(neurons[i], i);
+        }
+        for (SynapseGroup group : synapseGroups) {
+            synapseList.addAll(sorted(group.getAllSynapses(), index));
+        }
+        synapseList.addAll(sorted(network.getSynapseList(), index));
+        synapses = synapseList.toArray(new Synapse[synapseList.size()]);
+
+        long hash = 17;
+        int count = 0;
+        for (NeuronGroup group : neuronGroups) {
+            hash = 31 * hash + group.size();
+            if (group.isSharedRule()) {
+                hash = 31 * hash
+                        + group.getSharedRule().getClass().getName().hashCode();
+                count += stateFields(group.getSharedRule()).length
+                        + group.getSharedRuleState().length;
+            }
+        }
+        for (Neuron n : neurons) {
+            hash = 31 * hash + n.getUpdateRule().getClass().getName().hashCode();
+            count += NEURON_VALUES + (isShared(n) ? 0
+                    : stateFields(n.getUpdateRule()).length);
+        }
+        for (Synapse s : synapses) {
+            hash = 31 * hash + index.get(s.getSource());
+            hash = 31 * hash + index.get(s.getTarget());
+            hash = 31 * hash + s.getDelay();
+            hash = 31 * hash
+                    + s.getLearningRule().getClass().getName().hashCode();
+            count += 2 + (s.getDelay() > 0 ? s.getDelay() + 1 : 0)
+                    + responderStateLength(s)
+                    + stateFields(s.getLearningRule()).length;
+        }
+        numValues = count;
+        fingerprint = 31 * hash + count;
+        headerSize = (FIXED_HEADER + SimbrainRandom.getState().length + 7)
+                & ~7;
+        slotSize = headerSize + 8L * numValues;
+    }
+
+    /**
+     * Take a checkpoint. Should be called from the thread which updates the
+     * network, between updates, so the random state saved is the one the
+     * network uses.
+     *
+     * @param iteration a number to store with the checkpoint, e.g. the
+     *            workspace time, returned by {@link #restore()}
+     * @throws IOException if the checkpoint can't be written
+     */
+    public void save(final long iteration) throws IOException {
+        if (buffer == null || buffer.isReadOnly()) {
+            map(true);
+        }
+        long next = sequence + 1;
+        int slot = (int) (next % 2) * (int) slotSize;
+        byte[] random = SimbrainRandom.getState();
+        if (FIXED_HEADER + random.length > headerSize) {
+            throw new IllegalStateException("Random state changed size");
+        }
+
+        buffer.putInt(slot + COMPLETE_OFFSET, 0);
+        buffer.position(slot);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putLong(fingerprint);
+        buffer.putLong(next);
+        buffer.putInt(0);
+        buffer.putInt(random.length);
+        buffer.putDouble(network.getTime());
+        buffer.putLong(iteration);
+        buffer.put(random);
+        buffer.position(slot + headerSize);
+        writeValues(buffer.slice().asDoubleBuffer());
+        buffer.force();
+
+        // Only now is the slot complete
+        buffer.putInt(slot + COMPLETE_OFFSET, 1);
+        buffer.force();
+        sequence = next;
+    }
+
+    /**
+     * Restore the latest complete checkpoint in the file, if there is one.
+     * The random generators of the calling thread are restored too, so the
+     * run carries on as it would have.
+     *
+     * @return the iteration stored with the checkpoint, or -1 if the file
+     *         holds no complete checkpoint
+     * @throws IOException if the file can't be read, or holds a checkpoint of
+     *             a network with a different structure
+     */
+    public long restore() throws IOException {
+        if (!file.exists() || file.length() == 0) {
+            return -1;
+        }
+        if (buffer == null) {
+            map(false);
+        }
+        int latest = -1;
+        long latestSequence = 0;
+        for (int i = 0; i < 2; i++) {
+            int slot = i * (int) slotSize;
+            if (buffer.getInt(slot) != MAGIC
+                    || buffer.getInt(slot + COMPLETE_OFFSET) != 1) {
+                continue;
+            }
+            if (buffer.getInt(slot + 4) != VERSION
+                    || buffer.getLong(slot + 8) != fingerprint) {
+                throw new IOException("Checkpoint " + file
+                        + " is of a network with a different structure");
+            }
+            long slotSequence = buffer.getLong(slot + 16);
+            if (latest < 0 || slotSequence > latestSequence) {
+                latest = slot;
+                latestSequence = slotSequence;
+            }
+        }
+        if (latest < 0) {
+            return -1;
+        }
+
+        byte[] random = new byte[buffer.getInt(latest + 28)];
+        double time = buffer.getDouble(latest + 32);
+        long iteration = buffer.getLong(latest + 40);
+        buffer.position(latest + FIXED_HEADER);
+        buffer.get(random);
+        network.setTime(time);
+        buffer.position(latest + headerSize);
+        readValues(buffer.slice().asDoubleBuffer());
+        SimbrainRandom.setState(random);
+        sequence = latestSequence;
+        return iteration;
+    }
+
+    /**
+     * Map the file, sized for two slots when writing.
+     *
+     * @param write true to map for writing
+     * @throws IOException if the file can't be opened
+     */
+    private void map(final boolean write) throws IOException {
+        close();
+        long size = 2 * slotSize;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Network too large to checkpoint");
+        }
+        if (write) {
+            channel = FileChannel.open(file.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            if (channel.size() != size) {
+                // Slots of another layout can't be restored anyway
+                channel.truncate(0);
+            }
+            buffer = channel.map(MapMode.READ_WRITE, 0, size);
+        } else {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            if (channel.size() != size) {
+                throw new IOException("Checkpoint " + file
+                        + " is of a network with a different structure");
+            }
+            buffer = channel.map(MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+    /**
+     * Write the state of the network.
+     *
+     * @param out where to write
+     */
+    private void writeValues(final DoubleBuffer out) {
+        for (Group group : network.getFlatGroupList()) {
+            if (group instanceof SynapseGroup) {
+                ((SynapseGroup) group).storeSpikePropagator();
+            }
+        }
+        for (NeuronGroup group : neuronGroups) {
+            if (group.isSharedRule()) {
+                writeFields(out, group.getSharedRule());
+                out.put(group.getSharedRuleState());
+            }
+        }
+        for (Neuron n : neurons) {
+            out.put(n.getActivation());
+            out.put(n.getLastActivation());
+            out.put(n.getBuffer());
+            out.put(n.getInputValue());
+            out.put(n.getAuxValue());
+            out.put(n.isSpike() ? 1 : 0);
+            out.put(n.getSpkBuffer() ? 1 : 0);
+            if (!isShared(n)) {
+                writeFields(out, n.getUpdateRule());
+            }
+        }
+        for (Synapse s : synapses) {
+            out.put(s.getStrength());
+            out.put(s.getPsr());
+            int delay = s.getDelay();
+            if (delay > 0) {
+                double[] values = scratch(delay);
+                s.getDelayedValues(values, 0);
+                out.put(values, 0, delay);
+                out.put(s.getDelayedPsr());
+            }
+            int stateLength = responderStateLength(s);
+            if (stateLength > 0) {
+                out.put(s.getResponderState(), 0, stateLength);
+            }
+            writeFields(out, s.getLearningRule());
+        }
+    }
+
+    /**
+     * Read the state of the network.
+     *
+     * @param in where to read
+     */
+    private void readValues(final DoubleBuffer in) {
+        for (NeuronGroup group : neuronGroups) {
+            if (group.isSharedRule()) {
+                readFields(in, group.getSharedRule());
+                in.get(group.getSharedRuleState());
+            }
+        }
+        for (Neuron n : neurons) {
+            double activation = in.get();
+            double lastActivation = in.get();
+            // Setting the buffer and activation also sets the last activation
+            n.setBuffer(in.get());
+            n.forceSetActivation(lastActivation);
+            n.forceSetActivation(activation);
+            n.setInputValue(in.get());
+            n.setAuxValue(in.get());
+            n.setSpike(in.get() != 0);
+            n.setSpkBuffer(in.get() != 0);
+            if (!isShared(n)) {
+                readFields(in, n.getUpdateRule());
+            }
+        }
+        // Compiled weights and spike propagators are rebuilt from the
+        // restored synapses when next needed
+        for (Group group : network.getFlatGroupList()) {
+            if (group instanceof SynapseGroup) {
+                ((SynapseGroup) group).invalidateCompiledWeights();
+            }
+        }
+        for (Synapse s : synapses) {
+            s.forceSetStrength(in.get());
+            s.setPsr(in.get());
+            int delay = s.getDelay();
+            if (delay > 0) {
+                double[] values = scratch(delay);
+                in.get(values, 0, delay);
+                s.setDelayedValues(values, 0);
+                s.setDelayedPsr(in.get());
+            }
+            int stateLength = responderStateLength(s);
+            if (stateLength > 0) {
+                in.get(s.getResponderState(), 0, stateLength);
+            }
+            readFields(in, s.getLearningRule());
+        }
+    }
+
+    /**
+     * @param length the number of values needed
+     * @return a scratch array with room for them
+     */
+    private double[] scratch(final int length) {
+        return length <= scratch.length ? scratch : new double[length];
+    }
+
+    /**
+     * Write the state fields of a rule.
+     *
+     * @param out where to write
+     * @param rule the rule
+     */
+    private static void writeFields(final DoubleBuffer out,
+            final Object rule) {
+        try {
+            for (Field f : stateFields(rule)) {
+                Class<?> type = f.getType();
+                if (type == double.class) {
+                    out.put(f.getDouble(rule));
+                } else if (type == boolean.class) {
+                    out.put(f.getBoolean(rule) ? 1 : 0);
+                } else if (type == long.class) {
+                    out.put(Double.longBitsToDouble(f.getLong(rule)));
+                } else {
+                    // int, float, short, byte and char fit in a double
+                    out.put(f.getDouble(rule));
+                }
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Read the state fields of a rule.
+     *
+     * @param in where to read
+     * @param rule the rule
+     */
+    private static void readFields(final DoubleBuffer in, final Object rule) {
+        try {
+            for (Field f : stateFields(rule)) {
+                Class<?> type = f.getType();
+                double value = in.get();
+                if (type == double.class) {
+                    f.setDouble(rule, value);
+                } else if (type == boolean.class) {
+                    f.setBoolean(rule, value != 0);
+                } else if (type == long.class) {
+                    f.setLong(rule, Double.doubleToRawLongBits(value));
+                } else if (type == int.class) {
+                    f.setInt(rule, (int) value);
+                } else if (type == float.class) {
+                    f.setFloat(rule, (float) value);
+                } else if (type == short.class) {
+                    f.setShort(rule, (short) value);
+                } else if (type == byte.class) {
+                    f.setByte(rule, (byte) value);
+                } else {
+                    f.setChar(rule, (char) value);
+                }
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Find the state fields of a rule: those listed in
+     * {@link #STATE_FIELD_NAMES} for the rule's class and its superclasses.
+     *
+     * @param rule the rule
+     * @return the fields
+     */
+    private static Field[] stateFields(final Object rule) {
+        Field[] fields = STATE_FIELDS.get(rule.getClass());
+        if (fields != null) {
+            return fields;
+        }
+        List<Field> list = new ArrayList<Field>();
+        for (Class<?> c = rule.getClass(); c != Object.class; c = c
+                .getSuperclass()) {
+            String[] names = STATE_FIELD_NAMES.get(c);
+            if (names == null) {
+                continue;
+            }
+            for (String name : names) {
+                try {
+                    Field f = c.getDeclaredField(name);
+                    f.setAccessible(true);
+                    list.add(f);
+                } catch (NoSuchFieldException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+        fields = list.toArray(new Field[list.size()]);
+        STATE_FIELDS.put(rule.getClass(), fields);
+        return fields;
+    }
+
+    /**
+     * @param n a neuron
+     * @return true if the neuron's rule is shared by its group, so its state
+     *         is written with the group
+     */
+    private static boolean isShared(final Neuron n) {
+        return n.getParentGroup() instanceof NeuronGroup
+                && ((NeuronGroup) n.getParentGroup()).isSharedRule();
+    }
+
+    /**
+     * @param s a synapse
+     * @return the number of spike responder state variables it keeps
+     */
+    private static int responderStateLength(final Synapse s) {
+        return s.getSpikeResponder() == null ? 0
+                : s.getSpikeResponder().getNumStateVariables();
+    }
+
+    /**
+     * Sort synapses by the index of their source, then of their target.
+     *
+     * @param synapses the synapses
+     * @param index the index of each neuron
+     * @return the sorted synapses
+     */
+    private static List<Synapse> sorted(final Iterable<Synapse> synapses,
+            final Map<Neuron, Integer> index) {
+        List<Synapse> list = new ArrayList<Synapse>();
+        for (Synapse s : synapses) {
+            list.add(s);
+        }
+        Synapse[] array = list.toArray(new Synapse[list.size()]);
+        Arrays.sort(array, new Comparator<Synapse>() {
+            @Override
+            public int compare(final Synapse a, final Synapse b) {
+                int c = Integer.compare(index.get(a.getSource()),
+                        index.get(b.getSource()));
+                return c != 0 ? c
+                        : Integer.compare(index.get(a.getTarget()),
+                                index.get(b.getTarget()));
+            }
+        });
+        return Arrays.asList(array);
+    }
+
+    /**
+     * Close the file. The checkpoint can be used again afterwards; the file is
+     * reopened when needed.
+     *
+     * @throws IOException if closing fails
+     */
+    @Override
+    public void close() throws IOException {
+        buffer = null;
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+}
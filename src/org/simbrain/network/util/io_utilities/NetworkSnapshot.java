@@ -0,0 +1,813 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.util.io_utilities;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.simbrain.network.core.Network;
+import org.simbrain.network.core.Neuron;
+import org.simbrain.network.core.Synapse;
+import org.simbrain.network.core.SynapseUpdateRule;
+import org.simbrain.network.groups.SynapseGroup;
+import org.simbrain.network.synapse_update_rules.spikeresponders.SpikeResponder;
+
+import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
+import com.thoughtworks.xstream.io.xml.StaxDriver;
+
+/**
+ * A binary snapshot of a network. Snapshots are much faster to write and read
+ * than the XML representation of networks with many synapses, and unlike the
+ * compressed representation of synapse groups they keep the full state of
+ * every synapse (ids, post-synaptic responses, delays, rules). A snapshot starts with a magic number and a version, followed by
+ * sections:
+ * <ul>
+ * <li>the structure of the network (neurons, groups, update actions etc.)
+ * without any synapses, as XML;</li>
+ * <li>the synapses of each synapse group, as primitive arrays, with source and
+ * target neurons given by their index in the source and target groups;</li>
+ * <li>the loose synapses, likewise, with neurons given by their index in the
+ * flat neuron list of the network.</li>
+ * </ul>
+ * Learning rules and spike responders are written once for each distinct rule
+ * in a section, followed by the index of the rule of each synapse, so a group
+ * whose synapses all use the same rule stores its parameters once. Snapshots
+ * are streamed through NIO channels a buffer at a time.
+ */
+public final class NetworkSnapshot {
+
+    /** Name of the format, also used as a file extension. */
+    public static final String FORMAT = "snet";
+
+    /** Version of the format written by this class. */
+    public static final int VERSION = 1;
+
+    /** First four bytes of every snapshot: "SBNS". */
+    private static final int MAGIC = 0x53424E53;
+
+    /** Section tag which ends a snapshot. */
+    private static final int END = 0;
+
+    /** Section tag of the network structure. */
+    private static final int STRUCTURE = 1;
+
+    /** Section tag of the synapses of a synapse group. */
+    private static final int SYNAPSE_GROUP = 2;
+
+    /** Section tag of the loose synapses. */
+    private static final int LOOSE_SYNAPSES = 3;
+
+    /** Flag set for enabled synapses. */
+    private static final byte ENABLED = 1;
+
+    /** Flag set for frozen synapses. */
+    private static final byte FROZEN = 2;
+
+    /** Flag set for synapses in the inhibitory set of their group. */
+    private static final byte INHIBITORY = 4;
+
+    /** Size of the buffers used to read and write channels. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Encoding of strings. */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** Marks rule classes which can't be compared field by field. */
+    private static final Field[] NOT_COMPARABLE = new Field[0];
+
+    /** The fields by which rules of each class are compared. */
+    private static final Map<Class<?>, Field[]> RULE_FIELDS =
+            new ConcurrentHashMap<Class<?>, Field[]>();
+
+    /**
+     * No instances.
+     */
+    private NetworkSnapshot() {
+    }
+
+    /**
+     * Write a snapshot of a network. The network must not be updated while
+     * it is written.
+     *
+     * @param network the network
+     * @param channel where to write; not closed
+     * @throws IOException if writing fails
+     */
+    public static void write(final Network network,
+            final WritableByteChannel channel) throws IOException {
+        XStream xstream = Network.getXStream();
+        Output out = new Output(channel);
+        out.putInt(MAGIC);
+        out.putInt(VERSION);
+
+        // The structure is written with a streaming driver, which is much
+        // faster to read back than the DOM driver used for XML files
+        ByteArrayOutputStream structure = new ByteArrayOutputStream();
+        HierarchicalStreamWriter writer = new StaxDriver()
+                .createWriter(structure);
+        network.preSnapshotInit();
+        try {
+            xstream.marshal(network, writer);
+            writer.flush();
+        } finally {
+            network.postSaveReInit();
+        }
+        out.putInt(STRUCTURE);
+        out.putInt(structure.size());
+        out.putBytes(structure.toByteArray());
+
+        for (SynapseGroup group : network.getSynapseGroups()) {
+            List<Synapse> synapses = new ArrayList<Synapse>(group.size());
+            synapses.addAll(group.getExcitatorySynapses());
+            int firstInhibitory = synapses.size();
+            synapses.addAll(group.getInhibitorySynapses());
+            out.putInt(SYNAPSE_GROUP);
+            out.putString(group.getId());
+            writeSynapses(out, xstream, synapses, firstInhibitory,
+                    indexNeurons(group.getSourceNeurons()),
+                    indexNeurons(group.getTargetNeurons()));
+        }
+
+        List<Synapse> loose = new ArrayList<Synapse>(network.getSynapseList());
+        Map<Neuron, Integer> neuronIndex = indexNeurons(
+                network.getFlatNeuronList());
+        out.putInt(LOOSE_SYNAPSES);
+        writeSynapses(out, xstream, loose, loose.size(), neuronIndex,
+                neuronIndex);
+
+        out.putInt(END);
+        out.flush();
+    }
+
+    /**
+     * Read a snapshot written by {@link #write(Network, WritableByteChannel)}.
+     *
+     * @param channel where to read; not closed
+     * @return the network
+     * @throws IOException if reading fails or the channel does not hold a
+     *             snapshot
+     */
+    public static Network read(final ReadableByteChannel channel)
+            throws IOException {
+        XStream xstream = Network.getXStream();
+        Input in = new Input(channel);
+        if (in.getInt() != MAGIC) {
+            throw new IOException("Not a network snapshot");
+        }
+        int version = in.getInt();
+        if (version > VERSION) {
+            throw new IOException("Network snapshot version " + version
+                    + " is newer than supported version " + VERSION);
+        }
+        Network network = null;
+        Map<String, SynapseGroup> groups = new HashMap<String, SynapseGroup>();
+        for (int tag = in.getInt(); tag != END; tag = in.getInt()) {
+            if (tag == STRUCTURE) {
+                byte[] structure = new byte[in.getInt()];
+                in.getBytes(structure);
+                network = (Network) xstream.unmarshal(new StaxDriver()
+                        .createReader(new ByteArrayInputStream(structure)));
+                for (SynapseGroup group : network.getSynapseGroups()) {
+                    groups.put(group.getId(), group);
+                }
+            } else if (network == null) {
+                throw new IOException("Network snapshot has no structure");
+            } else if (tag == SYNAPSE_GROUP) {
+                String id = in.getString();
+                SynapseGroup group = groups.get(id);
+                if (group == null) {
+                    throw new IOException("No synapse group " + id);
+                }
+                readSynapses(in, xstream, network, group,
+                        group.getSourceNeurons(), group.getTargetNeurons());
+            } else if (tag == LOOSE_SYNAPSES) {
+                List<Neuron> neurons = network.getFlatNeuronList();
+                readSynapses(in, xstream, network, null, neurons, neurons);
+            } else {
+                throw new IOException("Unknown network snapshot section "
+                        + tag);
+            }
+        }
+        if (network == null) {
+            throw new IOException("Network snapshot has no structure");
+        }
+        return network;
+    }
+
+    /**
+     * Check whether a stream holds a snapshot, without consuming it.
+     *
+     * @param input the stream, which must support mark and reset
+     * @return true if the stream starts with a snapshot header
+     * @throws IOException if reading fails
+     */
+    public static boolean isSnapshot(final InputStream input)
+            throws IOException {
+        input.mark(4);
+        try {
+            int magic = 0;
+            for (int i = 0; i < 4; i++) {
+                int b = input.read();
+                if (b < 0) {
+                    return false;
+                }
+                magic = (magic << 8) | b;
+            }
+            return magic == MAGIC;
+        } finally {
+            input.reset();
+        }
+    }
+
+    /**
+     * Write a set of synapses as columns.
+     *
+     * @param out where to write
+     * @param xstream used to write rules
+     * @param synapses the synapses
+     * @param firstInhibitory index of the first synapse in the inhibitory set
+     *            of its group
+     * @param sourceIndex index of each source neuron
+     * @param targetIndex index of each target neuron
+     * @throws IOException if writing fails
+     */
+    private static void writeSynapses(final Output out, final XStream xstream,
+            final List<Synapse> synapses, final int firstInhibitory,
+            final Map<Neuron, Integer> sourceIndex,
+            final Map<Neuron, Integer> targetIndex) throws IOException {
+        int n = synapses.size();
+        int[] sources = new int[n];
+        int[] targets = new int[n];
+        double[] strengths = new double[n];
+        double[] psrs = new double[n];
+        double[] increments = new double[n];
+        double[] upperBounds = new double[n];
+        double[] lowerBounds = new double[n];
+        int[] delays = new int[n];
+        byte[] flags = new byte[n];
+        int[] stateLengths = new int[n];
+        Object[] learningRules = new Object[n];
+        Object[] responders = new Object[n];
+        int numDelayed = 0;
+        int numStates = 0;
+        for (int i = 0; i < n; i++) {
+            Synapse s = synapses.get(i);
+            sources[i] = sourceIndex.get(s.getSource());
+            targets[i] = targetIndex.get(s.getTarget());
+            strengths[i] = s.getStrength();
+            psrs[i] = s.getPsr();
+            increments[i] = s.getIncrement();
+            upperBounds[i] = s.getUpperBound();
+            lowerBounds[i] = s.getLowerBound();
+            delays[i] = s.getDelay();
+            flags[i] = (byte) ((s.isEnabled() ? ENABLED : 0)
+                    | (s.isFrozen() ? FROZEN : 0)
+                    | (i >= firstInhibitory ? INHIBITORY : 0));
+            if (s.getSpikeResponder() != null) {
+                stateLengths[i] = s.getResponderState().length;
+                numStates += stateLengths[i];
+            }
+            learningRules[i] = s.getLearningRule();
+            responders[i] = s.getSpikeResponder();
+            if (delays[i] > 0) {
+                numDelayed++;
+            }
+        }
+
+        out.putInt(n);
+        out.putInts(sources);
+        out.putInts(targets);
+        out.putDoubles(strengths);
+        out.putDoubles(psrs);
+        out.putDoubles(increments);
+        out.putDoubles(upperBounds);
+        out.putDoubles(lowerBounds);
+        out.putInts(delays);
+        out.putBytes(flags);
+        for (Synapse s : synapses) {
+            out.putString(s.getId());
+        }
+        writeRules(out, xstream, learningRules);
+        writeRules(out, xstream, responders);
+
+        out.putInts(stateLengths);
+        double[] states = new double[numStates];
+        int offset = 0;
+        for (int i = 0; i < n; i++) {
+            if (stateLengths[i] > 0) {
+                System.arraycopy(synapses.get(i).getResponderState(), 0,
+                        states, offset, stateLengths[i]);
+                offset += stateLengths[i];
+            }
+        }
+        out.putDoubles(states);
+
+        // Delay queues are rare and variable in length; reuse the encoding
+        // of full synapse group saves
+        out.putInt(numDelayed);
+        for (int i = 0; i < n; i++) {
+            if (delays[i] > 0) {
+                byte[] numeric = synapses.get(i).getNumericValuesAsByteArray();
+                out.putInt(i);
+                out.putInt(numeric.length);
+                out.putBytes(numeric);
+            }
+        }
+    }
+
+    /**
+     * Read a set of synapses written by
+     * {@link #writeSynapses(Output, XStream, List, int, Map, Map)} and add
+     * them to a group or network.
+     *
+     * @param in where to read
+     * @param xstream used to read rules
+     * @param network the network
+     * @param group the group to add the synapses to, or null to add them to
+     *            the network as loose synapses
+     * @param sourceNeurons the neurons source indices refer to
+     * @param targetNeurons the neurons target indices refer to
+     * @throws IOException if reading fails
+     */
+    private static void readSynapses(final Input in, final XStream xstream,
+            final Network network, final SynapseGroup group,
+            final List<Neuron> sourceNeurons, final List<Neuron> targetNeurons)
+            throws IOException {
+        int n = in.getInt();
+        int[] sources = new int[n];
+        int[] targets = new int[n];
+        double[] strengths = new double[n];
+        double[] psrs = new double[n];
+        double[] increments = new double[n];
+        double[] upperBounds = new double[n];
+        double[] lowerBounds = new double[n];
+        int[] delays = new int[n];
+        byte[] flags = new byte[n];
+        String[] ids = new String[n];
+        in.getInts(sources);
+        in.getInts(targets);
+        in.getDoubles(strengths);
+        in.getDoubles(psrs);
+        in.getDoubles(increments);
+        in.getDoubles(upperBounds);
+        in.getDoubles(lowerBounds);
+        in.getInts(delays);
+        in.getBytes(flags);
+        for (int i = 0; i < n; i++) {
+            ids[i] = in.getString();
+        }
+        Object[] learningRules = readRules(in, xstream);
+        int[] learningIndex = new int[n];
+        in.getInts(learningIndex);
+        Object[] responders = readRules(in, xstream);
+        int[] responderIndex = new int[n];
+        in.getInts(responderIndex);
+
+        int[] stateLengths = new int[n];
+        in.getInts(stateLengths);
+        int numStates = 0;
+        for (int length : stateLengths) {
+            numStates += length;
+        }
+        double[] states = new double[numStates];
+        in.getDoubles(states);
+
+        byte[][] delayed = new byte[n][];
+        for (int i = 0, numDelayed = in.getInt(); i < numDelayed; i++) {
+            int index = in.getInt();
+            delayed[index] = new byte[in.getInt()];
+            in.getBytes(delayed[index]);
+        }
+
+        int offset = 0;
+        for (int i = 0; i < n; i++) {
+            Synapse s = new Synapse(sourceNeurons.get(sources[i]),
+                    targetNeurons.get(targets[i]));
+            if (group == null) {
+                network.addSynapse(s);
+            } else if ((flags[i] & INHIBITORY) != 0) {
+                group.addInhibitorySynapseUnsafe(s);
+            } else {
+                group.addExcitatorySynapseUnsafe(s);
+            }
+            s.setId(ids[i]);
+            SynapseUpdateRule rule =
+                    (SynapseUpdateRule) learningRules[learningIndex[i]];
+            if (rule != null) {
+                s.setLearningRule(rule.deepCopy());
+            }
+            // Spike responders keep no per-synapse state, so can be shared
+            s.setSpikeResponder((SpikeResponder) responders[responderIndex[i]]);
+            if (stateLengths[i] > 0) {
+                double[] state = s.getResponderState();
+                System.arraycopy(states, offset, state, 0,
+                        Math.min(stateLengths[i], state.length));
+                offset += stateLengths[i];
+            }
+            s.setIncrement(increments[i]);
+            s.setUpperBound(upperBounds[i]);
+            s.setLowerBound(lowerBounds[i]);
+            if (delayed[i] != null) {
+                s.decodeNumericByteArray(ByteBuffer.wrap(delayed[i]));
+            } else {
+                s.setDelay(delays[i]);
+            }
+            s.forceSetStrength(strengths[i]);
+            s.setPsr(psrs[i]);
+            s.setEnabled((flags[i] & ENABLED) != 0);
+            s.setFrozen((flags[i] & FROZEN) != 0);
+        }
+    }
+
+    /**
+     * Write a table of the distinct rules used by a set of synapses, followed
+     * by the index of each synapse's rule in the table. Rules are distinct if
+     * they differ in class or in the value of a field.
+     *
+     * @param out where to write
+     * @param xstream used to write the rules
+     * @param rules the rule of each synapse; may contain nulls
+     * @throws IOException if writing fails
+     */
+    private static void writeRules(final Output out, final XStream xstream,
+            final Object[] rules) throws IOException {
+        Map<Object, Integer> byIdentity = new IdentityHashMap<Object, Integer>();
+        Map<Object, Integer> byValue = new HashMap<Object, Integer>();
+        List<Object> table = new ArrayList<Object>();
+        int[] index = new int[rules.length];
+        for (int i = 0; i < rules.length; i++) {
+            Integer k = byIdentity.get(rules[i]);
+            if (k == null) {
+                Object key = ruleKey(rules[i], xstream);
+                k = byValue.get(key);
+                if (k == null) {
+                    k = table.size();
+                    table.add(rules[i]);
+                    byValue.put(key, k);
+                }
+                byIdentity.put(rules[i], k);
+            }
+            index[i] = k;
+        }
+        out.putInt(table.size());
+        for (Object rule : table) {
+            out.putString(rule == null ? "" : xstream.toXML(rule));
+        }
+        out.putInts(index);
+    }
+
+    /**
+     * Read a table of rules written by
+     * {@link #writeRules(Output, XStream, Object[])}. The synapse indices which
+     * follow are left to the caller.
+     *
+     * @param in where to read
+     * @param xstream used to read the rules
+     * @return the rules
+     * @throws IOException if reading fails
+     */
+    private static Object[] readRules(final Input in, final XStream xstream)
+            throws IOException {
+        Object[] table = new Object[in.getInt()];
+        for (int i = 0; i < table.length; i++) {
+            String xml = in.getString();
+            table[i] = xml.isEmpty() ? null : xstream.fromXML(xml);
+        }
+        return table;
+    }
+
+    /**
+     * Get a key which is equal for rules which would be saved the same way.
+     * Rules with only primitive, string and enum fields are compared field by
+     * field; others by their XML.
+     *
+     * @param rule the rule, or null
+     * @param xstream used to render rules which can't be compared by field
+     * @return the key
+     */
+    private static Object ruleKey(final Object rule, final XStream xstream) {
+        if (rule == null) {
+            return "";
+        }
+        Field[] fields = RULE_FIELDS.get(rule.getClass());
+        if (fields == null) {
+            fields = findValueFields(rule.getClass());
+            RULE_FIELDS.put(rule.getClass(), fields);
+        }
+        if (fields == NOT_COMPARABLE) {
+            return xstream.toXML(rule);
+        }
+        Object[] key = new Object[fields.length + 1];
+        key[0] = rule.getClass();
+        try {
+            for (int i = 0; i < fields.length; i++) {
+                key[i + 1] = fields[i].get(rule);
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+        return Arrays.asList(key);
+    }
+
+    /**
+     * Find the instance fields of a class and its superclasses, if they are
+     * all values which can be compared with equals.
+     *
+     * @param type the class
+     * @return the fields, or {@link #NOT_COMPARABLE}
+     */
+    private static Field[] findValueFields(final Class<?> type) {
+        List<Field> fields = new ArrayList<Field>();
+        for (Class<?> c = type; c != Object.class; c = c.getSuperclass()) {
+            for (Field f : c.getDeclaredFields()) {
+                int modifiers = f.getModifiers();
+                if (Modifier.isStatic(modifiers)
+                        || Modifier.isTransient(modifiers)) {
+                    continue;
+                }
+                Class<?> t = f.getType();
+                if (!t.isPrimitive() && t != String.class && !t.isEnum()
+                        && !Number.class.isAssignableFrom(t)
+                        && t != Boolean.class) {
+                    return NOT_COMPARABLE;
+                }
+                f.setAccessible(true);
+                fields.add(f);
+            }
+        }
+        return fields.toArray(new Field[fields.size()]);
+    }
+
+    /**
+     * Index a list of neurons.
+     *
+     * @param neurons the neurons
+     * @return the index of each neuron in the list
+     */
+    private static Map<Neuron, Integer> indexNeurons(
+            final List<Neuron> neurons) {
+        Map<Neuron, Integer> index = new IdentityHashMap<Neuron, Integer>(
+                neurons.size());
+        for (int i = 0; i < neurons.size(); i++) {
+            index.put(neurons.get(i), i);
+        }
+        return index;
+    }
+
+    /**
+     * Buffered writes of primitives and arrays to a channel.
+     */
+    private static final class Output {
+
+        /** Where to write. */
+        private final WritableByteChannel channel;
+
+        /** Bytes waiting to be written. */
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        /**
+         * @param channel where to write
+         */
+        Output(final WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Make room in the buffer.
+         *
+         * @param bytes the number of bytes needed
+         * @throws IOException if writing fails
+         */
+        private void ensure(final int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        /**
+         * Write out the buffer.
+         *
+         * @throws IOException if writing fails
+         */
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        /**
+         * @param value the value to write
+         * @throws IOException if writing fails
+         */
+        void putInt(final int value) throws IOException {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        /**
+         * @param values the values to write
+         * @throws IOException if writing fails
+         */
+        void putInts(final int[] values) throws IOException {
+            for (int i = 0; i < values.length;) {
+                int count = Math.min(values.length - i, buffer.remaining() / 4);
+                if (count == 0) {
+                    flush();
+                    continue;
+                }
+                buffer.asIntBuffer().put(values, i, count);
+                buffer.position(buffer.position() + count * 4);
+                i += count;
+            }
+        }
+
+        /**
+         * @param values the values to write
+         * @throws IOException if writing fails
+         */
+        void putDoubles(final double[] values) throws IOException {
+            for (int i = 0; i < values.length;) {
+                int count = Math.min(values.length - i, buffer.remaining() / 8);
+                if (count == 0) {
+                    flush();
+                    continue;
+                }
+                buffer.asDoubleBuffer().put(values, i, count);
+                buffer.position(buffer.position() + count * 8);
+                i += count;
+            }
+        }
+
+        /**
+         * @param values the bytes to write
+         * @throws IOException if writing fails
+         */
+        void putBytes(final byte[] values) throws IOException {
+            for (int i = 0; i < values.length;) {
+                int count = Math.min(values.length - i, buffer.remaining());
+                if (count == 0) {
+                    flush();
+                    continue;
+                }
+                buffer.put(values, i, count);
+                i += count;
+            }
+        }
+
+        /**
+         * Write a string as its length and UTF-8 bytes.
+         *
+         * @param value the string
+         * @throws IOException if writing fails
+         */
+        void putString(final String value) throws IOException {
+            byte[] bytes = value.getBytes(UTF_8);
+            putInt(bytes.length);
+            putBytes(bytes);
+        }
+    }
+
+    /**
+     * Buffered reads of primitives and arrays from a channel.
+     */
+    private static final class Input {
+
+        /** Where to read. */
+        private final ReadableByteChannel channel;
+
+        /** Bytes read but not yet consumed. */
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        /**
+         * @param channel where to read
+         */
+        Input(final ReadableByteChannel channel) {
+            this.channel = channel;
+            buffer.flip();
+        }
+
+        /**
+         * Read until the buffer holds enough bytes.
+         *
+         * @param bytes the number of bytes needed
+         * @throws IOException if reading fails or the channel ends first
+         */
+        private void require(final int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) {
+                return;
+            }
+            buffer.compact();
+            while (buffer.position() < bytes) {
+                if (channel.read(buffer) < 0) {
+                    throw new EOFException("Network snapshot ends early");
+                }
+            }
+            buffer.flip();
+        }
+
+        /**
+         * @return the next int
+         * @throws IOException if reading fails
+         */
+        int getInt() throws IOException {
+            require(4);
+            return buffer.getInt();
+        }
+
+        /**
+         * @param values array to fill
+         * @throws IOException if reading fails
+         */
+        void getInts(final int[] values) throws IOException {
+            for (int i = 0; i < values.length;) {
+                int count = Math.min(values.length - i, buffer.remaining() / 4);
+                if (count == 0) {
+                    require(4);
+                    continue;
+                }
+                buffer.asIntBuffer().get(values, i, count);
+                buffer.position(buffer.position() + count * 4);
+                i += count;
+            }
+        }
+
+        /**
+         * @param values array to fill
+         * @throws IOException if reading fails
+         */
+        void getDoubles(final double[] values) throws IOException {
+            for (int i = 0; i < values.length;) {
+                int count = Math.min(values.length - i, buffer.remaining() / 8);
+                if (count == 0) {
+                    require(8);
+                    continue;
+                }
+                buffer.asDoubleBuffer().get(values, i, count);
+                buffer.position(buffer.position() + count * 8);
+                i += count;
+            }
+        }
+
+        /**
+         * @param values array to fill
+         * @throws IOException if reading fails
+         */
+        void getBytes(final byte[] values) throws IOException {
+            for (int i = 0; i < values.length;) {
+                int count = Math.min(values.length - i, buffer.remaining());
+                if (count == 0) {
+                    require(1);
+                    continue;
+                }
+                buffer.get(values, i, count);
+                i += count;
+            }
+        }
+
+        /**
+         * @return the next string, written as its length and UTF-8 bytes
+         * @throws IOException if reading fails
+         */
+        String getString() throws IOException {
+            byte[] bytes = new byte[getInt()];
+            getBytes(bytes);
+            return new String(bytes, UTF_8);
+        }
+    }
+
+}
@@ -0,0 +1,485 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.util.io_utilities;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads the spikes in a {@link SpikeTrainStore}. Queries name a range of
+ * times and a range of neurons; only the blocks that overlap both ranges are
+ * read and decoded. A store that is still being written can be read; the
+ * reader sees the blocks written when it was opened.
+ */
+public final class SpikeTrainReader implements Closeable {
+
+    /**
+     * Receives the spikes found by a query.
+     */
+    public interface SpikeVisitor {
+
+        /**
+         * Called for each spike, in order of time and, within a time, of
+         * neuron index.
+         *
+         * @param time the time of the spike
+         * @param neuron the index of the neuron in its group
+         */
+        void spike(double time, int neuron);
+    }
+
+    /** The file. */
+    private final FileChannel channel;
+
+    /** Whether the channel belongs to this reader. */
+    private final boolean ownsChannel;
+
+    /** Number of neurons in the recorded group. */
+    private final int numNeurons;
+
+    /** Time step of the recorded network. */
+    private final double timeStep;
+
+    /** The blocks, in the order they were written. */
+    private final List<Block> blocks;
+
+    /** Position just after the last block. */
+    private final long dataEnd;
+
+    /**
+     * Open a store.
+     *
+     * @param file the store
+     * @throws IOException if the file cannot be read or is not a store
+     */
+    public SpikeTrainReader(final File file) throws IOException {
+        this(new RandomAccessFile(file, "r").getChannel(), true);
+    }
+
+    /**
+     * Read the header and block index of a store open for appending.
+     *
+     * @param channel the open store
+     * @throws IOException if the file is not a store
+     */
+    SpikeTrainReader(final FileChannel channel) throws IOException {
+        this(channel, false);
+    }
+
+    /**
+     * Read the header and the block index, from the end of the file if the
+     * store was closed, or else by walking the block headers.
+     *
+     * @param channel the store
+     * @param ownsChannel whether to close the channel on error and when this
+     *            reader is closed
+     * @throws IOException if the file is not a store
+     */
+    private SpikeTrainReader(final FileChannel channel,
+            final boolean ownsChannel) throws IOException {
+        this.channel = channel;
+        this.ownsChannel = ownsChannel;
+        try {
+            long size = channel.size();
+            ByteBuffer header = read(0, SpikeTrainStore.HEADER_SIZE, size);
+            if (header == null || header.getInt() != SpikeTrainStore.MAGIC) {
+                throw new IOException("Not a spike train store");
+            }
+            int version = header.getInt();
+            if (version > SpikeTrainStore.VERSION) {
+                throw new IOException("Spike train store version " + version
+                        + " is newer than supported version "
+                        + SpikeTrainStore.VERSION);
+            }
+            numNeurons = header.getInt();
+            timeStep = header.getDouble();
+            List<Block> list = readIndex(size);
+            if (list == null) {
+                list = new ArrayList<Block>();
+                long p = SpikeTrainStore.HEADER_SIZE;
+                ByteBuffer b;
+                while ((b = read(p, SpikeTrainStore.BLOCK_HEADER_SIZE,
+                        size)) != null) {
+                    Block block = Block.getHeader(p, b);
+                    long next = p + SpikeTrainStore.BLOCK_HEADER_SIZE
+                            + block.getDataSize();
+                    if (block.getDataSize() < 0 || next > size) {
+                        // The last block was not written completely
+                        break;
+                    }
+                    list.add(block);
+                    p = next;
+                }
+                dataEnd = p;
+            } else {
+                dataEnd = list.isEmpty() ? SpikeTrainStore.HEADER_SIZE
+                        : list.get(list.size() - 1).getEnd();
+            }
+            blocks = Collections.unmodifiableList(list);
+        } catch (IOException e) {
+            if (ownsChannel) {
+                channel.close();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Read the index written when the store was closed.
+     *
+     * @param size size of the file
+     * @return the blocks, or null if the store has no index
+     * @throws IOException if reading fails
+     */
+    private List<Block> readIndex(final long size) throws IOException {
+        if (size < SpikeTrainStore.HEADER_SIZE
+                + SpikeTrainStore.TRAILER_SIZE) {
+            return null;
+        }
+        ByteBuffer trailer = read(size - SpikeTrainStore.TRAILER_SIZE,
+                SpikeTrainStore.TRAILER_SIZE, size);
+        int count = trailer.getInt();
+        long indexStart = trailer.getLong();
+        if (trailer.getInt() != SpikeTrainStore.INDEX_MAGIC || count < 0
+                || indexStart + (long) count * SpikeTrainStore.INDEX_ENTRY_SIZE
+                        + SpikeTrainStore.TRAILER_SIZE != size) {
+            return null;
+        }
+        ByteBuffer index = read(indexStart,
+                count * SpikeTrainStore.INDEX_ENTRY_SIZE, size);
+        List<Block> list = new ArrayList<Block>(count);
+        for (int i = 0; i < count; i++) {
+            list.add(Block.getHeader(index.getLong(), index));
+        }
+        return list;
+    }
+
+    /**
+     * Visit the spikes of neurons <code>firstNeuron</code> to
+     * <code>lastNeuron</code> (inclusive) from time <code>start</code>
+     * (inclusive) to time <code>end</code> (exclusive).
+     *
+     * @param start start of the time range
+     * @param end end of the time range
+     * @param firstNeuron lowest neuron index
+     * @param lastNeuron highest neuron index
+     * @param visitor receives the spikes
+     * @return the number of spikes visited
+     * @throws IOException if the store cannot be read
+     */
+    public long forEachSpike(final double start, final double end,
+            final int firstNeuron, final int lastNeuron,
+            final SpikeVisitor visitor) throws IOException {
+        long fromIteration = (long) Math.ceil(start / timeStep - 1e-9);
+        long toIteration = (long) Math.ceil(end / timeStep - 1e-9) - 1;
+        long visited = 0;
+        for (Block block : blocks) {
+            if (block.getLastIteration() < fromIteration
+                    || block.getFirstIteration() > toIteration
+                    || block.getMaxNeuron() < firstNeuron
+                    || block.getMinNeuron() > lastNeuron) {
+                continue;
+            }
+            ByteBuffer data = read(
+                    block.getPosition() + SpikeTrainStore.BLOCK_HEADER_SIZE,
+                    block.getDataSize(), channel.size());
+            long iteration = block.getFirstIteration();
+            while (data.hasRemaining()) {
+                iteration += getVarLong(data);
+                int count = (int) getVarLong(data);
+                boolean inTime = iteration >= fromIteration
+                        && iteration <= toIteration;
+                int neuron = 0;
+                for (int i = 0; i < count; i++) {
+                    neuron += (int) getVarLong(data);
+                    if (inTime && neuron >= firstNeuron
+                            && neuron <= lastNeuron) {
+                        visitor.spike(iteration * timeStep, neuron);
+                        visited++;
+                    }
+                }
+            }
+        }
+        return visited;
+    }
+
+    /**
+     * Visit all spikes from time <code>start</code> (inclusive) to time
+     * <code>end</code> (exclusive).
+     *
+     * @param start start of the time range
+     * @param end end of the time range
+     * @param visitor receives the spikes
+     * @return the number of spikes visited
+     * @throws IOException if the store cannot be read
+     */
+    public long forEachSpike(final double start, final double end,
+            final SpikeVisitor visitor) throws IOException {
+        return forEachSpike(start, end, 0, Integer.MAX_VALUE, visitor);
+    }
+
+    /**
+     * Count the spikes of each neuron in a range of times and neurons.
+     *
+     * @param start start of the time range
+     * @param end end of the time range
+     * @param firstNeuron lowest neuron index
+     * @param lastNeuron highest neuron index
+     * @return spike counts, indexed by neuron index minus
+     *         <code>firstNeuron</code>
+     * @throws IOException if the store cannot be read
+     */
+    public int[] getSpikeCounts(final double start, final double end,
+            final int firstNeuron, final int lastNeuron) throws IOException {
+        final int[] counts = new int[Math.max(0,
+                Math.min(lastNeuron, numNeurons - 1) - firstNeuron + 1)];
+        forEachSpike(start, end, firstNeuron, lastNeuron,
+                (time, neuron) -> counts[neuron - firstNeuron]++);
+        return counts;
+    }
+
+    /**
+     * @return the number of neurons in the recorded group
+     */
+    public int getNumNeurons() {
+        return numNeurons;
+    }
+
+    /**
+     * @return the time step of the recorded network
+     */
+    public double getTimeStep() {
+        return timeStep;
+    }
+
+    /**
+     * @return the total number of spikes in the store
+     */
+    public long getNumSpikes() {
+        long n = 0;
+        for (Block block : blocks) {
+            n += block.getNumSpikes();
+        }
+        return n;
+    }
+
+    /**
+     * @return the time of the first spike, or NaN if there are none
+     */
+    public double getStartTime() {
+        return blocks.isEmpty() ? Double.NaN
+                : blocks.get(0).getFirstIteration() * timeStep;
+    }
+
+    /**
+     * @return the time of the last spike, or NaN if there are none
+     */
+    public double getEndTime() {
+        return blocks.isEmpty() ? Double.NaN
+                : blocks.get(blocks.size() - 1).getLastIteration() * timeStep;
+    }
+
+    /**
+     * @return the blocks of the store
+     */
+    List<Block> getBlocks() {
+        return blocks;
+    }
+
+    /**
+     * @return the position just after the last block
+     */
+    long getDataEnd() {
+        return dataEnd;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (ownsChannel) {
+            channel.close();
+        }
+    }
+
+    /**
+     * Read part of the file.
+     *
+     * @param at position
+     * @param length number of bytes
+     * @param size size of the file
+     * @return the bytes, or null if the file ends first
+     * @throws IOException if reading fails
+     */
+    private ByteBuffer read(final long at, final int length, final long size)
+            throws IOException {
+        if (at + length > size) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        long p = at;
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, p);
+            if (n < 0) {
+                return null;
+            }
+            p += n;
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Read an unsigned variable length integer written by
+     * {@link SpikeTrainStore#putVarLong(ByteBuffer, long)}.
+     *
+     * @param buffer the buffer
+     * @return the value
+     */
+    static long getVarLong(final ByteBuffer buffer) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    /**
+     * Where a block is and what it holds.
+     */
+    static final class Block {
+
+        /** Position of the block header in the file. */
+        private final long position;
+
+        /** First iteration with spikes. */
+        private final long firstIteration;
+
+        /** Last iteration with spikes. */
+        private final long lastIteration;
+
+        /** Size of the data after the header, in bytes. */
+        private final int dataSize;
+
+        /** Number of spikes. */
+        private final int numSpikes;
+
+        /** Lowest neuron index. */
+        private final int minNeuron;
+
+        /** Highest neuron index. */
+        private final int maxNeuron;
+
+        /**
+         * Describe a block.
+         *
+         * @param position position of the block header in the file
+         * @param firstIteration first iteration with spikes
+         * @param lastIteration last iteration with spikes
+         * @param dataSize size of the data after the header
+         * @param numSpikes number of spikes
+         * @param minNeuron lowest neuron index
+         * @param maxNeuron highest neuron index
+         */
+        Block(final long position, final long firstIteration,
+                final long lastIteration, final int dataSize,
+                final int numSpikes, final int minNeuron,
+                final int maxNeuron) {
+            this.position = position;
+            this.firstIteration = firstIteration;
+            this.lastIteration = lastIteration;
+            this.dataSize = dataSize;
+            this.numSpikes = numSpikes;
+            this.minNeuron = minNeuron;
+            this.maxNeuron = maxNeuron;
+        }
+
+        /**
+         * Read a block header.
+         *
+         * @param position position of the header in the file
+         * @param buffer holds the header at its position
+         * @return the block
+         */
+        static Block getHeader(final long position, final ByteBuffer buffer) {
+            return new Block(position, buffer.getLong(), buffer.getLong(),
+                    buffer.getInt(), buffer.getInt(), buffer.getInt(),
+                    buffer.getInt());
+        }
+
+        /**
+         * Write the block header.
+         *
+         * @param buffer where to write it
+         */
+        void putHeader(final ByteBuffer buffer) {
+            buffer.putLong(firstIteration);
+            buffer.putLong(lastIteration);
+            buffer.putInt(dataSize);
+            buffer.putInt(numSpikes);
+            buffer.putInt(minNeuron);
+            buffer.putInt(maxNeuron);
+        }
+
+        /**
+         * @return the position just after the block
+         */
+        long getEnd() {
+            return position + SpikeTrainStore.BLOCK_HEADER_SIZE + dataSize;
+        }
+
+        long getPosition() {
+            return position;
+        }
+
+        long getFirstIteration() {
+            return firstIteration;
+        }
+
+        long getLastIteration() {
+            return lastIteration;
+        }
+
+        int getDataSize() {
+            return dataSize;
+        }
+
+        int getNumSpikes() {
+            return numSpikes;
+        }
+
+        int getMinNeuron() {
+            return minNeuron;
+        }
+
+        int getMaxNeuron() {
+            return maxNeuron;
+        }
+    }
+
+}
@@ -0,0 +1,377 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.util.io_utilities;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.simbrain.network.core.Network;
+import org.simbrain.network.core.Neuron;
+import org.simbrain.network.groups.NeuronGroup;
+
+/**
+ * Records the spikes of a neuron group in a compact binary store that can be
+ * read back a time range at a time with {@link SpikeTrainReader}, also while
+ * the network is still running.
+ * <p>
+ * The store starts with a header: the magic number "SBST", the version, the
+ * number of neurons and the time step of the network. Spikes follow in
+ * blocks, each covering a run of iterations. A block starts with its first and
+ * last iteration, the size of its data, the number of spikes in it and the
+ * lowest and highest index of a neuron that spiked in it. The data holds one
+ * entry per iteration with spikes: the iteration (as the difference from the
+ * previous entry, or from the first iteration of the block), the number of
+ * spikes, then the sorted indices of the neurons that spiked, each as the
+ * difference from the previous index. All of these are unsigned variable
+ * length integers, seven bits per byte. A block is written whenever it spans
+ * the configured number of iterations or its data grows past a size limit,
+ * so a reader can use every block written so far.
+ * <p>
+ * When the store is closed an index of the blocks is appended, followed by
+ * the number of blocks, the position of the index and a second magic number,
+ * so readers need not scan the blocks. A store that was not closed, e.g.
+ * because the simulation was stopped, is still readable, and can be added to
+ * by opening it again in append mode.
+ */
+public final class SpikeTrainStore implements ActivityRecorder {
+
+    /** Name of the format, also used as a file extension. */
+    public static final String FORMAT = "sbspk";
+
+    /** Version of the format written by this class. */
+    public static final int VERSION = 1;
+
+    /** Default number of iterations covered by a block. */
+    public static final int DEFAULT_BLOCK_ITERATIONS = 1000;
+
+    /** First four bytes of every store: "SBST". */
+    static final int MAGIC = 0x53425354;
+
+    /** Last four bytes of a closed store: "SBSI". */
+    static final int INDEX_MAGIC = 0x53425349;
+
+    /** Size of the header in bytes. */
+    static final int HEADER_SIZE = 20;
+
+    /** Size of the header of each block in bytes. */
+    static final int BLOCK_HEADER_SIZE = 32;
+
+    /** Size of an index entry in bytes: block position and block header. */
+    static final int INDEX_ENTRY_SIZE = 8 + BLOCK_HEADER_SIZE;
+
+    /** Size of the trailer after the index in bytes. */
+    static final int TRAILER_SIZE = 16;
+
+    /** Data size after which a block is written early. */
+    private static final int MAX_BLOCK_BYTES = 1 << 16;
+
+    /** The file. */
+    private final FileChannel channel;
+
+    /** Number of iterations covered by a block. */
+    private final int blockIterations;
+
+    /** Blocks written so far. */
+    private final List<SpikeTrainReader.Block> blocks =
+            new ArrayList<SpikeTrainReader.Block>();
+
+    /** Data of the block being filled. */
+    private ByteBuffer data = ByteBuffer.allocate(MAX_BLOCK_BYTES + 1024);
+
+    /** First iteration of the block being filled, or -1 if it is empty. */
+    private long blockStart = -1;
+
+    /** Iteration of the last entry of the block being filled. */
+    private long lastIteration;
+
+    /** Number of spikes in the block being filled. */
+    private int blockSpikes;
+
+    /** Lowest neuron index in the block being filled. */
+    private int minNeuron;
+
+    /** Highest neuron index in the block being filled. */
+    private int maxNeuron;
+
+    /** Indices of the neurons that spiked in the current update. */
+    private int[] spiked = new int[0];
+
+    /** Number of neurons, fixed by the header or the first record. */
+    private int numNeurons = -1;
+
+    /** Position at which the next block is written. */
+    private long position;
+
+    /** Whether the store was closed. */
+    private boolean closed;
+
+    /**
+     * Record to a new store, replacing the file if it exists.
+     *
+     * @param file the file
+     * @throws IOException if the file cannot be opened
+     */
+    public SpikeTrainStore(final File file) throws IOException {
+        this(file, false, DEFAULT_BLOCK_ITERATIONS);
+    }
+
+    /**
+     * Record to a store.
+     *
+     * @param file the file
+     * @param append if true and the file is a store, add to it; the group
+     *            recorded must have as many neurons as before
+     * @param blockIterations number of iterations covered by a block; smaller
+     *            blocks make short range queries cheaper but the index larger
+     * @throws IOException if the file cannot be opened or is not a store
+     */
+    public SpikeTrainStore(final File file, final boolean append,
+            final int blockIterations) throws IOException {
+        if (blockIterations < 1) {
+            throw new IllegalArgumentException(
+                    "Blocks must cover at least one iteration");
+        }
+        this.blockIterations = blockIterations;
+        boolean existing = append && file.length() > 0;
+        channel = new RandomAccessFile(file, "rw").getChannel();
+        try {
+            if (existing) {
+                SpikeTrainReader reader = new SpikeTrainReader(channel);
+                numNeurons = reader.getNumNeurons();
+                blocks.addAll(reader.getBlocks());
+                position = reader.getDataEnd();
+                channel.truncate(position);
+            } else {
+                channel.truncate(0);
+                position = 0;
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void record(final NeuronGroup group) throws IOException {
+        if (closed) {
+            throw new IOException("Store is closed");
+        }
+        List<Neuron> neurons = group.getNeuronListUnsafe();
+        int n = neurons.size();
+        if (position == 0) {
+            writeHeader(n, group.getParentNetwork().getTimeStep());
+        } else if (n != numNeurons) {
+            throw new IOException("Group size changed from " + numNeurons
+                    + " to " + n + " while recording");
+        }
+        if (spiked.length < n) {
+            spiked = new int[n];
+        }
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            if (neurons.get(i).isSpike()) {
+                spiked[count++] = i;
+            }
+        }
+        if (count > 0) {
+            // Rounded rather than truncated like Network.getIterations, since
+            // time is a sum of time steps and may fall just short of a whole
+            // number of them, which would give two iterations the same number
+            Network network = group.getParentNetwork();
+            add(Math.round(network.getTime() / network.getTimeStep()), spiked,
+                    count);
+        }
+    }
+
+    /**
+     * Add the spikes of one iteration. Iterations are normally added in
+     * increasing order; if an iteration is not later than the previous one,
+     * e.g. because the time of the network was reset, a new block is
+     * started.
+     *
+     * @param iteration the iteration
+     * @param indices the indices of the neurons that spiked, in increasing
+     *            order
+     * @param count the number of indices to use
+     * @throws IOException if a block cannot be written
+     */
+    public void add(final long iteration, final int[] indices,
+            final int count) throws IOException {
+        if (count == 0) {
+            return;
+        }
+        if (numNeurons < 0) {
+            throw new IOException("Nothing has been recorded yet, so the "
+                    + "number of neurons is unknown");
+        }
+        if (blockStart >= 0 && (iteration <= lastIteration
+                || iteration >= blockStart + blockIterations)) {
+            writeBlock();
+        }
+        if (data.remaining() < 10 * (count + 2)) {
+            ByteBuffer bigger = ByteBuffer.allocate(
+                    Math.max(data.capacity() * 2, data.position()
+                            + 10 * (count + 2)));
+            data.flip();
+            bigger.put(data);
+            data = bigger;
+        }
+        if (blockStart < 0) {
+            blockStart = iteration;
+            lastIteration = iteration;
+            minNeuron = Integer.MAX_VALUE;
+            maxNeuron = -1;
+        }
+        putVarLong(data, iteration - lastIteration);
+        putVarLong(data, count);
+        int previous = 0;
+        for (int i = 0; i < count; i++) {
+            putVarLong(data, indices[i] - previous);
+            previous = indices[i];
+        }
+        minNeuron = Math.min(minNeuron, indices[0]);
+        maxNeuron = Math.max(maxNeuron, indices[count - 1]);
+        blockSpikes += count;
+        lastIteration = iteration;
+        if (data.position() >= MAX_BLOCK_BYTES) {
+            writeBlock();
+        }
+    }
+
+    /**
+     * Write the header of a new store.
+     *
+     * @param n number of neurons
+     * @param timeStep time step of the network
+     * @throws IOException if the header cannot be written
+     */
+    private void writeHeader(final int n, final double timeStep)
+            throws IOException {
+        numNeurons = n;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(n);
+        header.putDouble(timeStep);
+        header.flip();
+        writeFully(header, 0);
+        position = HEADER_SIZE;
+    }
+
+    /**
+     * Write the block being filled, if it has any spikes, and start a new
+     * one.
+     *
+     * @throws IOException if the block cannot be written
+     */
+    private void writeBlock() throws IOException {
+        if (blockStart < 0) {
+            return;
+        }
+        SpikeTrainReader.Block block = new SpikeTrainReader.Block(position,
+                blockStart, lastIteration, data.position(), blockSpikes,
+                minNeuron, maxNeuron);
+        ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_SIZE);
+        block.putHeader(header);
+        header.flip();
+        writeFully(header, position);
+        data.flip();
+        writeFully(data, position + BLOCK_HEADER_SIZE);
+        position += BLOCK_HEADER_SIZE + block.getDataSize();
+        blocks.add(block);
+        data.clear();
+        blockStart = -1;
+        blockSpikes = 0;
+    }
+
+    /**
+     * Write out the block being filled, so readers see every spike recorded
+     * so far. Blocks written this way may cover fewer iterations than usual.
+     */
+    @Override
+    public void flush() throws IOException {
+        writeBlock();
+    }
+
+    /**
+     * Write out the last block and the block index, and close the file.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (position > 0) {
+                writeBlock();
+                ByteBuffer index = ByteBuffer.allocate(
+                        blocks.size() * INDEX_ENTRY_SIZE + TRAILER_SIZE);
+                for (SpikeTrainReader.Block block : blocks) {
+                    index.putLong(block.getPosition());
+                    block.putHeader(index);
+                }
+                index.putInt(blocks.size());
+                index.putLong(position);
+                index.putInt(INDEX_MAGIC);
+                index.flip();
+                writeFully(index, position);
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Write all of a buffer at a position in the file.
+     *
+     * @param buffer the buffer, positioned at the data
+     * @param at the file position
+     * @throws IOException if writing fails
+     */
+    private void writeFully(final ByteBuffer buffer, final long at)
+            throws IOException {
+        long p = at;
+        while (buffer.hasRemaining()) {
+            p += channel.write(buffer, p);
+        }
+    }
+
+    /**
+     * Write an unsigned variable length integer, seven bits per byte, low
+     * bits first.
+     *
+     * @param buffer the buffer
+     * @param value the value, not negative
+     */
+    static void putVarLong(final ByteBuffer buffer, final long value) {
+        long v = value;
+        while ((v & ~0x7FL) != 0) {
+            buffer.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        buffer.put((byte) v);
+    }
+
+}
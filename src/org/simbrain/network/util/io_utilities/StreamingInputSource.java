@@ -0,0 +1,411 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.util.io_utilities;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import com.Ostermiller.util.CSVParser;
+
+/**
+ * Supplies rows of input read from a file a chunk at a time, so inputs far
+ * larger than the heap can be used. A background thread reads ahead of the
+ * network, filling a small fixed set of chunks, and starts over at the end
+ * of the file or stops, as chosen.
+ * <p>
+ * Two formats are read: recordings of activations made by
+ * {@link BinaryActivityRecorder} (files ending in
+ * ".{@value BinaryActivityRecorder#FORMAT}"), which are memory-mapped a chunk
+ * at a time, and comma-separated values, one row per line, in which lines
+ * starting with "#" are comments.
+ */
+public final class StreamingInputSource implements InputSource {
+
+    /** Default number of rows in a chunk. */
+    public static final int DEFAULT_CHUNK_ROWS = 1024;
+
+    /** Number of chunks read ahead of the one in use. */
+    private static final int CHUNKS_AHEAD = 2;
+
+    /** Marks the end of the rows. */
+    private static final Chunk END = new Chunk(0, 0);
+
+    /** The file. */
+    private final File file;
+
+    /** Whether the file is a binary recording rather than text. */
+    private final boolean binary;
+
+    /** Whether to start over at the end of the file. */
+    private final boolean loop;
+
+    /** Number of rows in a chunk. */
+    private final int chunkRows;
+
+    /** Number of values in a row. */
+    private final int numColumns;
+
+    /** For binary files, bytes per value (4 or 8). */
+    private int bytesPerValue;
+
+    /** Chunks ready to be filled. */
+    private final BlockingQueue<Chunk> free;
+
+    /** Filled chunks, in order, ending with {@link #END}. */
+    private final BlockingQueue<Chunk> filled;
+
+    /** The chunk rows are taken from. */
+    private Chunk current;
+
+    /** Index of the next row in the current chunk. */
+    private int nextInChunk;
+
+    /** Whether all rows were read. */
+    private boolean exhausted;
+
+    /** The reading thread. */
+    private Thread reader;
+
+    /** The first error of the reader. */
+    private volatile IOException error;
+
+    /**
+     * Stream a file in chunks of the default size.
+     *
+     * @param file a binary recording or a text file of comma-separated
+     *            values
+     * @param loop whether to start over at the end of the file
+     * @throws IOException if the file cannot be opened or has no rows
+     */
+    public StreamingInputSource(final File file, final boolean loop)
+            throws IOException {
+        this(file, loop, DEFAULT_CHUNK_ROWS);
+    }
+
+    /**
+     * Stream a file.
+     *
+     * @param file a binary recording or a text file of comma-separated
+     *            values
+     * @param loop whether to start over at the end of the file
+     * @param chunkRows number of rows read at a time
+     * @throws IOException if the file cannot be opened or has no rows
+     */
+    public StreamingInputSource(final File file, final boolean loop,
+            final int chunkRows) throws IOException {
+        if (chunkRows < 1) {
+            throw new IllegalArgumentException(
+                    "Chunks must hold at least one row");
+        }
+        this.file = file;
+        this.loop = loop;
+        this.chunkRows = chunkRows;
+        binary = file.getName()
+                .endsWith("." + BinaryActivityRecorder.FORMAT);
+        numColumns = binary ? readBinaryHeader() : countColumns();
+        free = new ArrayBlockingQueue<Chunk>(CHUNKS_AHEAD + 1);
+        filled = new ArrayBlockingQueue<Chunk>(CHUNKS_AHEAD + 2);
+        for (int i = 0; i < CHUNKS_AHEAD + 1; i++) {
+            free.add(new Chunk(chunkRows, numColumns));
+        }
+        start();
+    }
+
+    /**
+     * Check the header of a binary recording.
+     *
+     * @return the number of values in a row
+     * @throws IOException if the file is not a recording of activations
+     */
+    private int readBinaryHeader() throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new FileInputStream(file))) {
+            if (in.readInt() != BinaryActivityRecorder.MAGIC) {
+                throw new IOException(file + " is not a recording");
+            }
+            int version = in.readInt();
+            if (version > BinaryActivityRecorder.VERSION) {
+                throw new IOException("Recording version " + version
+                        + " is newer than supported version "
+                        + BinaryActivityRecorder.VERSION);
+            }
+            if (in.readByte() != 0) {
+                throw new IOException(
+                        file + " holds spikes, not activations");
+            }
+            bytesPerValue = in.readByte();
+            return in.readInt();
+        }
+    }
+
+    /**
+     * Count the values in the first row of a text file.
+     *
+     * @return the number of values in a row
+     * @throws IOException if the file cannot be read or has no rows
+     */
+    private int countColumns() throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            String[] line = newParser(in).getLine();
+            if (line == null) {
+                throw new IOException(file + " has no rows");
+            }
+            return line.length;
+        }
+    }
+
+    /**
+     * @param in the text
+     * @return a parser for comma-separated values with "#" comments
+     */
+    private static CSVParser newParser(final InputStream in) {
+        return new CSVParser(new BufferedInputStream(in, 1 << 16), "", "",
+                "#");
+    }
+
+    /**
+     * Start reading from the beginning of the file.
+     */
+    private void start() {
+        exhausted = false;
+        error = null;
+        reader = new Thread(this::read, "Input reader " + file.getName());
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Body of the reading thread: fill chunks until the end of the file, and
+     * again from the start if looping, then queue {@link #END}.
+     */
+    private void read() {
+        try {
+            boolean any;
+            do {
+                any = binary ? readBinary() : readText();
+            } while (loop && any && !Thread.currentThread().isInterrupted());
+        } catch (InterruptedException e) {
+            return;
+        } catch (IOException e) {
+            error = e;
+        }
+        filled.add(END);
+    }
+
+    /**
+     * Read all rows of a binary recording, mapping a chunk of it at a time.
+     *
+     * @return whether any rows were read
+     * @throws IOException if the file cannot be read
+     * @throws InterruptedException if reading was stopped
+     */
+    private boolean readBinary() throws IOException, InterruptedException {
+        int rowBytes = 4 + numColumns * bytesPerValue;
+        boolean any = false;
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = BinaryActivityRecorder.HEADER_SIZE;
+            while (position + rowBytes <= size) {
+                int rows = (int) Math.min(chunkRows,
+                        (size - position) / rowBytes);
+                MappedByteBuffer map = channel.map(
+                        FileChannel.MapMode.READ_ONLY, position,
+                        (long) rows * rowBytes);
+                Chunk chunk = free.take();
+                for (int r = 0; r < rows; r++) {
+                    double[] row = chunk.rows[r];
+                    int p = r * rowBytes + 4;
+                    if (bytesPerValue == 8) {
+                        for (int i = 0; i < numColumns; i++, p += 8) {
+                            row[i] = map.getDouble(p);
+                        }
+                    } else {
+                        for (int i = 0; i < numColumns; i++, p += 4) {
+                            row[i] = map.getFloat(p);
+                        }
+                    }
+                }
+                chunk.count = rows;
+                filled.put(chunk);
+                position += (long) rows * rowBytes;
+                any = true;
+            }
+        }
+        return any;
+    }
+
+    /**
+     * Read all rows of a text file.
+     *
+     * @return whether any rows were read
+     * @throws IOException if the file cannot be read or a row has the wrong
+     *             number of values
+     * @throws InterruptedException if reading was stopped
+     */
+    private boolean readText() throws IOException, InterruptedException {
+        boolean any = false;
+        try (InputStream in = new FileInputStream(file)) {
+            CSVParser parser = newParser(in);
+            Chunk chunk = free.take();
+            String[] line;
+            while ((line = parser.getLine()) != null) {
+                if (line.length != numColumns) {
+                    throw new IOException("Line " + parser.lastLineNumber()
+                            + " of " + file + " has " + line.length
+                            + " values, expected " + numColumns);
+                }
+                double[] row = chunk.rows[chunk.count++];
+                try {
+                    for (int i = 0; i < numColumns; i++) {
+                        row[i] = Double.parseDouble(line[i]);
+                    }
+                } catch (NumberFormatException e) {
+                    throw new IOException("Line " + parser.lastLineNumber()
+                            + " of " + file + ": " + e.getMessage(), e);
+                }
+                if (chunk.count == chunkRows) {
+                    filled.put(chunk);
+                    chunk = free.take();
+                    any = true;
+                }
+            }
+            if (chunk.count > 0) {
+                filled.put(chunk);
+                any = true;
+            } else {
+                free.put(chunk);
+            }
+        }
+        return any;
+    }
+
+    @Override
+    public int getNumColumns() {
+        return numColumns;
+    }
+
+    /**
+     * Returns the next row. The array is reused once its chunk has been used
+     * up, so callers should copy values they want to keep.
+     */
+    @Override
+    public double[] nextRow() throws IOException {
+        if (exhausted) {
+            return null;
+        }
+        if (current == null || nextInChunk >= current.count) {
+            if (current != null) {
+                current.count = 0;
+                free.add(current);
+            }
+            try {
+                current = filled.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while reading input", e);
+            }
+            nextInChunk = 0;
+            if (current == END) {
+                current = null;
+                exhausted = true;
+                IOException e = error;
+                if (e != null) {
+                    throw new IOException("Reading " + file + " failed", e);
+                }
+                return null;
+            }
+        }
+        return current.rows[nextInChunk++];
+    }
+
+    @Override
+    public void reset() throws IOException {
+        stop();
+        start();
+    }
+
+    @Override
+    public void close() throws IOException {
+        stop();
+        exhausted = true;
+    }
+
+    /**
+     * Stop the reading thread and refill the free queue with new chunks, since
+     * the reader may have been stopped holding one.
+     *
+     * @throws IOException if interrupted while waiting for the reader
+     */
+    private void stop() throws IOException {
+        reader.interrupt();
+        try {
+            reader.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while stopping input reader",
+                    e);
+        }
+        current = null;
+        filled.clear();
+        free.clear();
+        for (int i = 0; i < CHUNKS_AHEAD + 1; i++) {
+            free.add(new Chunk(chunkRows, numColumns));
+        }
+    }
+
+    /**
+     * @return whether the source starts over at the end of the file
+     */
+    public boolean isLoop() {
+        return loop;
+    }
+
+    /**
+     * A block of rows passed from the reading thread.
+     */
+    private static final class Chunk {
+
+        /** The rows. */
+        private final double[][] rows;
+
+        /** Number of rows filled. */
+        private int count;
+
+        /**
+         * Allocate a chunk.
+         *
+         * @param numRows number of rows
+         * @param numColumns values per row
+         */
+        Chunk(final int numRows, final int numColumns) {
+            rows = new double[numRows][numColumns];
+        }
+    }
+
+}
@@ -18,8 +18,11 @@
  */
 package org.simbrain.plot.rasterchart;
 
+import java.io.IOException;
+
 import org.jfree.data.xy.XYSeries;
 import org.jfree.data.xy.XYSeriesCollection;
+import org.simbrain.network.util.io_utilities.SpikeTrainReader;
 import org.simbrain.plot.ChartModel;
 
 import com.thoughtworks.xstream.XStream;
@@ -231,6 +234,29 @@ public class RasterModel extends ChartModel {
         getDataset().getSeries(dataSourceIndex).add(time, value);
     }
 
+    /**
+     * Add the spikes in a range of times and neurons of a recorded spike
+     * train to a data source, plotting each spike at its time and neuron
+     * index.
+     *
+     * @param dataSourceIndex index of data source to use
+     * @param reader the recorded spike train
+     * @param start start of the time range
+     * @param end end of the time range (exclusive)
+     * @param firstNeuron lowest neuron index
+     * @param lastNeuron highest neuron index
+     * @throws IOException if the spike train cannot be read
+     */
+    public void addSpikes(final int dataSourceIndex,
+            final SpikeTrainReader reader, final double start,
+            final double end, final int firstNeuron, final int lastNeuron)
+            throws IOException {
+        final XYSeries series = getDataset().getSeries(dataSourceIndex);
+        reader.forEachSpike(start, end, firstNeuron, lastNeuron,
+                (time, neuron) -> series.add(time, neuron, false));
+        series.fireSeriesChanged();
+    }
+
     /**
      * Update the model; currently used to remove unused data when in
      * "fixed width" mode.
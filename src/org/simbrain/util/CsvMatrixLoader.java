@@ -0,0 +1,683 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Reads a matrix of numbers from a file of comma-separated values without
+ * first turning it into strings. The file is memory-mapped and split into
+ * ranges of whole lines, which are parsed at the same time on all available
+ * processors straight into rows of doubles.
+ * <p>
+ * Each line holds one row. Blank lines and lines starting with "#" are
+ * skipped. Values may be surrounded by spaces or by double quotes, but quoted
+ * values may not contain commas or line breaks. Empty values are read as 0.
+ * The first row sets the number of columns. Lines with too few or too many
+ * values, and values that are not numbers, are reported as problems along
+ * with their line numbers; in the data, missing and unreadable values are 0
+ * and extra values are dropped.
+ */
+public final class CsvMatrixLoader {
+
+    /** Files smaller than this are read on the calling thread. */
+    private static final long PARALLEL_THRESHOLD = 1 << 20;
+
+    /** Smallest range of the file given to one task. */
+    private static final long MIN_RANGE_BYTES = 1 << 18;
+
+    /** Largest range of the file mapped at once. */
+    private static final long MAX_RANGE_BYTES = 1 << 28;
+
+    /** Most problems described; further ones are only counted. */
+    public static final int MAX_PROBLEMS = 100;
+
+    /** Exactly representable powers of ten. */
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    /**
+     * Static methods only.
+     */
+    private CsvMatrixLoader() {
+    }
+
+    /**
+     * Read a matrix, failing if any line is malformed.
+     *
+     * @param file the file
+     * @return the rows
+     * @throws IOException if the file cannot be read, has no rows or has
+     *             malformed lines
+     */
+    public static double[][] readMatrix(final File file) throws IOException {
+        Result result = load(file);
+        if (result.getNumProblems() > 0) {
+            throw new IOException(result.describeProblems(5));
+        }
+        if (result.getData().length == 0) {
+            throw new IOException(file + " has no rows");
+        }
+        return result.getData();
+    }
+
+    /**
+     * Read a matrix, keeping malformed lines as well as possible.
+     *
+     * @param file the file
+     * @return the rows and any problems found
+     * @throws IOException if the file cannot be read
+     */
+    public static Result load(final File file) throws IOException {
+        return load(file, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Read a matrix, keeping malformed lines as well as possible.
+     *
+     * @param file the file
+     * @param numThreads most threads to parse with
+     * @return the rows and any problems found
+     * @throws IOException if the file cannot be read
+     */
+    public static Result load(final File file, final int numThreads)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            final int numColumns = countColumns(channel);
+            if (numColumns == 0) {
+                return new Result(new double[0][0], 0,
+                        Collections.<String> emptyList(), 0);
+            }
+            long[] bounds = split(channel, numThreads);
+            List<Range> ranges = new ArrayList<Range>();
+            for (int i = 0; i + 1 < bounds.length; i++) {
+                ranges.add(new Range(channel.map(
+                        FileChannel.MapMode.READ_ONLY, bounds[i],
+                        bounds[i + 1] - bounds[i]), numColumns));
+            }
+            parse(ranges, numThreads);
+            return merge(ranges, numColumns);
+        }
+    }
+
+    /**
+     * Count the values in the first row.
+     *
+     * @param channel the file
+     * @return the number of values, or 0 if there are no rows
+     * @throws IOException if the file cannot be read
+     */
+    private static int countColumns(final FileChannel channel)
+            throws IOException {
+        // Not closed, as that would close the channel
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                Channels.newInputStream(channel.position(0)),
+                StandardCharsets.ISO_8859_1));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (!isBlank(line) && !line.startsWith("#")) {
+                int count = 1;
+                for (int i = 0; i < line.length(); i++) {
+                    if (line.charAt(i) == ',') {
+                        count++;
+                    }
+                }
+                return count;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Split the file into ranges of whole lines, a few per thread so that
+     * uneven ranges even out.
+     *
+     * @param channel the file
+     * @param numThreads number of threads that will parse the ranges
+     * @return the start of each range followed by the size of the file
+     * @throws IOException if the file cannot be read
+     */
+    private static long[] split(final FileChannel channel,
+            final int numThreads) throws IOException {
+        long size = channel.size();
+        long numRanges = 1;
+        if (size >= PARALLEL_THRESHOLD && numThreads > 1) {
+            numRanges = Math.min(4L * numThreads, size / MIN_RANGE_BYTES);
+        }
+        numRanges = Math.max(numRanges, size / MAX_RANGE_BYTES + 1);
+        List<Long> starts = new ArrayList<Long>();
+        starts.add(0L);
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 12);
+        for (long i = 1; i < numRanges; i++) {
+            long start = nextLine(channel, i * size / numRanges, buffer);
+            if (start > starts.get(starts.size() - 1) && start < size) {
+                starts.add(start);
+            }
+        }
+        long[] bounds = new long[starts.size() + 1];
+        for (int i = 0; i < starts.size(); i++) {
+            bounds[i] = starts.get(i);
+        }
+        bounds[starts.size()] = size;
+        return bounds;
+    }
+
+    /**
+     * Find the start of the first line beginning at or after a position.
+     *
+     * @param channel the file
+     * @param position the position
+     * @param buffer a buffer to read through
+     * @return the start of the line, or the size of the file
+     * @throws IOException if the file cannot be read
+     */
+    private static long nextLine(final FileChannel channel,
+            final long position, final ByteBuffer buffer) throws IOException {
+        long p = position - 1;
+        while (true) {
+            buffer.clear();
+            int n = channel.read(buffer, p);
+            if (n <= 0) {
+                return channel.size();
+            }
+            for (int i = 0; i < n; i++) {
+                if (buffer.get(i) == '\n') {
+                    return p + i + 1;
+                }
+            }
+            p += n;
+        }
+    }
+
+    /**
+     * Parse the ranges, in parallel if there are several.
+     *
+     * @param ranges the ranges
+     * @param numThreads most threads to use
+     * @throws IOException if the parsing was interrupted
+     */
+    private static void parse(final List<Range> ranges, final int numThreads)
+            throws IOException {
+        int threads = Math.min(numThreads, ranges.size());
+        if (threads <= 1) {
+            for (Range range : ranges) {
+                range.parse();
+            }
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads,
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(final Runnable r) {
+                        Thread t = new Thread(r, "Matrix loader");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (final Range range : ranges) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        range.parse();
+                        return null;
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading matrix", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Join the rows of the ranges and number their problems by line in the
+     * file.
+     *
+     * @param ranges the parsed ranges, in order
+     * @param numColumns number of values in a row
+     * @return the result
+     */
+    private static Result merge(final List<Range> ranges,
+            final int numColumns) {
+        int numRows = 0;
+        for (Range range : ranges) {
+            numRows += range.rows.size();
+        }
+        double[][] data = new double[numRows][];
+        List<String> problems = new ArrayList<String>();
+        int numProblems = 0;
+        int row = 0;
+        long firstLine = 1;
+        for (Range range : ranges) {
+            for (double[] values : range.rows) {
+                data[row++] = values;
+            }
+            for (int i = 0; i < range.problemLines.size()
+                    && problems.size() < MAX_PROBLEMS; i++) {
+                problems.add("Line " + (firstLine + range.problemLines.get(i))
+                        + ": " + range.problems.get(i));
+            }
+            numProblems += range.numProblems;
+            firstLine += range.numLines;
+        }
+        return new Result(data, numColumns, problems, numProblems);
+    }
+
+    /**
+     * The rows read from a file, and the problems found in it.
+     */
+    public static final class Result {
+
+        /** The rows. */
+        private final double[][] data;
+
+        /** Number of values in a row. */
+        private final int numColumns;
+
+        /** Descriptions of the first problems. */
+        private final List<String> problems;
+
+        /** Number of problems. */
+        private final int numProblems;
+
+        /**
+         * Construct a result.
+         *
+         * @param data the rows
+         * @param numColumns number of values in a row
+         * @param problems descriptions of the first problems
+         * @param numProblems number of problems
+         */
+        private Result(final double[][] data, final int numColumns,
+                final List<String> problems, final int numProblems) {
+            this.data = data;
+            this.numColumns = numColumns;
+            this.problems = Collections.unmodifiableList(problems);
+            this.numProblems = numProblems;
+        }
+
+        /**
+         * @return the rows, each with {@link #getNumColumns()} values
+         */
+        public double[][] getData() {
+            return data;
+        }
+
+        /**
+         * @return the number of values in a row
+         */
+        public int getNumColumns() {
+            return numColumns;
+        }
+
+        /**
+         * @return descriptions of up to {@value CsvMatrixLoader#MAX_PROBLEMS}
+         *         problems, each starting with its line number
+         */
+        public List<String> getProblems() {
+            return problems;
+        }
+
+        /**
+         * @return the number of malformed lines and values
+         */
+        public int getNumProblems() {
+            return numProblems;
+        }
+
+        /**
+         * Describe the problems briefly, e.g. for a dialog.
+         *
+         * @param max most problems to list
+         * @return the description, or an empty string if there are none
+         */
+        public String describeProblems(final int max) {
+            if (numProblems == 0) {
+                return "";
+            }
+            StringBuilder sb = new StringBuilder();
+            sb.append(numProblems).append(numProblems == 1 ? " problem"
+                    : " problems").append(" reading the file:");
+            for (int i = 0; i < Math.min(max, problems.size()); i++) {
+                sb.append("\n").append(problems.get(i));
+            }
+            if (numProblems > max) {
+                sb.append("\n...");
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * A range of whole lines of the file and what was read from it.
+     */
+    private static final class Range {
+
+        /** The bytes. */
+        private final MappedByteBuffer bytes;
+
+        /** Number of values in a row. */
+        private final int numColumns;
+
+        /** The rows read. */
+        private final List<double[]> rows = new ArrayList<double[]>();
+
+        /** Number of lines in the range. */
+        private int numLines;
+
+        /** Line within the range, from 0, of each problem described. */
+        private final List<Integer> problemLines = new ArrayList<Integer>();
+
+        /** Descriptions of the problems. */
+        private final List<String> problems = new ArrayList<String>();
+
+        /** Number of problems. */
+        private int numProblems;
+
+        /** Value set by {@link #parseFast(int, int)}. */
+        private double value;
+
+        /** Buffer for values parsed the slow way. */
+        private byte[] scratch = new byte[64];
+
+        /**
+         * Construct a range.
+         *
+         * @param bytes the bytes
+         * @param numColumns number of values in a row
+         */
+        Range(final MappedByteBuffer bytes, final int numColumns) {
+            this.bytes = bytes;
+            this.numColumns = numColumns;
+        }
+
+        /**
+         * Read all lines.
+         */
+        void parse() {
+            int end = bytes.limit();
+            int start = 0;
+            while (start < end) {
+                int eol = start;
+                while (eol < end && bytes.get(eol) != '\n') {
+                    eol++;
+                }
+                int lineEnd = eol;
+                if (lineEnd > start && bytes.get(lineEnd - 1) == '\r') {
+                    lineEnd--;
+                }
+                parseLine(start, lineEnd);
+                numLines++;
+                start = eol + 1;
+            }
+        }
+
+        /**
+         * Read a line into a new row, unless it is blank or a comment.
+         *
+         * @param start start of the line
+         * @param end end of the line, without the line break
+         */
+        private void parseLine(final int start, final int end) {
+            if (start < end && bytes.get(start) == '#') {
+                return;
+            }
+            int first = skipSpace(start, end);
+            if (first == end) {
+                return;
+            }
+            double[] row = new double[numColumns];
+            int column = 0;
+            int fieldStart = start;
+            while (true) {
+                int fieldEnd = fieldStart;
+                while (fieldEnd < end && bytes.get(fieldEnd) != ',') {
+                    fieldEnd++;
+                }
+                if (column < numColumns) {
+                    row[column] = parseValue(fieldStart, fieldEnd, column);
+                }
+                column++;
+                if (fieldEnd == end) {
+                    break;
+                }
+                fieldStart = fieldEnd + 1;
+            }
+            if (column != numColumns) {
+                problem("expected " + numColumns + " values but found "
+                        + column);
+            }
+            rows.add(row);
+        }
+
+        /**
+         * Read one value.
+         *
+         * @param start start of the value
+         * @param end end of the value
+         * @param column the column, for reporting problems
+         * @return the value, or 0 if it is empty or not a number
+         */
+        private double parseValue(final int start, final int end,
+                final int column) {
+            int s = skipSpace(start, end);
+            int e = end;
+            while (e > s && isSpace(bytes.get(e - 1))) {
+                e--;
+            }
+            if (e - s >= 2 && bytes.get(s) == '"' && bytes.get(e - 1) == '"') {
+                s++;
+                e--;
+            }
+            if (s == e) {
+                return 0;
+            }
+            if (parseFast(s, e)) {
+                return value;
+            }
+            if (scratch.length < e - s) {
+                scratch = new byte[e - s];
+            }
+            for (int i = s; i < e; i++) {
+                scratch[i - s] = bytes.get(i);
+            }
+            String text = new String(scratch, 0, e - s,
+                    StandardCharsets.ISO_8859_1);
+            try {
+                return Double.parseDouble(text);
+            } catch (NumberFormatException ex) {
+                problem("value " + (column + 1) + " (\"" + text
+                        + "\") is not a number");
+                return 0;
+            }
+        }
+
+        /**
+         * Read a plain decimal number whose value can be computed exactly
+         * with one multiplication or division, which covers nearly all
+         * numbers written by programs. Anything else is left to
+         * {@link Double#parseDouble(String)}.
+         *
+         * @param start start of the number
+         * @param end end of the number
+         * @return whether the number was read into {@link #value}
+         */
+        private boolean parseFast(final int start, final int end) {
+            int i = start;
+            boolean negative = false;
+            byte c = bytes.get(i);
+            if (c == '-' || c == '+') {
+                negative = c == '-';
+                i++;
+            }
+            long mantissa = 0;
+            int digits = 0;
+            int scale = 0;
+            boolean any = false;
+            boolean point = false;
+            for (; i < end; i++) {
+                c = bytes.get(i);
+                if (c >= '0' && c <= '9') {
+                    any = true;
+                    if (mantissa != 0 || c != '0') {
+                        if (++digits > 15) {
+                            return false;
+                        }
+                        mantissa = mantissa * 10 + (c - '0');
+                    }
+                    if (point) {
+                        scale--;
+                    }
+                } else if (c == '.' && !point) {
+                    point = true;
+                } else {
+                    break;
+                }
+            }
+            if (!any) {
+                return false;
+            }
+            if (i < end && (c == 'e' || c == 'E')) {
+                i++;
+                if (i == end) {
+                    return false;
+                }
+                boolean negativeExponent = false;
+                c = bytes.get(i);
+                if (c == '-' || c == '+') {
+                    negativeExponent = c == '-';
+                    i++;
+                }
+                int exponent = 0;
+                int exponentDigits = 0;
+                for (; i < end; i++) {
+                    c = bytes.get(i);
+                    if (c < '0' || c > '9' || ++exponentDigits > 4) {
+                        return false;
+                    }
+                    exponent = exponent * 10 + (c - '0');
+                }
+                if (exponentDigits == 0) {
+                    return false;
+                }
+                scale += negativeExponent ? -exponent : exponent;
+            }
+            if (i != end) {
+                return false;
+            }
+            double v;
+            if (mantissa == 0) {
+                v = 0;
+            } else if (scale >= 0 && scale < POWERS_OF_TEN.length) {
+                v = mantissa * POWERS_OF_TEN[scale];
+            } else if (scale < 0 && -scale < POWERS_OF_TEN.length) {
+                v = mantissa / POWERS_OF_TEN[-scale];
+            } else {
+                return false;
+            }
+            value = negative ? -v : v;
+            return true;
+        }
+
+        /**
+         * @param start a position
+         * @param end the end of the text
+         * @return the first position at or after start that is not a space
+         */
+        private int skipSpace(final int start, final int end) {
+            int i = start;
+            while (i < end && isSpace(bytes.get(i))) {
+                i++;
+            }
+            return i;
+        }
+
+        /**
+         * Note a problem in the current line.
+         *
+         * @param description the problem
+         */
+        private void problem(final String description) {
+            numProblems++;
+            if (problems.size() < MAX_PROBLEMS) {
+                problemLines.add(numLines);
+                problems.add(description);
+            }
+        }
+    }
+
+    /**
+     * @param line a line
+     * @return whether it holds only spaces and tabs
+     */
+    private static boolean isBlank(final String line) {
+        for (int i = 0; i < line.length(); i++) {
+            if (!isSpace((byte) line.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param b a byte
+     * @return whether it is a space or tab
+     */
+    private static boolean isSpace(final byte b) {
+        return b == ' ' || b == '\t';
+    }
+
+}
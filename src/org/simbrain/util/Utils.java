@@ -70,24 +70,23 @@ public class Utils {
     }
 
     /**
-     * Read a csv (comma-separated-values) files.
+     * Read a csv (comma-separated-values) file of numbers. See
+     * {@link CsvMatrixLoader}.
      *
      * @param theFile the file to read in
-     * @return an two-dimensional array of comma-separated values
+     * @return an two-dimensional array of comma-separated values, or null if
+     *         the file could not be read
      */
     public static double[][] getDoubleMatrix(final File theFile) {
-        String[][] stringMatrix = getStringMatrix(theFile);
-
-        // Convert strings to doubles
-        double[][] ret = new double[stringMatrix.length][stringMatrix[0].length];
-
-        for (int i = 0; i < stringMatrix.length; i++) {
-            for (int j = 0; j < stringMatrix[i].length; j++) {
-                ret[i][j] = Double.parseDouble(stringMatrix[i][j]);
-            }
+        try {
+            return CsvMatrixLoader.readMatrix(theFile);
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(null,
+                    "There was a problem opening the file \n" + theFile
+                            + "\n" + e.getMessage(),
+                    "Warning", JOptionPane.ERROR_MESSAGE);
+            return null;
         }
-
-        return ret;
     }
 
     /**
@@ -18,8 +18,6 @@
  */
 package org.simbrain.util.math;
 
-import java.util.concurrent.ThreadLocalRandom;
-
 import umontreal.iro.lecuyer.probdist.Distribution;
 import umontreal.iro.lecuyer.probdist.ExponentialDist;
 import umontreal.iro.lecuyer.probdist.GammaDist;
@@ -43,7 +41,7 @@ public enum ProbDistribution {
 
         @Override
         public double nextRand(double lambda, double nullVar) {
-            return ExponentialGen.nextDouble(DEFAULT_RANDOM_STREAM, lambda);
+            return ExponentialGen.nextDouble(SimbrainRandom.stream(), lambda);
         }
 
         @Override
@@ -101,7 +99,7 @@ public enum ProbDistribution {
 
         @Override
         public double nextRand(double shape, double scale) {
-            return GammaGen.nextDouble(DEFAULT_RANDOM_STREAM, shape, scale);
+            return GammaGen.nextDouble(SimbrainRandom.stream(), shape, scale);
         }
 
         @Override
@@ -159,7 +157,7 @@ public enum ProbDistribution {
 
         @Override
         public double nextRand(double location, double scale) {
-            return LognormalGen.nextDouble(DEFAULT_RANDOM_STREAM, location,
+            return LognormalGen.nextDouble(SimbrainRandom.stream(), location,
                     scale);
         }
 
@@ -222,7 +220,7 @@ public enum ProbDistribution {
          */
         @Override
         public double nextRand(double mean, double std) {
-            return (ThreadLocalRandom.current().nextGaussian() * std) + mean;
+            return (SimbrainRandom.current().nextGaussian() * std) + mean;
         }
 
         /**
@@ -284,7 +282,7 @@ public enum ProbDistribution {
 
         @Override
         public double nextRand(double slope, double min) {
-            return ParetoGen.nextDouble(DEFAULT_RANDOM_STREAM, slope, min);
+            return ParetoGen.nextDouble(SimbrainRandom.stream(), slope, min);
         }
 
         @Override
@@ -346,7 +344,7 @@ public enum ProbDistribution {
          */
         @Override
         public double nextRand(double floor, double ceil) {
-            return ThreadLocalRandom.current().nextDouble(floor, ceil);
+            return floor + (ceil - floor) * SimbrainRandom.nextDouble();
         }
 
         /**
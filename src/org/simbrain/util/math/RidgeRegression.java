@@ -0,0 +1,348 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.util.math;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Linear least squares with a ridge (Tikhonov) penalty, computed from rows
+ * streamed in one at a time. Only the correlation matrix X'X and the
+ * cross-correlation matrix X'Y are kept, so memory does not grow with the
+ * number of rows. Rows are gathered into blocks which are added to the
+ * correlations on one or more threads; each entry is always summed by a
+ * single thread in row order, so the result does not depend on the number of
+ * threads. The weights W minimizing |XW - Y|^2 + ridge |W|^2 are found by
+ * solving (X'X + ridge I) W = X'Y with a Cholesky decomposition.
+ */
+public final class RidgeRegression {
+
+    /** Number of rows gathered before they are added to the correlations. */
+    private static final int BLOCK_SIZE = 256;
+
+    /**
+     * Fewest inputs for which blocks are shared among threads; below this the
+     * threads cost more than they save.
+     */
+    private static final int MIN_PARALLEL_INPUTS = 64;
+
+    /** Number of inputs (columns of X). */
+    private final int numInputs;
+
+    /** Number of outputs (columns of Y). */
+    private final int numOutputs;
+
+    /** Number of threads. */
+    private final int numThreads;
+
+    /** Upper triangle of X'X. */
+    private final double[][] correlation;
+
+    /** X'Y. */
+    private final double[][] crossCorrelation;
+
+    /** The current block of inputs, one array per input. */
+    private final double[][] inputBlock;
+
+    /** The current block of targets, one array per output. */
+    private final double[][] targetBlock;
+
+    /** Number of rows in the current block. */
+    private int blockRows;
+
+    /** Number of rows added. */
+    private long numRows;
+
+    /** Shares blocks among threads. Made when first needed. */
+    private ExecutorService executor;
+
+    /**
+     * Make a regression which runs on the calling thread.
+     *
+     * @param numInputs number of inputs
+     * @param numOutputs number of outputs
+     */
+    public RidgeRegression(final int numInputs, final int numOutputs) {
+        this(numInputs, numOutputs, 1);
+    }
+
+    /**
+     * Make a regression.
+     *
+     * @param numInputs number of inputs
+     * @param numOutputs number of outputs
+     * @param numThreads number of threads to add blocks of rows with
+     */
+    public RidgeRegression(final int numInputs, final int numOutputs,
+            final int numThreads) {
+        this.numInputs = numInputs;
+        this.numOutputs = numOutputs;
+        this.numThreads = numInputs < MIN_PARALLEL_INPUTS ? 1 : Math.max(1,
+                numThreads);
+        correlation = new double[numInputs][numInputs];
+        crossCorrelation = new double[numInputs][numOutputs];
+        inputBlock = new double[numInputs][BLOCK_SIZE];
+        targetBlock = new double[numOutputs][BLOCK_SIZE];
+    }
+
+    /**
+     * Add a row.
+     *
+     * @param input the inputs, which are copied
+     * @param target the desired outputs, which are copied
+     */
+    public void addRow(final double[] input, final double[] target) {
+        if (input.length != numInputs || target.length != numOutputs) {
+            throw new IllegalArgumentException("Row has " + input.length
+                    + " inputs and " + target.length + " targets, expected "
+                    + numInputs + " and " + numOutputs);
+        }
+        for (int i = 0; i < numInputs; i++) {
+            inputBlock[i][blockRows] = input[i];
+        }
+        for (int c = 0; c < numOutputs; c++) {
+            targetBlock[c][blockRows] = target[c];
+        }
+        numRows++;
+        if (++blockRows == BLOCK_SIZE) {
+            flush();
+        }
+    }
+
+    /**
+     * @return the number of rows added
+     */
+    public long getNumRows() {
+        return numRows;
+    }
+
+    /**
+     * Forget all rows added so far.
+     */
+    public void reset() {
+        for (int i = 0; i < numInputs; i++) {
+            Arrays.fill(correlation[i], 0);
+            Arrays.fill(crossCorrelation[i], 0);
+        }
+        blockRows = 0;
+        numRows = 0;
+    }
+
+    /**
+     * Solve for the weights from the rows added so far, and stop any threads.
+     * Rows may still be added afterwards.
+     *
+     * @param ridge the ridge penalty, 0 for ordinary least squares
+     * @return the weights, one row per input and one column per output
+     * @throws ArithmeticException if X'X + ridge I is not positive definite,
+     *             for example when there are fewer rows than inputs and no
+     *             ridge
+     */
+    public double[][] solve(final double ridge) {
+        try {
+            flush();
+        } finally {
+            close();
+        }
+        double[][] lower = cholesky(ridge);
+        double[][] weights = new double[numInputs][numOutputs];
+        double[] x = new double[numInputs];
+        for (int c = 0; c < numOutputs; c++) {
+            // Forward substitution: L z = X'y
+            for (int i = 0; i < numInputs; i++) {
+                double[] li = lower[i];
+                double sum = crossCorrelation[i][c];
+                for (int p = 0; p < i; p++) {
+                    sum -= li[p] * x[p];
+                }
+                x[i] = sum / li[i];
+            }
+            // Back substitution: L'w = z
+            for (int i = numInputs - 1; i >= 0; i--) {
+                double sum = x[i];
+                for (int p = i + 1; p < numInputs; p++) {
+                    sum -= lower[p][i] * x[p];
+                }
+                x[i] = sum / lower[i][i];
+            }
+            for (int i = 0; i < numInputs; i++) {
+                weights[i][c] = x[i];
+            }
+        }
+        return weights;
+    }
+
+    /**
+     * Stop the threads, if any. They are made again if more rows are added.
+     */
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * @param ridge the ridge penalty
+     * @return the lower triangular L with L L' = X'X + ridge I
+     */
+    private double[][] cholesky(final double ridge) {
+        double[][] lower = new double[numInputs][];
+        for (int j = 0; j < numInputs; j++) {
+            double[] lj = new double[j + 1];
+            lower[j] = lj;
+            for (int i = 0; i <= j; i++) {
+                double[] li = lower[i];
+                double sum = correlation[i][j];
+                for (int p = 0; p < i; p++) {
+                    sum -= li[p] * lj[p];
+                }
+                if (i < j) {
+                    lj[i] = sum / li[i];
+                } else {
+                    sum += ridge;
+                    if (!(sum > 0) || Double.isInfinite(sum)) {
+                        throw new ArithmeticException("Correlation matrix is"
+                                + " not positive definite; try a larger"
+                                + " ridge");
+                    }
+                    lj[j] = Math.sqrt(sum);
+                }
+            }
+        }
+        return lower;
+    }
+
+    /**
+     * Add the current block of rows to the correlations.
+     */
+    private void flush() {
+        if (blockRows == 0) {
+            return;
+        }
+        if (numThreads == 1) {
+            addBlock(0, 1);
+        } else {
+            if (executor == null) {
+                executor = Executors.newFixedThreadPool(numThreads,
+                        new ThreadFactory() {
+                            private int count;
+
+                            @Override
+                            public synchronized Thread newThread(Runnable r) {
+                                Thread t = new Thread(r, "Regression "
+                                        + ++count);
+                                t.setDaemon(true);
+                                return t;
+                            }
+                        });
+            }
+            List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+            for (int t = 0; t < numThreads; t++) {
+                final int first = t;
+                tasks.add(new Callable<Object>() {
+                    @Override
+                    public Object call() {
+                        addBlock(first, numThreads);
+                        return null;
+                    }
+                });
+            }
+            try {
+                for (Future<Object> future : executor.invokeAll(tasks)) {
+                    future.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Regression was interrupted",
+                        e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IllegalStateException("Regression failed",
+                        e.getCause());
+            }
+        }
+        blockRows = 0;
+    }
+
+    /**
+     * Add the current block to every stride'th row of the correlations,
+     * starting at the given row. Rows are interleaved so that threads get
+     * about the same share of the triangle.
+     *
+     * @param first first row of the correlations to update
+     * @param stride step between rows
+     */
+    private void addBlock(final int first, final int stride) {
+        final int n = blockRows;
+        for (int i = first; i < numInputs; i += stride) {
+            double[] xi = inputBlock[i];
+            double[] row = correlation[i];
+            int j = i;
+            for (; j + 3 < numInputs; j += 4) {
+                double[] x0 = inputBlock[j];
+                double[] x1 = inputBlock[j + 1];
+                double[] x2 = inputBlock[j + 2];
+                double[] x3 = inputBlock[j + 3];
+                double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+                for (int r = 0; r < n; r++) {
+                    double v = xi[r];
+                    s0 += v * x0[r];
+                    s1 += v * x1[r];
+                    s2 += v * x2[r];
+                    s3 += v * x3[r];
+                }
+                row[j] += s0;
+                row[j + 1] += s1;
+                row[j + 2] += s2;
+                row[j + 3] += s3;
+            }
+            for (; j < numInputs; j++) {
+                row[j] += dot(xi, inputBlock[j], n);
+            }
+            for (int c = 0; c < numOutputs; c++) {
+                crossCorrelation[i][c] += dot(xi, targetBlock[c], n);
+            }
+        }
+    }
+
+    /**
+     * @param a an array
+     * @param b another array
+     * @param n number of entries to use
+     * @return the dot product of the first n entries
+     */
+    private static double dot(final double[] a, final double[] b, final int n) {
+        double sum = 0;
+        for (int r = 0; r < n; r++) {
+            sum += a[r] * b[r];
+        }
+        return sum;
+    }
+
+}
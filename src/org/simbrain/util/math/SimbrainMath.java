@@ -72,7 +72,7 @@ public class SimbrainMath {
      */
     public static int[] randPermute(int floor, int ceil) {
         int[] permute = new int[ceil - floor];
-        Random randi = new Random();
+        Random randi = SimbrainRandom.current();
         for (int i = floor; i < ceil; i++) {
             int j = randi.nextInt(i - floor + 1);
             if (j != i - floor) {
@@ -98,7 +98,7 @@ public class SimbrainMath {
     public static int[] randPermuteWithExclusion(int floor, int ceil,
             int excluded) {
         int[] permute = new int[ceil - floor - 1];
-        Random randi = new Random();
+        Random randi = SimbrainRandom.current();
         int k = floor - 1;
         for (int i = floor; i < ceil; i++) {
             if (i == excluded) {
@@ -531,7 +531,7 @@ public class SimbrainMath {
         double sqrt2 = Math.sqrt(2);
 
         for (int i = 0; i < vector.length; i++) {
-            randUniform = Math.random();
+            randUniform = SimbrainRandom.nextDouble();
             vector[i] += (sigma * sqrt2 * SimbrainMath.inverf(randUniform));
         }
     }
@@ -551,7 +551,7 @@ public class SimbrainMath {
         double[] returnVector = new double[vector.length];
 
         for (int i = 0; i < vector.length; i++) {
-            randUniform = Math.random();
+            randUniform = SimbrainRandom.nextDouble();
             returnVector[i] = vector[i]
                     + (sigma * sqrt2 * SimbrainMath.inverf(randUniform));
         }
@@ -567,7 +567,7 @@ public class SimbrainMath {
     public static double[] randomVector(int length) {
         double[] returnVector = new double[length];
         for (int i = 0; i < returnVector.length; i++) {
-            returnVector[i] = Math.random();
+            returnVector[i] = SimbrainRandom.nextDouble();
         }
         return returnVector;
     }
@@ -584,7 +584,8 @@ public class SimbrainMath {
             final double max) {
         double[] returnVector = new double[length];
         for (int i = 0; i < returnVector.length; i++) {
-            returnVector[i] = min + Math.random() * Math.abs(max - min);
+            returnVector[i] = min
+                    + SimbrainRandom.nextDouble() * Math.abs(max - min);
         }
         return returnVector;
     }
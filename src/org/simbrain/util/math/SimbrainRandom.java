@@ -0,0 +1,140 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.util.math;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Random;
+
+import umontreal.iro.lecuyer.rng.LFSR113;
+import umontreal.iro.lecuyer.rng.RandomStream;
+
+/**
+ * Random number sources used by update rules, randomizers and probability
+ * distributions. Each thread has its own generators, so they are never
+ * contended, and a thread's generators can be seeded to make a run
+ * reproducible, e.g. by a parameter sweep which runs each variant on one
+ * thread.
+ */
+public final class SimbrainRandom {
+
+    /** The generator of each thread. */
+    private static final ThreadLocal<Random> RANDOM =
+            new ThreadLocal<Random>() {
+                @Override
+                protected Random initialValue() {
+                    return new Random();
+                }
+            };
+
+    /** The SSJ stream of each thread, used by some distributions. */
+    private static final ThreadLocal<LFSR113> STREAM =
+            new ThreadLocal<LFSR113>() {
+                @Override
+                protected LFSR113 initialValue() {
+                    return new LFSR113();
+                }
+            };
+
+    /**
+     * No instances.
+     */
+    private SimbrainRandom() {
+    }
+
+    /**
+     * @return the generator for the current thread
+     */
+    public static Random current() {
+        return RANDOM.get();
+    }
+
+    /**
+     * @return the SSJ random stream for the current thread
+     */
+    public static RandomStream stream() {
+        return STREAM.get();
+    }
+
+    /**
+     * @return a uniformly distributed value on [0, 1), from the current
+     *         thread's generator
+     */
+    public static double nextDouble() {
+        return RANDOM.get().nextDouble();
+    }
+
+    /**
+     * Seed the generators of the current thread.
+     *
+     * @param seed the seed
+     */
+    public static void setSeed(final long seed) {
+        Random random = RANDOM.get();
+        random.setSeed(seed);
+        // LFSR113 needs four seeds of at least 2, 8, 16 and 128
+        int[] streamSeed = new int[4];
+        for (int i = 0; i < streamSeed.length; i++) {
+            streamSeed[i] = (random.nextInt() >>> 1) | 128;
+        }
+        STREAM.get().setSeed(streamSeed);
+        random.setSeed(seed);
+    }
+
+    /**
+     * Capture the state of the generators of the current thread, e.g. to
+     * checkpoint a run. The state has the same length every time.
+     *
+     * @return the state
+     */
+    public static byte[] getState() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream out = new ObjectOutputStream(bytes);
+            out.writeObject(RANDOM.get());
+            out.writeObject(STREAM.get().getState());
+            out.close();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Restore the generators of the current thread to a state captured by
+     * {@link #getState()}, so they produce the same numbers from there on.
+     *
+     * @param state the state
+     * @throws IllegalArgumentException if the state is not valid
+     */
+    public static void setState(final byte[] state) {
+        try {
+            ObjectInputStream in = new ObjectInputStream(
+                    new ByteArrayInputStream(state));
+            RANDOM.set((Random) in.readObject());
+            STREAM.get().setSeed((int[]) in.readObject());
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            throw new IllegalArgumentException("Invalid random state", e);
+        }
+    }
+
+}
@@ -0,0 +1,382 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.util.math;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import Jama.EigenvalueDecomposition;
+import Jama.Matrix;
+
+/**
+ * A sparse matrix in compressed sparse row (CSR) form, with what is needed to
+ * find its spectral radius without ever making it dense: a matrix-vector
+ * product, which can be shared among threads by rows, and an Arnoldi
+ * iteration which needs only that product. Time and memory grow with the
+ * number of entries rather than the square of the number of rows.
+ */
+public final class SparseMatrix {
+
+    /** Dimension of the Krylov subspace built between restarts. */
+    private static final int KRYLOV_DIMENSION = 60;
+
+    /** Fewest entries for which products are shared among threads. */
+    private static final int MIN_PARALLEL_ENTRIES = 100000;
+
+    /** Default relative tolerance of spectral radius estimates. */
+    public static final double DEFAULT_TOLERANCE = 1E-6;
+
+    /** Default limit on matrix-vector products for spectral radius estimates. */
+    public static final int DEFAULT_MAX_ITERATIONS = 3000;
+
+    /** Number of columns. */
+    private final int numColumns;
+
+    /** Start of each row in {@link #columnIndices}; length is rows + 1. */
+    private final int[] rowPointers;
+
+    /** Column of each entry. */
+    private final int[] columnIndices;
+
+    /** Value of each entry. */
+    private final double[] values;
+
+    /** Number of threads to multiply with. */
+    private int numThreads = 1;
+
+    /**
+     * Make a matrix. The arrays are used directly, not copied.
+     *
+     * @param numColumns number of columns
+     * @param rowPointers start of each row in the entries, of length rows + 1
+     * @param columnIndices column of each entry
+     * @param values value of each entry
+     */
+    public SparseMatrix(final int numColumns, final int[] rowPointers,
+            final int[] columnIndices, final double[] values) {
+        this.numColumns = numColumns;
+        this.rowPointers = rowPointers;
+        this.columnIndices = columnIndices;
+        this.values = values;
+    }
+
+    /**
+     * @return the number of rows
+     */
+    public int getNumRows() {
+        return rowPointers.length - 1;
+    }
+
+    /**
+     * @return the number of columns
+     */
+    public int getNumColumns() {
+        return numColumns;
+    }
+
+    /**
+     * @return the number of stored entries
+     */
+    public int getNumEntries() {
+        return rowPointers[getNumRows()];
+    }
+
+    /**
+     * @return the number of threads to multiply with
+     */
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    /**
+     * Set the number of threads used by {@link #spectralRadius(double, int)}.
+     * Small matrices are always multiplied on the calling thread.
+     *
+     * @param numThreads the number of threads to multiply with
+     */
+    public void setNumThreads(int numThreads) {
+        this.numThreads = Math.max(1, numThreads);
+    }
+
+    /**
+     * Multiply a vector by the matrix, on the calling thread.
+     *
+     * @param x vector with one entry per column
+     * @param y vector with one entry per row, set to the product
+     */
+    public void multiply(final double[] x, final double[] y) {
+        multiplyRows(x, y, 0, getNumRows());
+    }
+
+    /**
+     * Estimate the spectral radius, the largest modulus of the eigenvalues,
+     * with the default tolerance and limit on iterations.
+     *
+     * @return the estimated spectral radius
+     */
+    public double spectralRadius() {
+        return spectralRadius(DEFAULT_TOLERANCE, DEFAULT_MAX_ITERATIONS);
+    }
+
+    /**
+     * Estimate the spectral radius, the largest modulus of the eigenvalues, by
+     * restarted Arnoldi iteration. A Krylov subspace is built from a starting
+     * vector and the eigenvalues of the matrix restricted to it (the Ritz
+     * values) are found; the iteration restarts from the Ritz vector of the
+     * largest of them until successive estimates agree within the tolerance
+     * or the limit on matrix-vector products is reached. Unlike power
+     * iteration this converges when the largest eigenvalues are a complex
+     * pair, as they usually are for random recurrent weights.
+     *
+     * @param tolerance relative change between restarts below which the
+     *            estimate is taken to have converged
+     * @param maxIterations limit on the number of matrix-vector products
+     * @return the estimated spectral radius
+     */
+    public double spectralRadius(final double tolerance,
+            final int maxIterations) {
+        final int n = getNumRows();
+        if (n != numColumns) {
+            throw new IllegalArgumentException("Matrix is " + n + " by "
+                    + numColumns + "; only a square matrix has eigenvalues");
+        }
+        if (n == 0) {
+            return 0;
+        }
+        int m = Math.min(KRYLOV_DIMENSION, n);
+        double[][] basis = new double[m + 1][n];
+        double[][] hessenberg = new double[m + 1][m];
+        double[] start = new double[n];
+        Random random = new Random(n);
+        for (int i = 0; i < n; i++) {
+            start[i] = random.nextGaussian();
+        }
+
+        ExecutorService executor = null;
+        if (numThreads > 1 && getNumEntries() >= MIN_PARALLEL_ENTRIES) {
+            executor = Executors.newFixedThreadPool(numThreads,
+                    new ThreadFactory() {
+                        private int count;
+
+                        @Override
+                        public synchronized Thread newThread(Runnable r) {
+                            Thread t = new Thread(r, "Sparse Matrix "
+                                    + ++count);
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+        }
+        try {
+            double estimate = Double.NaN;
+            int products = 0;
+            while (true) {
+                double norm = Math.sqrt(dot(start, start));
+                if (norm == 0) {
+                    return 0;
+                }
+                for (int i = 0; i < n; i++) {
+                    basis[0][i] = start[i] / norm;
+                }
+                for (double[] row : hessenberg) {
+                    Arrays.fill(row, 0);
+                }
+
+                // Build the Krylov subspace, stopping early if it turns out
+                // to be invariant, in which case its Ritz values are exact.
+                int k = m;
+                for (int j = 0; j < m; j++) {
+                    double[] w = basis[j + 1];
+                    multiply(basis[j], w, executor);
+                    products++;
+                    double before = Math.sqrt(dot(w, w));
+                    // Modified Gram-Schmidt, twice for orthogonality
+                    for (int pass = 0; pass < 2; pass++) {
+                        for (int i = 0; i <= j; i++) {
+                            double h = dot(basis[i], w);
+                            hessenberg[i][j] += h;
+                            axpy(-h, basis[i], w);
+                        }
+                    }
+                    double after = Math.sqrt(dot(w, w));
+                    hessenberg[j + 1][j] = after;
+                    if (after <= 1E-10 * before || after == 0) {
+                        k = j + 1;
+                        break;
+                    }
+                    for (int i = 0; i < n; i++) {
+                        w[i] /= after;
+                    }
+                }
+
+                Matrix h = new Matrix(hessenberg, k, k);
+                EigenvalueDecomposition eig = h.eig();
+                double[] re = eig.getRealEigenvalues();
+                double[] im = eig.getImagEigenvalues();
+                int largest = 0;
+                for (int i = 1; i < k; i++) {
+                    if (Math.hypot(re[i], im[i]) > Math.hypot(re[largest],
+                            im[largest])) {
+                        largest = i;
+                    }
+                }
+                double previous = estimate;
+                estimate = Math.hypot(re[largest], im[largest]);
+                if (k < m || products >= maxIterations
+                        || Math.abs(estimate - previous) <= tolerance
+                                * estimate) {
+                    return estimate;
+                }
+
+                // Restart from the Ritz vector of the largest Ritz value. For
+                // a complex pair the real and imaginary parts are adjacent
+                // columns, and both are kept so the pair's plane is kept.
+                double[][] v = eig.getV().getArray();
+                int other = largest;
+                if (im[largest] > 0) {
+                    other = largest + 1;
+                } else if (im[largest] < 0) {
+                    other = largest - 1;
+                }
+                Arrays.fill(start, 0);
+                for (int j = 0; j < k; j++) {
+                    double c = v[j][largest];
+                    if (other != largest) {
+                        c += v[j][other];
+                    }
+                    axpy(c, basis[j], start);
+                }
+            }
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Multiply a vector by the matrix, sharing the rows among threads if
+     * there is an executor.
+     *
+     * @param x vector with one entry per column
+     * @param y vector with one entry per row, set to the product
+     * @param executor runs the shares, or null to multiply on this thread
+     */
+    private void multiply(final double[] x, final double[] y,
+            final ExecutorService executor) {
+        if (executor == null) {
+            multiplyRows(x, y, 0, getNumRows());
+            return;
+        }
+        // Share rows so that each thread gets about as many entries
+        List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+        int numRows = getNumRows();
+        int numEntries = getNumEntries();
+        int from = 0;
+        for (int t = 1; t <= numThreads; t++) {
+            long goal = (long) numEntries * t / numThreads;
+            int to = from;
+            while (to < numRows && (t == numThreads
+                    || rowPointers[to + 1] <= goal)) {
+                to++;
+            }
+            final int first = from;
+            final int last = to;
+            tasks.add(new Callable<Object>() {
+                @Override
+                public Object call() {
+                    multiplyRows(x, y, first, last);
+                    return null;
+                }
+            });
+            from = to;
+        }
+        try {
+            for (Future<Object> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Multiplication was interrupted",
+                    e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Multiplication failed",
+                    e.getCause());
+        }
+    }
+
+    /**
+     * Multiply a range of rows of the matrix by a vector.
+     *
+     * @param x vector with one entry per column
+     * @param y vector with one entry per row, set to the product in the range
+     * @param from first row
+     * @param to row after the last
+     */
+    private void multiplyRows(final double[] x, final double[] y,
+            final int from, final int to) {
+        for (int row = from; row < to; row++) {
+            double sum = 0;
+            for (int k = rowPointers[row], end = rowPointers[row + 1]; k < end;
+                    k++) {
+                sum += values[k] * x[columnIndices[k]];
+            }
+            y[row] = sum;
+        }
+    }
+
+    /**
+     * @param a a vector
+     * @param b another vector of the same length
+     * @return their dot product
+     */
+    private static double dot(final double[] a, final double[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Add a multiple of one vector to another.
+     *
+     * @param c the multiple
+     * @param x the vector to add
+     * @param y the vector added to
+     */
+    private static void axpy(final double c, final double[] x,
+            final double[] y) {
+        for (int i = 0; i < x.length; i++) {
+            y[i] += c * x[i];
+        }
+    }
+
+}
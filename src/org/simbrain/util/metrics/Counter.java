@@ -0,0 +1,87 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.util.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A named count of events, such as spikes or synapse updates. Safe to
+ * increment from several threads at once. Increments are ignored while
+ * {@link Metrics} is disabled, so counters can be left in hot code.
+ */
+public final class Counter {
+
+    /** Name of the counter. */
+    private final String name;
+
+    /** The count. */
+    private final LongAdder count = new LongAdder();
+
+    /**
+     * Create a counter. Use {@link Metrics#counter(String)} to get a
+     * registered counter.
+     *
+     * @param name the name of the counter
+     */
+    Counter(final String name) {
+        this.name = name;
+    }
+
+    /**
+     * Add one to the count, if metrics are enabled.
+     */
+    public void increment() {
+        if (Metrics.isEnabled()) {
+            count.increment();
+        }
+    }
+
+    /**
+     * Add to the count, if metrics are enabled.
+     *
+     * @param n the amount to add
+     */
+    public void add(final long n) {
+        if (Metrics.isEnabled()) {
+            count.add(n);
+        }
+    }
+
+    /**
+     * @return the count since creation or the last reset
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Set the count to zero.
+     */
+    public void reset() {
+        count.reset();
+    }
+
+    /**
+     * @return the name of the counter
+     */
+    public String getName() {
+        return name;
+    }
+
+}
@@ -0,0 +1,187 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.util.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of durations in nanoseconds. Each power of two is split into
+ * {@value #SUB_BUCKETS} buckets, so percentiles are accurate to within about
+ * 6% whatever the scale, using a fixed amount of memory. Safe to record into
+ * from several threads at once.
+ */
+public final class Histogram {
+
+    /** Number of buckets per power of two. */
+    private static final int SUB_BUCKETS = 8;
+
+    /** Base two log of {@link #SUB_BUCKETS}. */
+    private static final int SUB_BUCKET_BITS = 3;
+
+    /** Enough buckets for any positive long. */
+    private static final int NUM_BUCKETS = (64 - SUB_BUCKET_BITS)
+            * SUB_BUCKETS;
+
+    /** Name of the histogram. */
+    private final String name;
+
+    /** Number of durations in each bucket. */
+    private final AtomicLongArray buckets = new AtomicLongArray(NUM_BUCKETS);
+
+    /** Number of durations recorded. */
+    private final LongAdder count = new LongAdder();
+
+    /** Sum of durations recorded. */
+    private final LongAdder total = new LongAdder();
+
+    /** Longest duration recorded. */
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Create a histogram. Use {@link Metrics#histogram(String)} to get a
+     * registered histogram.
+     *
+     * @param name the name of the histogram
+     */
+    Histogram(final String name) {
+        this.name = name;
+    }
+
+    /**
+     * Record a duration.
+     *
+     * @param nanos the duration in nanoseconds; negative values count as zero
+     */
+    public void record(final long nanos) {
+        long v = Math.max(0, nanos);
+        buckets.incrementAndGet(bucketOf(v));
+        count.increment();
+        total.add(v);
+        max.accumulate(v);
+    }
+
+    /**
+     * The bucket a value falls in. Values below {@link #SUB_BUCKETS} get a
+     * bucket each; above that each power of two is split evenly.
+     *
+     * @param v a non-negative value
+     * @return the bucket index
+     */
+    static int bucketOf(final long v) {
+        if (v < SUB_BUCKETS) {
+            return (int) v;
+        }
+        int exp = 63 - Long.numberOfLeadingZeros(v);
+        int sub = (int) (v >>> (exp - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exp - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * The smallest value in a bucket.
+     *
+     * @param bucket the bucket index
+     * @return the lower bound of the bucket
+     */
+    static long lowerBound(final int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exp = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        return (SUB_BUCKETS + sub) << (exp - SUB_BUCKET_BITS);
+    }
+
+    /**
+     * Estimate a percentile. The estimate is the midpoint of the bucket the
+     * percentile falls in, capped by the longest duration recorded.
+     *
+     * @param p the percentile, on [0, 100]
+     * @return the estimated duration in nanoseconds, or 0 if nothing has been
+     *         recorded
+     */
+    public long getPercentile(final double p) {
+        long n = count.sum();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(p / 100 * n));
+        long seen = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                long lower = lowerBound(i);
+                long upper = i + 1 < NUM_BUCKETS ? lowerBound(i + 1)
+                        : Long.MAX_VALUE;
+                return Math.min(lower + (upper - lower) / 2, getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * @return number of durations recorded
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * @return mean duration in nanoseconds, or 0 if nothing has been recorded
+     */
+    public double getMean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) total.sum() / n;
+    }
+
+    /**
+     * @return sum of all durations in nanoseconds
+     */
+    public long getTotal() {
+        return total.sum();
+    }
+
+    /**
+     * @return longest duration in nanoseconds
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Discard everything recorded.
+     */
+    public void reset() {
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        count.reset();
+        total.reset();
+        max.reset();
+    }
+
+    /**
+     * @return the name of the histogram
+     */
+    public String getName() {
+        return name;
+    }
+
+}
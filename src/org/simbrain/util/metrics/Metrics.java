@@ -0,0 +1,220 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.util.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The registry of update metrics: timing histograms for update actions,
+ * component updates and couplings, and counters for things like spikes and
+ * events. Metrics are off by default and can be turned on from the metrics
+ * panel, over JMX, or at startup with <code>-Dsimbrain.metrics=true</code>.
+ * <p>
+ * While disabled the cost of instrumentation is one volatile read per
+ * measurement. Code is timed like this:
+ *
+ * <pre>
+ * long start = Metrics.start();
+ * doWork();
+ * Metrics.stop("workspace.couplings", start);
+ * </pre>
+ *
+ * The registry is published over JMX as
+ * <code>org.simbrain:type=Metrics</code> the first time metrics are enabled.
+ */
+public final class Metrics {
+
+    /** Name the registry is published under. */
+    public static final String OBJECT_NAME = "org.simbrain:type=Metrics";
+
+    /** Whether metrics are being recorded. */
+    private static volatile boolean enabled;
+
+    /** Timing histograms by name. */
+    private static final ConcurrentNavigableMap<String, Histogram> HISTOGRAMS =
+            new ConcurrentSkipListMap<String, Histogram>();
+
+    /** Counters by name. */
+    private static final ConcurrentNavigableMap<String, Counter> COUNTERS =
+            new ConcurrentSkipListMap<String, Counter>();
+
+    /**
+     * Incremented each time the histograms are removed, so that code which
+     * keeps a histogram to avoid looking it up by name knows to look again.
+     */
+    private static volatile int generation;
+
+    /** Whether the registry has been published over JMX. */
+    private static boolean registered;
+
+    static {
+        if (Boolean.getBoolean("simbrain.metrics")) {
+            setEnabled(true);
+        }
+    }
+
+    /**
+     * No instances.
+     */
+    private Metrics() {
+    }
+
+    /**
+     * @return true if metrics are being recorded
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Turn recording of metrics on or off. Metrics already recorded are kept.
+     *
+     * @param enabled true to record metrics
+     */
+    public static void setEnabled(final boolean enabled) {
+        if (enabled) {
+            registerMBean();
+        }
+        Metrics.enabled = enabled;
+    }
+
+    /**
+     * Start timing something.
+     *
+     * @return the start time to pass to {@link #stop(String, long)}, or 0 if
+     *         metrics are disabled
+     */
+    public static long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Stop timing something and record the duration, unless metrics were
+     * disabled when timing started.
+     *
+     * @param name name of the histogram to record in
+     * @param start the value returned by {@link #start()}
+     */
+    public static void stop(final String name, final long start) {
+        if (start != 0) {
+            histogram(name).record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Get a timing histogram, creating it if needed.
+     *
+     * @param name the name of the histogram
+     * @return the histogram
+     */
+    public static Histogram histogram(final String name) {
+        Histogram h = HISTOGRAMS.get(name);
+        if (h == null) {
+            h = new Histogram(name);
+            Histogram existing = HISTOGRAMS.putIfAbsent(name, h);
+            if (existing != null) {
+                h = existing;
+            }
+        }
+        return h;
+    }
+
+    /**
+     * Get a counter, creating it if needed. Counters used in hot code should
+     * be looked up once and kept in a static field.
+     *
+     * @param name the name of the counter
+     * @return the counter
+     */
+    public static Counter counter(final String name) {
+        Counter c = COUNTERS.get(name);
+        if (c == null) {
+            c = new Counter(name);
+            Counter existing = COUNTERS.putIfAbsent(name, c);
+            if (existing != null) {
+                c = existing;
+            }
+        }
+        return c;
+    }
+
+    /**
+     * Histograms held outside the registry must be looked up again when this
+     * changes, since {@link #reset()} removes them from the registry.
+     *
+     * @return the number of times the histograms have been removed
+     */
+    public static int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * @return all histograms, sorted by name
+     */
+    public static Collection<Histogram> getHistograms() {
+        return Collections.unmodifiableCollection(HISTOGRAMS.values());
+    }
+
+    /**
+     * @return all counters, sorted by name
+     */
+    public static Collection<Counter> getCounters() {
+        return Collections.unmodifiableCollection(COUNTERS.values());
+    }
+
+    /**
+     * Reset all histograms and counters. Histograms for things which no longer
+     * exist (e.g. closed components) are removed.
+     */
+    public static void reset() {
+        HISTOGRAMS.clear();
+        generation++;
+        for (Counter c : COUNTERS.values()) {
+            c.reset();
+        }
+    }
+
+    /**
+     * Publish the registry over JMX, if it has not been already.
+     */
+    private static synchronized void registerMBean() {
+        if (registered) {
+            return;
+        }
+        registered = true;
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new MetricsMBean(), name);
+            }
+        } catch (JMException | SecurityException e) {
+            e.printStackTrace();
+        }
+    }
+
+}
@@ -0,0 +1,184 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.util.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.InvalidAttributeValueException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
+import javax.management.ReflectionException;
+
+/**
+ * Publishes {@link Metrics} over JMX. Metrics are created as the simulation
+ * runs, so the attributes are built from the registry each time they are
+ * asked for. Each counter is an attribute holding its count. Each histogram
+ * gives five attributes: "name.count", and "name.mean", "name.p50",
+ * "name.p99" and "name.max" in microseconds.
+ */
+class MetricsMBean implements DynamicMBean {
+
+    /** Name of the attribute that turns metrics on and off. */
+    private static final String ENABLED = "Enabled";
+
+    /** Histogram statistics, as attribute name suffixes. */
+    private static final String[] STATS = { "count", "mean", "p50", "p99",
+            "max" };
+
+    @Override
+    public Object getAttribute(final String attribute)
+            throws AttributeNotFoundException {
+        if (attribute.equals(ENABLED)) {
+            return Metrics.isEnabled();
+        }
+        for (Counter c : Metrics.getCounters()) {
+            if (c.getName().equals(attribute)) {
+                return c.getCount();
+            }
+        }
+        int dot = attribute.lastIndexOf('.');
+        if (dot > 0) {
+            String name = attribute.substring(0, dot);
+            String stat = attribute.substring(dot + 1);
+            for (Histogram h : Metrics.getHistograms()) {
+                if (h.getName().equals(name)) {
+                    return getStatistic(h, stat, attribute);
+                }
+            }
+        }
+        throw new AttributeNotFoundException(attribute);
+    }
+
+    /**
+     * Get one statistic of a histogram.
+     *
+     * @param h the histogram
+     * @param stat the statistic
+     * @param attribute the full attribute name, for errors
+     * @return the value; durations are in microseconds
+     * @throws AttributeNotFoundException if the statistic is unknown
+     */
+    private static Object getStatistic(final Histogram h, final String stat,
+            final String attribute) throws AttributeNotFoundException {
+        switch (stat) {
+        case "count":
+            return h.getCount();
+        case "mean":
+            return h.getMean() / 1000;
+        case "p50":
+            return h.getPercentile(50) / 1000.0;
+        case "p99":
+            return h.getPercentile(99) / 1000.0;
+        case "max":
+            return h.getMax() / 1000.0;
+        default:
+            throw new AttributeNotFoundException(attribute);
+        }
+    }
+
+    @Override
+    public void setAttribute(final Attribute attribute)
+            throws AttributeNotFoundException, InvalidAttributeValueException {
+        if (!attribute.getName().equals(ENABLED)) {
+            throw new AttributeNotFoundException(attribute.getName()
+                    + " is read only");
+        }
+        if (!(attribute.getValue() instanceof Boolean)) {
+            throw new InvalidAttributeValueException(ENABLED
+                    + " must be a boolean");
+        }
+        Metrics.setEnabled((Boolean) attribute.getValue());
+    }
+
+    @Override
+    public AttributeList getAttributes(final String[] attributes) {
+        AttributeList list = new AttributeList();
+        for (String name : attributes) {
+            try {
+                list.add(new Attribute(name, getAttribute(name)));
+            } catch (AttributeNotFoundException e) {
+                // Omitted, as the JMX contract allows
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public AttributeList setAttributes(final AttributeList attributes) {
+        AttributeList set = new AttributeList();
+        for (Attribute a : attributes.asList()) {
+            try {
+                setAttribute(a);
+                set.add(a);
+            } catch (AttributeNotFoundException
+                    | InvalidAttributeValueException e) {
+                // Omitted, as the JMX contract allows
+            }
+        }
+        return set;
+    }
+
+    @Override
+    public Object invoke(final String actionName, final Object[] params,
+            final String[] signature) throws ReflectionException {
+        if (actionName.equals("reset")) {
+            Metrics.reset();
+            return null;
+        }
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attributes =
+                new ArrayList<MBeanAttributeInfo>();
+        attributes.add(new MBeanAttributeInfo(ENABLED, "boolean",
+                "Whether metrics are recorded", true, true, true));
+        for (Counter c : Metrics.getCounters()) {
+            attributes.add(new MBeanAttributeInfo(c.getName(), "long",
+                    "Count", true, false, false));
+        }
+        for (Histogram h : Metrics.getHistograms()) {
+            for (String stat : STATS) {
+                boolean isCount = stat.equals("count");
+                attributes.add(new MBeanAttributeInfo(
+                        h.getName() + "." + stat,
+                        isCount ? "long" : "double",
+                        isCount ? "Number of updates timed"
+                                : stat + " duration in microseconds",
+                        true, false, false));
+            }
+        }
+        MBeanOperationInfo reset = new MBeanOperationInfo("reset",
+                "Reset all metrics", new MBeanParameterInfo[0], "void",
+                MBeanOperationInfo.ACTION);
+        return new MBeanInfo(MetricsMBean.class.getName(),
+                "Simbrain update metrics",
+                attributes.toArray(new MBeanAttributeInfo[attributes.size()]),
+                null, new MBeanOperationInfo[] { reset }, null);
+    }
+
+}
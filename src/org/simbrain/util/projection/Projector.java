@@ -19,7 +19,6 @@
 package org.simbrain.util.projection;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -27,10 +26,10 @@ import java.util.LinkedHashMap;
 import java.util.List;
 
 import org.apache.log4j.Logger;
+import org.simbrain.util.CsvMatrixLoader;
 import org.simbrain.util.SimbrainPreferences;
 import org.simbrain.util.SimbrainPreferences.PropertyNotFoundException;
 
-import com.Ostermiller.util.CSVParser;
 
 /**
  * <b>Projector</b> is a the main class of this package, which provides an
@@ -244,24 +243,9 @@ public class Projector {
      */
     public void importData(final File theFile) {
         try {
-            CSVParser theParser = new CSVParser(new FileInputStream(theFile),
-                    "", "", "#");
-
-            // # is a comment delimeter in net files
-            String[][] values = theParser.getAllValues();
-            String[] line;
-            double[] vector;
-
-            int dimension = values[0].length;
-            init(dimension);
-
-            for (int i = 0; i < values.length; i++) {
-                line = values[i];
-                vector = new double[values[0].length];
-
-                for (int j = 0; j < line.length; j++) {
-                    vector[j] = Double.parseDouble(line[j]);
-                }
+            double[][] values = CsvMatrixLoader.readMatrix(theFile);
+            init(values[0].length);
+            for (double[] vector : values) {
                 addDatapoint(new DataPointColored(vector));
             }
         } catch (IOException e) {
@@ -277,6 +277,17 @@ public abstract class MutableTable<T> extends SimbrainDataTable<T> {
         fireTableStructureChanged();
     }
 
+    /**
+     * Adds or removes rows and columns, setting new cells to the default
+     * value.
+     *
+     * @param newNumRows logical number of rows in table.
+     * @param newNumCols logical number of columns in table.
+     */
+    public void modifyRowsColumns(int newNumRows, int newNumCols) {
+        modifyRowsColumns(newNumRows, newNumCols, getDefaultValue());
+    }
+
     /**
      * Reset the table structure.
      *
@@ -317,14 +328,30 @@ public abstract class MutableTable<T> extends SimbrainDataTable<T> {
     protected void checkData(boolean allowRowChanges,
             boolean allowColumnChanges, Object[][] values)
             throws TableDataException {
-        if (!allowRowChanges && values.length != getRowCount()) {
+        checkData(allowRowChanges, allowColumnChanges, values.length,
+                values[0].length);
+    }
+
+    /**
+     * Check that data of a given size may be imported.
+     *
+     * @param allowRowChanges whether rows should be editable
+     * @param allowColumnChanges whether columns should be editable
+     * @param numRows number of rows of the data
+     * @param numColumns number of columns of the data
+     * @throws TableDataException exception if data are invalid
+     */
+    protected void checkData(boolean allowRowChanges,
+            boolean allowColumnChanges, int numRows, int numColumns)
+            throws TableDataException {
+        if (!allowRowChanges && numRows != getRowCount()) {
             throw new TableDataException("Trying to import data with "
-                    + values.length + " rows into a table with "
+                    + numRows + " rows into a table with "
                     + getRowCount() + " rows.");
         } else if (!allowColumnChanges
-                && values[0].length != getLogicalColumnCount()) {
+                && numColumns != getLogicalColumnCount()) {
             throw new TableDataException("Trying to import data with "
-                    + values[0].length + " columns into a table with "
+                    + numColumns + " columns into a table with "
                     + getLogicalColumnCount() + " columns.");
         }
     }
@@ -19,15 +19,21 @@
 package org.simbrain.util.table;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
 
-import org.simbrain.util.Utils;
+import org.simbrain.util.CsvMatrixLoader;
 import org.simbrain.util.table.SimbrainJTable.CellIndex;
 
 /**
- * Default implementation of a table of numerical data. The table is mutable,
- * and the data is saved as a list of lists of Doubles.
+ * Default implementation of a table of numerical data. The table is mutable.
+ * Rather than the lists of the superclass, the data are kept in one array of
+ * doubles, row after row, which grows as rows are added. Large tables thus
+ * take little memory, and {@link #getLogicalDoubleAt(int, int)},
+ * {@link #setLogicalDouble(int, int, double, boolean)} and the methods that
+ * read or write whole rows do so without boxing.
  *
  * @author jyoshimi
  */
@@ -52,6 +58,18 @@ public class NumericTable extends MutableTable<Double> implements
     /** Randomization lower bound. */
     private int lowerBound = -1;
 
+    /**
+     * The values, row after row. Only the first numRows * numColumns are
+     * used; the rest is room for new rows.
+     */
+    private double[] values = new double[0];
+
+    /** Number of rows. */
+    private int numRows;
+
+    /** Number of columns of the data. */
+    private int numColumns;
+
     /**
      * Construct a table with a specified number of rows and columns.
      *
@@ -85,13 +103,258 @@ public class NumericTable extends MutableTable<Double> implements
      * @param cols num cols
      */
     protected void init(int rows, int cols) {
-        rowData.clear();
-        for (int i = 0; i < rows; i++) {
-            rowData.add(createNewRow(new Double(0), cols));
+        values = new double[size(rows, cols)];
+        numRows = rows;
+        numColumns = cols;
+        fireTableStructureChanged();
+    }
+
+    /**
+     * Returns the number of values in a table of the given size.
+     *
+     * @param rows number of rows
+     * @param cols number of columns
+     * @return the number of values
+     */
+    private static int size(final long rows, final long cols) {
+        long size = rows * cols;
+        if (rows < 0 || cols < 0 || size > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Cannot make a table with "
+                    + rows + " rows and " + cols + " columns");
+        }
+        return (int) size;
+    }
+
+    /**
+     * Make room for at least the given number of values, growing the array by
+     * half so that adding rows one at a time is cheap.
+     *
+     * @param size the number of values needed
+     */
+    private void ensureCapacity(final int size) {
+        if (values.length < size) {
+            long grown = values.length + (values.length >> 1);
+            values = Arrays.copyOf(values,
+                    (int) Math.min(Integer.MAX_VALUE - 8,
+                            Math.max(size, grown)));
+        }
+    }
+
+    /**
+     * Returns the position of a cell in the array of values.
+     *
+     * @param row row index in the logical data
+     * @param col column index in the logical data
+     * @return the position
+     */
+    private int index(final int row, final int col) {
+        if (row < 0 || row >= numRows || col < 0 || col >= numColumns) {
+            throw new IndexOutOfBoundsException("Cell (" + row + ", " + col
+                    + ") is outside a table with " + numRows + " rows and "
+                    + numColumns + " columns");
+        }
+        return row * numColumns + col;
+    }
+
+    /**
+     * Get the value of a cell in the logical data without boxing it.
+     *
+     * @param row the row index
+     * @param col the column index
+     * @return the value at that cell
+     */
+    public double getLogicalDoubleAt(final int row, final int col) {
+        return values[index(row, col)];
+    }
+
+    /**
+     * Set the value of a cell in the logical data without boxing it.
+     *
+     * @param row row index in the "logical" data
+     * @param column column index in the "logical" data
+     * @param value value to set
+     * @param fireEvent true if an event should be fired, false otherwise.
+     */
+    public void setLogicalDouble(final int row, final int column,
+            final double value, final boolean fireEvent) {
+        values[index(row, column)] = value;
+        if (fireEvent) {
+            fireTableCellUpdated(row, column);
+        }
+    }
+
+    @Override
+    public Double getLogicalValueAt(final int row, final int col) {
+        return getLogicalDoubleAt(row, col);
+    }
+
+    @Override
+    public void setLogicalValue(final int row, final int column,
+            final Double value, final boolean fireEvent) {
+        setLogicalDouble(row, column, value, fireEvent);
+    }
+
+    @Override
+    public int getRowCount() {
+        return numRows;
+    }
+
+    @Override
+    public int getLogicalColumnCount() {
+        return numRows > 0 ? numColumns : 0;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return numRows > 0 ? numColumns + 1 : 0;
+    }
+
+    @Override
+    public void addRow(final Double value) {
+        insertRow(numRows, value);
+    }
+
+    @Override
+    public void insertRow(final int at, final Double value) {
+        if (at < 0 || at > numRows) {
+            throw new IndexOutOfBoundsException("Cannot insert row " + at
+                    + " into a table with " + numRows + " rows");
+        }
+        ensureCapacity(size(numRows + 1, numColumns));
+        int start = at * numColumns;
+        System.arraycopy(values, start, values, start + numColumns,
+                (numRows - at) * numColumns);
+        Arrays.fill(values, start, start + numColumns, value);
+        numRows++;
+        fireTableRowsInserted(at, at);
+    }
+
+    @Override
+    public void removeRow(final int rowToRemoveIndex,
+            final boolean fireEvent) {
+        // Don't allow getRowCount() to go to 0
+        if (numRows <= 1) {
+            return;
+        }
+        int start = index(rowToRemoveIndex, 0);
+        System.arraycopy(values, start + numColumns, values, start,
+                (numRows - rowToRemoveIndex - 1) * numColumns);
+        numRows--;
+        if (fireEvent) {
+            fireTableRowsDeleted(rowToRemoveIndex, rowToRemoveIndex);
         }
+    }
+
+    @Override
+    public void addColumn(final Double value) {
+        insertColumn(numColumns, value);
+    }
+
+    @Override
+    public void insertColumn(final int at, final Double value) {
+        if (at < 0 || at > numColumns) {
+            throw new IndexOutOfBoundsException("Cannot insert column " + at
+                    + " into a table with " + numColumns + " columns");
+        }
+        int newColumns = numColumns + 1;
+        double[] newValues = new double[size(numRows, newColumns)];
+        for (int i = 0; i < numRows; i++) {
+            int from = i * numColumns;
+            int to = i * newColumns;
+            System.arraycopy(values, from, newValues, to, at);
+            newValues[to + at] = value;
+            System.arraycopy(values, from + at, newValues, to + at + 1,
+                    numColumns - at);
+        }
+        values = newValues;
+        numColumns = newColumns;
         fireTableStructureChanged();
     }
 
+    @Override
+    public void removeColumn(final int columnToRemoveIndex,
+            final boolean fireEvent) {
+        // Don't allow no columns
+        if (getColumnCount() <= 1) {
+            return;
+        }
+        index(0, columnToRemoveIndex);
+        int newColumns = numColumns - 1;
+        for (int i = 0; i < numRows; i++) {
+            int from = i * numColumns;
+            int to = i * newColumns;
+            System.arraycopy(values, from, values, to, columnToRemoveIndex);
+            System.arraycopy(values, from + columnToRemoveIndex + 1, values,
+                    to + columnToRemoveIndex,
+                    newColumns - columnToRemoveIndex);
+        }
+        numColumns = newColumns;
+        if (fireEvent) {
+            fireTableStructureChanged();
+        }
+    }
+
+    @Override
+    public void modifyRowsColumns(final int newNumRows, final int newNumCols,
+            final Double value) {
+        // As when removing rows one at a time, keep at least one row
+        int rows = Math.max(newNumRows, Math.min(numRows, 1));
+        int cols = Math.max(newNumCols, 0);
+        double[] newValues = new double[size(rows, cols)];
+        if (value != 0) {
+            Arrays.fill(newValues, value);
+        }
+        int keptColumns = Math.min(cols, numColumns);
+        for (int i = 0; i < Math.min(rows, numRows); i++) {
+            System.arraycopy(values, i * numColumns, newValues, i * cols,
+                    keptColumns);
+        }
+        values = newValues;
+        numRows = rows;
+        numColumns = cols;
+        fireTableStructureChanged();
+    }
+
+    @Override
+    public void reset(final int rows, final int cols) {
+        init(rows, cols);
+    }
+
+    @Override
+    public void fill(final Double value) {
+        for (int i = 0; i < numRows; i++) {
+            for (int j = 0; j < numColumns; j++) {
+                setLogicalDouble(i, j, value, false);
+            }
+        }
+        fireTableDataChanged();
+    }
+
+    @Override
+    public void shuffle() {
+        Random rand = new Random();
+        double[] temp = new double[numColumns];
+        for (int i = numRows - 1; i > 0; i--) {
+            int j = rand.nextInt(i + 1);
+            System.arraycopy(values, i * numColumns, temp, 0, numColumns);
+            System.arraycopy(values, j * numColumns, values, i * numColumns,
+                    numColumns);
+            System.arraycopy(temp, 0, values, j * numColumns, numColumns);
+        }
+        fireTableDataChanged();
+    }
+
+    @Override
+    public String[][] asStringArray() {
+        String[][] stringArray = new String[numRows][numColumns];
+        for (int i = 0; i < numRows; i++) {
+            for (int j = 0; j < numColumns; j++) {
+                stringArray[i][j] = Double.toString(getLogicalDoubleAt(i, j));
+            }
+        }
+        return stringArray;
+    }
+
     @Override
     public Class<?> getDataType() {
         return Double.class;
@@ -110,9 +373,7 @@ public class NumericTable extends MutableTable<Double> implements
     public void setData(double[][] data) {
         reset(data.length, data[0].length);
         for (int i = 0; i < data.length; i++) {
-            for (int j = 0; j < data[0].length; j++) {
-                this.setLogicalValue(i, j, data[i][j], false);
-            }
+            System.arraycopy(data[i], 0, values, i * numColumns, numColumns);
         }
         fireTableDataChanged();
     }
@@ -126,7 +387,7 @@ public class NumericTable extends MutableTable<Double> implements
         int i = getCurrentRow();
         for (int j = 0; j < data.length; j++) {
             if (j < this.getLogicalColumnCount()) {
-                this.setLogicalValue(i, j, data[j], false);
+                this.setLogicalDouble(i, j, data[j], false);
             }
         }
         fireTableDataChanged();
@@ -141,7 +402,7 @@ public class NumericTable extends MutableTable<Double> implements
         double[] retVec = new double[this.getColumnCount()];
         int currRow = getCurrentRow();
         for (int i = 0; i < this.getLogicalColumnCount(); i++) {
-            retVec[i] = this.getLogicalValueAt(currRow, i);
+            retVec[i] = this.getLogicalDoubleAt(currRow, i);
         }
         return retVec;
     }
@@ -153,7 +414,7 @@ public class NumericTable extends MutableTable<Double> implements
      * @param value value to set
      */
     public void setValueCurrentRow(final int column, final double value) {
-        setLogicalValue(currentRow, column, value, true);
+        setLogicalDouble(currentRow, column, value, true);
     }
 
     /**
@@ -163,7 +424,7 @@ public class NumericTable extends MutableTable<Double> implements
      * @return value of this column in current row
      */
     public double getValueCurrentRow(final int column) {
-        return getLogicalValueAt(currentRow, column);
+        return getLogicalDoubleAt(currentRow, column);
     }
 
     @Override
@@ -195,6 +456,25 @@ public class NumericTable extends MutableTable<Double> implements
      * @return Initialized object.
      */
     private Object readResolve() {
+        if (values == null) {
+            // Tables saved before the values were kept in an array
+            numRows = rowData == null ? 0 : rowData.size();
+            numColumns = numRows > 0 ? rowData.get(0).size() : 0;
+            values = new double[size(numRows, numColumns)];
+            for (int i = 0; i < numRows; i++) {
+                List<?> row = rowData.get(i);
+                for (int j = 0; j < Math.min(numColumns, row.size()); j++) {
+                    Object value = row.get(j);
+                    if (value instanceof Number) {
+                        values[i * numColumns + j] = ((Number) value)
+                                .doubleValue();
+                    }
+                }
+            }
+            if (rowData != null) {
+                rowData.clear();
+            }
+        }
         return this;
     }
 
@@ -249,38 +529,36 @@ public class NumericTable extends MutableTable<Double> implements
     }
 
     /**
-     * Load a .csv file.
+     * Load a .csv file. The file is read with {@link CsvMatrixLoader}, and is
+     * rejected, leaving the table as it was, if it has malformed lines.
      *
      * @param file the CSV file
      * @param allowRowChanges whether to allow data with a different number of
      *            rows
      * @param allowColumnChanges whether to allow data with a different number
      *            of columns
-     * @exception TableDataException
+     * @exception TableDataException if the file cannot be read, is malformed
+     *                or has the wrong size
      */
     public void readData(final File file, final boolean allowRowChanges,
             final boolean allowColumnChanges) throws TableDataException {
-        String[][] values = Utils.getStringMatrix(file);
+        CsvMatrixLoader.Result result;
         try {
-            checkData(allowRowChanges, allowColumnChanges, values);
-            reset(values.length, values[0].length);
-            for (int i = 0; i < values.length; i++) {
-                for (int j = 0; j < values[0].length; j++) {
-                    if ((values[i][j]).length() > 0) {
-                        Double num = new Double(0);
-                        try {
-                            num = Double.valueOf(values[i][j]);
-                        } catch (NumberFormatException exception) {
-                        } finally {
-                            setLogicalValue(i, j, num, false);
-                        }
-                    }
-                }
-            }
-            fireTableStructureChanged();
-        } catch (TableDataException tde) {
-            throw tde;
+            result = CsvMatrixLoader.load(file);
+        } catch (IOException e) {
+            throw new TableDataException("Could not read " + file + ": "
+                    + e.getMessage());
         }
+        if (result.getNumProblems() > 0) {
+            throw new TableDataException(result.describeProblems(5));
+        }
+        double[][] data = result.getData();
+        if (data.length == 0) {
+            throw new TableDataException(file + " has no rows.");
+        }
+        checkData(allowRowChanges, allowColumnChanges, data.length,
+                data[0].length);
+        setData(data);
     }
 
     /**
@@ -293,7 +571,7 @@ public class NumericTable extends MutableTable<Double> implements
         double returnList[][] = new double[getRowCount()][getLogicalColumnCount()];
         for (int i = 0; i < getRowCount(); i++) {
             for (int j = 0; j < getLogicalColumnCount(); j++) {
-                returnList[i][j] = this.getLogicalValueAt(i, j);
+                returnList[i][j] = this.getLogicalDoubleAt(i, j);
             }
         }
         return returnList;
@@ -309,7 +587,7 @@ public class NumericTable extends MutableTable<Double> implements
         for (CellIndex cellIndex : cellIndices) {
             int row = cellIndex.row;
             int col = cellIndex.col;
-            this.setLogicalValue(row, col, val, false);
+            this.setLogicalDouble(row, col, val, false);
         }
         this.fireTableDataChanged();
     }
@@ -326,7 +604,7 @@ public class NumericTable extends MutableTable<Double> implements
             int row = cellIndex.row;
             int col = cellIndex.col;
             double value = (rand.nextDouble() * range) + getLowerBound();
-            setLogicalValue(row, col, value, false);
+            setLogicalDouble(row, col, value, false);
         }
         fireTableDataChanged();
     }
@@ -349,7 +627,7 @@ public class NumericTable extends MutableTable<Double> implements
         double max = Double.NEGATIVE_INFINITY;
         double min = Double.POSITIVE_INFINITY;
         for (int i = 0; i < this.getRowCount(); i++) {
-            double val = getLogicalValueAt(i, columnIndex);
+            double val = getLogicalDoubleAt(i, columnIndex);
             if (val > max) {
                 max = val;
             }
@@ -358,8 +636,9 @@ public class NumericTable extends MutableTable<Double> implements
             }
         }
         for (int i = 0; i < this.getRowCount(); i++) {
-            setLogicalValue(i, columnIndex, (getLogicalValueAt(i, columnIndex) - min)
-                    / (max - min), false);
+            setLogicalDouble(i, columnIndex,
+                    (getLogicalDoubleAt(i, columnIndex) - min) / (max - min),
+                    false);
         }
         this.fireTableDataChanged();
     }
@@ -34,10 +34,11 @@ import org.simbrain.util.Utils;
  * Superclass for tables that can be viewed by a SimbrainJTable, and saved in a
  * reasonable, readable way with XStream.
  *
- * All data are backed to a list of lists. This data structure can then be
- * converted to other data structures (e.g. a 2d array of doubles) as needed.
- * This is not as fast as alternatives but it's pretty fast and so suitable for
- * most purposes.
+ * By default data are backed to a list of lists. This data structure can then
+ * be converted to other data structures (e.g. a 2d array of doubles) as
+ * needed. This is not as fast as alternatives but it's pretty fast and so
+ * suitable for most purposes. NumericTable instead keeps its data in an array
+ * of doubles.
  *
  * This class can also be subclassed and relevant methods overridden for an
  * immutable, view type setup. For an example see WeightMatrixViewer.
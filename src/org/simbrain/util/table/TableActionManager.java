@@ -360,9 +360,9 @@ public class TableActionManager {
                 dialog.setLocationRelativeTo(null);
                 dialog.setVisible(true);
                 if (!dialog.hasUserCancelled()) {
-                    ((MutableTable) table.getData()).modifyRowsColumns(
+                    ((MutableTable<?>) table.getData()).modifyRowsColumns(
                             Integer.parseInt(rows.getText()),
-                            Integer.parseInt(columns.getText()), 0);
+                            Integer.parseInt(columns.getText()));
                 }
             }
 
@@ -29,6 +29,7 @@ import java.util.Map;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.log4j.Logger;
+import org.simbrain.util.metrics.Metrics;
 
 /**
  * Manages all the couplings for a Workspace instance.
@@ -200,6 +201,7 @@ public class CouplingManager {
      * Updates all couplings in the workspace.
      */
     public void updateAllCouplings() {
+        long start = Metrics.start();
         LOGGER.debug("updating all couplings");
         for (Coupling<?> coupling : getCouplings()) {
             LOGGER.trace(coupling.getClass());
@@ -209,6 +211,7 @@ public class CouplingManager {
         for (Coupling<?> coupling : getCouplings()) {
             coupling.update();
         }
+        Metrics.stop("workspace.couplings", start);
     }
 
     /**
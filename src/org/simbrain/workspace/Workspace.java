@@ -19,7 +19,6 @@
 package org.simbrain.workspace;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -361,6 +360,23 @@ public class Workspace {
         updateStopped();
     }
 
+    /**
+     * Update the workspace a set number of times in the calling thread, without
+     * synchronizing with a gui. Used to run workspaces in batch, e.g. from
+     * {@link org.simbrain.workspace.batch.BatchRunner}.
+     *
+     * @param numIterations the number of iterations to update
+     * @param afterUpdate run after each update, e.g. to record values; may be
+     *            null
+     */
+    public void iterateInCurrentThread(final int numIterations,
+            final Runnable afterUpdate) {
+        synchronized (updaterLock) {
+            updater.iterateInCurrentThread(numIterations, afterUpdate);
+        }
+        updateStopped();
+    }
+
     /**
      * Remove all components (networks, worlds, etc.) from this workspace.
      */
@@ -653,7 +669,7 @@ public class Workspace {
         try {
             if (theFile != null) {
                 clearWorkspace();
-                serializer.deserialize(new FileInputStream(theFile));
+                serializer.deserialize(theFile);
                 setCurrentFile(theFile);
                 setWorkspaceChanged(false);
                 fireNewWorkspaceOpened();
@@ -26,13 +26,24 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
@@ -56,14 +67,27 @@ import com.thoughtworks.xstream.io.xml.DomDriver;
 public class WorkspaceSerializer {
 
     /** The number of bytes to attempt to read at a time from an InputStream. */
-    private static final int BUFFER_SIZE = 1024;
+    private static final int BUFFER_SIZE = 8192;
 
     /** The current workspace. */
     private final Workspace workspace;
 
-    /** The desktop component for the workspace. */
+    /**
+     * The desktop component for the workspace, or null if the workspace is
+     * being run without a gui.
+     */
     private final SimbrainDesktop desktop;
 
+    /**
+     * Number of threads components are read on, or 0 for one per processor.
+     * Defaults to 1, since reading components in parallel is only safe when
+     * their deserializers share no unsynchronized state; see
+     * {@link #setLoaderThreads(int)}. The default can be changed with the
+     * system property <code>simbrain.loaderThreads</code>.
+     */
+    private int loaderThreads = Integer.getInteger("simbrain.loaderThreads",
+            1);
+
     /**
      * Creates a new serializer.
      *
@@ -74,6 +98,36 @@ public class WorkspaceSerializer {
         this.desktop = SimbrainDesktop.getDesktop(workspace);
     }
 
+    /**
+     * Set the number of threads components are read on when a workspace is
+     * deserialized. With more than one thread, each component is read on a
+     * loader thread, at the same time as other components, and is only added
+     * to the workspace afterwards, on the calling thread and in the order it
+     * was saved. This is safe only if the deserializer of every component in
+     * the archive (its static <code>open</code> method) touches no shared
+     * state, e.g. static counters or caches, without synchronizing on it.
+     * Components whose deserializers do not meet this contract must be read
+     * with one thread, the default.
+     *
+     * @param loaderThreads the number of threads, 1 to read components one
+     *            at a time on the calling thread, or 0 for one per processor
+     */
+    public void setLoaderThreads(final int loaderThreads) {
+        if (loaderThreads < 0) {
+            throw new IllegalArgumentException("Negative number of threads: "
+                    + loaderThreads);
+        }
+        this.loaderThreads = loaderThreads;
+    }
+
+    /**
+     * @return the number of threads components are read on, or 0 for one per
+     *         processor
+     */
+    public int getLoaderThreads() {
+        return loaderThreads;
+    }
+
     /**
      * Serializes the workspace to a zip compressed stream.
      *
@@ -131,8 +185,8 @@ public class WorkspaceSerializer {
             zipStream.putNextEntry(entry);
             serializer.serializeComponent(component);
 
-            GuiComponent<?> desktopComponent = SimbrainDesktop.getDesktop(
-                    workspace).getDesktopComponent(component);
+            GuiComponent<?> desktopComponent = desktop == null ? null
+                    : desktop.getDesktopComponent(component);
 
             /*
              * If there is a desktop component associated with the component
@@ -160,76 +214,172 @@ public class WorkspaceSerializer {
     }
 
     /**
-     * Creates a workspace from a zip compressed input stream.
+     * Creates a workspace from a zip compressed input stream. The contents
+     * file is the last entry of an archive, so each entry is read into memory
+     * once, as it arrives, and released once its component is loaded. When
+     * the archive is a file, {@link #deserialize(File, Collection)} is faster
+     * and needs less memory.
      *
      * @param stream The stream to read from. This is expected to be zip
      *            compressed.
      * @param exclude The list of uris to ignore on import.
      * @throws IOException if an IO error occurs.
      */
-    @SuppressWarnings("unchecked")
     public void deserialize(final InputStream stream,
             final Collection<? extends String> exclude) throws IOException {
-        Map<String, byte[]> entries = new HashMap<String, byte[]>();
-        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
-
-        byte[] buffer = new byte[BUFFER_SIZE];
-
-        for (int read; (read = stream.read(buffer)) >= 0;) {
-            bytes.write(buffer, 0, read);
+        final Map<String, byte[]> entries = new HashMap<String, byte[]>();
+        ZipInputStream zip = new ZipInputStream(stream);
+        for (ZipEntry entry; (entry = zip.getNextEntry()) != null;) {
+            entries.put(entry.getName(), readEntry(zip, entry.getSize()));
         }
+        deserialize(new EntrySource() {
+            @Override
+            public InputStream open(final String name) throws IOException {
+                byte[] data;
+                synchronized (entries) {
+                    data = entries.remove(name);
+                }
+                if (data == null) {
+                    throw new IOException("Archive has no entry " + name);
+                }
+                return new ByteArrayInputStream(data);
+            }
+        }, exclude);
+    }
 
-        ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(
-                bytes.toByteArray()));
-        ArchiveContents contents = null;
-        WorkspaceComponentDeserializer componentDeserializer = new WorkspaceComponentDeserializer();
-
-        ZipEntry entry = zip.getNextEntry();
+    /**
+     * Deserializes all the entries in an archive file.
+     *
+     * @param file The archive.
+     * @throws IOException If an IO error occurs.
+     */
+    public void deserialize(final File file) throws IOException {
+        Collection<? extends String> empty = Collections.emptySet();
+        deserialize(file, empty);
+    }
 
-        for (ZipEntry next; entry != null; entry = next) {
-            next = zip.getNextEntry();
-            entries.put(entry.getName(), new byte[(int) entry.getSize()]);
+    /**
+     * Creates a workspace from an archive file. The archive is read with
+     * random access: the contents file is read first, and each component is
+     * then read straight from its entry, so the archive is never held in
+     * memory.
+     *
+     * @param file The archive.
+     * @param exclude The list of uris to ignore on import.
+     * @throws IOException if an IO error occurs.
+     */
+    public void deserialize(final File file,
+            final Collection<? extends String> exclude) throws IOException {
+        try (final ZipFile zip = new ZipFile(file)) {
+            deserialize(new EntrySource() {
+                @Override
+                public InputStream open(final String name)
+                        throws IOException {
+                    ZipEntry entry = zip.getEntry(name);
+                    if (entry == null) {
+                        throw new IOException("Archive has no entry " + name);
+                    }
+                    return zip.getInputStream(entry);
+                }
+            }, exclude);
         }
+    }
 
-        zip = new ZipInputStream(new ByteArrayInputStream(bytes.toByteArray()));
-
-        while ((entry = zip.getNextEntry()) != null) {
-            byte[] data = entries.get(entry.getName());
-            read(zip, data);
+    /**
+     * Creates a workspace from the entries of an archive. Components do not
+     * depend on each other until they are coupled, so if more than one loader
+     * thread is set they are read in parallel, and then added to the
+     * workspace in the order they were saved.
+     *
+     * @param source The entries of the archive.
+     * @param exclude The list of uris to ignore on import.
+     * @throws IOException if an IO error occurs.
+     */
+    @SuppressWarnings("unchecked")
+    private void deserialize(final EntrySource source,
+            final Collection<? extends String> exclude) throws IOException {
+        ArchiveContents contents;
+        try (InputStream input = source.open("contents.xml")) {
+            contents = (ArchiveContents) ArchiveContents.xstream().fromXML(
+                    input);
         }
-
-        // Get the archived contents file.
-        contents = (ArchiveContents) ArchiveContents.xstream().fromXML(
-                new ByteArrayInputStream(entries.get("contents.xml")));
+        final WorkspaceComponentDeserializer componentDeserializer = new WorkspaceComponentDeserializer();
 
         // Add Components
+        List<ArchiveContents.ArchivedComponent> toLoad = new ArrayList<ArchiveContents.ArchivedComponent>();
         if (contents.getArchivedComponents() != null) {
             for (ArchiveContents.ArchivedComponent archivedComponent : contents
                     .getArchivedComponents()) {
-                if (exclude.contains(archivedComponent.getUri())) {
-                    continue;
+                if (!exclude.contains(archivedComponent.getUri())) {
+                    toLoad.add(archivedComponent);
+                }
+            }
+        }
+        List<Future<WorkspaceComponent>> loaded = new ArrayList<Future<WorkspaceComponent>>();
+        ExecutorService executor = null;
+        int numThreads = Math.min(toLoad.size(),
+                loaderThreads == 0 ? Runtime.getRuntime()
+                        .availableProcessors() : loaderThreads);
+        if (numThreads > 1) {
+            executor = Executors.newFixedThreadPool(numThreads,
+                    new ThreadFactory() {
+                        @Override
+                        public Thread newThread(final Runnable r) {
+                            Thread t = new Thread(r, "Workspace loader");
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+        }
+        try {
+            for (final ArchiveContents.ArchivedComponent archivedComponent : toLoad) {
+                Callable<WorkspaceComponent> load = new Callable<WorkspaceComponent>() {
+                    @Override
+                    public WorkspaceComponent call() throws IOException {
+                        try (InputStream input = source
+                                .open(archivedComponent.getUri())) {
+                            return componentDeserializer
+                                    .deserializeWorkspaceComponent(
+                                            archivedComponent, input);
+                        }
+                    }
+                };
+                if (executor == null) {
+                    FutureTask<WorkspaceComponent> task = new FutureTask<WorkspaceComponent>(
+                            load);
+                    task.run();
+                    loaded.add(task);
+                } else {
+                    loaded.add(executor.submit(load));
                 }
+            }
 
-                WorkspaceComponent wc = componentDeserializer
-                        .deserializeWorkspaceComponent(
-                                archivedComponent,
-                                new ByteArrayInputStream(entries
-                                        .get(archivedComponent.getUri())));
+            for (int i = 0; i < toLoad.size(); i++) {
+                ArchiveContents.ArchivedComponent archivedComponent = toLoad
+                        .get(i);
+                WorkspaceComponent wc = getLoaded(loaded.get(i));
 
                 // This will cause a desktop component (GuiComponent) to be
-                // created
+                // created, if there is a desktop
                 workspace.addWorkspaceComponent(wc);
 
-                if (archivedComponent.getDesktopComponent() != null) {
-                    Rectangle bounds = (Rectangle) new XStream(new DomDriver())
-                            .fromXML(new ByteArrayInputStream(entries
-                                    .get(archivedComponent
-                                            .getDesktopComponent().getUri())));
+                if (desktop != null
+                        && archivedComponent.getDesktopComponent() != null) {
+                    Rectangle bounds;
+                    try (InputStream input = source.open(archivedComponent
+                            .getDesktopComponent().getUri())) {
+                        bounds = (Rectangle) new XStream(new DomDriver())
+                                .fromXML(input);
+                    }
                     GuiComponent<?> desktopComponent = desktop
                             .getDesktopComponent(wc);
                     desktopComponent.getParentFrame().setBounds(bounds);
                 }
             }
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
         }
 
         // Add Couplings
@@ -312,23 +462,64 @@ public class WorkspaceSerializer {
     }
 
     /**
-     * Helper method that will read the InputStream repeatedly until the given
-     * array is filled.
+     * Wait for a component to be loaded.
      *
-     * @param istream the InputStream to read from.
-     * @param bytes the array to write to
+     * @param future the loading component
+     * @return the component
+     * @throws IOException if it could not be read
+     */
+    private static WorkspaceComponent getLoaded(
+            final Future<WorkspaceComponent> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted loading workspace");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * Read the rest of a zip entry.
+     *
+     * @param input the stream, positioned at the start of the entry
+     * @param size the size of the entry, or -1 if not known
+     * @return the data
      * @throws IOException if there is an IO error
      */
-    private static void read(final InputStream istream, final byte[] bytes)
+    private static byte[] readEntry(final InputStream input, final long size)
             throws IOException {
-        int pos = 0;
-        while (pos < bytes.length) {
-            int read = istream.read(bytes, pos, bytes.length - pos);
-            if (read < 0) {
-                throw new RuntimeException("premature EOF");
-            }
-            pos += read;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+                size > 0 ? (int) size : BUFFER_SIZE);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        for (int read; (read = input.read(buffer)) >= 0;) {
+            bytes.write(buffer, 0, read);
         }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Opens the entries of an archive by name.
+     */
+    private interface EntrySource {
+
+        /**
+         * Open an entry. May be called from several threads at once.
+         *
+         * @param name the name of the entry
+         * @return the entry's data
+         * @throws IOException if there is no such entry or it can't be read
+         */
+        InputStream open(String name) throws IOException;
     }
 
     /**
@@ -0,0 +1,386 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.workspace.batch;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.simbrain.network.NetworkComponent;
+import org.simbrain.network.core.Neuron;
+import org.simbrain.network.groups.Group;
+import org.simbrain.network.groups.NeuronGroup;
+import org.simbrain.network.util.io_utilities.NetworkCheckpoint;
+import org.simbrain.workspace.Coupling;
+import org.simbrain.workspace.Producer;
+import org.simbrain.workspace.Workspace;
+import org.simbrain.workspace.WorkspaceComponent;
+import org.simbrain.workspace.WorkspaceSerializer;
+
+/**
+ * Runs a saved workspace from the command line, without a gui, and records
+ * selected producers to comma separated files. No desktop or gui components
+ * are created, network update events are turned off, and the workspace is
+ * updated in the calling thread, so long runs do not pay for AWT. Usage:
+ *
+ * <pre>
+ * BatchRunner workspace.zip -n iterations [-o dir] [-every k] [-r what]...
+ *         [-c dir [-cevery k]]
+ * </pre>
+ *
+ * Each <code>-r</code> option writes one file to the output directory (by
+ * default the current directory). It can name:
+ * <ul>
+ * <li>a network component, e.g. "Network1", to record the activations of
+ * each of its neuron groups and of its neurons not in groups,</li>
+ * <li>a neuron group in a network component, e.g. "Network1:Group 1",</li>
+ * <li>any other component, e.g. a time series, to record the producers
+ * coupled to it.</li>
+ * </ul>
+ * Values are written every <code>k</code> iterations (by default every
+ * iteration), after the update.
+ * <p>
+ * The <code>-c</code> option keeps a checkpoint of the state of each network
+ * component in the given directory (see {@link NetworkCheckpoint}), taken
+ * every <code>k</code> iterations of the <code>-cevery</code> option (by
+ * default 1000). If checkpoints are found there when starting, the networks
+ * are restored from them, the recordings are appended to and only the
+ * remaining iterations are run, so a long run which was killed can be resumed
+ * by running the same command again. Rows recorded after the last checkpoint
+ * of the killed run are recorded again. Other components are not
+ * checkpointed.
+ */
+public class BatchRunner {
+
+    /** The workspace being run. */
+    private final Workspace workspace;
+
+    /** Recorders to write to after updates. */
+    private final List<ProducerRecorder> recorders =
+            new ArrayList<ProducerRecorder>();
+
+    /** Checkpoints of the network components, if any. */
+    private final List<NetworkCheckpoint> checkpoints =
+            new ArrayList<NetworkCheckpoint>();
+
+    /** Take checkpoints every this many iterations. */
+    private int checkpointInterval;
+
+    /**
+     * Create a batch runner for a workspace. Network update events are turned
+     * off.
+     *
+     * @param workspace the workspace to run
+     */
+    public BatchRunner(final Workspace workspace) {
+        this.workspace = workspace;
+        for (WorkspaceComponent component : workspace.getComponentList()) {
+            if (component instanceof NetworkComponent) {
+                ((NetworkComponent) component).getNetwork()
+                        .setFireUpdates(false);
+            }
+        }
+    }
+
+    /**
+     * Load a workspace archive without creating a desktop.
+     *
+     * @param file the workspace archive
+     * @return the loaded workspace
+     * @throws IOException if the archive cannot be read
+     */
+    public static Workspace loadWorkspace(final File file) throws IOException {
+        Workspace workspace = new Workspace();
+        new WorkspaceSerializer(workspace).deserialize(file);
+        workspace.setCurrentFile(file);
+        workspace.setWorkspaceChanged(false);
+        return workspace;
+    }
+
+    /**
+     * Find the producers named by a description, as in the <code>-r</code>
+     * option.
+     *
+     * @param what a component name, or a network component and neuron group
+     *            label separated by a colon
+     * @return the producers
+     * @throws IllegalArgumentException if nothing matches
+     */
+    public List<Producer<?>> getProducers(final String what) {
+        List<Producer<?>> producers = new ArrayList<Producer<?>>();
+        int colon = what.indexOf(':');
+        String componentName = colon < 0 ? what : what.substring(0, colon);
+        WorkspaceComponent component = workspace.getComponent(componentName);
+        if (component == null) {
+            throw new IllegalArgumentException("No component named "
+                    + componentName);
+        }
+        if (component instanceof NetworkComponent) {
+            NetworkComponent nc = (NetworkComponent) component;
+            String label = colon < 0 ? null : what.substring(colon + 1);
+            for (Group group : nc.getNetwork().getFlatGroupList()) {
+                if (group instanceof NeuronGroup && (label == null
+                        || label.equalsIgnoreCase(group.getLabel()))) {
+                    producers.add(NetworkComponent.getNeuronGroupProducer(nc,
+                            (NeuronGroup) group, "getActivations")
+                            .createProducer());
+                }
+            }
+            if (label == null) {
+                for (Neuron neuron : nc.getNetwork().getNeuronList()) {
+                    producers.add(NetworkComponent.getNeuronProducer(nc,
+                            neuron, "getActivation").createProducer());
+                }
+            }
+        } else {
+            for (Coupling<?> coupling : workspace.getCouplingManager()
+                    .getCouplings()) {
+                if (coupling.getConsumer().getParentComponent() == component) {
+                    producers.add(coupling.getProducer());
+                }
+            }
+        }
+        if (producers.isEmpty()) {
+            throw new IllegalArgumentException("Nothing to record for " + what);
+        }
+        return producers;
+    }
+
+    /**
+     * Record producers to a file while running. The header is written
+     * immediately.
+     *
+     * @param file the file to write
+     * @param producers the producers to record
+     * @throws IOException if the file cannot be written
+     */
+    public void addRecording(final File file,
+            final List<Producer<?>> producers) throws IOException {
+        addRecording(file, producers, false);
+    }
+
+    /**
+     * Record producers to a file while running.
+     *
+     * @param file the file to write
+     * @param producers the producers to record
+     * @param append true to add to the file if it exists, without a header
+     * @throws IOException if the file cannot be written
+     */
+    public void addRecording(final File file,
+            final List<Producer<?>> producers, final boolean append)
+            throws IOException {
+        recorders.add(new ProducerRecorder(file, producers, append));
+    }
+
+    /**
+     * Keep checkpoints of the network components in a directory, one file per
+     * component, and restore the networks from any checkpoints already there.
+     * The workspace time is set to that of the checkpoints.
+     *
+     * @param dir the directory
+     * @param interval take checkpoints every this many iterations
+     * @return true if the networks were restored from checkpoints
+     * @throws IOException if checkpoints can't be read, or were taken at
+     *             different times
+     */
+    public boolean setCheckpoints(final File dir, final int interval)
+            throws IOException {
+        dir.mkdirs();
+        checkpointInterval = interval;
+        long restored = -1;
+        for (WorkspaceComponent component : workspace.getComponentList()) {
+            if (!(component instanceof NetworkComponent)) {
+                continue;
+            }
+            NetworkCheckpoint checkpoint = new NetworkCheckpoint(
+                    ((NetworkComponent) component).getNetwork(),
+                    new File(dir, component.getName()
+                            .replaceAll("[^\\w.-]+", "_") + ".ckpt"));
+            long time = checkpoint.restore();
+            if (!checkpoints.isEmpty() && time != restored) {
+                throw new IOException("Checkpoints in " + dir
+                        + " were taken at different times");
+            }
+            restored = time;
+            checkpoints.add(checkpoint);
+        }
+        if (restored >= 0) {
+            workspace.getUpdater().setTime((int) restored);
+        }
+        return restored >= 0;
+    }
+
+    /**
+     * Write a checkpoint of each network component.
+     *
+     * @throws IOException if a checkpoint can't be written
+     */
+    private void checkpoint() throws IOException {
+        for (NetworkCheckpoint checkpoint : checkpoints) {
+            checkpoint.save(workspace.getTime());
+        }
+    }
+
+    /**
+     * Run the workspace, recording and taking checkpoints as requested, then
+     * close the recordings and checkpoints.
+     *
+     * @param iterations number of iterations to run
+     * @param interval record when the workspace time is a multiple of this
+     * @throws IOException if a recording or checkpoint cannot be written
+     */
+    public void run(final int iterations, final int interval)
+            throws IOException {
+        Runnable record = recorders.isEmpty() && checkpoints.isEmpty() ? null
+                : new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (workspace.getTime() % interval == 0) {
+                        for (ProducerRecorder recorder : recorders) {
+                            recorder.record(workspace.getTime());
+                        }
+                    }
+                    // Recordings must be on disk before the checkpoint
+                    // which resumes after them
+                    if (!checkpoints.isEmpty()
+                            && workspace.getTime() % checkpointInterval == 0) {
+                        for (ProducerRecorder recorder : recorders) {
+                            recorder.flush();
+                        }
+                        checkpoint();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+        try {
+            workspace.iterateInCurrentThread(iterations, record);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            for (ProducerRecorder recorder : recorders) {
+                recorder.close();
+            }
+            recorders.clear();
+            for (NetworkCheckpoint checkpoint : checkpoints) {
+                checkpoint.close();
+            }
+        }
+    }
+
+    /**
+     * Run a workspace from the command line.
+     *
+     * @param args command line arguments, see class documentation
+     * @throws IOException if the workspace cannot be read or the recordings
+     *             written
+     */
+    public static void main(final String[] args) throws IOException {
+        if (System.getProperty("java.awt.headless") == null) {
+            System.setProperty("java.awt.headless", "true");
+        }
+        if (args.length == 0) {
+            usage("No workspace given");
+        }
+        File archive = new File(args[0]);
+        int iterations = -1;
+        int interval = 1;
+        File outputDir = new File(".");
+        File checkpointDir = null;
+        int checkpointInterval = 1000;
+        List<String> records = new ArrayList<String>();
+        for (int i = 1; i < args.length; i++) {
+            String arg = args[i];
+            if (i == args.length - 1) {
+                usage("Missing value for " + arg);
+            }
+            String value = args[++i];
+            if (arg.equals("-n")) {
+                iterations = Integer.parseInt(value);
+            } else if (arg.equals("-o")) {
+                outputDir = new File(value);
+            } else if (arg.equals("-every")) {
+                interval = Integer.parseInt(value);
+            } else if (arg.equals("-r")) {
+                records.add(value);
+            } else if (arg.equals("-c")) {
+                checkpointDir = new File(value);
+            } else if (arg.equals("-cevery")) {
+                checkpointInterval = Integer.parseInt(value);
+            } else {
+                usage("Unknown option " + arg);
+            }
+        }
+        if (iterations < 0) {
+            usage("Number of iterations not given");
+        }
+        if (interval < 1 || checkpointInterval < 1) {
+            usage("Recording and checkpoint intervals must be at least 1");
+        }
+        outputDir.mkdirs();
+
+        Workspace workspace = loadWorkspace(archive);
+        BatchRunner runner = new BatchRunner(workspace);
+        int startTime = workspace.getTime();
+        boolean resumed = checkpointDir != null
+                && runner.setCheckpoints(checkpointDir, checkpointInterval);
+        if (resumed) {
+            iterations = Math.max(0,
+                    iterations - (workspace.getTime() - startTime));
+            System.err.println("Resuming from checkpoint at time "
+                    + workspace.getTime());
+        }
+        for (String what : records) {
+            File file = new File(outputDir,
+                    what.replaceAll("[^\\w.-]+", "_") + ".csv");
+            try {
+                runner.addRecording(file, runner.getProducers(what), resumed);
+            } catch (IllegalArgumentException e) {
+                usage(e.getMessage());
+            }
+        }
+        long start = System.nanoTime();
+        runner.run(iterations, interval);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.err.println(String.format(
+                "Ran %d iterations in %.2f s (%.0f iterations/s)", iterations,
+                seconds, iterations / seconds));
+        // The updater's executors are not daemon threads
+        System.exit(0);
+    }
+
+    /**
+     * Print usage and exit.
+     *
+     * @param message the reason
+     */
+    private static void usage(final String message) {
+        System.err.println(message);
+        System.err.println("Usage: BatchRunner workspace.zip -n iterations"
+                + " [-o dir] [-every k] [-r component[:neuron group]]..."
+                + " [-c dir [-cevery k]]");
+        System.exit(1);
+    }
+
+}
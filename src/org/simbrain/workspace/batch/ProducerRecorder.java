@@ -0,0 +1,146 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.workspace.batch;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.simbrain.workspace.Producer;
+
+/**
+ * Writes the values of a set of producers to a comma separated file, one row
+ * per recorded iteration and one column per value. The first column is the
+ * workspace time. Producers of arrays (e.g. neuron group activations) take one
+ * column per element.
+ */
+class ProducerRecorder implements Closeable {
+
+    /** Size of the write buffer. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** The producers to record. */
+    private final List<Producer<?>> producers;
+
+    /** The output. */
+    private final Writer writer;
+
+    /** Reused to build each row. */
+    private final StringBuilder row = new StringBuilder();
+
+    /**
+     * Create a recorder and write the header row. Array producers are read
+     * once to find how many columns they need.
+     *
+     * @param file the file to write to
+     * @param producers the producers to record
+     * @param append true to add rows to an existing file, e.g. when resuming
+     *            a run, in which case no header is written
+     * @throws IOException if the file cannot be written
+     */
+    ProducerRecorder(final File file, final List<Producer<?>> producers,
+            final boolean append) throws IOException {
+        this.producers = producers;
+        writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(file, append), StandardCharsets.UTF_8),
+                BUFFER_SIZE);
+        if (append && file.length() > 0) {
+            return;
+        }
+        row.append("time");
+        for (Producer<?> producer : producers) {
+            Object value = producer.getValue();
+            if (value instanceof double[]) {
+                for (int i = 0; i < ((double[]) value).length; i++) {
+                    row.append(',').append(columnName(producer)).append('[')
+                            .append(i).append(']');
+                }
+            } else {
+                row.append(',').append(columnName(producer));
+            }
+        }
+        writeRow();
+    }
+
+    /**
+     * Name of the column(s) for a producer. Commas are replaced so the
+     * header has the same number of columns as the rows.
+     *
+     * @param producer the producer
+     * @return the column name
+     */
+    private static String columnName(final Producer<?> producer) {
+        return (producer.getParentComponent().getName() + ":"
+                + producer.getDescription()).replace(',', ';');
+    }
+
+    /**
+     * Write the current values of the producers.
+     *
+     * @param time the workspace time
+     * @throws IOException if the file cannot be written
+     */
+    void record(final int time) throws IOException {
+        row.append(time);
+        for (int i = 0, n = producers.size(); i < n; i++) {
+            Object value = producers.get(i).getValue();
+            if (value instanceof double[]) {
+                double[] values = (double[]) value;
+                for (int j = 0; j < values.length; j++) {
+                    row.append(',').append(values[j]);
+                }
+            } else {
+                row.append(',').append(value);
+            }
+        }
+        writeRow();
+    }
+
+    /**
+     * Write out and clear the row being built.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    private void writeRow() throws IOException {
+        row.append('\n');
+        writer.append(row);
+        row.setLength(0);
+    }
+
+    /**
+     * Write out buffered rows.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+}
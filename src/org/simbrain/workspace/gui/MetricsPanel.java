@@ -0,0 +1,172 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.workspace.gui;
+
+import java.awt.BorderLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.JToolBar;
+import javax.swing.Timer;
+import javax.swing.table.AbstractTableModel;
+
+import org.simbrain.util.metrics.Counter;
+import org.simbrain.util.metrics.Histogram;
+import org.simbrain.util.metrics.Metrics;
+
+/**
+ * Display update metrics: timings of update actions, components and couplings,
+ * and counts of spikes, synapse updates and events. Times are in
+ * microseconds. The table is refreshed twice a second while it is visible and
+ * metrics are enabled.
+ */
+public class MetricsPanel extends JPanel {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Milliseconds between refreshes of the table. */
+    private static final int REFRESH_INTERVAL = 500;
+
+    /** Column names. */
+    private static final String[] COLUMNS = { "Metric", "Count", "Mean (us)",
+            "p50 (us)", "p99 (us)", "Max (us)" };
+
+    /** Table model. */
+    private final MetricsTableModel model = new MetricsTableModel();
+
+    /** Turns metrics on and off. */
+    private final JCheckBox enabledBox = new JCheckBox("Record metrics");
+
+    /**
+     * Construct the metrics panel.
+     */
+    public MetricsPanel() {
+        super(new BorderLayout());
+
+        JToolBar toolBar = new JToolBar();
+        enabledBox.setSelected(Metrics.isEnabled());
+        enabledBox.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                Metrics.setEnabled(enabledBox.isSelected());
+                model.refresh();
+            }
+        });
+        toolBar.add(enabledBox);
+        JButton resetButton = new JButton("Reset");
+        resetButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                Metrics.reset();
+                model.refresh();
+            }
+        });
+        toolBar.add(resetButton);
+
+        JTable table = new JTable(model);
+        table.getColumnModel().getColumn(0).setPreferredWidth(300);
+
+        add("North", toolBar);
+        add("Center", new JScrollPane(table));
+
+        Timer timer = new Timer(REFRESH_INTERVAL, new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                // Metrics may also be turned on over JMX
+                enabledBox.setSelected(Metrics.isEnabled());
+                if (Metrics.isEnabled() && isShowing()) {
+                    model.refresh();
+                }
+            }
+        });
+        timer.start();
+    }
+
+    /**
+     * One row per histogram, followed by one row per counter.
+     */
+    private static class MetricsTableModel extends AbstractTableModel {
+
+        private static final long serialVersionUID = 1L;
+
+        /** Rows, as of the last refresh. */
+        private List<Object[]> rows = new ArrayList<Object[]>();
+
+        /**
+         * Re-read the registry.
+         */
+        void refresh() {
+            List<Object[]> newRows = new ArrayList<Object[]>();
+            for (Histogram h : Metrics.getHistograms()) {
+                newRows.add(new Object[] { h.getName(), h.getCount(),
+                        micros(h.getMean()), micros(h.getPercentile(50)),
+                        micros(h.getPercentile(99)), micros(h.getMax()) });
+            }
+            for (Counter c : Metrics.getCounters()) {
+                newRows.add(new Object[] { c.getName(), c.getCount(), null,
+                        null, null, null });
+            }
+            rows = newRows;
+            fireTableDataChanged();
+        }
+
+        /**
+         * Convert nanoseconds to microseconds, rounded for display.
+         *
+         * @param nanos a duration in nanoseconds
+         * @return the duration in microseconds
+         */
+        private static double micros(final double nanos) {
+            return Math.round(nanos / 10) / 100.0;
+        }
+
+        @Override
+        public int getRowCount() {
+            return rows.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(final int column) {
+            return COLUMNS[column];
+        }
+
+        @Override
+        public Class<?> getColumnClass(final int column) {
+            if (column == 0) {
+                return String.class;
+            }
+            return column == 1 ? Long.class : Double.class;
+        }
+
+        @Override
+        public Object getValueAt(final int row, final int column) {
+            return rows.get(row)[column];
+        }
+    }
+
+}
@@ -363,6 +363,8 @@ public class SimbrainDesktop {
         bottomDock.addTab("Updater", null,
                 new ThreadViewerPanel(this.getWorkspace()),
                 "Simbrain thread viewer");
+        bottomDock.addTab("Metrics", null, new MetricsPanel(),
+                "Update timings and counts");
         // Set up the main panel
         horizontalSplitter = new JSplitPane(JSplitPane.VERTICAL_SPLIT);
         horizontalSplitter.setDividerLocation(getDividerLocation());
@@ -24,6 +24,7 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
 
 import org.apache.log4j.Logger;
+import org.simbrain.util.metrics.Metrics;
 import org.simbrain.workspace.WorkspaceComponent;
 
 /**
@@ -116,7 +117,12 @@ public class UpdateAllBuffered implements UpdateAction {
         componentUpdateExecutor.submit(() -> {
             UpdateThread thread = (UpdateThread) Thread.currentThread();
             thread.setCurrentTask(component);
+            long start = Metrics.start();
             component.update();
+            if (start != 0) {
+                Metrics.stop("workspace.component." + component.getName(),
+                        start);
+            }
             thread.clearCurrentTask(component);
             signal.done();
         });
@@ -18,6 +18,7 @@
  */
 package org.simbrain.workspace.updater;
 
+import org.simbrain.util.metrics.Metrics;
 import org.simbrain.workspace.WorkspaceComponent;
 
 /**
@@ -51,7 +52,11 @@ public class UpdateComponent implements UpdateAction {
 //        LatchCompletionSignal latch = new LatchCompletionSignal(1);
 //        updater.updateComponent(component, latch);
 //        latch.await();
-    	component.update();
+        long start = Metrics.start();
+        component.update();
+        if (start != 0) {
+            Metrics.stop("workspace.component." + component.getName(), start);
+        }
     }
 
     /**
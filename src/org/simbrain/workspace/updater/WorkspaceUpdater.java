@@ -26,6 +26,8 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 import org.apache.log4j.Logger;
+import org.simbrain.util.metrics.Counter;
+import org.simbrain.util.metrics.Metrics;
 import org.simbrain.workspace.Workspace;
 import org.simbrain.workspace.WorkspaceComponent;
 
@@ -52,6 +54,10 @@ public class WorkspaceUpdater {
     /** The static logger for the class. */
     static final Logger LOGGER = Logger.getLogger(WorkspaceUpdater.class);
 
+    /** Counts notification events submitted to listeners. */
+    private static final Counter EVENTS = Metrics
+            .counter("workspace.eventsFired");
+
     /** The parent workspace. */
     private final Workspace workspace;
 
@@ -245,6 +251,28 @@ public class WorkspaceUpdater {
         });
     }
 
+    /**
+     * Update the workspace a set number of times in the calling thread. Used
+     * when running without a gui, where nothing needs to be synchronized with
+     * the event thread. Exceptions thrown during an update are passed on to
+     * the caller rather than printed.
+     *
+     * @param numIterations the number of iterations to update
+     * @param afterUpdate run after each update, e.g. to record values; may be
+     *            null
+     */
+    public void iterateInCurrentThread(final int numIterations,
+            final Runnable afterUpdate) {
+        notifyWorkspaceUpdateStarted();
+        for (int i = 0; i < numIterations; i++) {
+            doUpdate();
+            if (afterUpdate != null) {
+                afterUpdate.run();
+            }
+        }
+        notifyWorkspaceUpdateCompleted();
+    }
+
     /**
      * Executes the main workspace update.
      */
@@ -259,13 +287,22 @@ public class WorkspaceUpdater {
             e.printStackTrace();
         }
 
+        long updateStart = Metrics.start();
+
         // TODO: Test to make sure these actions occur in the proper order
         for (UpdateAction action : updateActionManager.getActionList()) {
+            long start = Metrics.start();
             action.invoke();
+            if (start != 0) {
+                Metrics.stop("workspace.action." + action.getDescription(),
+                        start);
+            }
         }
 
         synchManager.runTasks();
 
+        Metrics.stop("workspace.update", updateStart);
+
         notifyWorkspaceUpdated();
 
         LOGGER.trace("done: " + time);
@@ -336,6 +373,7 @@ public class WorkspaceUpdater {
             final int thread) {
         final int time = this.time;
 
+        EVENTS.increment();
         notificationEvents.submit(new Runnable() {
             public void run() {
                 for (ComponentUpdateListener listener : componentListeners) {
@@ -355,6 +393,7 @@ public class WorkspaceUpdater {
             final int thread) {
         final int time = this.time;
 
+        EVENTS.increment();
         notificationEvents.submit(new Runnable() {
             public void run() {
                 for (ComponentUpdateListener listener : componentListeners) {
@@ -370,6 +409,7 @@ public class WorkspaceUpdater {
     protected void notifyCouplingsUpdated() {
         final int time = this.time;
 
+        EVENTS.increment();
         notificationEvents.submit(new Runnable() {
             public void run() {
                 for (WorkspaceUpdaterListener listener : updaterListeners) {
@@ -383,6 +423,7 @@ public class WorkspaceUpdater {
      * Called when the workspace update begins.
      */
     private void notifyWorkspaceUpdateStarted() {
+        EVENTS.increment();
         notificationEvents.submit(new Runnable() {
             public void run() {
                 for (WorkspaceUpdaterListener listener : updaterListeners) {
@@ -396,6 +437,7 @@ public class WorkspaceUpdater {
      * Called when workspace update finishes.
      */
     private void notifyWorkspaceUpdateCompleted() {
+        EVENTS.increment();
         notificationEvents.submit(new Runnable() {
             public void run() {
                 for (WorkspaceUpdaterListener listener : updaterListeners) {
@@ -410,6 +452,7 @@ public class WorkspaceUpdater {
      */
     private void notifyWorkspaceUpdated() {
 
+        EVENTS.increment();
         notificationEvents.submit(new Runnable() {
             public void run() {
                 for (WorkspaceUpdaterListener listener : updaterListeners) {